@@ -0,0 +1,473 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.transaction.UserTransaction;
+
+import org.drools.WorkingMemory;
+import org.drools.common.InternalWorkingMemory;
+import org.drools.event.KnowledgeRuntimeEventManager;
+import org.drools.event.process.ProcessEventListener;
+import org.drools.event.process.ProcessEventManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind variant of the {@link JPAWorkingMemoryDbLogger}.
+ * </p>
+ * Instead of persisting every log entry in its own entity manager and transaction on the
+ * engine thread, log entries are put in a bounded queue and written by a background thread
+ * in batches, using one entity manager and transaction per batch (combine this with the
+ * <code>hibernate.jdbc.batch_size</code> property of the persistence unit to get JDBC batch
+ * inserts). The resulting {@link ProcessInstanceLog}, {@link NodeInstanceLog} and
+ * {@link VariableInstanceLog} rows are the same as the ones of the synchronous logger,
+ * but only become visible once the batch containing them has been written.
+ * </p>
+ * What happens when the queue is full is determined by the {@link BackpressurePolicy}.
+ * </p>
+ * Note that the batches are written in their own transaction, so log entries are kept
+ * even when the transaction of the engine that produced them is rolled back.
+ * {@link #dispose()} must be called when the session is disposed: it writes all pending
+ * log entries, stops the background thread and stops listening to the session. Log entries
+ * created after that are dropped.
+ */
+public class AsyncJPAWorkingMemoryDbLogger extends JPAWorkingMemoryDbLogger {
+
+    private static Logger logger = LoggerFactory.getLogger(AsyncJPAWorkingMemoryDbLogger.class);
+
+    public static final int DEFAULT_CAPACITY = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    public enum BackpressurePolicy {
+        /** Block the engine thread until there is room in the queue. */
+        BLOCK,
+        /** Discard the log entry (counted in {@link AsyncJPAWorkingMemoryDbLogger#getDroppedCount()}). */
+        DROP,
+        /** Write the log entry to a spill file, it is persisted once the queue has been drained. */
+        SPILL
+    }
+
+    private final BlockingQueue<LogEntry> queue;
+    private final int batchSize;
+    private final long flushInterval;
+    private final BackpressurePolicy backpressurePolicy;
+    private File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+
+    private final Object spillLock = new Object();
+    private File spillFile;
+    private ObjectOutputStream spillStream;
+    private int spillFileSize;
+    private boolean spilling;
+
+    private final Object flushLock = new Object();
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong persistedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile long lag;
+
+    private volatile boolean running = true;
+    private final AtomicBoolean droppedAfterDispose = new AtomicBoolean();
+    private final Thread writer;
+    private final ProcessEventManager eventManager;
+
+    public AsyncJPAWorkingMemoryDbLogger(WorkingMemory workingMemory) {
+        this(workingMemory, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL, BackpressurePolicy.BLOCK);
+    }
+
+    public AsyncJPAWorkingMemoryDbLogger(WorkingMemory workingMemory, int capacity, int batchSize,
+                                         long flushInterval, BackpressurePolicy backpressurePolicy) {
+        super(workingMemory);
+        this.queue = new ArrayBlockingQueue<LogEntry>(capacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.backpressurePolicy = backpressurePolicy;
+        this.writer = startWriter();
+        Object kruntime = workingMemory instanceof InternalWorkingMemory
+            ? ((InternalWorkingMemory) workingMemory).getKnowledgeRuntime() : null;
+        this.eventManager = kruntime instanceof ProcessEventManager ? (ProcessEventManager) kruntime : null;
+    }
+
+    public AsyncJPAWorkingMemoryDbLogger(KnowledgeRuntimeEventManager session) {
+        this(session, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL, BackpressurePolicy.BLOCK);
+    }
+
+    /**
+     * @param session The session to log.
+     * @param capacity The maximum number of log entries waiting to be written.
+     * @param batchSize The maximum number of log entries written in one transaction.
+     * @param flushInterval The maximum time in milliseconds a log entry waits before being written.
+     * @param backpressurePolicy What to do when the queue is full.
+     */
+    public AsyncJPAWorkingMemoryDbLogger(KnowledgeRuntimeEventManager session, int capacity, int batchSize,
+                                         long flushInterval, BackpressurePolicy backpressurePolicy) {
+        super(session);
+        this.queue = new ArrayBlockingQueue<LogEntry>(capacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.backpressurePolicy = backpressurePolicy;
+        this.writer = startWriter();
+        this.eventManager = session;
+    }
+
+    private Thread startWriter() {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                writeLogEntries();
+            }
+        }, "jbpm-audit-log-writer");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Sets the directory in which the spill file is created when using
+     * {@link BackpressurePolicy#SPILL}. Defaults to <code>java.io.tmpdir</code>.
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    protected void persist(Object entity) {
+        enqueue(new LogEntry(entity));
+    }
+
+    protected void updateProcessLog(long processInstanceId, Date end, Integer status, String outcome) {
+        enqueue(new LogEntry(new ProcessInstanceLogUpdate(processInstanceId, end, status, outcome)));
+    }
+
+    private void enqueue(LogEntry entry) {
+        if (!running) {
+            // must not fail the process execution that produced the log entry
+            droppedCount.incrementAndGet();
+            if (droppedAfterDispose.compareAndSet(false, true)) {
+                logger.warn("Logger has been disposed, dropping log entries");
+            }
+            return;
+        }
+        synchronized (spillLock) {
+            // once entries are spilled, later entries are spilled as well to keep them in order
+            if (spilling) {
+                spill(entry);
+                return;
+            }
+            if (queue.offer(entry)) {
+                acceptedCount.incrementAndGet();
+                return;
+            }
+            switch (backpressurePolicy) {
+                case DROP:
+                    droppedCount.incrementAndGet();
+                    return;
+                case SPILL:
+                    spill(entry);
+                    return;
+                default:
+                    break;
+            }
+        }
+        try {
+            queue.put(entry);
+            acceptedCount.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    private void spill(LogEntry entry) {
+        try {
+            if (spillStream == null) {
+                spillFile = File.createTempFile("jbpm-audit-", ".spill", spillDirectory);
+                spillStream = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+            }
+            spillStream.writeObject(entry);
+            // do not keep references to all spilled entries in the stream's handle table
+            spillStream.reset();
+            spillFileSize++;
+            spilling = true;
+            acceptedCount.incrementAndGet();
+            spilledCount.incrementAndGet();
+        } catch (IOException e) {
+            logger.error("Unable to spill audit log entry, dropping it: " + e.getMessage(), e);
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    private void writeLogEntries() {
+        List<LogEntry> batch = new ArrayList<LogEntry>(batchSize);
+        while (running || !queue.isEmpty() || isSpilling()) {
+            try {
+                LogEntry first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    write(batch);
+                    batch.clear();
+                } else if (isSpilling()) {
+                    writeSpilledEntries();
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Audit log writer interrupted");
+            } catch (Throwable t) {
+                logger.error("Unexpected error in audit log writer: " + t.getMessage(), t);
+            }
+        }
+    }
+
+    private boolean isSpilling() {
+        synchronized (spillLock) {
+            return spilling;
+        }
+    }
+
+    private void writeSpilledEntries() {
+        File file;
+        int size;
+        synchronized (spillLock) {
+            if (!queue.isEmpty()) {
+                // entries in the queue are older than the spilled ones
+                return;
+            }
+            file = spillFile;
+            size = spillFileSize;
+            try {
+                spillStream.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close spill file " + file + ": " + e.getMessage());
+            }
+            spillStream = null;
+            spillFile = null;
+            spillFileSize = 0;
+            spilling = false;
+        }
+        // new entries go to the queue again, but these are only taken after the spilled ones have been written
+        ObjectInputStream in = null;
+        int read = 0;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            List<LogEntry> batch = new ArrayList<LogEntry>(batchSize);
+            while (true) {
+                LogEntry entry;
+                try {
+                    entry = (LogEntry) in.readObject();
+                } catch (EOFException e) {
+                    break;
+                }
+                batch.add(entry);
+                read++;
+                if (batch.size() == batchSize) {
+                    write(batch);
+                    batch.clear();
+                }
+            }
+            write(batch);
+        } catch (Exception e) {
+            logger.error("Unable to read spill file " + file + ": " + e.getMessage(), e);
+            failedCount.addAndGet(size - read);
+            synchronized (flushLock) {
+                processedCount.addAndGet(size - read);
+                flushLock.notifyAll();
+            }
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+            if (!file.delete()) {
+                logger.warn("Unable to delete spill file " + file);
+            }
+        }
+    }
+
+    private void write(List<LogEntry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        EntityManager em = null;
+        UserTransaction ut = null;
+        try {
+            em = getEntityManager();
+            ut = joinTransaction(em);
+            for (LogEntry entry: batch) {
+                if (entry.entity instanceof ProcessInstanceLogUpdate) {
+                    ProcessInstanceLogUpdate update = (ProcessInstanceLogUpdate) entry.entity;
+                    updateProcessLog(em, update.processInstanceId, update.end, update.status, update.outcome);
+                } else {
+                    em.persist(entry.entity);
+                }
+            }
+            flush(em, ut);
+            persistedCount.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            logger.error("Unable to write " + batch.size() + " audit log entries: " + e.getMessage(), e);
+            failedCount.addAndGet(batch.size());
+            rollback(em, ut);
+        } finally {
+            lag = System.currentTimeMillis() - batch.get(0).timestamp;
+            synchronized (flushLock) {
+                processedCount.addAndGet(batch.size());
+                flushLock.notifyAll();
+            }
+        }
+    }
+
+    private static void rollback(EntityManager em, UserTransaction ut) {
+        try {
+            if (ut != null) {
+                ut.rollback();
+            }
+        } catch (Exception e) {
+            logger.error("Unable to roll back transaction: " + e.getMessage(), e);
+        }
+        if (em != null && em.isOpen()) {
+            em.close();
+        }
+    }
+
+    /**
+     * Blocks until all log entries that were accepted before this call have been written.
+     */
+    public void flush() {
+        long target = acceptedCount.get();
+        synchronized (flushLock) {
+            while (processedCount.get() < target && writer.isAlive()) {
+                try {
+                    flushLock.wait(flushInterval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all pending log entries and stops the background thread.
+     */
+    public void dispose() {
+        if (!running) {
+            return;
+        }
+        if (eventManager != null) {
+            eventManager.removeEventListener((ProcessEventListener) this);
+        }
+        flush();
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        super.dispose();
+    }
+
+    /**
+     * @return The number of log entries waiting in the queue (not counting spilled entries).
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return The time in milliseconds between the creation and the writing of the oldest
+     * entry of the last written batch.
+     */
+    public long getLag() {
+        return lag;
+    }
+
+    /**
+     * @return The number of log entries accepted but not yet written, including spilled entries.
+     */
+    public long getPendingCount() {
+        return acceptedCount.get() - processedCount.get();
+    }
+
+    public long getPersistedCount() {
+        return persistedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    private static class LogEntry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long timestamp = System.currentTimeMillis();
+        private final Object entity;
+
+        private LogEntry(Object entity) {
+            this.entity = entity;
+        }
+    }
+
+    private static class ProcessInstanceLogUpdate implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long processInstanceId;
+        private final Date end;
+        private final Integer status;
+        private final String outcome;
+
+        private ProcessInstanceLogUpdate(long processInstanceId, Date end, Integer status, String outcome) {
+            this.processInstanceId = processInstanceId;
+            this.end = end;
+            this.status = status;
+            this.outcome = outcome;
+        }
+    }
+
+}
@@ -23,6 +23,8 @@ import javax.naming.InitialContext;
 import javax.naming.NameNotFoundException;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
 import javax.transaction.NotSupportedException;
 import javax.transaction.Status;
 import javax.transaction.SystemException;
@@ -57,11 +59,20 @@ public class JPAWorkingMemoryDbLogger extends WorkingMemoryLogger {
 
     private static Logger logger = LoggerFactory.getLogger(JPAWorkingMemoryDbLogger.class);
     
+    /**
+     * Environment entry (or system property) that enables the bulk update path
+     * used to mark process instance logs as completed.
+     */
+    public static final String BULK_UPDATE = "jbpm.audit.bulk.update";
+
     protected Environment env;
 
+    private boolean bulkUpdate;
+
     public JPAWorkingMemoryDbLogger(WorkingMemory workingMemory) {
         super(workingMemory);
         env = workingMemory.getEnvironment();
+        bulkUpdate = isBulkUpdateConfigured();
     }
     
     public JPAWorkingMemoryDbLogger(KnowledgeRuntimeEventManager session) {
@@ -74,6 +85,30 @@ public class JPAWorkingMemoryDbLogger extends WorkingMemoryLogger {
             throw new IllegalArgumentException(
                 "Not supported session in logger: " + session.getClass());
         }
+        bulkUpdate = isBulkUpdateConfigured();
+    }
+
+    private boolean isBulkUpdateConfigured() {
+        Object value = env == null ? null : env.get(BULK_UPDATE);
+        if (value == null) {
+            value = System.getProperty(BULK_UPDATE);
+        }
+        return value != null && Boolean.parseBoolean(value.toString().trim());
+    }
+
+    public boolean isBulkUpdate() {
+        return bulkUpdate;
+    }
+
+    /**
+     * When enabled, completed process instances are logged by a single
+     * <code>UPDATE</code> statement on the (indexed) process instance id,
+     * instead of loading and merging the matching {@link ProcessInstanceLog}.
+     * If several open logs exist for the same process instance id, all of them
+     * are marked as completed.
+     */
+    public void setBulkUpdate(boolean bulkUpdate) {
+        this.bulkUpdate = bulkUpdate;
     }
 
     public void logEventCreated(LogEvent logEvent) {
@@ -111,25 +146,73 @@ public class JPAWorkingMemoryDbLogger extends WorkingMemoryLogger {
         persist(log);
     }
 
-    @SuppressWarnings("unchecked")
     private void updateProcessLog(RuleFlowLogEvent processEvent) {
-    	 EntityManager em = getEntityManager();
-         UserTransaction ut = joinTransaction(em);
+        Integer status = null;
+        String outcome = null;
+        if (processEvent instanceof ExtendedRuleFlowLogEvent) {
+            status = ((ExtendedRuleFlowLogEvent) processEvent).getProcessInstanceState();
+            outcome = ((ExtendedRuleFlowLogEvent) processEvent).getOutcome();
+        }
+        updateProcessLog(processEvent.getProcessInstanceId(), new Date(), status, outcome);
+    }
+
+    /**
+     * Marks the log of the given process instance as completed.
+     * @param processInstanceId The id of the completed process instance.
+     * @param end The completion date.
+     * @param status The state of the process instance, or <code>null</code> if unknown.
+     * @param outcome The outcome of the process instance, or <code>null</code> if unknown.
+     */
+    protected void updateProcessLog(long processInstanceId, Date end, Integer status, String outcome) {
+        EntityManager em = getEntityManager();
+        UserTransaction ut = joinTransaction(em);
+        updateProcessLog(em, processInstanceId, end, status, outcome);
+        flush(em, ut);
+    }
+
+    protected void updateProcessLog(EntityManager em, long processInstanceId, Date end, Integer status, String outcome) {
+        if (bulkUpdate) {
+            bulkUpdateProcessLog(em, processInstanceId, end, status, outcome);
+        } else {
+            mergeProcessLog(em, processInstanceId, end, status, outcome);
+        }
+    }
+
+    protected static int bulkUpdateProcessLog(EntityManager em, long processInstanceId, Date end, Integer status, String outcome) {
+        Query query;
+        if (status != null) {
+            query = em.createQuery(
+                "update ProcessInstanceLog log set log.end = :end, log.status = :status, log.outcome = :outcome "
+                + "where log.processInstanceId = :processInstanceId and log.end is null")
+                .setParameter("status", status)
+                .setParameter("outcome", outcome);
+        } else {
+            query = em.createQuery(
+                "update ProcessInstanceLog log set log.end = :end "
+                + "where log.processInstanceId = :processInstanceId and log.end is null");
+        }
+        return query
+            .setParameter("end", end, TemporalType.TIMESTAMP)
+            .setParameter("processInstanceId", processInstanceId)
+            .executeUpdate();
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static void mergeProcessLog(EntityManager em, long processInstanceId, Date end, Integer status, String outcome) {
          List<ProcessInstanceLog> result = em.createQuery(
          "from ProcessInstanceLog as log where log.processInstanceId = ? and log.end is null")
-             .setParameter(1, processEvent.getProcessInstanceId()).getResultList();
+             .setParameter(1, processInstanceId).getResultList();
          
          if (result != null && result.size() != 0) {
             ProcessInstanceLog log = result.get(result.size() - 1);
-            log.setEnd(new Date());
-            if (processEvent instanceof ExtendedRuleFlowLogEvent) {
-                log.setStatus(((ExtendedRuleFlowLogEvent) processEvent).getProcessInstanceState());
-                log.setOutcome(((ExtendedRuleFlowLogEvent) processEvent).getOutcome());
+            log.setEnd(end);
+            if (status != null) {
+                log.setStatus(status);
+                log.setOutcome(outcome);
             }
             
             em.merge(log);   
         }
-        flush(em, ut);
     }
 
     private void addNodeEnterLog(long processInstanceId, String processId, String nodeInstanceId, String nodeId, String nodeName) {
@@ -157,7 +240,7 @@ public class JPAWorkingMemoryDbLogger extends WorkingMemoryLogger {
     /**
      * This method creates a entity manager. 
      */
-    private EntityManager getEntityManager() {
+    protected EntityManager getEntityManager() {
         EntityManagerFactory emf = (EntityManagerFactory) env.get(EnvironmentName.ENTITY_MANAGER_FACTORY);
         return emf.createEntityManager(); 
     }
@@ -168,7 +251,7 @@ public class JPAWorkingMemoryDbLogger extends WorkingMemoryLogger {
      * This method also makes sure that the entity manager used for persisting the entity, joins the existing JTA transaction. 
      * @param entity An entity to be persisted.
      */
-    private void persist(Object entity) { 
+    protected void persist(Object entity) { 
         EntityManager em = getEntityManager();
         UserTransaction ut = joinTransaction(em);
         em.persist(entity);
@@ -184,7 +267,7 @@ public class JPAWorkingMemoryDbLogger extends WorkingMemoryLogger {
      * @throws SystemException 
      * @throws Exception if something goes wrong. 
      */
-    private static UserTransaction joinTransaction(EntityManager em) {
+    protected static UserTransaction joinTransaction(EntityManager em) {
         boolean newTx = false;
         UserTransaction ut = null;
         try { 
@@ -222,7 +305,7 @@ public class JPAWorkingMemoryDbLogger extends WorkingMemoryLogger {
      * @param em The entity manager.
      * @param ut The (user) transaction.
      */
-    private static void flush(EntityManager em, UserTransaction ut) {
+    protected static void flush(EntityManager em, UserTransaction ut) {
         em.flush(); // This saves any changes made
         em.clear(); // This makes sure that any returned entities are no longer attached to this entity manager/persistence context
         em.close(); // and this closes the entity manager
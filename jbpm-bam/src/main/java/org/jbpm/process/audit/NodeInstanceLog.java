@@ -28,7 +28,13 @@ import javax.persistence.SequenceGenerator;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.hibernate.annotations.Index;
+import org.hibernate.annotations.Table;
+
 @Entity
+@Table(appliesTo = "NodeInstanceLog", indexes = {
+    @Index(name = "IDX_NInstLog_pInstId_date", columnNames = {"processInstanceId", "log_date"})
+})
 @SequenceGenerator(name="nodeInstanceLogIdSeq", sequenceName="NODE_INST_LOG_ID_SEQ", allocationSize=1)
 public class NodeInstanceLog implements Serializable {
     
@@ -28,6 +28,8 @@ import javax.persistence.SequenceGenerator;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.hibernate.annotations.Index;
+
 @Entity
 @SequenceGenerator(name="processInstanceLogIdSeq", sequenceName="PROC_INST_LOG_ID_SEQ", allocationSize=1)
 public class ProcessInstanceLog implements Serializable {
@@ -38,13 +40,16 @@ public class ProcessInstanceLog implements Serializable {
     @GeneratedValue(strategy = GenerationType.AUTO, generator="processInstanceLogIdSeq")
 	private long id;
 	
+    @Index(name = "IDX_PInstLog_pInstId")
     private long processInstanceId;
+    @Index(name = "IDX_PInstLog_pId")
     private String processId;
     @Temporal(TemporalType.TIMESTAMP)
     @Column(name = "start_date")
     private Date start;
     @Temporal(TemporalType.TIMESTAMP)
     @Column(name = "end_date")
+    @Index(name = "IDX_PInstLog_end")
     private Date end;
     
     @Column(nullable=true)
@@ -28,6 +28,8 @@ import javax.persistence.SequenceGenerator;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.hibernate.annotations.Index;
+
 @Entity
 @SequenceGenerator(name="variableInstanceLogIdSeq", sequenceName="VAR_INST_LOG_ID_SEQ", allocationSize=1)
 public class VariableInstanceLog implements Serializable {
@@ -38,6 +40,7 @@ public class VariableInstanceLog implements Serializable {
     @GeneratedValue(strategy = GenerationType.AUTO, generator="variableInstanceLogIdSeq")
 	private long id;
     
+    @Index(name = "IDX_VInstLog_pInstId")
     private long processInstanceId;
     private String processId;
     private String variableInstanceId;
@@ -0,0 +1,109 @@
+package org.jbpm.process.audit;
+
+import static org.jbpm.persistence.util.PersistenceUtil.*;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.builder.KnowledgeBuilder;
+import org.drools.builder.KnowledgeBuilderFactory;
+import org.drools.builder.ResourceType;
+import org.drools.io.impl.ClassPathResource;
+import org.drools.persistence.jpa.JPAKnowledgeService;
+import org.drools.runtime.Environment;
+import org.drools.runtime.KnowledgeSessionConfiguration;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.jbpm.process.audit.AsyncJPAWorkingMemoryDbLogger.BackpressurePolicy;
+import org.jbpm.process.instance.impl.demo.SystemOutWorkItemHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class tests the {@link AsyncJPAWorkingMemoryDbLogger}. 
+ */
+public class AsyncJPAWorkingMemoryDbLoggerTest extends JbpmTestCase {
+
+    private HashMap<String, Object> context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cleanUp(context);
+    }
+
+    @Test
+    public void testAsyncLogger() throws Exception {
+        checkLogger(BackpressurePolicy.BLOCK);
+    }
+
+    @Test
+    public void testAsyncLoggerWithSpill() throws Exception {
+        checkLogger(BackpressurePolicy.SPILL);
+    }
+
+    @Test
+    public void testSessionKeepsRunningAfterLoggerDisposed() throws Exception {
+        Environment env = createEnvironment(context);
+        StatefulKnowledgeSession session = createSession(env);
+        AsyncJPAWorkingMemoryDbLogger dbLogger = new AsyncJPAWorkingMemoryDbLogger(session);
+        JPAProcessInstanceDbLog.setEnvironment(env);
+
+        long processInstanceId1 = session.startProcess("com.sample.ruleflow").getId();
+        dbLogger.dispose();
+        // the disposed logger no longer listens, nor fails the process
+        long processInstanceId2 = session.startProcess("com.sample.ruleflow").getId();
+
+        assertEquals(0, dbLogger.getPendingCount());
+        assertNotNull(JPAProcessInstanceDbLog.findProcessInstance(processInstanceId1));
+        assertNull(JPAProcessInstanceDbLog.findProcessInstance(processInstanceId2));
+        JPAProcessInstanceDbLog.clear();
+    }
+
+    private void checkLogger(BackpressurePolicy policy) throws Exception {
+        Environment env = createEnvironment(context);
+        StatefulKnowledgeSession session = createSession(env);
+        // a small queue makes sure the back pressure policy is used
+        AsyncJPAWorkingMemoryDbLogger dbLogger = new AsyncJPAWorkingMemoryDbLogger(session, 2, 5, 100, policy);
+        JPAProcessInstanceDbLog.setEnvironment(env);
+
+        long processInstanceId1 = session.startProcess("com.sample.ruleflow").getId();
+        long processInstanceId2 = session.startProcess("com.sample.ruleflow").getId();
+        dbLogger.dispose();
+
+        assertEquals(0, dbLogger.getDroppedCount());
+        assertEquals(0, dbLogger.getFailedCount());
+        assertEquals(0, dbLogger.getPendingCount());
+        for (long processInstanceId: new long[] { processInstanceId1, processInstanceId2 }) {
+            ProcessInstanceLog processInstance = JPAProcessInstanceDbLog.findProcessInstance(processInstanceId);
+            assertNotNull(processInstance);
+            assertNotNull("ProcessInstanceLog does not contain end date.", processInstance.getEnd());
+            List<NodeInstanceLog> nodeInstances = JPAProcessInstanceDbLog.findNodeInstances(processInstanceId);
+            assertEquals(6, nodeInstances.size());
+        }
+        JPAProcessInstanceDbLog.clear();
+    }
+
+    private StatefulKnowledgeSession createSession(Environment env) {
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        kbuilder.add(new ClassPathResource("ruleflow.rf"), ResourceType.DRF);
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        kbase.addKnowledgePackages(kbuilder.getKnowledgePackages());
+        Properties properties = new Properties();
+        properties.put("drools.processInstanceManagerFactory", "org.jbpm.persistence.processinstance.JPAProcessInstanceManagerFactory");
+        properties.put("drools.processSignalManagerFactory", "org.jbpm.persistence.processinstance.JPASignalManagerFactory");
+        KnowledgeSessionConfiguration config = KnowledgeBaseFactory.newKnowledgeSessionConfiguration(properties);
+        StatefulKnowledgeSession session = JPAKnowledgeService.newStatefulKnowledgeSession(kbase, config, env);
+        session.getWorkItemManager().registerWorkItemHandler("Human Task", new SystemOutWorkItemHandler());
+        return session;
+    }
+
+}
@@ -25,6 +25,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
 import org.drools.KnowledgeBase;
 import org.drools.KnowledgeBaseFactory;
 import org.drools.builder.KnowledgeBuilder;
@@ -33,6 +36,7 @@ import org.drools.builder.ResourceType;
 import org.drools.io.impl.ClassPathResource;
 import org.drools.persistence.jpa.JPAKnowledgeService;
 import org.drools.runtime.Environment;
+import org.drools.runtime.EnvironmentName;
 import org.drools.runtime.KnowledgeSessionConfiguration;
 import org.drools.runtime.StatefulKnowledgeSession;
 import org.drools.runtime.process.ProcessInstance;
@@ -369,6 +373,53 @@ public class JPAWorkingMemoryDbLoggerTest extends JbpmTestCase {
         assertTrue(processInstances.isEmpty());
     }
     
+    @Test
+    public void testLoggerWithBulkUpdate() throws Exception {
+        KnowledgeBase kbase = createKnowledgeBase();
+        Environment env = createEnvironment(context);
+        Properties properties = new Properties();
+        properties.put("drools.processInstanceManagerFactory", "org.jbpm.persistence.processinstance.JPAProcessInstanceManagerFactory");
+        properties.put("drools.processSignalManagerFactory", "org.jbpm.persistence.processinstance.JPASignalManagerFactory");
+        KnowledgeSessionConfiguration config = KnowledgeBaseFactory.newKnowledgeSessionConfiguration(properties);
+        StatefulKnowledgeSession session = JPAKnowledgeService.newStatefulKnowledgeSession(kbase, config, env);
+        JPAWorkingMemoryDbLogger dbLogger = new JPAWorkingMemoryDbLogger(session);
+        assertFalse(dbLogger.isBulkUpdate());
+        dbLogger.setBulkUpdate(true);
+        JPAProcessInstanceDbLog.setEnvironment(env);
+        session.getWorkItemManager().registerWorkItemHandler("Human Task", new SystemOutWorkItemHandler());
+
+        long processInstanceId = session.startProcess("com.sample.ruleflow").getId();
+
+        ProcessInstanceLog processInstance = JPAProcessInstanceDbLog.findProcessInstance(processInstanceId);
+        assertNotNull(processInstance);
+        assertNotNull(processInstance.getStart());
+        assertNotNull("ProcessInstanceLog does not contain end date.", processInstance.getEnd());
+        assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getStatus());
+        assertEquals(6, JPAProcessInstanceDbLog.findNodeInstances(processInstanceId).size());
+        JPAProcessInstanceDbLog.clear();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAuditLogIndexes() throws Exception {
+        Environment env = createEnvironment(context);
+        EntityManagerFactory emf = (EntityManagerFactory) env.get(EnvironmentName.ENTITY_MANAGER_FACTORY);
+        EntityManager em = emf.createEntityManager();
+        try {
+            List<String> indexes = new ArrayList<String>();
+            for (String table: new String[] { "PROCESSINSTANCELOG", "NODEINSTANCELOG" }) {
+                indexes.addAll(em.createNativeQuery(
+                    "select INDEX_NAME from INFORMATION_SCHEMA.INDEXES where TABLE_NAME = '" + table + "'")
+                    .getResultList());
+            }
+            for (String index: new String[] { "IDX_PINSTLOG_PINSTID", "IDX_PINSTLOG_PID", "IDX_PINSTLOG_END", "IDX_NINSTLOG_PINSTID_DATE" }) {
+                assertTrue("Missing index " + index + " in " + indexes, indexes.contains(index));
+            }
+        } finally {
+            em.close();
+        }
+    }
+
     private KnowledgeBase createKnowledgeBase() {
         KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
         kbuilder.add(new ClassPathResource("ruleflow.rf"), ResourceType.DRF);
@@ -17,36 +17,48 @@
 package org.jbpm.bpmn2.handler;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.drools.runtime.process.WorkItem;
 import org.drools.runtime.process.WorkItemHandler;
 import org.drools.runtime.process.WorkItemManager;
+import org.jbpm.process.instance.impl.ServiceInvocationCache;
 
 public class ServiceTaskHandler implements WorkItemHandler {
 
+    private boolean reuseServiceInstances;
+
+    public ServiceTaskHandler() {
+    }
+
+    /**
+     * @param reuseServiceInstances whether service instances may be reused
+     * for later invocations, only valid for stateless services
+     */
+    public ServiceTaskHandler(boolean reuseServiceInstances) {
+        this.reuseServiceInstances = reuseServiceInstances;
+    }
+
     public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
         String i = (String) workItem.getParameter("Interface");
         String operation = (String) workItem.getParameter("Operation");
         String parameterType = (String) workItem.getParameter("ParameterType");
         Object parameter = workItem.getParameter("Parameter");
         try {
-            Class<?> c = Class.forName(i);
-            Object instance = c.newInstance();
-            Class<?>[] classes = null;
+            List<String> parameterTypes = null;
             Object[] params = null;
             if (parameterType != null) {
-                classes = new Class<?>[] {
-                    Class.forName(parameterType)
-                };
+                parameterTypes = Collections.singletonList(parameterType);
                 params = new Object[] {
                     parameter
                 };
             }
-            Method method = c.getMethod(operation, classes);
-            Object result = method.invoke(instance, params);
+            Object result = ServiceInvocationCache.getInstance()
+                .getInvocation(getClass().getClassLoader(), i, operation, parameterTypes)
+                .invoke(null, params, reuseServiceInstances);
             Map<String, Object> results = new HashMap<String, Object>();
             results.put("Result", result);
             manager.completeWorkItem(workItem.getId(), results);
@@ -2,20 +2,35 @@ package org.jbpm.integrationtests;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
 import org.drools.RuleBase;
 import org.drools.RuleBaseFactory;
 import org.drools.WorkingMemory;
+import org.drools.builder.KnowledgeBuilder;
+import org.drools.builder.KnowledgeBuilderFactory;
+import org.drools.builder.ResourceType;
+import org.drools.common.InternalKnowledgeRuntime;
 import org.drools.compiler.DroolsError;
 import org.drools.compiler.PackageBuilder;
+import org.drools.io.ResourceFactory;
 import org.drools.rule.Package;
+import org.drools.runtime.KnowledgeSessionConfiguration;
+import org.drools.runtime.StatefulKnowledgeSession;
 import org.jbpm.JbpmTestCase;
 import org.jbpm.Person;
 import org.jbpm.process.core.context.variable.VariableScope;
 import org.jbpm.process.instance.ProcessInstance;
 import org.jbpm.process.instance.context.variable.VariableScopeInstance;
+import org.jbpm.process.instance.event.DefaultSignalManager;
+import org.jbpm.process.instance.event.SignalManager;
+import org.jbpm.process.instance.event.SignalManagerFactory;
 import org.jbpm.ruleflow.instance.RuleFlowProcessInstance;
 
 public class ProcessMilestoneTest extends JbpmTestCase {
@@ -134,6 +149,109 @@ public class ProcessMilestoneTest extends JbpmTestCase {
         assertEquals(ProcessInstance.STATE_COMPLETED, processInstanceJohn.getState());
     }
     
+    public void testMilestoneActivationReachesOnlyBoundProcessInstance() {
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        Reader source = new StringReader(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<process xmlns=\"http://drools.org/drools-5.0/process\"\n" +
+            "         xmlns:xs=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
+            "         xs:schemaLocation=\"http://drools.org/drools-5.0/process drools-processes-5.0.xsd\"\n" +
+            "         type=\"RuleFlow\" name=\"flow\" id=\"org.drools.milestone\" package-name=\"org.jbpm\" version=\"1\" >\n" +
+            "\n" +
+            "  <header>\n" +
+            "    <imports>\n" +
+            "      <import name=\"org.jbpm.Person\" />\n" +
+            "      <import name=\"org.jbpm.integrationtests.ProcessMilestoneTest.ProcessUtils\" />\n" +
+            "    </imports>\n" +
+            "    <variables>\n" +
+            "      <variable name=\"name\" >\n" +
+            "        <type name=\"org.drools.process.core.datatype.impl.type.StringDataType\" />\n" +
+            "      </variable>\n" +
+            "    </variables>\n" +
+            "  </header>\n" +
+            "\n" +
+            "  <nodes>\n" +
+            "    <start id=\"1\" name=\"Start\" />\n" +
+            "    <milestone id=\"2\" name=\"Milestone\" >\n" +
+            "      <constraint type=\"rule\" dialect=\"mvel\" >processInstance: org.jbpm.ruleflow.instance.RuleFlowProcessInstance()\n" +
+            "Person( name == (ProcessUtils.getValue(processInstance, \"name\")) )</constraint>" +
+            "    </milestone>\n" +
+            "    <end id=\"3\" name=\"End\" />\n" +
+            "  </nodes>\n" +
+            "\n" +
+            "  <connections>\n" +
+            "    <connection from=\"1\" to=\"2\" />\n" +
+            "    <connection from=\"2\" to=\"3\" />\n" +
+            "  </connections>\n" +
+            "\n" +
+            "</process>");
+        kbuilder.add( ResourceFactory.newReaderResource( source ), ResourceType.DRF );
+        KnowledgeBase kbase = kbuilder.newKnowledgeBase();
+        Properties properties = new Properties();
+        properties.setProperty( "drools.processSignalManagerFactory",
+                                RecordingSignalManagerFactory.class.getName() );
+        KnowledgeSessionConfiguration config = KnowledgeBaseFactory.newKnowledgeSessionConfiguration( properties );
+        StatefulKnowledgeSession ksession = kbase.newStatefulKnowledgeSession( config, null );
+        RecordingSignalManager.signalled.clear();
+
+        List<org.drools.runtime.process.ProcessInstance> processInstances =
+            new ArrayList<org.drools.runtime.process.ProcessInstance>();
+        for (String name: new String[] { "John Doe", "Jane Doe", "Jack Doe" }) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("name", name);
+            org.drools.runtime.process.ProcessInstance processInstance =
+                ksession.startProcess("org.drools.milestone", params);
+            ksession.insert(processInstance);
+            processInstances.add(processInstance);
+        }
+
+        ksession.insert(new Person("Jane Doe", 20));
+        // the activation is signalled to the process instance it matched only,
+        // not offered to every process instance waiting at the milestone
+        assertEquals(1, RecordingSignalManager.signalled.size());
+        assertEquals(new Long(processInstances.get(1).getId()), RecordingSignalManager.signalled.get(0));
+        assertEquals(ProcessInstance.STATE_ACTIVE, processInstances.get(0).getState());
+        assertEquals(ProcessInstance.STATE_COMPLETED, processInstances.get(1).getState());
+        assertEquals(ProcessInstance.STATE_ACTIVE, processInstances.get(2).getState());
+        ksession.dispose();
+    }
+
+    public static class RecordingSignalManagerFactory implements SignalManagerFactory {
+
+        public SignalManager createSignalManager(InternalKnowledgeRuntime kruntime) {
+            return new RecordingSignalManager(kruntime);
+        }
+
+    }
+
+    /**
+     * Records the process instances milestone activations are signalled to,
+     * -1 for an activation signalled to all waiting process instances.
+     */
+    public static class RecordingSignalManager extends DefaultSignalManager {
+
+        private static final List<Long> signalled = new ArrayList<Long>();
+
+        public RecordingSignalManager(InternalKnowledgeRuntime kruntime) {
+            super(kruntime);
+        }
+
+        public void signalEvent(String type, Object event) {
+            if (type.startsWith("RuleFlow-Milestone-")) {
+                signalled.add(-1L);
+            }
+            super.signalEvent(type, event);
+        }
+
+        public void signalEvent(long processInstanceId, String type, Object event) {
+            if (type.startsWith("RuleFlow-Milestone-")) {
+                signalled.add(processInstanceId);
+            }
+            super.signalEvent(processInstanceId, type, event);
+        }
+
+    }
+
     public static class ProcessUtils {
     	
     	public static Object getValue(RuleFlowProcessInstance processInstance, String name) {
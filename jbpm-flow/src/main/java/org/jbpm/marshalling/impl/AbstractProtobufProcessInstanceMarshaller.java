@@ -74,6 +74,18 @@ public abstract class AbstractProtobufProcessInstanceMarshaller
     // Output methods
     public JBPMMessages.ProcessInstance writeProcessInstance(MarshallerWriteContext context,
                                                              ProcessInstance processInstance) throws IOException {
+        return writeProcessInstance( context,
+                                     processInstance,
+                                     true );
+    }
+
+    /**
+     * Writes the given process instance, optionally leaving out the process variables 
+     * (but not the variables of composite node instances), so these can be stored separately.
+     */
+    public JBPMMessages.ProcessInstance writeProcessInstance(MarshallerWriteContext context,
+                                                             ProcessInstance processInstance,
+                                                             boolean includeVariables) throws IOException {
         WorkflowProcessInstanceImpl workFlow = (WorkflowProcessInstanceImpl) processInstance;
         
         JBPMMessages.ProcessInstance.Builder _instance = JBPMMessages.ProcessInstance.newBuilder()
@@ -122,6 +134,10 @@ public abstract class AbstractProtobufProcessInstanceMarshaller
             }
         }
 
+        if ( !includeVariables ) {
+            return _instance.build();
+        }
+
         VariableScopeInstance variableScopeInstance = (VariableScopeInstance) workFlow.getContextInstance( VariableScope.VARIABLE_SCOPE );
         List<Map.Entry<String, Object>> variables = new ArrayList<Map.Entry<String, Object>>( variableScopeInstance.getVariables().entrySet() );
         Collections.sort( variables,
@@ -347,23 +363,23 @@ public abstract class AbstractProtobufProcessInstanceMarshaller
 
     // Input methods
     public ProcessInstance readProcessInstance(MarshallerReaderContext context) throws IOException {
+        return readProcessInstance( context,
+                                    null );
+    }
+
+    /**
+     * Reads a process instance and sets the given process variables, that were stored
+     * separately from the process instance, before the instance is reconnected.
+     */
+    public ProcessInstance readProcessInstance(MarshallerReaderContext context,
+                                               Map<String, Object> variables) throws IOException {
         InternalRuleBase ruleBase = context.ruleBase;
         InternalWorkingMemory wm = context.wm;
         
         JBPMMessages.ProcessInstance _instance = (org.jbpm.marshalling.impl.JBPMMessages.ProcessInstance) context.parameterObject;
         if( _instance == null ) {
             // try to parse from the stream
-            ExtensionRegistry registry = PersisterHelper.buildRegistry( context, null ); 
-            Header _header;
-            try {
-                _header = PersisterHelper.readFromStreamWithHeader( context, registry );
-            } catch ( ClassNotFoundException e ) {
-                // Java 5 does not accept [new IOException(String, Throwable)]
-                IOException ioe =  new IOException( "Error deserializing process instance." );
-                ioe.initCause(e);
-                throw ioe;
-            }
-            _instance = JBPMMessages.ProcessInstance.parseFrom( _header.getPayload(), registry );
+            _instance = parseProcessInstance( context );
         }
 
         WorkflowProcessInstanceImpl processInstance = createProcessInstance();
@@ -420,6 +436,14 @@ public abstract class AbstractProtobufProcessInstanceMarshaller
                 }
             }
         }
+        if ( variables != null && !variables.isEmpty() ) {
+            VariableScopeInstance variableScopeInstance = (VariableScopeInstance) processInstance
+                    .getContextInstance( VariableScope.VARIABLE_SCOPE );
+            for ( Map.Entry<String, Object> variable : variables.entrySet() ) {
+                variableScopeInstance.internalSetVariable( variable.getKey(),
+                                                           variable.getValue() );
+            }
+        }
         processInstance.internalSetNodeInstanceCounter( nodeInstanceCounter );
         if ( wm != null ) {
             processInstance.reconnect();
@@ -427,6 +451,26 @@ public abstract class AbstractProtobufProcessInstanceMarshaller
         return processInstance;
     }
 
+    /**
+     * Parses the protobuf message of a process instance from the stream of the given context, 
+     * without creating the process instance itself. This does not require a working memory, 
+     * so it can be done up front (for example on another thread) and passed to 
+     * {@link #readProcessInstance(MarshallerReaderContext)} as the context's parameter object.
+     */
+    public JBPMMessages.ProcessInstance parseProcessInstance(MarshallerReaderContext context) throws IOException {
+        ExtensionRegistry registry = PersisterHelper.buildRegistry( context, null ); 
+        Header _header;
+        try {
+            _header = PersisterHelper.readFromStreamWithHeader( context, registry );
+        } catch ( ClassNotFoundException e ) {
+            // Java 5 does not accept [new IOException(String, Throwable)]
+            IOException ioe =  new IOException( "Error deserializing process instance." );
+            ioe.initCause(e);
+            throw ioe;
+        }
+        return JBPMMessages.ProcessInstance.parseFrom( _header.getPayload(), registry );
+    }
+
     protected abstract WorkflowProcessInstanceImpl createProcessInstance();
 
     public NodeInstance readNodeInstance(MarshallerReaderContext context,
@@ -1,5 +1,6 @@
 package org.jbpm.process.instance;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -14,15 +15,11 @@ import org.drools.common.InternalRuleBase;
 import org.drools.definition.process.Node;
 import org.drools.definition.process.Process;
 import org.drools.event.ProcessEventSupport;
-import org.drools.event.rule.RuleFlowGroupDeactivatedEvent;
 import org.drools.event.knowledgebase.AfterProcessAddedEvent;
 import org.drools.event.knowledgebase.AfterProcessRemovedEvent;
 import org.drools.event.knowledgebase.DefaultKnowledgeBaseEventListener;
 import org.drools.event.process.ProcessEventListener;
-import org.drools.event.rule.ActivationCreatedEvent;
-import org.drools.event.rule.DefaultAgendaEventListener;
 import org.drools.impl.InternalKnowledgeBase;
-import org.drools.rule.Rule;
 import org.drools.runtime.process.EventListener;
 import org.drools.runtime.process.ProcessInstance;
 import org.drools.runtime.process.WorkItemManager;
@@ -32,8 +29,11 @@ import org.drools.time.impl.TrackableTimeJobFactoryManager;
 import org.drools.util.CompositeClassLoader;
 import org.jbpm.process.core.event.EventFilter;
 import org.jbpm.process.core.event.EventTypeFilter;
+import org.jbpm.process.instance.event.ActivationDispatcher;
 import org.jbpm.process.instance.event.SignalManager;
 import org.jbpm.process.instance.event.SignalManagerFactory;
+import org.jbpm.process.instance.metrics.EngineMetrics;
+import org.jbpm.process.instance.metrics.EngineMetricsListener;
 import org.jbpm.process.instance.timer.TimerManager;
 import org.jbpm.ruleflow.core.RuleFlowProcess;
 import org.jbpm.workflow.core.node.EventTrigger;
@@ -50,6 +50,7 @@ public class ProcessRuntimeImpl implements InternalProcessRuntime {
 	private TimerManager timerManager;
 	private ProcessEventSupport processEventSupport;
 	private DefaultKnowledgeBaseEventListener knowledgeBaseListener;
+	private ActivationDispatcher activationDispatcher;
 
 	public ProcessRuntimeImpl(InternalKnowledgeRuntime kruntime) {
 		this.kruntime = kruntime;
@@ -63,6 +64,7 @@ public class ProcessRuntimeImpl implements InternalProcessRuntime {
 		initSignalManager();
 		timerManager = new TimerManager(kruntime, kruntime.getTimerService());
         processEventSupport = new ProcessEventSupport();
+        processEventSupport.addEventListener(EngineMetricsListener.INSTANCE);
         initProcessEventListeners();
         initProcessActivationListener();        
 	}
@@ -80,6 +82,7 @@ public class ProcessRuntimeImpl implements InternalProcessRuntime {
 		initSignalManager();
 		timerManager = new TimerManager(kruntime, kruntime.getTimerService());
         processEventSupport = new ProcessEventSupport();
+        processEventSupport.addEventListener(EngineMetricsListener.INSTANCE);
         initProcessEventListeners();
         initProcessActivationListener();
 	}
@@ -165,9 +168,13 @@ public class ProcessRuntimeImpl implements InternalProcessRuntime {
             	kruntime.executeQueuedActions();
             }
             ProcessInstance processInstance = getProcessInstance(processInstanceId);
+            long start = EngineMetrics.isCollecting() ? System.nanoTime() : 0;
 	        getProcessEventSupport().fireBeforeProcessStarted( processInstance, kruntime );
 	        ((org.jbpm.process.instance.ProcessInstance) processInstance).start();
 	        getProcessEventSupport().fireAfterProcessStarted( processInstance, kruntime );
+	        if ( start != 0 ) {
+	            EngineMetrics.getInstance().processStarted( processInstance.getProcessId(), System.nanoTime() - start );
+	        }
 	        return processInstance;
         } finally {
         	kruntime.endOperation();
@@ -217,9 +224,11 @@ public class ProcessRuntimeImpl implements InternalProcessRuntime {
         	@Override
         	public void afterProcessAdded(AfterProcessAddedEvent event) {
         		initProcessEventListener(event.getProcess());
+        		activationDispatcher.addProcess(event.getProcess());
         	}
         	@Override
         	public void afterProcessRemoved(AfterProcessRemovedEvent event) {
+        		activationDispatcher.removeProcess(event.getProcess());
         		if (event.getProcess() instanceof RuleFlowProcess) {
         			String type = (String)
     				    ((RuleFlowProcess) event.getProcess()).getMetaData().get("StartProcessEventType");
@@ -280,7 +289,10 @@ public class ProcessRuntimeImpl implements InternalProcessRuntime {
     }
 
     public List<ProcessEventListener> getProcessEventListeners() {
-        return processEventSupport.getEventListeners();
+        // the built-in metrics listener is not exposed
+        List<ProcessEventListener> listeners = new ArrayList<ProcessEventListener>(processEventSupport.getEventListeners());
+        listeners.remove(EngineMetricsListener.INSTANCE);
+        return listeners;
     }
 
     private class StartProcessEventListener implements EventListener {
@@ -328,33 +340,11 @@ public class ProcessRuntimeImpl implements InternalProcessRuntime {
 	}
 
     private void initProcessActivationListener() {
-    	kruntime.addEventListener(new DefaultAgendaEventListener() {
-			public void activationCreated(ActivationCreatedEvent event) {
-                String ruleFlowGroup = ((Rule) event.getActivation().getRule()).getRuleFlowGroup();
-                if ( "DROOLS_SYSTEM".equals( ruleFlowGroup ) ) {
-                    // new activations of the rule associate with a state node
-                    // signal process instances of that state node
-                    String ruleName = event.getActivation().getRule().getName();
-                    if ( ruleName.startsWith( "RuleFlowStateNode-" ) || ruleName.startsWith( "RuleFlowStateEvent-" ) ) {
-                        int index = ruleName.indexOf( "-",
-                                                      18 );
-                        index = ruleName.indexOf( "-",
-                                                  index + 1 );
-                        String eventType = ruleName.substring( 0,
-                                                               index );
-                        signalManager.signalEvent( eventType,
-                                                   event );
-                    }
-                }
-			}
-    	});
-
-        kruntime.addEventListener(new DefaultAgendaEventListener() {
-            public void afterRuleFlowGroupDeactivated(final RuleFlowGroupDeactivatedEvent event) {
-                signalManager.signalEvent( "RuleFlowGroup_" + event.getRuleFlowGroup().getName(),
-                        null );
-            }
-        } );
+        activationDispatcher = new ActivationDispatcher(signalManager);
+        for ( Process process : kruntime.getKnowledgeBase().getProcesses() ) {
+            activationDispatcher.addProcess(process);
+        }
+        kruntime.addEventListener(activationDispatcher);
     }
 
 	public void abortProcessInstance(long processInstanceId) {
@@ -379,6 +369,9 @@ public class ProcessRuntimeImpl implements InternalProcessRuntime {
 	
 	public void setProcessEventSupport(ProcessEventSupport processEventSupport) {
 		this.processEventSupport = processEventSupport;
+		if (!processEventSupport.getEventListeners().contains(EngineMetricsListener.INSTANCE)) {
+			processEventSupport.addEventListener(EngineMetricsListener.INSTANCE);
+		}
 	}
 	
 	public void dispose() {
@@ -21,6 +21,7 @@ import java.util.Map;
 
 import org.jbpm.process.core.context.swimlane.SwimlaneContext;
 import org.jbpm.process.instance.context.AbstractContextInstance;
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
 
 public class SwimlaneContextInstance extends AbstractContextInstance {
 
@@ -41,6 +42,9 @@ public class SwimlaneContextInstance extends AbstractContextInstance {
     }
 
     public void setActorId(String swimlane, String actorId) {
+        if (getProcessInstance() instanceof WorkflowProcessInstanceImpl) {
+            ((WorkflowProcessInstanceImpl) getProcessInstance()).markDirty();
+        }
         swimlaneActors.put(swimlane, actorId);
     }
     
@@ -18,7 +18,9 @@ package org.jbpm.process.instance.context.variable;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.drools.event.ProcessEventSupport;
 import org.jbpm.process.core.context.variable.Variable;
@@ -27,6 +29,7 @@ import org.jbpm.process.instance.ContextInstanceContainer;
 import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.context.AbstractContextInstance;
 import org.jbpm.workflow.core.Node;
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
 import org.jbpm.workflow.instance.node.CompositeContextNodeInstance;
 
 /**
@@ -40,6 +43,7 @@ public class VariableScopeInstance extends AbstractContextInstance {
     private Map<String, Object> variables = new HashMap<String, Object>();
     private transient String variableIdPrefix = null;
     private transient String variableInstanceIdPrefix = null;
+    private transient Set<String> changedVariables;
 
     public String getContextType() {
         return VariableScope.VARIABLE_SCOPE;
@@ -59,6 +63,10 @@ public class VariableScopeInstance extends AbstractContextInstance {
                 "The name of a variable may not be null!");
         }
         Object oldValue = variables.get(name);
+        if (oldValue != null && oldValue == value) {
+            // the same (possibly modified) object is set again
+            markVariableChanged(name);
+        }
         if (oldValue == null) {
         	if (value == null) {
         		return;
@@ -76,6 +84,7 @@ public class VariableScopeInstance extends AbstractContextInstance {
 			oldValue, value, getProcessInstance(),
 			getProcessInstance().getKnowledgeRuntime());
         internalSetVariable(name, value);
+        markVariableChanged(name);
         processEventSupport.fireAfterVariableChanged(
 			(variableIdPrefix == null ? "" : variableIdPrefix + ":") + name,
 			(variableInstanceIdPrefix == null? "" : variableInstanceIdPrefix + ":") + name,
@@ -87,6 +96,32 @@ public class VariableScopeInstance extends AbstractContextInstance {
     	variables.put(name, value);
     }
     
+    private void markVariableChanged(String name) {
+        if (changedVariables == null) {
+            changedVariables = new HashSet<String>();
+        }
+        changedVariables.add(name);
+        if (getProcessInstance() instanceof WorkflowProcessInstanceImpl) {
+            ((WorkflowProcessInstanceImpl) getProcessInstance()).markDirty();
+        }
+    }
+
+    /**
+     * Returns the names of the variables that were changed using
+     * {@link #setVariable(String, Object)} since the last call to
+     * {@link #clearChangedVariables()}.
+     */
+    public Set<String> getChangedVariables() {
+        if (changedVariables == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(changedVariables);
+    }
+
+    public void clearChangedVariables() {
+        changedVariables = null;
+    }
+    
     public VariableScope getVariableScope() {
     	return (VariableScope) getContext();
     }
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.event;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.drools.common.InternalFactHandle;
+import org.drools.definition.process.Node;
+import org.drools.definition.process.NodeContainer;
+import org.drools.definition.process.Process;
+import org.drools.event.rule.ActivationCreatedEvent;
+import org.drools.event.rule.DefaultAgendaEventListener;
+import org.drools.event.rule.RuleFlowGroupDeactivatedEvent;
+import org.drools.impl.StatefulKnowledgeSessionImpl;
+import org.drools.rule.Declaration;
+import org.drools.rule.Rule;
+import org.drools.runtime.KnowledgeRuntime;
+import org.drools.runtime.process.ProcessInstance;
+import org.drools.spi.Activation;
+import org.jbpm.workflow.core.impl.ConnectionRef;
+import org.jbpm.workflow.core.node.EventNode;
+import org.jbpm.workflow.core.node.MilestoneNode;
+import org.jbpm.workflow.core.node.StateNode;
+
+/**
+ * Single agenda event listener of a process runtime that routes the activations of
+ * the rules generated for milestone nodes, state node constraints and conditional
+ * boundary events to the process instance waiting for them.
+ * </p>
+ * The rule names are mapped to the event types the waiting node instances listen
+ * to when the process is added, and the process instance is taken from the
+ * activation, so an activation is signalled to that process instance only, instead
+ * of being offered to every waiting node instance.
+ */
+public class ActivationDispatcher extends DefaultAgendaEventListener {
+
+    private static final String RULEFLOW_GROUP = "DROOLS_SYSTEM";
+
+    private final SignalManager signalManager;
+    private final Map<String, String> eventTypes = new ConcurrentHashMap<String, String>();
+    private final Map<String, List<String>> processRuleNames = new ConcurrentHashMap<String, List<String>>();
+
+    public ActivationDispatcher(SignalManager signalManager) {
+        this.signalManager = signalManager;
+    }
+
+    public void addProcess(Process process) {
+        if (process instanceof NodeContainer) {
+            List<String> ruleNames = new ArrayList<String>();
+            addNodes(process.getId(), ((NodeContainer) process).getNodes(), ruleNames);
+            if (!ruleNames.isEmpty()) {
+                processRuleNames.put(process.getId(), ruleNames);
+            }
+        }
+    }
+
+    public void removeProcess(Process process) {
+        List<String> ruleNames = processRuleNames.remove(process.getId());
+        if (ruleNames != null) {
+            for (String ruleName: ruleNames) {
+                eventTypes.remove(ruleName);
+            }
+        }
+    }
+
+    /**
+     * @return the event type the activations of the given rule are signalled as,
+     * or <code>null</code> if the rule was not generated for a process node
+     */
+    public String getEventType(String ruleName) {
+        return eventTypes.get(ruleName);
+    }
+
+    // rule names as generated by org.jbpm.compiler.ProcessBuilderImpl
+    private void addNodes(String processId, Node[] nodes, List<String> ruleNames) {
+        for (Node node: nodes) {
+            if (node instanceof MilestoneNode) {
+                String ruleName = "RuleFlow-Milestone-" + processId + "-" + ((MilestoneNode) node).getUniqueId();
+                addRule(ruleName, ruleName, ruleNames);
+            } else if (node instanceof StateNode) {
+                String eventType = "RuleFlowStateNode-" + processId + "-" + ((StateNode) node).getUniqueId();
+                for (ConnectionRef connectionRef: ((StateNode) node).getConstraints().keySet()) {
+                    addRule(eventType + "-" + connectionRef.getNodeId() + "-" + connectionRef.getToType(),
+                        eventType, ruleNames);
+                }
+            } else if (node instanceof EventNode && node.getMetaData().get("Condition") != null) {
+                addRule("RuleFlowStateEvent-" + processId + "-" + ((EventNode) node).getUniqueId()
+                    + "-" + node.getMetaData().get("AttachedTo"), "RuleFlowStateEvent-" + processId, ruleNames);
+            }
+            if (node instanceof NodeContainer) {
+                addNodes(processId, ((NodeContainer) node).getNodes(), ruleNames);
+            }
+        }
+    }
+
+    private void addRule(String ruleName, String eventType, List<String> ruleNames) {
+        eventTypes.put(ruleName, eventType);
+        ruleNames.add(ruleName);
+    }
+
+    public void activationCreated(ActivationCreatedEvent event) {
+        Rule rule = (Rule) event.getActivation().getRule();
+        if (!RULEFLOW_GROUP.equals(rule.getRuleFlowGroup())) {
+            return;
+        }
+        String eventType = eventTypes.get(rule.getName());
+        if (eventType == null) {
+            return;
+        }
+        long processInstanceId = getProcessInstanceId((Activation) event.getActivation(), event.getKnowledgeRuntime());
+        if (processInstanceId < 0) {
+            // the rule does not match a process instance, let all waiting node instances check it
+            signalManager.signalEvent(eventType, event);
+        } else {
+            signalManager.signalEvent(processInstanceId, eventType, event);
+        }
+    }
+
+    public void afterRuleFlowGroupDeactivated(RuleFlowGroupDeactivatedEvent event) {
+        signalManager.signalEvent("RuleFlowGroup_" + event.getRuleFlowGroup().getName(), null);
+    }
+
+    private long getProcessInstanceId(Activation activation, KnowledgeRuntime kruntime) {
+        if (!(kruntime instanceof StatefulKnowledgeSessionImpl)) {
+            return -1;
+        }
+        final Map<?, ?> declarations = activation.getSubRule().getOuterDeclarations();
+        for (Iterator<?> it = declarations.values().iterator(); it.hasNext(); ) {
+            Declaration declaration = (Declaration) it.next();
+            if ("processInstance".equals(declaration.getIdentifier())
+                    || "org.drools.runtime.process.WorkflowProcessInstance".equals(declaration.getTypeName())) {
+                Object value = declaration.getValue(
+                    ((StatefulKnowledgeSessionImpl) kruntime).session,
+                    ((InternalFactHandle) activation.getTuple().get(declaration)).getObject());
+                if (value instanceof ProcessInstance) {
+                    return ((ProcessInstance) value).getId();
+                }
+            }
+        }
+        return -1;
+    }
+
+}
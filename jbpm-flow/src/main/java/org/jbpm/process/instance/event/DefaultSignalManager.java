@@ -33,6 +33,7 @@ import org.drools.marshalling.impl.ProtobufMessages.ActionQueue.Action;
 import org.drools.runtime.process.EventListener;
 import org.drools.runtime.process.ProcessInstance;
 import org.jbpm.process.instance.InternalProcessRuntime;
+import org.jbpm.process.instance.metrics.EngineMetrics;
 
 public class DefaultSignalManager implements SignalManager {
 	
@@ -74,14 +75,19 @@ public class DefaultSignalManager implements SignalManager {
 	}
 	
 	public void internalSignalEvent(String type, Object event) {
+		int notified = 0;
 		if (processEventListeners != null) {
 			List<EventListener> eventListeners = processEventListeners.get(type);
 			if (eventListeners != null) {
 				for (EventListener eventListener: eventListeners) {
 					eventListener.signalEvent(type, event);
+					notified++;
 				}
 			}
 		}
+		if (EngineMetrics.isCollecting()) {
+			EngineMetrics.getInstance().signalled(notified);
+		}
 	}
 	public void signalEvent(long processInstanceId, String type, Object event) {
 		ProcessInstance processInstance = kruntime.getProcessInstance(processInstanceId);
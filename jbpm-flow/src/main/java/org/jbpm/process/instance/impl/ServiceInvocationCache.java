@@ -0,0 +1,225 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.impl;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves the classes and methods called by Java invoking work item handlers
+ * once, instead of loading the class and looking up the method for every work
+ * item. Invocations are cached per class loader, class, method name and
+ * parameter types.
+ * <p>
+ * The cached classes and methods reference their class loader, so the entries of
+ * a class loader are only softly referenced: they stay cached until the heap runs
+ * short, unless one of their invocations is in use, and are resolved again when
+ * needed. This way the cache does not keep the class loaders of redeployed
+ * applications alive for good. {@link #clear(ClassLoader)} should be called when
+ * an application is undeployed to drop them right away.
+ * <p>
+ * An {@link Invocation} can optionally reuse the instances it creates to call
+ * instance methods on, which is only correct for stateless services.
+ */
+public class ServiceInvocationCache {
+
+    private static final ServiceInvocationCache INSTANCE = new ServiceInvocationCache();
+
+    /**
+     * Maximum number of idle service instances kept per invocation.
+     */
+    public static final int MAX_POOLED_INSTANCES = 16;
+
+    private final Map<ClassLoader, SoftReference<Map<String, Object>>> cache =
+        new WeakHashMap<ClassLoader, SoftReference<Map<String, Object>>>();
+
+    public static ServiceInvocationCache getInstance() {
+        return INSTANCE;
+    }
+
+    public Class<?> loadClass(ClassLoader classLoader, String className) throws ClassNotFoundException {
+        Map<String, Object> entries = getEntries(classLoader);
+        Class<?> c = (Class<?>) entries.get(className);
+        if (c == null) {
+            c = Class.forName(className, true, classLoader);
+            entries.put(className, c);
+        }
+        return c;
+    }
+
+    /**
+     * Returns the invocation of the public method with the given parameter types,
+     * <code>null</code> meaning no parameters.
+     */
+    public Invocation getInvocation(ClassLoader classLoader, String className, String methodName,
+                                    List<String> parameterTypes)
+            throws ClassNotFoundException, NoSuchMethodException {
+        StringBuilder key = new StringBuilder(className).append('#').append(methodName).append('(');
+        if (parameterTypes != null) {
+            for (String parameterType: parameterTypes) {
+                key.append(parameterType).append(',');
+            }
+        }
+        key.append(')');
+        Map<String, Object> entries = getEntries(classLoader);
+        Invocation invocation = (Invocation) entries.get(key.toString());
+        if (invocation == null) {
+            Class<?> c = loadClass(classLoader, className);
+            Class<?>[] classes = new Class<?>[parameterTypes == null ? 0 : parameterTypes.size()];
+            for (int i = 0; i < classes.length; i++) {
+                classes[i] = loadClass(classLoader, parameterTypes.get(i));
+            }
+            invocation = new Invocation(c, c.getMethod(methodName, classes), entries);
+            entries.put(key.toString(), invocation);
+        }
+        return invocation;
+    }
+
+    /**
+     * Returns the invocation of the public method without parameters or, if there
+     * is none, the first public method with the given name and number of parameters.
+     */
+    public Invocation findInvocation(ClassLoader classLoader, String className, String methodName,
+                                     int parameterCount)
+            throws ClassNotFoundException, NoSuchMethodException {
+        String key = className + "#" + methodName + "/" + parameterCount;
+        Map<String, Object> entries = getEntries(classLoader);
+        Invocation invocation = (Invocation) entries.get(key);
+        if (invocation == null) {
+            Class<?> c = loadClass(classLoader, className);
+            Method method = null;
+            try {
+                method = c.getMethod(methodName, new Class<?>[0]);
+            } catch (NoSuchMethodException e) {
+                for (Method m: c.getMethods()) {
+                    if (m.getName().equals(methodName)
+                            && m.getParameterTypes().length == parameterCount) {
+                        method = m;
+                        break;
+                    }
+                }
+                if (method == null) {
+                    throw new NoSuchMethodException(className + "." + methodName + "(..)");
+                }
+            }
+            invocation = new Invocation(c, method, entries);
+            entries.put(key, invocation);
+        }
+        return invocation;
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public void clear(ClassLoader classLoader) {
+        synchronized (cache) {
+            cache.remove(classLoader);
+        }
+    }
+
+    private Map<String, Object> getEntries(ClassLoader classLoader) {
+        synchronized (cache) {
+            SoftReference<Map<String, Object>> reference = cache.get(classLoader);
+            Map<String, Object> entries = reference == null ? null : reference.get();
+            if (entries == null) {
+                entries = new ConcurrentHashMap<String, Object>();
+                cache.put(classLoader, new SoftReference<Map<String, Object>>(entries));
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * A resolved method together with the class to instantiate for instance methods.
+     */
+    public static class Invocation {
+
+        private final Class<?> type;
+        private final Method method;
+        private final boolean isStatic;
+        private final Queue<Object> idleInstances = new ConcurrentLinkedQueue<Object>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+        // keeps the cached entries of the class loader while this invocation is used
+        private final Map<String, Object> entries;
+
+        Invocation(Class<?> type, Method method, Map<String, Object> entries) {
+            this.type = type;
+            this.method = method;
+            this.isStatic = Modifier.isStatic(method.getModifiers());
+            this.entries = entries;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        public boolean isStatic() {
+            return isStatic;
+        }
+
+        /**
+         * Invokes the method on the given target or, for an instance method without
+         * target, on a new instance of the class or, if <code>reuseInstance</code> is
+         * set, on an instance used by an earlier call.
+         */
+        public Object invoke(Object target, Object[] arguments, boolean reuseInstance)
+                throws InstantiationException, IllegalAccessException, InvocationTargetException {
+            if (isStatic) {
+                return method.invoke(null, arguments);
+            }
+            if (target != null) {
+                return method.invoke(target, arguments);
+            }
+            if (!reuseInstance) {
+                return method.invoke(type.newInstance(), arguments);
+            }
+            Object instance = idleInstances.poll();
+            if (instance == null) {
+                instance = type.newInstance();
+            } else {
+                idleCount.decrementAndGet();
+            }
+            try {
+                return method.invoke(instance, arguments);
+            } finally {
+                if (idleCount.incrementAndGet() <= MAX_POOLED_INSTANCES) {
+                    idleInstances.offer(instance);
+                } else {
+                    idleCount.decrementAndGet();
+                }
+            }
+        }
+
+    }
+
+}
@@ -23,10 +23,12 @@ import java.io.ObjectOutput;
 import java.util.List;
 
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 import javax.xml.xpath.XPathFunction;
 import javax.xml.xpath.XPathFunctionException;
@@ -34,15 +36,61 @@ import javax.xml.xpath.XPathFunctionResolver;
 import javax.xml.xpath.XPathVariableResolver;
 
 import org.drools.runtime.process.ProcessContext;
-
+import org.w3c.dom.Document;
+
+/**
+ * Evaluates an XPath expression against the variables of a process instance.
+ * </p>
+ * The expression is compiled once per thread, as compiled XPath expressions
+ * are not thread-safe, and the resolvers of the compiled expression read the
+ * variables from the process context of the current evaluation on this thread.
+ */
 public class XPATHReturnValueEvaluator
     implements
     ReturnValueEvaluator,
     Externalizable {
     private static final long   serialVersionUID = 510l;
 
+    private static final ThreadLocal<ProcessContext> CURRENT_CONTEXT = new ThreadLocal<ProcessContext>();
+
+    // the expressions only refer to variables, so they are evaluated against an empty document
+    private static final ThreadLocal<Document> EMPTY_DOCUMENT = new ThreadLocal<Document>() {
+        protected Document initialValue() {
+            try {
+                return DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+            } catch (ParserConfigurationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+    private static final XPathFunctionResolver FUNCTION_RESOLVER = new XPathFunctionResolver() {
+        public XPathFunction resolveFunction(QName functionName, int arity) {
+            String localName = functionName.getLocalPart();
+            if ("getVariable".equals(localName)) {
+                return GET_VARIABLE;
+            } else {
+                throw new RuntimeException("Unknown BPMN function: " + functionName);
+            }
+        }
+    };
+
+    private static final XPathFunction GET_VARIABLE = new XPathFunction() {
+        public Object evaluate(List args) throws XPathFunctionException {
+            String varname = (String) args.get(0);
+            return CURRENT_CONTEXT.get().getVariable(varname);
+        }
+    };
+
+    private static final XPathVariableResolver VARIABLE_RESOLVER = new XPathVariableResolver() {
+        public Object resolveVariable(QName variableName) {
+            return CURRENT_CONTEXT.get().getVariable(variableName.getLocalPart());
+        }
+    };
+
     private String              expression;
     private String              id;
+    private transient ThreadLocal<XPathExpression> compiledExpression = new ThreadLocal<XPathExpression>();
 
     public XPATHReturnValueEvaluator() {
     }
@@ -68,39 +116,31 @@ public class XPATHReturnValueEvaluator
         return this.id;
     }
 
-    public Object evaluate(final ProcessContext context) throws Exception {        
-    	XPathFactory factory = XPathFactory.newInstance();
-    	XPath xpathEvaluator = factory.newXPath();
-    	xpathEvaluator.setXPathFunctionResolver( 
-    			new  XPathFunctionResolver() {
-    				public XPathFunction resolveFunction(QName functionName, int arity)
-    				{
-    					String localName = functionName.getLocalPart();
-    					if ("getVariable".equals(localName)) {
-    						return new GetVariableData();
-    					}
-    					else {
-    						throw new RuntimeException("Unknown BPMN function: " + functionName);
-    					}
-    				}
-
-    				class GetVariableData implements XPathFunction {
-    					public Object evaluate(List args) throws XPathFunctionException {
-    						String varname = (String) args.get(0);
-    						return context.getVariable(varname);
-    					}
-    				}
-    			}
-    	);
-    	xpathEvaluator.setXPathVariableResolver(new XPathVariableResolver() {
-            
-            public Object resolveVariable(QName variableName) {
-                return context.getVariable(variableName.getLocalPart());
+    public Object evaluate(final ProcessContext context) throws Exception {
+        XPathExpression xpathExpression = getCompiledExpression();
+        ProcessContext previous = CURRENT_CONTEXT.get();
+        CURRENT_CONTEXT.set(context);
+        try {
+            return xpathExpression.evaluate(EMPTY_DOCUMENT.get(), XPathConstants.BOOLEAN);
+        } finally {
+            if (previous == null) {
+                CURRENT_CONTEXT.remove();
+            } else {
+                CURRENT_CONTEXT.set(previous);
             }
-        });
+        }
+    }
 
-		DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        return xpathEvaluator.evaluate(this.expression, builder.newDocument(), XPathConstants.BOOLEAN);
+    private XPathExpression getCompiledExpression() throws XPathExpressionException {
+        XPathExpression xpathExpression = compiledExpression.get();
+        if (xpathExpression == null) {
+            XPath xpathEvaluator = XPathFactory.newInstance().newXPath();
+            xpathEvaluator.setXPathFunctionResolver(FUNCTION_RESOLVER);
+            xpathEvaluator.setXPathVariableResolver(VARIABLE_RESOLVER);
+            xpathExpression = xpathEvaluator.compile(this.expression);
+            compiledExpression.set(xpathExpression);
+        }
+        return xpathExpression;
     }
 
     public String toString() {
@@ -0,0 +1,383 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of engine metrics: process instance starts and completions per process id,
+ * the time spent triggering node instances per node type, work item round-trip times
+ * per work item name, the number of listeners notified per signal and the lag of
+ * process timers.
+ * </p>
+ * Metrics are collected for all sessions of the JVM, only while enabled. Switching
+ * them on or off is possible at any time, using {@link #setEnabled(boolean)}, JMX
+ * (see {@link #registerMBean()}) or the <code>jbpm.metrics.enabled</code> system
+ * property at startup. When disabled, the instrumented code only reads a volatile
+ * flag. The collected values can be pulled with the getters of this class.
+ */
+public class EngineMetrics implements EngineMetricsMBean {
+
+    public static final String ENABLED = "jbpm.metrics.enabled";
+    public static final String OBJECT_NAME = "org.jbpm:type=EngineMetrics";
+
+    private static final Logger logger = LoggerFactory.getLogger(EngineMetrics.class);
+
+    private static final EngineMetrics INSTANCE = new EngineMetrics();
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED);
+
+    private final ConcurrentMap<String, ProcessMetrics> processMetrics = new ConcurrentHashMap<String, ProcessMetrics>();
+    private final ConcurrentMap<Class<?>, Histogram> nodeTriggerTimes = new ConcurrentHashMap<Class<?>, Histogram>();
+    private final ConcurrentMap<String, Histogram> workItemTimes = new ConcurrentHashMap<String, Histogram>();
+    private final Histogram signalFanOut = new Histogram();
+    private final Histogram timerLag = new Histogram();
+
+    public static EngineMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Checked by the instrumented code before collecting anything.
+     */
+    public static boolean isCollecting() {
+        return enabled;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server as {@value #OBJECT_NAME},
+     * unless already registered.
+     */
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Could not register engine metrics MBean", e);
+        }
+    }
+
+    public static void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.warn("Could not unregister engine metrics MBean", e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        EngineMetrics.enabled = enabled;
+    }
+
+    // collection
+
+    public void processStarted(String processId, long nanos) {
+        ProcessMetrics metrics = getOrCreateProcessMetrics(processId);
+        metrics.started.incrementAndGet();
+        metrics.startTime.record(nanos);
+    }
+
+    public void processCompleted(String processId, boolean aborted) {
+        ProcessMetrics metrics = getOrCreateProcessMetrics(processId);
+        if (aborted) {
+            metrics.aborted.incrementAndGet();
+        } else {
+            metrics.completed.incrementAndGet();
+        }
+    }
+
+    public void nodeTriggered(Class<?> nodeType, long nanos) {
+        getOrCreate(nodeTriggerTimes, nodeType).record(nanos);
+    }
+
+    public void workItemCompleted(String workItemName, long nanos) {
+        getOrCreate(workItemTimes, workItemName).record(nanos);
+    }
+
+    public void signalled(int listeners) {
+        signalFanOut.record(listeners);
+    }
+
+    public void timerTriggered(long lagMillis) {
+        timerLag.record(lagMillis);
+    }
+
+    private ProcessMetrics getOrCreateProcessMetrics(String processId) {
+        ProcessMetrics metrics = processMetrics.get(processId);
+        if (metrics == null) {
+            metrics = new ProcessMetrics();
+            ProcessMetrics existing = processMetrics.putIfAbsent(processId, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    private static <K> Histogram getOrCreate(ConcurrentMap<K, Histogram> histograms, K key) {
+        Histogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = new Histogram();
+            Histogram existing = histograms.putIfAbsent(key, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    // pull API
+
+    public Map<String, ProcessMetrics> getProcessMetrics() {
+        return processMetrics;
+    }
+
+    public ProcessMetrics getProcessMetrics(String processId) {
+        return processMetrics.get(processId);
+    }
+
+    /**
+     * @return the time in nanoseconds spent in <code>NodeInstanceImpl.trigger</code> per
+     * node class, including the time of the node instances triggered synchronously by it
+     */
+    public Map<Class<?>, Histogram> getNodeTriggerTimes() {
+        return nodeTriggerTimes;
+    }
+
+    /**
+     * @return the time in nanoseconds between the creation and the completion of work
+     * items per work item name, for work items completed in the same session
+     */
+    public Map<String, Histogram> getWorkItemTimes() {
+        return workItemTimes;
+    }
+
+    public Histogram getSignalFanOut() {
+        return signalFanOut;
+    }
+
+    /**
+     * @return the delay in milliseconds between the planned and the actual
+     * triggering of process timers
+     */
+    public Histogram getTimerLag() {
+        return timerLag;
+    }
+
+    public void reset() {
+        processMetrics.clear();
+        nodeTriggerTimes.clear();
+        workItemTimes.clear();
+        signalFanOut.reset();
+        timerLag.reset();
+    }
+
+    // JMX
+
+    public long getStartedProcessInstances() {
+        long result = 0;
+        for (ProcessMetrics metrics : processMetrics.values()) {
+            result += metrics.getStarted();
+        }
+        return result;
+    }
+
+    public long getCompletedProcessInstances() {
+        long result = 0;
+        for (ProcessMetrics metrics : processMetrics.values()) {
+            result += metrics.getCompleted();
+        }
+        return result;
+    }
+
+    public long getAbortedProcessInstances() {
+        long result = 0;
+        for (ProcessMetrics metrics : processMetrics.values()) {
+            result += metrics.getAborted();
+        }
+        return result;
+    }
+
+    public long getTriggeredNodeInstances() {
+        long result = 0;
+        for (Histogram histogram : nodeTriggerTimes.values()) {
+            result += histogram.getCount();
+        }
+        return result;
+    }
+
+    public long getCompletedWorkItems() {
+        long result = 0;
+        for (Histogram histogram : workItemTimes.values()) {
+            result += histogram.getCount();
+        }
+        return result;
+    }
+
+    public long getSignals() {
+        return signalFanOut.getCount();
+    }
+
+    public long getTimersTriggered() {
+        return timerLag.getCount();
+    }
+
+    public String[] getProcessIds() {
+        return processMetrics.keySet().toArray(new String[0]);
+    }
+
+    public String[] getNodeTypes() {
+        String[] result = new String[nodeTriggerTimes.size()];
+        int i = 0;
+        for (Class<?> nodeType : nodeTriggerTimes.keySet()) {
+            if (i == result.length) {
+                break;
+            }
+            result[i++] = nodeType.getName();
+        }
+        return result;
+    }
+
+    public String[] getWorkItemNames() {
+        return workItemTimes.keySet().toArray(new String[0]);
+    }
+
+    public long getStartedProcessInstances(String processId) {
+        ProcessMetrics metrics = processMetrics.get(processId);
+        return metrics == null ? 0 : metrics.getStarted();
+    }
+
+    public long getCompletedProcessInstances(String processId) {
+        ProcessMetrics metrics = processMetrics.get(processId);
+        return metrics == null ? 0 : metrics.getCompleted();
+    }
+
+    public long getAbortedProcessInstances(String processId) {
+        ProcessMetrics metrics = processMetrics.get(processId);
+        return metrics == null ? 0 : metrics.getAborted();
+    }
+
+    public long getProcessStartTime(String processId, double percentile) {
+        ProcessMetrics metrics = processMetrics.get(processId);
+        return metrics == null ? 0 : metrics.getStartTime().getValueAtPercentile(percentile) / 1000;
+    }
+
+    public long getNodeTriggerTime(String nodeType, double percentile) {
+        for (Map.Entry<Class<?>, Histogram> entry : nodeTriggerTimes.entrySet()) {
+            if (entry.getKey().getName().equals(nodeType) || entry.getKey().getSimpleName().equals(nodeType)) {
+                return entry.getValue().getValueAtPercentile(percentile) / 1000;
+            }
+        }
+        return 0;
+    }
+
+    public long getWorkItemTime(String workItemName, double percentile) {
+        Histogram histogram = workItemTimes.get(workItemName);
+        return histogram == null ? 0 : histogram.getValueAtPercentile(percentile) / 1000;
+    }
+
+    public long getSignalFanOut(double percentile) {
+        return signalFanOut.getValueAtPercentile(percentile);
+    }
+
+    public long getTimerLag(double percentile) {
+        return timerLag.getValueAtPercentile(percentile);
+    }
+
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("Engine metrics (").append(enabled ? "enabled" : "disabled").append(")\n");
+        for (Map.Entry<String, ProcessMetrics> entry : processMetrics.entrySet()) {
+            report.append("process ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        for (Map.Entry<Class<?>, Histogram> entry : nodeTriggerTimes.entrySet()) {
+            report.append("node ").append(entry.getKey().getSimpleName()).append(" [ns]: ")
+                .append(entry.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : workItemTimes.entrySet()) {
+            report.append("work item ").append(entry.getKey()).append(" [ns]: ")
+                .append(entry.getValue()).append('\n');
+        }
+        report.append("signal fan-out: ").append(signalFanOut).append('\n');
+        report.append("timer lag [ms]: ").append(timerLag).append('\n');
+        return report.toString();
+    }
+
+    public String toString() {
+        return report();
+    }
+
+    /**
+     * Metrics of the process instances of one process.
+     */
+    public static class ProcessMetrics {
+
+        private final AtomicLong started = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong aborted = new AtomicLong();
+        private final Histogram startTime = new Histogram();
+
+        public long getStarted() {
+            return started.get();
+        }
+
+        public long getCompleted() {
+            return completed.get();
+        }
+
+        public long getAborted() {
+            return aborted.get();
+        }
+
+        /**
+         * @return the time in nanoseconds to start a process instance, up to the first
+         * wait state (or its completion)
+         */
+        public Histogram getStartTime() {
+            return startTime;
+        }
+
+        public String toString() {
+            return "started=" + getStarted() + ", completed=" + getCompleted() + ", aborted=" + getAborted()
+                   + ", start time [ns]: " + startTime;
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.metrics;
+
+import org.drools.event.process.ProcessCompletedEvent;
+import org.drools.event.process.ProcessEventListener;
+import org.drools.event.process.ProcessNodeLeftEvent;
+import org.drools.event.process.ProcessNodeTriggeredEvent;
+import org.drools.event.process.ProcessStartedEvent;
+import org.drools.event.process.ProcessVariableChangedEvent;
+import org.drools.runtime.process.ProcessInstance;
+
+/**
+ * Built-in process event listener that records process instance completions in the
+ * {@link EngineMetrics}. It is registered with every process runtime, but does not
+ * show up in its listeners, and does nothing while the metrics are disabled.
+ */
+public class EngineMetricsListener implements ProcessEventListener {
+
+    public static final EngineMetricsListener INSTANCE = new EngineMetricsListener();
+
+    private EngineMetricsListener() {
+    }
+
+    public void afterProcessCompleted(ProcessCompletedEvent event) {
+        if (EngineMetrics.isCollecting()) {
+            ProcessInstance processInstance = event.getProcessInstance();
+            EngineMetrics.getInstance().processCompleted(processInstance.getProcessId(),
+                processInstance.getState() == ProcessInstance.STATE_ABORTED);
+        }
+    }
+
+    public void beforeProcessStarted(ProcessStartedEvent event) {
+    }
+
+    public void afterProcessStarted(ProcessStartedEvent event) {
+    }
+
+    public void beforeProcessCompleted(ProcessCompletedEvent event) {
+    }
+
+    public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+    }
+
+    public void afterNodeTriggered(ProcessNodeTriggeredEvent event) {
+    }
+
+    public void beforeNodeLeft(ProcessNodeLeftEvent event) {
+    }
+
+    public void afterNodeLeft(ProcessNodeLeftEvent event) {
+    }
+
+    public void beforeVariableChanged(ProcessVariableChangedEvent event) {
+    }
+
+    public void afterVariableChanged(ProcessVariableChangedEvent event) {
+    }
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.metrics;
+
+/**
+ * JMX view of the {@link EngineMetrics}. Times are reported in microseconds,
+ * timer lag in milliseconds.
+ */
+public interface EngineMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getStartedProcessInstances();
+
+    long getCompletedProcessInstances();
+
+    long getAbortedProcessInstances();
+
+    long getTriggeredNodeInstances();
+
+    long getCompletedWorkItems();
+
+    long getSignals();
+
+    long getTimersTriggered();
+
+    String[] getProcessIds();
+
+    String[] getNodeTypes();
+
+    String[] getWorkItemNames();
+
+    long getStartedProcessInstances(String processId);
+
+    long getCompletedProcessInstances(String processId);
+
+    long getAbortedProcessInstances(String processId);
+
+    long getProcessStartTime(String processId, double percentile);
+
+    long getNodeTriggerTime(String nodeType, double percentile);
+
+    long getWorkItemTime(String workItemName, double percentile);
+
+    long getSignalFanOut(double percentile);
+
+    long getTimerLag(double percentile);
+
+    String report();
+
+    void reset();
+
+}
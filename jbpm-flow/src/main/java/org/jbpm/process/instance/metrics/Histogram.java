@@ -0,0 +1,127 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of non-negative long values with a bounded relative error,
+ * in the style of an HDR histogram: values are counted in buckets per power of two,
+ * each of which is split in 32 linear sub-buckets, so reported values are at most
+ * about 3% higher than the recorded ones. Recording does not allocate and does not
+ * lock.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = 64 - SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKET_COUNT * SUB_BUCKET_COUNT );
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if ( value < 0 ) {
+            value = 0;
+        }
+        counts.incrementAndGet( indexOf( value ) );
+        count.incrementAndGet();
+        sum.addAndGet( value );
+        long currentMax = max.get();
+        while ( value > currentMax && !max.compareAndSet( currentMax, value ) ) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * @param percentile a percentile between 0 and 100
+     * @return the highest value that is equivalent to the value at the given percentile,
+     * or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = count.get();
+        if ( n == 0 ) {
+            return 0;
+        }
+        long rank = (long) Math.ceil( Math.min( Math.max( percentile, 0 ), 100 ) / 100 * n );
+        if ( rank < 1 ) {
+            rank = 1;
+        }
+        long seen = 0;
+        for ( int i = 0; i < counts.length(); i++ ) {
+            seen += counts.get( i );
+            if ( seen >= rank ) {
+                return Math.min( highestValueAt( i ), max.get() );
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for ( int i = 0; i < counts.length(); i++ ) {
+            counts.set( i, 0 );
+        }
+        count.set( 0 );
+        sum.set( 0 );
+        max.set( 0 );
+    }
+
+    static int indexOf(long value) {
+        if ( value < SUB_BUCKET_COUNT ) {
+            return (int) value;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros( value );
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestValueAt(int index) {
+        int bucket = index / SUB_BUCKET_COUNT;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        if ( bucket == 0 ) {
+            return subBucket;
+        }
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << (bucket - 1)) - 1;
+    }
+
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + Math.round( getMean() ) + ", p50=" + getValueAtPercentile( 50 )
+               + ", p99=" + getValueAtPercentile( 99 ) + ", max=" + getMax();
+    }
+
+}
@@ -43,11 +43,13 @@ import org.drools.time.SessionClock;
 import org.drools.time.TimerService;
 import org.drools.time.Trigger;
 import org.drools.time.impl.IntervalTrigger;
+import org.drools.time.impl.PseudoClockScheduler;
 import org.jbpm.marshalling.impl.JBPMMessages;
 import org.jbpm.marshalling.impl.ProcessMarshallerImpl;
 import org.jbpm.marshalling.impl.ProtobufProcessMarshaller;
 import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.ProcessInstance;
+import org.jbpm.process.instance.metrics.EngineMetrics;
 import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +61,12 @@ import org.slf4j.LoggerFactory;
 public class TimerManager {
     
     private static final Logger logger = LoggerFactory.getLogger(TimerManager.class);
+
+    /**
+     * Environment entry holding the {@link TimerStore} that keeps the process
+     * timers of the session, if they should not be scheduled in the session itself.
+     */
+    public static final String TIMER_STORE = "jbpm.timer.store";
     
     private long                     timerId    = 0;
 
@@ -75,6 +83,14 @@ public class TimerManager {
 
     public void registerTimer(final TimerInstance timer,
                               ProcessInstance processInstance) {
+        TimerStore timerStore = getTimerStore();
+        if ( timerStore != null ) {
+            timer.setProcessInstanceId( processInstance.getId() );
+            timer.setActivated( new Date( timerService.getCurrentTime() ) );
+            timerStore.registerTimer( kruntime,
+                                      timer );
+            return;
+        }
         timer.setId( ++timerId );
         timer.setProcessInstanceId( processInstance.getId() );
         timer.setActivated( new Date() );
@@ -146,7 +162,20 @@ public class TimerManager {
         TimerInstance timer = timers.remove( timerId );
         if ( timer != null ) {
             timerService.removeJob( timer.getJobHandle() );
+            return;
+        }
+        TimerStore timerStore = getTimerStore();
+        if ( timerStore != null ) {
+            timerStore.cancelTimer( kruntime,
+                                    timerId );
+        }
+    }
+
+    private TimerStore getTimerStore() {
+        if ( kruntime == null || kruntime.getEnvironment() == null ) {
+            return null;
         }
+        return (TimerStore) kruntime.getEnvironment().get( TIMER_STORE );
     }
 
     public void dispose() {
@@ -281,7 +310,11 @@ public class TimerManager {
                     throw new IllegalArgumentException( "Could not find process instance for timer " );
                 }
     
-                ctx.getTimer().setLastTriggered( new Date( ctx.getKnowledgeRuntime().<SessionClock>getSessionClock().getCurrentTime() ) );
+                SessionClock clock = ctx.getKnowledgeRuntime().<SessionClock>getSessionClock();
+                if ( EngineMetrics.isCollecting() && !(clock instanceof PseudoClockScheduler) ) {
+                    recordTimerLag( ctx.getTimer(), clock.getCurrentTime() );
+                }
+                ctx.getTimer().setLastTriggered( new Date( clock.getCurrentTime() ) );
     
                 ((InternalProcessRuntime) kruntime.getProcessRuntime())
                 	.getSignalManager().signalEvent( processInstanceId,
@@ -305,6 +338,20 @@ public class TimerManager {
             }
         }
 
+        private void recordTimerLag(TimerInstance timer, long now) {
+            Date lastTriggered = timer.getLastTriggered();
+            long planned;
+            if ( lastTriggered == null ) {
+                if ( timer.getActivated() == null ) {
+                    return;
+                }
+                planned = timer.getActivated().getTime() + timer.getDelay();
+            } else {
+                planned = lastTriggered.getTime() + timer.getPeriod();
+            }
+            EngineMetrics.getInstance().timerTriggered( now - planned );
+        }
+
     }
 
     public static class ProcessJobContext
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.timer;
+
+import org.drools.common.InternalKnowledgeRuntime;
+
+/**
+ * Keeps process timers outside of the session. When an implementation is set as
+ * the {@link TimerManager#TIMER_STORE} environment entry, the {@link TimerManager}
+ * hands new timers to the store instead of scheduling them with the session's
+ * TimerService, so they are not part of the marshalled session either. The store
+ * is responsible for delivering due timers as <code>timerTriggered</code> events
+ * to the process instance they belong to.
+ */
+public interface TimerStore {
+
+    /**
+     * Stores the given timer and assigns it an id that is unique within the store.
+     */
+    void registerTimer(InternalKnowledgeRuntime kruntime,
+                       TimerInstance timer);
+
+    void cancelTimer(InternalKnowledgeRuntime kruntime,
+                     long timerId);
+
+}
@@ -0,0 +1,481 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.timer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.drools.time.AcceptsTimerJobFactoryManager;
+import org.drools.time.InternalSchedulerService;
+import org.drools.time.Job;
+import org.drools.time.JobContext;
+import org.drools.time.JobHandle;
+import org.drools.time.SessionClock;
+import org.drools.time.TimerService;
+import org.drools.time.Trigger;
+import org.drools.time.impl.DefaultTimerJobFactoryManager;
+import org.drools.time.impl.TimerJobFactoryManager;
+import org.drools.time.impl.TimerJobInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A real time {@link TimerService} that keeps its jobs in a hierarchical hashed
+ * timing wheel instead of the priority queue of a ScheduledThreadPoolExecutor,
+ * meant for sessions with a large number of long running (process) timers.
+ * <p>
+ * Time is divided in ticks of <code>jbpm.timer.wheel.tick</code> milliseconds
+ * (100 by default). Each of the {@link #LEVELS} levels of the wheel has
+ * {@link #SLOTS} slots, a slot of level n covering 64^n ticks, and each slot is
+ * a doubly linked list of jobs, so scheduling and cancelling a job are constant
+ * time operations that only allocate a single entry per job. A ticker thread
+ * expires all jobs of the current slot at once and moves the jobs of higher
+ * levels down when their slot comes up. Jobs are executed by a pool of
+ * <code>jbpm.timer.wheel.threads</code> threads (1 by default, like the
+ * JDKTimerService) and fire at most one tick late.
+ * <p>
+ * The service is selected by setting the <code>drools.timerService</code> session
+ * property to the name of this class, after which the timers registered by the
+ * {@link TimerManager}, like those of timer nodes, boundary timer events and
+ * state based node timers, are all kept in the wheel.
+ */
+public class TimingWheelTimerService
+    implements
+    TimerService,
+    SessionClock,
+    InternalSchedulerService,
+    AcceptsTimerJobFactoryManager {
+
+    private static final Logger logger = LoggerFactory.getLogger( TimingWheelTimerService.class );
+
+    public static final String TICK_PROPERTY = "jbpm.timer.wheel.tick";
+    public static final String THREADS_PROPERTY = "jbpm.timer.wheel.threads";
+
+    public static final int  SLOTS = 64;
+    public static final int  LEVELS = 6;
+
+    private static final int  SLOT_BITS = 6;
+    private static final int  SLOT_MASK = SLOTS - 1;
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final long            tickMillis;
+    private final int             threads;
+    private final long            startTime;
+    private final Entry[][]       wheel = new Entry[LEVELS][SLOTS];
+    private final int[]           levelCount = new int[LEVELS];
+    private final AtomicLong      idCounter = new AtomicLong( 1 );
+
+    // guarded by this
+    private long                  currentTick;
+    private int                   size;
+    private Thread                ticker;
+    private ExecutorService       executor;
+    private boolean               shutdown;
+
+    protected TimerJobFactoryManager jobFactoryManager = DefaultTimerJobFactoryManager.instance;
+
+    public TimingWheelTimerService() {
+        this( Long.getLong( TICK_PROPERTY, 100 ),
+              Integer.getInteger( THREADS_PROPERTY, 1 ) );
+    }
+
+    public TimingWheelTimerService(long tickMillis,
+                                   int threads) {
+        if ( tickMillis <= 0 || threads <= 0 ) {
+            throw new IllegalArgumentException( "Tick and number of threads must be positive" );
+        }
+        this.tickMillis = tickMillis;
+        this.threads = threads;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    public void setTimerJobFactoryManager(TimerJobFactoryManager timerJobFactoryManager) {
+        this.jobFactoryManager = timerJobFactoryManager;
+    }
+
+    public TimerJobFactoryManager getTimerJobFactoryManager() {
+        return this.jobFactoryManager;
+    }
+
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public JobHandle scheduleJob(Job job,
+                                 JobContext ctx,
+                                 Trigger trigger) {
+        Date date = trigger.hasNextFireTime();
+        if ( date == null ) {
+            return null;
+        }
+        TimingWheelJobHandle jobHandle = new TimingWheelJobHandle( idCounter.getAndIncrement() );
+        TimerJobInstance jobInstance = jobFactoryManager.createTimerJobInstance( job,
+                                                                                 ctx,
+                                                                                 trigger,
+                                                                                 jobHandle,
+                                                                                 this );
+        jobHandle.setTimerJobInstance( jobInstance );
+        internalSchedule( jobInstance );
+        return jobHandle;
+    }
+
+    public void internalSchedule(TimerJobInstance timerJobInstance) {
+        TimingWheelJobHandle jobHandle = (TimingWheelJobHandle) timerJobInstance.getJobHandle();
+        Date date = timerJobInstance.getTrigger().hasNextFireTime();
+        long deadline = toTick( date.getTime() );
+        boolean expired;
+        synchronized ( this ) {
+            if ( shutdown ) {
+                throw new IllegalStateException( "Timer service has been shut down" );
+            }
+            expired = deadline < currentTick;
+            if ( !expired ) {
+                Entry entry = new Entry( timerJobInstance,
+                                         deadline );
+                jobHandle.entry = entry;
+                insert( entry );
+                size++;
+                startTicker();
+            }
+        }
+        jobFactoryManager.addTimerJobInstance( timerJobInstance );
+        if ( expired ) {
+            execute( timerJobInstance );
+        }
+    }
+
+    public boolean removeJob(JobHandle jobHandle) {
+        jobHandle.setCancel( true );
+        TimingWheelJobHandle handle = (TimingWheelJobHandle) jobHandle;
+        jobFactoryManager.removeTimerJobInstance( handle.getTimerJobInstance() );
+        synchronized ( this ) {
+            Entry entry = handle.entry;
+            if ( entry == null || entry.level < 0 ) {
+                return false;
+            }
+            unlink( entry );
+            size--;
+            return true;
+        }
+    }
+
+    public long getTimeToNextJob() {
+        return 0;
+    }
+
+    public Collection<TimerJobInstance> getTimerJobInstances() {
+        return jobFactoryManager.getTimerJobInstances();
+    }
+
+    /**
+     * Returns the number of jobs waiting in the wheel.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void reset() {
+        for ( int level = 0; level < LEVELS; level++ ) {
+            for ( int slot = 0; slot < SLOTS; slot++ ) {
+                for ( Entry entry = wheel[level][slot]; entry != null; entry = entry.next ) {
+                    entry.level = -1;
+                }
+                wheel[level][slot] = null;
+            }
+            levelCount[level] = 0;
+        }
+        size = 0;
+    }
+
+    public void shutdown() {
+        Thread t;
+        synchronized ( this ) {
+            reset();
+            shutdown = true;
+            t = ticker;
+            ticker = null;
+            notifyAll();
+        }
+        if ( executor != null ) {
+            executor.shutdownNow();
+        }
+        if ( t != null && t != Thread.currentThread() ) {
+            try {
+                t.join( 1000 );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private long toTick(long time) {
+        // rounded up, so a job never fires before its time
+        long elapsed = time - startTime;
+        return elapsed <= 0 ? 0 : (elapsed + tickMillis - 1) / tickMillis;
+    }
+
+    private void insert(Entry entry) {
+        long delta = entry.deadline - currentTick;
+        if ( delta > MAX_DELTA ) {
+            // parked in the top level, inserted again when its slot comes up
+            delta = MAX_DELTA;
+        }
+        int level = 0;
+        while ( delta >= SLOTS ) {
+            delta >>>= SLOT_BITS;
+            level++;
+        }
+        long tick = Math.min( entry.deadline, currentTick + MAX_DELTA );
+        int slot = (int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+        entry.level = level;
+        entry.slot = slot;
+        levelCount[level]++;
+        entry.prev = null;
+        entry.next = wheel[level][slot];
+        if ( entry.next != null ) {
+            entry.next.prev = entry;
+        }
+        wheel[level][slot] = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if ( entry.prev != null ) {
+            entry.prev.next = entry.next;
+        } else {
+            wheel[entry.level][entry.slot] = entry.next;
+        }
+        if ( entry.next != null ) {
+            entry.next.prev = entry.prev;
+        }
+        levelCount[entry.level]--;
+        entry.prev = null;
+        entry.next = null;
+        entry.level = -1;
+    }
+
+    /**
+     * Processes all ticks up to the given time and returns the expired jobs.
+     * Must be called while holding the lock.
+     */
+    List<TimerJobInstance> expire(long now) {
+        List<TimerJobInstance> expired = new ArrayList<TimerJobInstance>();
+        long nowTick = (now - startTime) / tickMillis;
+        while ( currentTick <= nowTick ) {
+            if ( size == 0 ) {
+                currentTick = nowTick + 1;
+                break;
+            }
+            // nothing happens before the next slot of the lowest level in use comes up
+            int lowest = 0;
+            while ( levelCount[lowest] == 0 ) {
+                lowest++;
+            }
+            if ( lowest > 0 ) {
+                long span = 1L << (SLOT_BITS * lowest);
+                long next = (currentTick + span - 1) & ~(span - 1);
+                if ( next > nowTick ) {
+                    currentTick = nowTick + 1;
+                    break;
+                }
+                currentTick = next;
+            }
+            // cascade the slots of the higher levels that start at this tick
+            for ( int level = 1; level < LEVELS; level++ ) {
+                if ( (currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0 ) {
+                    break;
+                }
+                int slot = (int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK;
+                Entry entry = wheel[level][slot];
+                wheel[level][slot] = null;
+                while ( entry != null ) {
+                    Entry next = entry.next;
+                    levelCount[level]--;
+                    insert( entry );
+                    entry = next;
+                }
+            }
+            int slot = (int) currentTick & SLOT_MASK;
+            Entry entry = wheel[0][slot];
+            wheel[0][slot] = null;
+            while ( entry != null ) {
+                Entry next = entry.next;
+                entry.prev = null;
+                entry.next = null;
+                entry.level = -1;
+                levelCount[0]--;
+                size--;
+                expired.add( entry.jobInstance );
+                entry = next;
+            }
+            currentTick++;
+        }
+        return expired;
+    }
+
+    private void startTicker() {
+        if ( ticker == null ) {
+            executor = Executors.newFixedThreadPool( threads,
+                                                     new DaemonThreadFactory( "jbpm-timer-wheel-executor" ) );
+            ticker = new DaemonThreadFactory( "jbpm-timer-wheel" ).newThread( new Runnable() {
+                public void run() {
+                    tick();
+                }
+            } );
+            ticker.start();
+        }
+    }
+
+    private void tick() {
+        while ( true ) {
+            List<TimerJobInstance> expired;
+            synchronized ( this ) {
+                if ( shutdown ) {
+                    return;
+                }
+                long delay = startTime + currentTick * tickMillis - System.currentTimeMillis();
+                if ( delay > 0 ) {
+                    try {
+                        wait( delay );
+                    } catch ( InterruptedException e ) {
+                        return;
+                    }
+                    continue;
+                }
+                expired = expire( System.currentTimeMillis() );
+            }
+            for ( TimerJobInstance jobInstance : expired ) {
+                execute( jobInstance );
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void execute(final TimerJobInstance jobInstance) {
+        if ( jobInstance.getJobHandle().isCancel() ) {
+            return;
+        }
+        ExecutorService executor;
+        synchronized ( this ) {
+            if ( shutdown ) {
+                return;
+            }
+            startTicker();
+            executor = this.executor;
+        }
+        final Callable<Void> call = (Callable<Void>) jobInstance;
+        executor.execute( new Runnable() {
+            public void run() {
+                try {
+                    call.call();
+                } catch ( Exception e ) {
+                    logger.error( "Error when executing timer job " + jobInstance.getJobHandle(), e );
+                }
+            }
+        } );
+    }
+
+    private static class Entry {
+
+        private final TimerJobInstance jobInstance;
+        private final long             deadline;
+        private int                    level = -1;
+        private int                    slot;
+        private Entry                  prev;
+        private Entry                  next;
+
+        Entry(TimerJobInstance jobInstance,
+              long deadline) {
+            this.jobInstance = jobInstance;
+            this.deadline = deadline;
+        }
+
+    }
+
+    public static class TimingWheelJobHandle
+        implements
+        JobHandle {
+
+        private static final long serialVersionUID = 510l;
+
+        private final long             id;
+        private final AtomicBoolean    cancel = new AtomicBoolean( false );
+        private transient TimerJobInstance timerJobInstance;
+        private transient Entry        entry;
+
+        public TimingWheelJobHandle(long id) {
+            this.id = id;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public boolean isCancel() {
+            return cancel.get();
+        }
+
+        public void setCancel(boolean cancel) {
+            this.cancel.set( cancel );
+        }
+
+        public TimerJobInstance getTimerJobInstance() {
+            return timerJobInstance;
+        }
+
+        public void setTimerJobInstance(TimerJobInstance timerJobInstance) {
+            this.timerJobInstance = timerJobInstance;
+        }
+
+        public String toString() {
+            return "TimingWheelJobHandle[" + id + "]";
+        }
+
+    }
+
+    private static class DaemonThreadFactory
+        implements
+        ThreadFactory {
+
+        private final String      name;
+        private final AtomicLong  count = new AtomicLong();
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread( r,
+                                        name + "-" + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.core.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.drools.definition.process.Node;
+import org.jbpm.process.core.event.EventFilter;
+import org.jbpm.process.core.event.EventTypeFilter;
+import org.jbpm.workflow.core.node.CompositeNode;
+import org.jbpm.workflow.core.node.DynamicNode;
+import org.jbpm.workflow.core.node.EventNode;
+import org.jbpm.workflow.core.node.EventNodeInterface;
+
+/**
+ * Immutable lookup from event type to the nodes of a node container that
+ * could accept an event of that type.
+ *
+ * The index only narrows down the candidates: callers still need to invoke
+ * {@link EventNodeInterface#acceptsEvent(String, Object)} on each returned node.
+ * Nodes whose accepted types cannot be determined up front (for example event
+ * nodes that only use custom {@link EventFilter}s) are returned for every type,
+ * in the same relative order as {@link org.drools.definition.process.NodeContainer#getNodes()}.
+ */
+public class EventNodeIndex {
+
+    private final Map<String, List<Node>> eventNodes;
+    private final List<Node> unindexedEventNodes;
+    private final Map<String, List<Node>> dynamicNodes;
+
+    public EventNodeIndex(Node[] nodes) {
+        Map<Node, Set<String>> acceptedTypes = new HashMap<Node, Set<String>>();
+        Set<String> allTypes = new LinkedHashSet<String>();
+        for (Node node: nodes) {
+            if (node instanceof EventNodeInterface) {
+                Set<String> types = getAcceptedTypes(node);
+                acceptedTypes.put(node, types);
+                if (types != null) {
+                    allTypes.addAll(types);
+                }
+            }
+        }
+        Map<String, List<Node>> eventNodes = new HashMap<String, List<Node>>();
+        for (String type: allTypes) {
+            eventNodes.put(type, new ArrayList<Node>());
+        }
+        List<Node> unindexedEventNodes = new ArrayList<Node>();
+        Map<String, List<Node>> dynamicNodes = new HashMap<String, List<Node>>();
+        for (Node node: nodes) {
+            if (node instanceof EventNodeInterface) {
+                Set<String> types = acceptedTypes.get(node);
+                if (types == null) {
+                    unindexedEventNodes.add(node);
+                    for (List<Node> list: eventNodes.values()) {
+                        list.add(node);
+                    }
+                } else {
+                    for (String type: types) {
+                        eventNodes.get(type).add(node);
+                    }
+                }
+            }
+            if (node.getName() != null && node.getIncomingConnections().isEmpty()) {
+                List<Node> list = dynamicNodes.get(node.getName());
+                if (list == null) {
+                    list = new ArrayList<Node>();
+                    dynamicNodes.put(node.getName(), list);
+                }
+                list.add(node);
+            }
+        }
+        for (Map.Entry<String, List<Node>> entry: eventNodes.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        for (Map.Entry<String, List<Node>> entry: dynamicNodes.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        this.eventNodes = eventNodes;
+        this.unindexedEventNodes = Collections.unmodifiableList(unindexedEventNodes);
+        this.dynamicNodes = dynamicNodes;
+    }
+
+    /**
+     * Returns the event nodes that might accept an event of the given type.
+     */
+    public List<Node> getEventNodes(String type) {
+        List<Node> result = eventNodes.get(type);
+        return result == null ? unindexedEventNodes : result;
+    }
+
+    /**
+     * Returns the nodes without incoming connections that carry the given name,
+     * i.e. the nodes of a dynamic container that can be triggered by signalling
+     * their name.
+     */
+    public List<Node> getDynamicNodes(String name) {
+        List<Node> result = dynamicNodes.get(name);
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the event types the given node can accept, or <code>null</code>
+     * if this cannot be determined without evaluating its filters.
+     */
+    private static Set<String> getAcceptedTypes(Node node) {
+        if (node instanceof EventNode) {
+            for (EventFilter filter: ((EventNode) node).getEventFilters()) {
+                if (filter instanceof EventTypeFilter
+                        && filter.getClass() == EventTypeFilter.class) {
+                    String type = ((EventTypeFilter) filter).getType();
+                    if (type == null) {
+                        return null;
+                    }
+                    // all filters must accept, so the type filter limits the node to this type
+                    return Collections.singleton(type);
+                }
+            }
+            return null;
+        } else if (node instanceof CompositeNode) {
+            Set<String> result = new LinkedHashSet<String>();
+            Node[] nodes = ((CompositeNode) node).internalGetNodes();
+            for (Node child: nodes) {
+                if (child instanceof EventNodeInterface) {
+                    Set<String> types = getAcceptedTypes(child);
+                    if (types == null) {
+                        return null;
+                    }
+                    result.addAll(types);
+                }
+            }
+            if (node instanceof DynamicNode) {
+                for (Node child: ((DynamicNode) node).getNodes()) {
+                    if (child.getName() != null && child.getIncomingConnections().isEmpty()) {
+                        result.add(child.getName());
+                    }
+                }
+            }
+            return result;
+        }
+        return null;
+    }
+
+}
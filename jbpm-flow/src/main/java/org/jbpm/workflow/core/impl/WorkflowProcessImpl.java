@@ -33,6 +33,7 @@ public class WorkflowProcessImpl extends ProcessImpl implements WorkflowProcess,
     private boolean autoComplete = false;
     private boolean dynamic = false;
     private org.jbpm.workflow.core.NodeContainer nodeContainer;
+    private transient volatile EventNodeIndex eventNodeIndex;
     
     public WorkflowProcessImpl() {
         nodeContainer = (org.jbpm.workflow.core.NodeContainer) createNodeContainer();
@@ -65,11 +66,27 @@ public class WorkflowProcessImpl extends ProcessImpl implements WorkflowProcess,
     public void removeNode(final Node node) {
         nodeContainer.removeNode(node);
         ((org.jbpm.workflow.core.Node) node).setNodeContainer(null);
+        eventNodeIndex = null;
     }
 
     public void addNode(final Node node) {
         nodeContainer.addNode(node);
         ((org.jbpm.workflow.core.Node) node).setNodeContainer(this);
+        eventNodeIndex = null;
+    }
+    
+    /**
+     * Returns the index of the event nodes of this process by event type.
+     * The index is built on first use once the process definition is complete
+     * and rebuilt whenever nodes are added or removed.
+     */
+    public EventNodeIndex getEventNodeIndex() {
+        EventNodeIndex result = eventNodeIndex;
+        if (result == null) {
+            result = new EventNodeIndex(getNodes());
+            eventNodeIndex = result;
+        }
+        return result;
     }
     
     public boolean isAutoComplete() {
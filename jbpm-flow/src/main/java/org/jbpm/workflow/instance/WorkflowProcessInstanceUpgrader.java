@@ -61,6 +61,7 @@ public class WorkflowProcessInstanceUpgrader {
 	        processInstance.setKnowledgeRuntime((InternalKnowledgeRuntime) kruntime);
 	        processInstance.setProcess(process);
 	        processInstance.reconnect();
+	        processInstance.markDirty();
 		}
     }
     
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jbpm.workflow.instance.NodeInstance;
+import org.mvel2.integration.VariableResolverFactory;
+
+/**
+ * A string with #{expression} parameters, parsed once. The parameters are
+ * resolved like variables of a node instance, see
+ * {@link NodeExpressionCache#resolveValue(String, NodeInstance, VariableResolverFactory)}.
+ */
+public final class CompiledTemplate {
+
+    private static final Pattern PARAMETER_MATCHER = Pattern.compile("#\\{(\\S+)\\}", Pattern.DOTALL);
+
+    private final String template;
+    // text before, between and after the parameters
+    private final String[] literals;
+    // distinct parameter names
+    private final String[] names;
+    // index in names of each parameter occurrence
+    private final int[] occurrences;
+
+    private CompiledTemplate(String template, String[] literals, String[] names, int[] occurrences) {
+        this.template = template;
+        this.literals = literals;
+        this.names = names;
+        this.occurrences = occurrences;
+    }
+
+    public static CompiledTemplate compile(String template) {
+        if (template.indexOf("#{") < 0) {
+            return new CompiledTemplate(template, new String[] { template }, new String[0], new int[0]);
+        }
+        List<String> literals = new ArrayList<String>();
+        List<String> names = new ArrayList<String>();
+        List<Integer> occurrences = new ArrayList<Integer>();
+        Matcher matcher = PARAMETER_MATCHER.matcher(template);
+        int end = 0;
+        while (matcher.find()) {
+            literals.add(template.substring(end, matcher.start()));
+            String name = matcher.group(1);
+            int index = names.indexOf(name);
+            if (index < 0) {
+                index = names.size();
+                names.add(name);
+            }
+            occurrences.add(index);
+            end = matcher.end();
+        }
+        literals.add(template.substring(end));
+        int[] occurrenceArray = new int[occurrences.size()];
+        for (int i = 0; i < occurrenceArray.length; i++) {
+            occurrenceArray[i] = occurrences.get(i);
+        }
+        return new CompiledTemplate(template,
+            literals.toArray(new String[literals.size()]),
+            names.toArray(new String[names.size()]),
+            occurrenceArray);
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public boolean hasParameters() {
+        return names.length > 0;
+    }
+
+    public String[] getParameterNames() {
+        return names.clone();
+    }
+
+    /**
+     * Replaces the parameters by the string value of the variable or expression
+     * they refer to, or an empty string if that is <code>null</code>. Parameters
+     * that cannot be resolved are left in the result as they are.
+     */
+    public String resolve(NodeInstance nodeInstance, NodeExpressionCache expressionCache) {
+        if (names.length == 0) {
+            return template;
+        }
+        String[] values = new String[names.length];
+        VariableResolverFactory factory = new NodeInstanceResolverFactory(nodeInstance);
+        for (int i = 0; i < names.length; i++) {
+            try {
+                Object value = expressionCache.resolveValue(names[i], nodeInstance, factory);
+                values[i] = value == null ? "" : value.toString();
+            } catch (Throwable t) {
+                System.err.println("Could not find variable scope for variable " + names[i]);
+                System.err.println("when trying to replace variable in " + template + " for node " + nodeInstance.getNodeName());
+                System.err.println("Continuing without replacing it.");
+            }
+        }
+        StringBuilder result = new StringBuilder(template.length() + 16 * occurrences.length);
+        result.append(literals[0]);
+        for (int i = 0; i < occurrences.length; i++) {
+            String value = values[occurrences[i]];
+            if (value == null) {
+                result.append("#{").append(names[occurrences[i]]).append('}');
+            } else {
+                result.append(value);
+            }
+            result.append(literals[i + 1]);
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.drools.definition.process.Node;
+import org.jbpm.process.core.context.variable.VariableScope;
+import org.jbpm.process.instance.context.variable.VariableScopeInstance;
+import org.jbpm.workflow.instance.NodeInstance;
+import org.mvel2.MVEL;
+import org.mvel2.integration.VariableResolverFactory;
+
+/**
+ * The #{...} templates and MVEL expressions used by the instances of a node,
+ * parsed and compiled on first use and kept in the meta data of the node
+ * definition, so they are shared by all instances and sessions.
+ */
+public final class NodeExpressionCache implements Serializable {
+
+    private static final long serialVersionUID = 510l;
+
+    private static final String METADATA_KEY = "NodeExpressionCache";
+
+    static final int MAX_TEMPLATES = 256;
+
+    private transient ConcurrentMap<String, CompiledTemplate> templates =
+        new ConcurrentHashMap<String, CompiledTemplate>();
+    private transient ConcurrentMap<String, Serializable> expressions =
+        new ConcurrentHashMap<String, Serializable>();
+
+    public static NodeExpressionCache getExpressionCache(Node node) {
+        Map<String, Object> metaData = node.getMetaData();
+        synchronized (metaData) {
+            NodeExpressionCache expressionCache = (NodeExpressionCache) metaData.get(METADATA_KEY);
+            if (expressionCache == null) {
+                expressionCache = new NodeExpressionCache();
+                metaData.put(METADATA_KEY, expressionCache);
+            }
+            return expressionCache;
+        }
+    }
+
+    /**
+     * Returns the given template compiled. Only templates with #{...} parameters are
+     * kept, and at most {@link #MAX_TEMPLATES} of them, as strings resolved at runtime
+     * (like work item parameters copied from process variables) are passed in as well.
+     */
+    public CompiledTemplate getTemplate(String template) {
+        if (template.indexOf("#{") < 0) {
+            return CompiledTemplate.compile(template);
+        }
+        CompiledTemplate compiledTemplate = templates.get(template);
+        if (compiledTemplate == null) {
+            compiledTemplate = CompiledTemplate.compile(template);
+            if (templates.size() < MAX_TEMPLATES) {
+                templates.put(template, compiledTemplate);
+            }
+        }
+        return compiledTemplate;
+    }
+
+    int getTemplateCount() {
+        return templates.size();
+    }
+
+    public Object evaluate(String expression, VariableResolverFactory factory) {
+        Serializable compiledExpression = expressions.get(expression);
+        if (compiledExpression == null) {
+            compiledExpression = MVEL.compileExpression(expression);
+            expressions.put(expression, compiledExpression);
+        }
+        return MVEL.executeExpression(compiledExpression, factory);
+    }
+
+    /**
+     * Returns the value of the variable with the given name as seen from the
+     * node instance or, if there is no such variable, evaluates the name as an
+     * expression.
+     */
+    public Object resolveValue(String name, NodeInstance nodeInstance) {
+        return resolveValue(name, nodeInstance, null);
+    }
+
+    Object resolveValue(String name, NodeInstance nodeInstance, VariableResolverFactory factory) {
+        VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
+            nodeInstance.resolveContextInstance(VariableScope.VARIABLE_SCOPE, name);
+        if (variableScopeInstance != null) {
+            return variableScopeInstance.getVariable(name);
+        }
+        return evaluate(name, factory == null ? new NodeInstanceResolverFactory(nodeInstance) : factory);
+    }
+
+    private Object readResolve() {
+        // the compiled expressions are not serialized
+        return new NodeExpressionCache();
+    }
+
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.drools.definition.process.Connection;
+import org.jbpm.process.instance.ProcessInstance;
+import org.jbpm.workflow.instance.NodeInstance;
+import org.jbpm.workflow.instance.NodeInstanceContainer;
+
+/**
+ * Work queue of a process instance in queued execution mode, see
+ * {@link WorkflowProcessInstanceImpl#isQueuedExecution()}.
+ * </p>
+ * The first transition of a node instance is executed by a loop, any transition
+ * requested while executing one is queued instead of being executed recursively.
+ * To keep the recursive order, the steps queued while executing a step are
+ * executed before all steps that were queued earlier, in the order they were
+ * queued. The after node triggered and after node left events are queued as steps
+ * as well, so they are still fired after the node instances triggered by the node.
+ * </p>
+ * Node instances that are triggered directly instead of through a transition
+ * (e.g. the start node of a composite node or the nodes of a for each node) get
+ * a loop of their own, so everything they lead to is executed before the call
+ * returns, as with recursive execution.
+ */
+class NodeInstanceExecutionQueue {
+
+    // the steps queued by the step being executed, null if no step is executed
+    private List<Step> queued;
+    // the node instance this queue is triggering
+    private NodeInstance triggering;
+
+    /**
+     * @return whether a step is being executed, in which case new steps are queued
+     */
+    boolean isExecuting() {
+        return queued != null;
+    }
+
+    void transition(NodeInstanceImpl from, NodeInstance to, String type) {
+        addStep(new Transition(from, to, null, type));
+    }
+
+    void transition(NodeInstanceImpl from, Connection connection) {
+        addStep(new Transition(from, null, connection, connection.getToType()));
+    }
+
+    /**
+     * Triggers a node instance that is not triggered by this queue and executes
+     * all steps this queues before returning.
+     */
+    void trigger(final NodeInstanceImpl nodeInstance, final org.drools.runtime.process.NodeInstance from, final String type) {
+        execute(new Step() {
+            public void execute() {
+                triggerNodeInstance(nodeInstance, from, type);
+            }
+        });
+    }
+
+    /**
+     * @return whether the given node instance is being triggered by this queue,
+     * otherwise it must be triggered with {@link #trigger}
+     */
+    boolean isTriggering(NodeInstance nodeInstance) {
+        if (triggering == nodeInstance) {
+            triggering = null;
+            return true;
+        }
+        return false;
+    }
+
+    void addAfterNodeTriggered(final NodeInstanceImpl nodeInstance) {
+        queued.add(new Step() {
+            public void execute() {
+                nodeInstance.fireAfterNodeTriggered();
+            }
+        });
+    }
+
+    private void addStep(Step step) {
+        if (queued != null) {
+            queued.add(step);
+        } else {
+            execute(step);
+        }
+    }
+
+    private void execute(Step first) {
+        List<Step> outer = queued;
+        LinkedList<Step> steps = new LinkedList<Step>();
+        steps.add(first);
+        try {
+            while (!steps.isEmpty()) {
+                Step step = steps.removeFirst();
+                List<Step> newSteps = new ArrayList<Step>();
+                queued = newSteps;
+                step.execute();
+                for (ListIterator<Step> iterator = newSteps.listIterator(newSteps.size()); iterator.hasPrevious(); ) {
+                    steps.addFirst(iterator.previous());
+                }
+            }
+        } finally {
+            queued = outer;
+        }
+    }
+
+    private void triggerNodeInstance(NodeInstance nodeInstance, org.drools.runtime.process.NodeInstance from, String type) {
+        triggering = nodeInstance;
+        try {
+            nodeInstance.trigger(from, type);
+        } finally {
+            triggering = null;
+        }
+    }
+
+    private interface Step {
+
+        void execute();
+
+    }
+
+    private class Transition implements Step {
+
+        private final NodeInstanceImpl from;
+        private final NodeInstance to;
+        private final Connection connection;
+        private final String type;
+
+        private Transition(NodeInstanceImpl from, NodeInstance to, Connection connection, String type) {
+            this.from = from;
+            this.to = to;
+            this.connection = connection;
+            this.type = type;
+        }
+
+        public void execute() {
+            // like the recursive completion and split loops, stop if the process
+            // instance has been aborted / completed
+            if (((NodeInstanceContainer) from.getNodeInstanceContainer()).getState() != ProcessInstance.STATE_ACTIVE) {
+                return;
+            }
+            NodeInstance nodeInstance = to == null ? from.followConnection(connection) : to;
+            final boolean hidden = from.isHidden();
+            if (!hidden) {
+                from.fireBeforeNodeLeft();
+            }
+            triggerNodeInstance(nodeInstance, from, type);
+            if (!hidden) {
+                queued.add(new Step() {
+                    public void execute() {
+                        from.fireAfterNodeLeft();
+                    }
+                });
+            }
+        }
+
+    }
+
+}
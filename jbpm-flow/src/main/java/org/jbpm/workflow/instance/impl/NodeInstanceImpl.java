@@ -39,6 +39,7 @@ import org.jbpm.process.instance.ProcessInstance;
 import org.jbpm.process.instance.context.exclusive.ExclusiveGroupInstance;
 import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.process.instance.impl.ConstraintEvaluator;
+import org.jbpm.process.instance.metrics.EngineMetrics;
 import org.jbpm.workflow.core.impl.NodeImpl;
 import org.jbpm.workflow.instance.WorkflowProcessInstance;
 import org.jbpm.workflow.instance.WorkflowRuntimeException;
@@ -109,10 +110,26 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
     }
     
     public void cancel() {
+        markProcessInstanceDirty();
         nodeInstanceContainer.removeNodeInstance(this);
     }
     
+    protected void markProcessInstanceDirty() {
+        if (processInstance instanceof WorkflowProcessInstanceImpl) {
+            ((WorkflowProcessInstanceImpl) processInstance).markDirty();
+        }
+    }
+    
     public final void trigger(NodeInstance from, String type) {
+    	NodeInstanceExecutionQueue queue = getExecutionQueue();
+    	if (queue != null && !queue.isTriggering(this)) {
+    		// triggered directly, e.g. by a composite node instance, so everything
+    		// this leads to is executed before returning, as with recursive execution
+    		queue.trigger(this, from, type);
+    		return;
+    	}
+    	markProcessInstanceDirty();
+    	long start = EngineMetrics.isCollecting() ? System.nanoTime() : 0;
     	boolean hidden = false;
     	if (getNode().getMetaData().get("hidden") != null) {
     		hidden = true;
@@ -132,14 +149,22 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
             throw new WorkflowRuntimeException(this, e);
         }
         if (!hidden) {
-        	((InternalProcessRuntime) kruntime.getProcessRuntime())
-        		.getProcessEventSupport().fireAfterNodeTriggered(this, kruntime);
+        	if (queue != null && queue.isExecuting()) {
+        		// fired once the node instances triggered by this one have been executed
+        		queue.addAfterNodeTriggered(this);
+        	} else {
+        		fireAfterNodeTriggered();
+        	}
+        }
+        if (start != 0) {
+            EngineMetrics.getInstance().nodeTriggered(getNode().getClass(), System.nanoTime() - start);
         }
     }
     
     public abstract void internalTrigger(NodeInstance from, String type);
     
     protected void triggerCompleted(String type, boolean remove) {
+        markProcessInstanceDirty();
         if (remove) {
             ((org.jbpm.workflow.instance.NodeInstanceContainer) getNodeInstanceContainer())
             	.removeNodeInstance(this);
@@ -251,6 +276,11 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
     }
     
     protected void triggerNodeInstance(org.jbpm.workflow.instance.NodeInstance nodeInstance, String type) {
+    	NodeInstanceExecutionQueue queue = getExecutionQueue();
+    	if (queue != null) {
+    		queue.transition(this, nodeInstance, type);
+    		return;
+    	}
     	boolean hidden = false;
     	if (getNode().getMetaData().get("hidden") != null) {
     		hidden = true;
@@ -269,9 +299,44 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
     }
     
     protected void triggerConnection(Connection connection) {
+    	NodeInstanceExecutionQueue queue = getExecutionQueue();
+    	if (queue != null) {
+    		// the connection is only followed when the transition is executed
+    		queue.transition(this, connection);
+    		return;
+    	}
     	triggerNodeInstance(followConnection(connection), connection.getToType());
     }
     
+    NodeInstanceExecutionQueue getExecutionQueue() {
+    	if (processInstance instanceof WorkflowProcessInstanceImpl) {
+    		return ((WorkflowProcessInstanceImpl) processInstance).getExecutionQueue();
+    	}
+    	return null;
+    }
+    
+    boolean isHidden() {
+    	return getNode().getMetaData().get("hidden") != null;
+    }
+    
+    void fireAfterNodeTriggered() {
+    	InternalKnowledgeRuntime kruntime = getProcessInstance().getKnowledgeRuntime();
+    	((InternalProcessRuntime) kruntime.getProcessRuntime())
+    		.getProcessEventSupport().fireAfterNodeTriggered(this, kruntime);
+    }
+    
+    void fireBeforeNodeLeft() {
+    	InternalKnowledgeRuntime kruntime = getProcessInstance().getKnowledgeRuntime();
+    	((InternalProcessRuntime) kruntime.getProcessRuntime())
+    		.getProcessEventSupport().fireBeforeNodeLeft(this, kruntime);
+    }
+    
+    void fireAfterNodeLeft() {
+    	InternalKnowledgeRuntime kruntime = getProcessInstance().getKnowledgeRuntime();
+    	((InternalProcessRuntime) kruntime.getProcessRuntime())
+    		.getProcessEventSupport().fireAfterNodeLeft(this, kruntime);
+    }
+    
     public Context resolveContext(String contextId, Object param) {
         return ((NodeImpl) getNode()).resolveContext(contextId, param);
     }
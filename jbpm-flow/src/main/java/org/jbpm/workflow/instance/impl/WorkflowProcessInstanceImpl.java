@@ -18,6 +18,7 @@ package org.jbpm.workflow.instance.impl;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -38,7 +39,9 @@ import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.ProcessInstance;
 import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.process.instance.impl.ProcessInstanceImpl;
+import org.jbpm.workflow.core.impl.EventNodeIndex;
 import org.jbpm.workflow.core.impl.NodeImpl;
+import org.jbpm.workflow.core.impl.WorkflowProcessImpl;
 import org.jbpm.workflow.core.node.EventNode;
 import org.jbpm.workflow.core.node.EventNodeInterface;
 import org.jbpm.workflow.instance.NodeInstance;
@@ -60,21 +63,32 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 
 	private static final long serialVersionUID = 510l;
 
+	/**
+	 * Environment entry (or system property) that enables queued (iterative)
+	 * node execution, see {@link #isQueuedExecution()}.
+	 */
+	public static final String QUEUED_EXECUTION = "jbpm.queued.execution";
+
 	private final List<NodeInstance> nodeInstances = new ArrayList<NodeInstance>();;
 	private long nodeInstanceCounter = 0;
 	private Map<String, List<EventListener>> eventListeners = new HashMap<String, List<EventListener>>();
 	private Map<String, List<EventListener>> externalEventListeners = new HashMap<String, List<EventListener>>();
+	private transient boolean dirty = true;
+	private transient ProcessInstanceChangeListener changeListener;
+	private transient NodeInstanceExecutionQueue executionQueue;
 
 	public NodeContainer getNodeContainer() {
 		return getWorkflowProcess();
 	}
 
 	public void addNodeInstance(final NodeInstance nodeInstance) {
+		markDirty();
 		((NodeInstanceImpl) nodeInstance).setId(nodeInstanceCounter++);
 		this.nodeInstances.add(nodeInstance);
 	}
 
 	public void removeNodeInstance(final NodeInstance nodeInstance) {
+		markDirty();
 		if (((NodeInstanceImpl) nodeInstance).isInversionOfControl()) {
 			getKnowledgeRuntime().retract(
 					getKnowledgeRuntime().getFactHandle(nodeInstance));
@@ -244,6 +258,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 	}
 	
 	public void setState(final int state, String outcome) {
+	    markDirty();
 	    super.setState(state, outcome);
         // TODO move most of this to ProcessInstanceImpl
         if (state == ProcessInstance.STATE_COMPLETED
@@ -292,6 +307,69 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 		addEventListeners();
 	}
 
+	/**
+	 * Returns whether this process instance might have changed since it was
+	 * last (un)marshalled, see {@link #resetDirty()}.
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Records that this process instance (its state, node instances or variables)
+	 * changed, notifying the change listener if it was not changed before.
+	 */
+	public void markDirty() {
+		if (!dirty) {
+			dirty = true;
+			if (changeListener != null) {
+				changeListener.processInstanceChanged(this);
+			}
+		}
+	}
+
+	/**
+	 * Called when this process instance was (un)marshalled, so its current
+	 * state corresponds to the marshalled state.
+	 */
+	public void resetDirty() {
+		dirty = false;
+	}
+
+	public void setChangeListener(ProcessInstanceChangeListener changeListener) {
+		this.changeListener = changeListener;
+	}
+
+	public void setKnowledgeRuntime(final InternalKnowledgeRuntime kruntime) {
+		super.setKnowledgeRuntime(kruntime);
+		// derived from the configuration every time the process instance is connected,
+		// so it is executed the same way after being reloaded
+		Object queuedExecution = kruntime == null || kruntime.getEnvironment() == null
+			? null : kruntime.getEnvironment().get(QUEUED_EXECUTION);
+		if (queuedExecution == null) {
+			queuedExecution = System.getProperty(QUEUED_EXECUTION);
+		}
+		executionQueue = queuedExecution != null && Boolean.parseBoolean(queuedExecution.toString().trim())
+			? new NodeInstanceExecutionQueue() : null;
+	}
+
+	/**
+	 * Whether queued node execution is enabled, through the
+	 * <code>jbpm.queued.execution</code> environment entry or system property.
+	 * When enabled, node instances do not trigger their successors recursively,
+	 * but add the transitions to a work queue of this process instance, which is
+	 * drained by a loop. This keeps the stack depth constant for long chains of
+	 * synchronous nodes, while nodes are triggered in the same (depth first) order
+	 * and process events are fired in the same order as with recursive execution.
+	 */
+	public boolean isQueuedExecution() {
+		return executionQueue != null;
+	}
+
+	NodeInstanceExecutionQueue getExecutionQueue() {
+		return executionQueue;
+	}
+
 	public String toString() {
 		final StringBuilder sb = new StringBuilder("WorkflowProcessInstance");
 		sb.append(getId());
@@ -305,6 +383,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 
 	public void start() {
 		synchronized (this) {
+			markDirty();
 			registerExternalEventNodeListeners();
 			super.start();
 		}
@@ -336,6 +415,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 			if (getState() != ProcessInstance.STATE_ACTIVE) {
 				return;
 			}
+			markDirty();
 			List<EventListener> listeners = eventListeners.get(type);
 			if (listeners != null) {
 				for (EventListener listener : listeners) {
@@ -348,7 +428,12 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 					listener.signalEvent(type, event);
 				}
 			}
-			for (Node node : getWorkflowProcess().getNodes()) {
+			WorkflowProcess process = getWorkflowProcess();
+			EventNodeIndex index = process instanceof WorkflowProcessImpl ?
+				((WorkflowProcessImpl) process).getEventNodeIndex() : null;
+			Collection<Node> eventNodes = index == null ?
+				Arrays.asList(process.getNodes()) : index.getEventNodes(type);
+			for (Node node : eventNodes) {
 				if (node instanceof EventNodeInterface) {
 					if (((EventNodeInterface) node).acceptsEvent(type, event)) {
 						if (node instanceof EventNode && ((EventNode) node).getFrom() == null) {
@@ -367,8 +452,10 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 					}
 				}
 			}
-			if (((org.jbpm.workflow.core.WorkflowProcess) getWorkflowProcess()).isDynamic()) {
-				for (Node node : getWorkflowProcess().getNodes()) {
+			if (((org.jbpm.workflow.core.WorkflowProcess) process).isDynamic()) {
+				Collection<Node> dynamicNodes = index == null ?
+					Arrays.asList(process.getNodes()) : index.getDynamicNodes(type);
+				for (Node node : dynamicNodes) {
 					if (type.equals(node.getName()) && node.getIncomingConnections().isEmpty()) {
 		    			NodeInstance nodeInstance = getNodeInstance(node);
 		                ((org.jbpm.workflow.instance.NodeInstance) nodeInstance)
@@ -30,9 +30,8 @@ import org.jbpm.workflow.core.node.ForEachNode.ForEachJoinNode;
 import org.jbpm.workflow.core.node.ForEachNode.ForEachSplitNode;
 import org.jbpm.workflow.instance.NodeInstance;
 import org.jbpm.workflow.instance.NodeInstanceContainer;
+import org.jbpm.workflow.instance.impl.NodeExpressionCache;
 import org.jbpm.workflow.instance.impl.NodeInstanceImpl;
-import org.jbpm.workflow.instance.impl.NodeInstanceResolverFactory;
-import org.mvel2.MVEL;
 
 /**
  * Runtime counterpart of a for each node.
@@ -70,20 +69,13 @@ public class ForEachNodeInstance extends CompositeNodeInstance {
     }
     
     private Collection<?> evaluateCollectionExpression(String collectionExpression) {
-        // TODO: should evaluate this expression using MVEL
         Object collection = null;
-        VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
-            resolveContextInstance(VariableScope.VARIABLE_SCOPE, collectionExpression);
-        if (variableScopeInstance != null) {
-            collection = variableScopeInstance.getVariable(collectionExpression);
-        } else {
-            try {
-                collection = MVEL.eval(collectionExpression, new NodeInstanceResolverFactory(this));
-            } catch (Throwable t) {
-                throw new IllegalArgumentException(
-                    "Could not find collection " + collectionExpression);
-            }
-            
+        try {
+            collection = NodeExpressionCache.getExpressionCache(getForEachNode())
+                .resolveValue(collectionExpression, this);
+        } catch (Throwable t) {
+            throw new IllegalArgumentException(
+                "Could not find collection " + collectionExpression);
         }
         if (collection == null) {
             return Collections.EMPTY_LIST;
@@ -17,16 +17,7 @@
 package org.jbpm.workflow.instance.node;
 
 import org.drools.common.InternalKnowledgeRuntime;
-import org.drools.event.rule.ActivationCancelledEvent;
 import org.drools.event.rule.ActivationCreatedEvent;
-import org.drools.event.rule.AfterActivationFiredEvent;
-import org.drools.event.rule.AgendaEventListener;
-import org.drools.event.rule.AgendaGroupPoppedEvent;
-import org.drools.event.rule.AgendaGroupPushedEvent;
-import org.drools.event.rule.BeforeActivationFiredEvent;
-import org.drools.event.rule.RuleFlowGroupActivatedEvent;
-import org.drools.event.rule.RuleFlowGroupDeactivatedEvent;
-import org.drools.rule.Rule;
 import org.drools.runtime.process.NodeInstance;
 import org.drools.runtime.rule.impl.InternalAgenda;
 import org.drools.spi.Activation;
@@ -37,7 +28,7 @@ import org.jbpm.workflow.core.node.MilestoneNode;
  * 
  * @author <a href="mailto:kris_verlaenen@hotmail.com">Kris Verlaenen</a>
  */
-public class MilestoneNodeInstance extends StateBasedNodeInstance implements AgendaEventListener {
+public class MilestoneNodeInstance extends StateBasedNodeInstance {
 
     private static final long serialVersionUID = 510l;
 
@@ -51,10 +42,8 @@ public class MilestoneNodeInstance extends StateBasedNodeInstance implements Age
             throw new IllegalArgumentException(
                 "A MilestoneNode only accepts default incoming connections!");
         }
-        String rule = "RuleFlow-Milestone-" + getProcessInstance().getProcessId()
-        	+ "-" + getMilestoneNode().getUniqueId();
         boolean isActive = ((InternalAgenda) getProcessInstance().getKnowledgeRuntime().getAgenda())
-			.isRuleActiveInRuleFlowGroup("DROOLS_SYSTEM", rule, getProcessInstance().getId());
+			.isRuleActiveInRuleFlowGroup("DROOLS_SYSTEM", getActivationEventType(), getProcessInstance().getId());
         if (isActive) {
         	triggerCompleted();
         } else {
@@ -68,64 +57,48 @@ public class MilestoneNodeInstance extends StateBasedNodeInstance implements Age
     }
     
     private void addActivationListener() {
-    	getProcessInstance().getKnowledgeRuntime().addEventListener(this);
+    	// activations of the milestone rule are signalled by the ActivationDispatcher
+    	getProcessInstance().addEventListener(getActivationEventType(), this, true);
     }
 
     public void removeEventListeners() {
         super.removeEventListeners();
-        getProcessInstance().getKnowledgeRuntime().removeEventListener(this);
+        getProcessInstance().removeEventListener(getActivationEventType(), this, true);
     }
 
-    public void activationCreated(ActivationCreatedEvent event) {
-        // check whether this activation is from the DROOLS_SYSTEM agenda group
-        String ruleFlowGroup = ((Rule) event.getActivation().getRule()).getRuleFlowGroup();
-        if ("DROOLS_SYSTEM".equals(ruleFlowGroup)) {
-            // new activations of the rule associate with a milestone node
-            // trigger node instances of that milestone node
-            String ruleName = event.getActivation().getRule().getName();
-            String milestoneName = "RuleFlow-Milestone-" + getProcessInstance().getProcessId() + "-" + getNodeId();
-            if (milestoneName.equals(ruleName) && checkProcessInstance((Activation) event.getActivation())) {
-        		if ( !((InternalKnowledgeRuntime) getProcessInstance().getKnowledgeRuntime()).getActionQueue().isEmpty() ) {
-        			((InternalKnowledgeRuntime) getProcessInstance().getKnowledgeRuntime()).executeQueuedActions();
-                }
-            	synchronized(getProcessInstance()) {
-	                removeEventListeners();
-	                triggerCompleted();
-            	}
-            }
-        }
-    }
-
-    public void activationCancelled(ActivationCancelledEvent event) {
-        // Do nothing
+    public String[] getEventTypes() {
+    	String[] eventTypes = super.getEventTypes();
+    	String[] result = new String[eventTypes.length + 1];
+    	System.arraycopy(eventTypes, 0, result, 0, eventTypes.length);
+    	result[eventTypes.length] = getActivationEventType();
+    	return result;
     }
-
-    public void afterActivationFired(AfterActivationFiredEvent event) {
-        // Do nothing
-    }
-
-    public void agendaGroupPopped(AgendaGroupPoppedEvent event) {
-        // Do nothing
+    
+    private String getActivationEventType() {
+    	return "RuleFlow-Milestone-" + getProcessInstance().getProcessId()
+    		+ "-" + getMilestoneNode().getUniqueId();
     }
 
-    public void agendaGroupPushed(AgendaGroupPushedEvent event) {
-        // Do nothing
+    public void signalEvent(String type, Object event) {
+    	if (getActivationEventType().equals(type)) {
+    		if (event instanceof ActivationCreatedEvent) {
+    			activationCreated((ActivationCreatedEvent) event);
+    		}
+    	} else {
+    		super.signalEvent(type, event);
+    	}
     }
 
-    public void beforeActivationFired(BeforeActivationFiredEvent event) {
-        // Do nothing
+    private void activationCreated(ActivationCreatedEvent event) {
+        if (checkProcessInstance((Activation) event.getActivation())) {
+    		if ( !((InternalKnowledgeRuntime) getProcessInstance().getKnowledgeRuntime()).getActionQueue().isEmpty() ) {
+    			((InternalKnowledgeRuntime) getProcessInstance().getKnowledgeRuntime()).executeQueuedActions();
+            }
+        	synchronized(getProcessInstance()) {
+                removeEventListeners();
+                triggerCompleted();
+        	}
+        }
     }
 
-	public void afterRuleFlowGroupActivated(RuleFlowGroupActivatedEvent event) {
-	}
-
-	public void afterRuleFlowGroupDeactivated(RuleFlowGroupDeactivatedEvent event) {
-	}
-
-	public void beforeRuleFlowGroupActivated(RuleFlowGroupActivatedEvent event) {
-	}
-
-	public void beforeRuleFlowGroupDeactivated(RuleFlowGroupDeactivatedEvent event) {
-	}
-
 }
@@ -22,13 +22,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import org.drools.common.InternalKnowledgeRuntime;
 import org.drools.definition.process.Connection;
 import org.drools.definition.process.Node;
 import org.drools.runtime.process.NodeInstance;
 import org.jbpm.process.core.context.exclusive.ExclusiveGroup;
 import org.jbpm.process.instance.ContextInstanceContainer;
-import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.ProcessInstance;
 import org.jbpm.process.instance.context.exclusive.ExclusiveGroupInstance;
 import org.jbpm.process.instance.impl.ConstraintEvaluator;
@@ -186,21 +184,7 @@ public class SplitInstance extends NodeInstanceImpl {
         	        	if (getProcessInstance().getState() != ProcessInstance.STATE_ACTIVE) {
         	        		return;
         	        	}
-        	        	boolean hidden = false;
-        	        	if (getNode().getMetaData().get("hidden") != null) {
-        	        		hidden = true;
-        	        	}
-        	        	InternalKnowledgeRuntime kruntime = getProcessInstance().getKnowledgeRuntime();
-        	        	if (!hidden) {
-        	        		((InternalProcessRuntime) kruntime.getProcessRuntime())
-        	        			.getProcessEventSupport().fireBeforeNodeLeft(this, kruntime);
-        	        	}
-        	            ((org.jbpm.workflow.instance.NodeInstance) entry.getKey())
-        	        		.trigger(this, entry.getValue());
-        	            if (!hidden) {
-        	            	((InternalProcessRuntime) kruntime.getProcessRuntime())
-        	            		.getProcessEventSupport().fireAfterNodeLeft(this, kruntime);
-        	            }
+        	        	triggerNodeInstance(entry.getKey(), entry.getValue());
         	        }
                 }
                 break;
@@ -19,8 +19,6 @@ package org.jbpm.workflow.instance.node;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.drools.KnowledgeBase;
 import org.drools.RuntimeDroolsException;
@@ -35,9 +33,8 @@ import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.process.instance.impl.ProcessInstanceImpl;
 import org.jbpm.workflow.core.node.DataAssociation;
 import org.jbpm.workflow.core.node.SubProcessNode;
-import org.jbpm.workflow.instance.impl.NodeInstanceResolverFactory;
+import org.jbpm.workflow.instance.impl.NodeExpressionCache;
 import org.jbpm.workflow.instance.impl.VariableScopeResolverFactory;
-import org.mvel2.MVEL;
 
 /**
  * Runtime counterpart of a SubFlow node.
@@ -47,7 +44,6 @@ import org.mvel2.MVEL;
 public class SubProcessNodeInstance extends StateBasedNodeInstance implements EventListener {
 
     private static final long serialVersionUID = 510l;
-    private static final Pattern PARAMETER_MATCHER = Pattern.compile("#\\{(\\S+)\\}", Pattern.DOTALL);
     
     private long processInstanceId;
 	
@@ -61,23 +57,18 @@ public class SubProcessNodeInstance extends StateBasedNodeInstance implements Ev
             throw new IllegalArgumentException(
                 "A SubProcess node only accepts default incoming connections!");
         }
+        NodeExpressionCache expressionCache = NodeExpressionCache.getExpressionCache(getSubProcessNode());
         Map<String, Object> parameters = new HashMap<String, Object>();
         for (Iterator<DataAssociation> iterator =  getSubProcessNode().getInAssociations().iterator(); iterator.hasNext(); ) {
         	DataAssociation mapping = iterator.next();
         	Object parameterValue = null;
-            VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
-                resolveContextInstance(VariableScope.VARIABLE_SCOPE, mapping.getSources().get(0));
-            if (variableScopeInstance != null) {
-                parameterValue = variableScopeInstance.getVariable(mapping.getSources().get(0));
-            } else {
-            	try {
-            		parameterValue = MVEL.eval(mapping.getSources().get(0), new NodeInstanceResolverFactory(this));
-            	} catch (Throwable t) {
-            		System.err.println("Could not find variable scope for variable " + mapping.getSources().get(0));
-                    System.err.println("when trying to execute SubProcess node " + getSubProcessNode().getName());
-                    System.err.println("Continuing without setting parameter.");
-            	}
-            }
+        	try {
+        		parameterValue = expressionCache.resolveValue(mapping.getSources().get(0), this);
+        	} catch (Throwable t) {
+        		System.err.println("Could not find variable scope for variable " + mapping.getSources().get(0));
+                System.err.println("when trying to execute SubProcess node " + getSubProcessNode().getName());
+                System.err.println("Continuing without setting parameter.");
+        	}
             if (parameterValue != null) {
             	parameters.put(mapping.getTarget(),parameterValue); 
             }
@@ -88,33 +79,7 @@ public class SubProcessNodeInstance extends StateBasedNodeInstance implements Ev
             processId = getSubProcessNode().getProcessName();
         }
         // resolve processId if necessary
-        Map<String, String> replacements = new HashMap<String, String>();
-		Matcher matcher = PARAMETER_MATCHER.matcher(processId);
-        while (matcher.find()) {
-        	String paramName = matcher.group(1);
-        	if (replacements.get(paramName) == null) {
-            	VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
-                	resolveContextInstance(VariableScope.VARIABLE_SCOPE, paramName);
-                if (variableScopeInstance != null) {
-                    Object variableValue = variableScopeInstance.getVariable(paramName);
-                	String variableValueString = variableValue == null ? "" : variableValue.toString(); 
-	                replacements.put(paramName, variableValueString);
-                } else {
-                	try {
-                		Object variableValue = MVEL.eval(paramName, new NodeInstanceResolverFactory(this));
-	                	String variableValueString = variableValue == null ? "" : variableValue.toString();
-	                	replacements.put(paramName, variableValueString);
-                	} catch (Throwable t) {
-	                    System.err.println("Could not find variable scope for variable " + paramName);
-	                    System.err.println("when trying to replace variable in processId for sub process " + getNodeName());
-	                    System.err.println("Continuing without setting process id.");
-                	}
-                }
-        	}
-        }
-        for (Map.Entry<String, String> replacement: replacements.entrySet()) {
-        	processId = processId.replace("#{" + replacement.getKey() + "}", replacement.getValue());
-        }
+        processId = expressionCache.getTemplate(processId).resolve(this, expressionCache);
         KnowledgeBase kbase = ((ProcessInstance) getProcessInstance()).getKnowledgeRuntime().getKnowledgeBase();
         // start process instance
         Process process = kbase.getProcess(processId);
@@ -217,7 +182,8 @@ public class SubProcessNodeInstance extends StateBasedNodeInstance implements Ev
 		        	Object value = subProcessVariableScopeInstance.getVariable(mapping.getSources().get(0));
 		        	if (value == null) {
 		        		try {
-		            		value = MVEL.eval(mapping.getSources().get(0), new VariableScopeResolverFactory(subProcessVariableScopeInstance));
+		            		value = NodeExpressionCache.getExpressionCache(subProcessNode)
+		            		    .evaluate(mapping.getSources().get(0), new VariableScopeResolverFactory(subProcessVariableScopeInstance));
 		            	} catch (Throwable t) {
 		            		// do nothing
 		            	}
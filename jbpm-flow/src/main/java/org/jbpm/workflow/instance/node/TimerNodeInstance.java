@@ -16,32 +16,23 @@
 
 package org.jbpm.workflow.instance.node;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import org.drools.RuntimeDroolsException;
 import org.drools.common.InternalKnowledgeRuntime;
 import org.drools.runtime.process.EventListener;
 import org.drools.runtime.process.NodeInstance;
 import org.drools.time.TimeUtils;
-import org.jbpm.process.core.context.variable.VariableScope;
 import org.jbpm.process.core.timer.BusinessCalendar;
 import org.jbpm.process.core.timer.Timer;
 import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.ProcessInstance;
-import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.process.instance.timer.TimerInstance;
 import org.jbpm.workflow.core.node.TimerNode;
 import org.jbpm.workflow.instance.WorkflowProcessInstance;
-import org.jbpm.workflow.instance.impl.NodeInstanceResolverFactory;
-import org.mvel2.MVEL;
+import org.jbpm.workflow.instance.impl.NodeExpressionCache;
 
 public class TimerNodeInstance extends StateBasedNodeInstance implements EventListener {
 
     private static final long serialVersionUID = 510l;
-    private static final Pattern PARAMETER_MATCHER = Pattern.compile("#\\{(\\S+)\\}", Pattern.DOTALL);
     
     private long timerId;
     
@@ -102,44 +93,16 @@ public class TimerNodeInstance extends StateBasedNodeInstance implements EventLi
     }
     
     private long resolveValue(String s) {
-    	try {
-    		return TimeUtils.parseTimeString(s);
-    	} catch (RuntimeDroolsException e) {
-    		// cannot parse delay, trying to interpret it
-    		s = resolveVariable(s);
-            return TimeUtils.parseTimeString(s);
+    	if (s.indexOf("#{") >= 0) {
+    		// cannot be parsed before replacing the variables
+    		return TimeUtils.parseTimeString(resolveVariable(s));
     	}
+    	return TimeUtils.parseTimeString(s);
     }
-
+    
     private String resolveVariable(String s) {
-        Map<String, String> replacements = new HashMap<String, String>();
-        Matcher matcher = PARAMETER_MATCHER.matcher(s);
-        while (matcher.find()) {
-            String paramName = matcher.group(1);
-            if (replacements.get(paramName) == null) {
-                VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
-                    resolveContextInstance(VariableScope.VARIABLE_SCOPE, paramName);
-                if (variableScopeInstance != null) {
-                    Object variableValue = variableScopeInstance.getVariable(paramName);
-                    String variableValueString = variableValue == null ? "" : variableValue.toString(); 
-                    replacements.put(paramName, variableValueString);
-                } else {
-                    try {
-                        Object variableValue = MVEL.eval(paramName, new NodeInstanceResolverFactory(this));
-                        String variableValueString = variableValue == null ? "" : variableValue.toString();
-                        replacements.put(paramName, variableValueString);
-                    } catch (Throwable t) {
-                        System.err.println("Could not find variable scope for variable " + paramName);
-                        System.err.println("when trying to replace variable in processId for sub process " + getNodeName());
-                        System.err.println("Continuing without setting process id.");
-                    }
-                }
-            }
-        }
-        for (Map.Entry<String, String> replacement: replacements.entrySet()) {
-            s = s.replace("#{" + replacement.getKey() + "}", replacement.getValue());
-        }
-        return s;
+    	NodeExpressionCache expressionCache = NodeExpressionCache.getExpressionCache(getNode());
+    	return expressionCache.getTemplate(s).resolve(this, expressionCache);
     }
     public void signalEvent(String type, Object event) {
     	if ("timerTriggered".equals(type)) {
@@ -19,8 +19,6 @@ package org.jbpm.workflow.instance.node;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.drools.WorkItemHandlerNotFoundException;
 import org.drools.definition.process.Node;
@@ -36,12 +34,13 @@ import org.jbpm.process.core.context.variable.VariableScope;
 import org.jbpm.process.instance.ProcessInstance;
 import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.process.instance.impl.AssignmentAction;
+import org.jbpm.process.instance.metrics.EngineMetrics;
 import org.jbpm.workflow.core.node.Assignment;
 import org.jbpm.workflow.core.node.DataAssociation;
 import org.jbpm.workflow.core.node.WorkItemNode;
-import org.jbpm.workflow.instance.impl.NodeInstanceResolverFactory;
+import org.jbpm.workflow.instance.impl.CompiledTemplate;
+import org.jbpm.workflow.instance.impl.NodeExpressionCache;
 import org.jbpm.workflow.instance.impl.WorkItemResolverFactory;
-import org.mvel2.MVEL;
 
 /**
  * Runtime counterpart of a work item node.
@@ -51,10 +50,11 @@ import org.mvel2.MVEL;
 public class WorkItemNodeInstance extends StateBasedNodeInstance implements EventListener {
     
     private static final long serialVersionUID = 510l;
-    private static final Pattern PARAMETER_MATCHER = Pattern.compile("#\\{(\\S+)\\}", Pattern.DOTALL);
     
     private long workItemId = -1;
     private transient WorkItem workItem;
+    // creation time of the work item, only set while collecting engine metrics
+    private transient long workItemStart;
     
     protected WorkItemNode getWorkItemNode() {
         return (WorkItemNode) getNode();
@@ -94,6 +94,7 @@ public class WorkItemNodeInstance extends StateBasedNodeInstance implements Even
 //        }
         WorkItemNode workItemNode = getWorkItemNode();
         createWorkItem(workItemNode);
+        workItemStart = EngineMetrics.isCollecting() ? System.nanoTime() : 0;
         if (workItemNode.isWaitForCompletion()) {
             addWorkItemListener();
         }
@@ -122,22 +123,17 @@ public class WorkItemNodeInstance extends StateBasedNodeInstance implements Even
         ((WorkItem) workItem).setName(work.getName());
         ((WorkItem) workItem).setProcessInstanceId(getProcessInstance().getId());
         ((WorkItem) workItem).setParameters(new HashMap<String, Object>(work.getParameters()));
+        NodeExpressionCache expressionCache = NodeExpressionCache.getExpressionCache(workItemNode);
         for (Iterator<DataAssociation> iterator = workItemNode.getInAssociations().iterator(); iterator.hasNext(); ) {
             DataAssociation association = iterator.next();
             if (association.getAssignments() == null || association.getAssignments().isEmpty()) {
                 Object parameterValue = null;
-                VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
-                resolveContextInstance(VariableScope.VARIABLE_SCOPE, association.getSources().get(0));
-                if (variableScopeInstance != null) {
-                    parameterValue = variableScopeInstance.getVariable(association.getSources().get(0));
-                } else {
-                    try {
-                        parameterValue = MVEL.eval(association.getSources().get(0), new NodeInstanceResolverFactory(this));
-                    } catch (Throwable t) {
-                        System.err.println("Could not find variable scope for variable " + association.getSources().get(0));
-                        System.err.println("when trying to execute Work Item " + work.getName());
-                        System.err.println("Continuing without setting parameter.");
-                    }
+                try {
+                    parameterValue = expressionCache.resolveValue(association.getSources().get(0), this);
+                } catch (Throwable t) {
+                    System.err.println("Could not find variable scope for variable " + association.getSources().get(0));
+                    System.err.println("when trying to execute Work Item " + work.getName());
+                    System.err.println("Continuing without setting parameter.");
                 }
                 if (parameterValue != null) {
                     ((WorkItem) workItem).setParameter(association.getTarget(), parameterValue);
@@ -150,36 +146,11 @@ public class WorkItemNodeInstance extends StateBasedNodeInstance implements Even
         }
         
         for (Map.Entry<String, Object> entry: workItem.getParameters().entrySet()) {
-            if (entry.getValue() instanceof String) {
-                String s = (String) entry.getValue();
-                Map<String, String> replacements = new HashMap<String, String>();
-                Matcher matcher = PARAMETER_MATCHER.matcher(s);
-                while (matcher.find()) {
-                    String paramName = matcher.group(1);
-                    if (replacements.get(paramName) == null) {
-                        VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
-                            resolveContextInstance(VariableScope.VARIABLE_SCOPE, paramName);
-                        if (variableScopeInstance != null) {
-                            Object variableValue = variableScopeInstance.getVariable(paramName);
-                            String variableValueString = variableValue == null ? "" : variableValue.toString(); 
-                            replacements.put(paramName, variableValueString);
-                        } else {
-                            try {
-                                Object variableValue = MVEL.eval(paramName, new NodeInstanceResolverFactory(this));
-                                String variableValueString = variableValue == null ? "" : variableValue.toString();
-                                replacements.put(paramName, variableValueString);
-                            } catch (Throwable t) {
-                                System.err.println("Could not find variable scope for variable " + paramName);
-                                System.err.println("when trying to replace variable in string for Work Item " + work.getName());
-                                System.err.println("Continuing without setting parameter.");
-                            }
-                        }
-                    }
+            if (entry.getValue() instanceof String && ((String) entry.getValue()).indexOf("#{") >= 0) {
+                CompiledTemplate template = expressionCache.getTemplate((String) entry.getValue());
+                if (template.hasParameters()) {
+                    ((WorkItem) workItem).setParameter(entry.getKey(), template.resolve(this, expressionCache));
                 }
-                for (Map.Entry<String, String> replacement: replacements.entrySet()) {
-                    s = s.replace("#{" + replacement.getKey() + "}", replacement.getValue());
-                }
-                ((WorkItem) workItem).setParameter(entry.getKey(), s);
             }
         }
         return workItem;
@@ -198,6 +169,9 @@ public class WorkItemNodeInstance extends StateBasedNodeInstance implements Even
 
     public void triggerCompleted(WorkItem workItem) {
         this.workItem = workItem;
+        if (workItemStart != 0 && EngineMetrics.isCollecting()) {
+            EngineMetrics.getInstance().workItemCompleted(workItem.getName(), System.nanoTime() - workItemStart);
+        }
         WorkItemNode workItemNode = getWorkItemNode();
         if (workItemNode != null) {
             for (Iterator<DataAssociation> iterator = getWorkItemNode().getOutAssociations().iterator(); iterator.hasNext(); ) {
@@ -209,7 +183,8 @@ public class WorkItemNodeInstance extends StateBasedNodeInstance implements Even
                         Object value = workItem.getResult(association.getSources().get(0));
                         if (value == null) {
                             try {
-                                value = MVEL.eval(association.getSources().get(0), new WorkItemResolverFactory(workItem));
+                                value = NodeExpressionCache.getExpressionCache(workItemNode)
+                                    .evaluate(association.getSources().get(0), new WorkItemResolverFactory(workItem));
                             } catch (Throwable t) {
                                 // do nothing
                             }
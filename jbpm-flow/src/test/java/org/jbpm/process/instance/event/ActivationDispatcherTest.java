@@ -0,0 +1,70 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.event;
+
+import org.jbpm.JbpmTestCase;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.workflow.core.Node;
+import org.jbpm.workflow.core.impl.ConnectionRef;
+import org.jbpm.workflow.core.impl.ConstraintImpl;
+import org.jbpm.workflow.core.node.CompositeNode;
+import org.jbpm.workflow.core.node.EventNode;
+import org.jbpm.workflow.core.node.MilestoneNode;
+import org.jbpm.workflow.core.node.StateNode;
+
+public class ActivationDispatcherTest extends JbpmTestCase {
+
+    public void testEventTypes() {
+        RuleFlowProcess process = new RuleFlowProcess();
+        // process ids containing '-' could not be parsed from the rule names
+        process.setId("org.jbpm.dispatcher-process");
+        MilestoneNode milestone = new MilestoneNode();
+        milestone.setId(1);
+        process.addNode(milestone);
+        StateNode state = new StateNode();
+        state.setId(2);
+        state.addConstraint(new ConnectionRef(3, Node.CONNECTION_DEFAULT_TYPE), new ConstraintImpl());
+        process.addNode(state);
+        CompositeNode composite = new CompositeNode();
+        composite.setId(4);
+        process.addNode(composite);
+        MilestoneNode nestedMilestone = new MilestoneNode();
+        nestedMilestone.setId(1);
+        composite.addNode(nestedMilestone);
+        EventNode boundaryEvent = new EventNode();
+        boundaryEvent.setId(5);
+        boundaryEvent.setMetaData("Condition", "Person()");
+        boundaryEvent.setMetaData("AttachedTo", "_2");
+        process.addNode(boundaryEvent);
+
+        ActivationDispatcher dispatcher = new ActivationDispatcher(null);
+        dispatcher.addProcess(process);
+        assertEquals("RuleFlow-Milestone-org.jbpm.dispatcher-process-1",
+            dispatcher.getEventType("RuleFlow-Milestone-org.jbpm.dispatcher-process-1"));
+        assertEquals("RuleFlow-Milestone-org.jbpm.dispatcher-process-4:1",
+            dispatcher.getEventType("RuleFlow-Milestone-org.jbpm.dispatcher-process-4:1"));
+        assertEquals("RuleFlowStateNode-org.jbpm.dispatcher-process-2",
+            dispatcher.getEventType("RuleFlowStateNode-org.jbpm.dispatcher-process-2-3-DROOLS_DEFAULT"));
+        assertEquals("RuleFlowStateEvent-org.jbpm.dispatcher-process",
+            dispatcher.getEventType("RuleFlowStateEvent-org.jbpm.dispatcher-process-5-_2"));
+        assertNull(dispatcher.getEventType("RuleFlow-Milestone-org.jbpm.dispatcher-process-2"));
+
+        dispatcher.removeProcess(process);
+        assertNull(dispatcher.getEventType("RuleFlow-Milestone-org.jbpm.dispatcher-process-1"));
+    }
+
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.jbpm.JbpmTestCase;
+import org.jbpm.process.instance.impl.ServiceInvocationCache.Invocation;
+
+public class ServiceInvocationCacheTest extends JbpmTestCase {
+
+    private ServiceInvocationCache cache = new ServiceInvocationCache();
+    private ClassLoader classLoader = getClass().getClassLoader();
+
+    public void testInvocationsAreCached() throws Exception {
+        Invocation invocation = cache.getInvocation(classLoader, Service.class.getName(),
+            "echo", Collections.singletonList(String.class.getName()));
+        assertSame(invocation, cache.getInvocation(classLoader, Service.class.getName(),
+            "echo", Arrays.asList(new String[] { String.class.getName() })));
+        assertEquals("hello", invocation.invoke(null, new Object[] { "hello" }, false));
+        assertNotSame(invocation, cache.getInvocation(classLoader, Service.class.getName(),
+            "echo", Arrays.asList(new String[] { String.class.getName(), String.class.getName() })));
+        assertSame(Service.class, cache.loadClass(classLoader, Service.class.getName()));
+    }
+
+    public void testFindInvocation() throws Exception {
+        Invocation invocation = cache.findInvocation(classLoader, Service.class.getName(), "echo", 2);
+        assertEquals(2, invocation.getMethod().getParameterTypes().length);
+        assertEquals("ab", invocation.invoke(null, new Object[] { "a", "b" }, false));
+        assertTrue(cache.findInvocation(classLoader, Service.class.getName(), "size", 0).isStatic());
+        try {
+            cache.findInvocation(classLoader, Service.class.getName(), "echo", 3);
+            fail("Expected NoSuchMethodException");
+        } catch (NoSuchMethodException e) {
+            // expected
+        }
+    }
+
+    public void testReuseInstances() throws Exception {
+        Invocation invocation = cache.getInvocation(classLoader, Service.class.getName(), "instance", null);
+        Object first = invocation.invoke(null, null, true);
+        assertSame(first, invocation.invoke(null, null, true));
+        assertNotSame(first, invocation.invoke(null, null, false));
+        Service target = new Service();
+        assertSame(target, invocation.invoke(target, null, true));
+    }
+
+    public void testInvocationsSurviveGarbageCollection() throws Exception {
+        Invocation invocation = cache.getInvocation(classLoader, Service.class.getName(), "instance", null);
+        WeakReference<Invocation> reference = new WeakReference<Invocation>(invocation);
+        invocation = null;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertNotNull(reference.get());
+        assertSame(reference.get(), cache.getInvocation(classLoader, Service.class.getName(), "instance", null));
+    }
+
+    public void testClassLoaderCanBeCollectedOnceCleared() throws Exception {
+        ClassLoader deployment = new DeploymentClassLoader(classLoader);
+        Invocation invocation = cache.getInvocation(deployment, Service.class.getName(), "instance", null);
+        assertSame(deployment, invocation.getType().getClassLoader());
+        invocation.invoke(null, null, true);
+
+        WeakReference<ClassLoader> reference = new WeakReference<ClassLoader>(deployment);
+        cache.clear(deployment);
+        deployment = null;
+        invocation = null;
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertNull(reference.get());
+    }
+
+    /**
+     * Defines its own copy of {@link Service}, like the class loader of a deployed application.
+     */
+    private static class DeploymentClassLoader extends ClassLoader {
+
+        DeploymentClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(Service.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                try {
+                    InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[4096];
+                    for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                        bytes.write(buffer, 0, n);
+                    }
+                    in.close();
+                    c = defineClass(name, bytes.toByteArray(), 0, bytes.size());
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+            return c;
+        }
+
+    }
+
+    public static class Service {
+
+        public static int size() {
+            return 0;
+        }
+
+        public String echo(String s) {
+            return s;
+        }
+
+        public String echo(String s1, String s2) {
+            return s1 + s2;
+        }
+
+        public Object instance() {
+            return this;
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.process.instance.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drools.runtime.process.ProcessContext;
+import org.junit.Test;
+
+public class XPATHReturnValueEvaluatorTest {
+
+    @Test
+    public void testEvaluateWithDifferentContexts() throws Exception {
+        XPATHReturnValueEvaluator evaluator = new XPATHReturnValueEvaluator("$x = 'a' and $y > 1", "XPath");
+        assertEquals(Boolean.TRUE, evaluator.evaluate(createContext("a", 2)));
+        assertEquals(Boolean.FALSE, evaluator.evaluate(createContext("b", 2)));
+        assertEquals(Boolean.FALSE, evaluator.evaluate(createContext("a", 1)));
+    }
+
+    @Test
+    public void testConcurrentEvaluation() throws Exception {
+        final XPATHReturnValueEvaluator evaluator = new XPATHReturnValueEvaluator("$x = 'a' and $y > 1", "XPath");
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final String x = i % 2 == 0 ? "a" : "b";
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        ProcessContext context = createContext(x, 2);
+                        for (int j = 0; j < 1000; j++) {
+                            assertEquals(Boolean.valueOf("a".equals(x)), evaluator.evaluate(context));
+                        }
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+
+    private static ProcessContext createContext(String x, int y) {
+        final Map<String, Object> variables = new HashMap<String, Object>();
+        variables.put("x", x);
+        variables.put("y", y);
+        return (ProcessContext) Proxy.newProxyInstance(XPATHReturnValueEvaluatorTest.class.getClassLoader(),
+            new Class[] { ProcessContext.class },
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("getVariable".equals(method.getName())) {
+                        return variables.get(args[0]);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+}
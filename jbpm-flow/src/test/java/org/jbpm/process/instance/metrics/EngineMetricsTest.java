@@ -0,0 +1,118 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.metrics;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.common.AbstractRuleBase;
+import org.drools.impl.InternalKnowledgeBase;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.WorkItem;
+import org.drools.runtime.process.WorkItemHandler;
+import org.drools.runtime.process.WorkItemManager;
+import org.jbpm.JbpmTestCase;
+import org.jbpm.ruleflow.core.RuleFlowProcessFactory;
+import org.jbpm.workflow.core.node.WorkItemNode;
+
+public class EngineMetricsTest extends JbpmTestCase {
+
+    private EngineMetrics metrics = EngineMetrics.getInstance();
+    private WorkItem workItem;
+
+    public void setUp() {
+        metrics.reset();
+    }
+
+    public void tearDown() {
+        metrics.setEnabled(false);
+        metrics.reset();
+    }
+
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500500, histogram.getMean(), 0.1);
+        assertEquals(500000, histogram.getValueAtPercentile(50), 500000 * 0.04);
+        assertEquals(990000, histogram.getValueAtPercentile(99), 990000 * 0.04);
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value *= 3) {
+            long highest = Histogram.highestValueAt(Histogram.indexOf(value));
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value / 32);
+        }
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    public void testDisabledMetrics() {
+        StatefulKnowledgeSession ksession = createSession();
+        ksession.startProcess("org.jbpm.process.metrics");
+        assertEquals(0, metrics.getStartedProcessInstances());
+        assertEquals(0, metrics.getTriggeredNodeInstances());
+        assertTrue(ksession.getProcessEventListeners().isEmpty());
+    }
+
+    public void testEnabledMetrics() {
+        metrics.setEnabled(true);
+        StatefulKnowledgeSession ksession = createSession();
+        ksession.startProcess("org.jbpm.process.metrics");
+        assertEquals(1, metrics.getStartedProcessInstances("org.jbpm.process.metrics"));
+        assertEquals(0, metrics.getCompletedProcessInstances("org.jbpm.process.metrics"));
+
+        ksession.getWorkItemManager().completeWorkItem(workItem.getId(), null);
+        assertEquals(1, metrics.getCompletedProcessInstances("org.jbpm.process.metrics"));
+        assertEquals(1, metrics.getCompletedWorkItems());
+        assertEquals(1, metrics.getWorkItemTimes().get("MyWork").getCount());
+        assertEquals(1, metrics.getNodeTriggerTimes().get(WorkItemNode.class).getCount());
+        assertEquals(3, metrics.getTriggeredNodeInstances());
+
+        long signals = metrics.getSignals();
+        ksession.signalEvent("unknownEvent", null);
+        assertEquals(signals + 1, metrics.getSignals());
+        assertEquals(0, metrics.getSignalFanOut(100));
+        assertTrue(metrics.report().contains("WorkItemNode"));
+    }
+
+    private StatefulKnowledgeSession createSession() {
+        RuleFlowProcessFactory factory = RuleFlowProcessFactory.createProcess("org.jbpm.process.metrics");
+        factory
+            .name("Metrics").packageName("org.jbpm")
+            .startNode(1).name("Start").done()
+            .workItemNode(2).name("WorkItem").workName("MyWork").done()
+            .endNode(3).name("End").done()
+            .connection(1, 2)
+            .connection(2, 3);
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess(factory.validate().getProcess());
+        StatefulKnowledgeSession ksession = kbase.newStatefulKnowledgeSession();
+        ksession.getWorkItemManager().registerWorkItemHandler("MyWork", new WorkItemHandler() {
+            public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+                EngineMetricsTest.this.workItem = workItem;
+            }
+            public void abortWorkItem(WorkItem workItem, WorkItemManager manager) {
+            }
+        });
+        return ksession;
+    }
+
+}
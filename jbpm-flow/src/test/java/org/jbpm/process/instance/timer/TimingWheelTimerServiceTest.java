@@ -0,0 +1,195 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.timer;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.common.AbstractRuleBase;
+import org.drools.impl.InternalKnowledgeBase;
+import org.drools.runtime.KnowledgeSessionConfiguration;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.drools.time.Job;
+import org.drools.time.JobContext;
+import org.drools.time.JobHandle;
+import org.drools.time.Trigger;
+import org.drools.time.impl.IntervalTrigger;
+import org.jbpm.process.instance.timer.TimerManager.ProcessJobContext;
+import org.jbpm.ruleflow.core.RuleFlowProcessFactory;
+import org.junit.After;
+import org.junit.Test;
+
+public class TimingWheelTimerServiceTest {
+
+    private TimingWheelTimerService timerService = new TimingWheelTimerService( 10, 1 );
+
+    @After
+    public void tearDown() {
+        timerService.shutdown();
+    }
+
+    @Test
+    public void testJobsFireOnTime() throws Exception {
+        final Map<Long, Long> fired = new ConcurrentHashMap<Long, Long>();
+        final CountDownLatch latch = new CountDownLatch( 150 );
+        Job job = new Job() {
+            public void execute(JobContext ctx) {
+                fired.put( ((ProcessJobContext) ctx).getTimer().getId(), System.currentTimeMillis() );
+                latch.countDown();
+            }
+        };
+        Random random = new Random( 42 );
+        Map<Long, Long> planned = new ConcurrentHashMap<Long, Long>();
+        JobHandle[] handles = new JobHandle[200];
+        for ( int i = 0; i < 200; i++ ) {
+            long delay = random.nextInt( 800 );
+            planned.put( (long) i, timerService.getCurrentTime() + delay );
+            handles[i] = schedule( job, i, delay, 0 );
+        }
+        for ( int i = 150; i < 200; i++ ) {
+            timerService.removeJob( handles[i] );
+        }
+        assertTrue( latch.await( 5, TimeUnit.SECONDS ) );
+        Thread.sleep( 100 );
+        assertEquals( 150, fired.size() );
+        for ( Map.Entry<Long, Long> entry: fired.entrySet() ) {
+            assertTrue( entry.getKey() < 150 );
+            assertTrue( entry.getValue() >= planned.get( entry.getKey() ) );
+        }
+        assertEquals( 0, timerService.size() );
+    }
+
+    @Test
+    public void testRepeatingJob() throws Exception {
+        final CountDownLatch latch = new CountDownLatch( 3 );
+        JobHandle handle = schedule( new Job() {
+            public void execute(JobContext ctx) {
+                latch.countDown();
+            }
+        }, 1, 50, 50 );
+        assertTrue( latch.await( 2, TimeUnit.SECONDS ) );
+        assertTrue( timerService.removeJob( handle ) );
+        assertEquals( 0, timerService.size() );
+    }
+
+    @Test
+    public void testLongTimers() {
+        Job job = new Job() {
+            public void execute(JobContext ctx) {
+                fail( "Job should not fire" );
+            }
+        };
+        // 30 days and far beyond the range of the wheel
+        JobHandle handle1 = schedule( job, 1, 30L * 24 * 60 * 60 * 1000, 0 );
+        JobHandle handle2 = schedule( job, 2, Long.MAX_VALUE / 4, 0 );
+        assertEquals( 2, timerService.size() );
+        assertTrue( timerService.removeJob( handle1 ) );
+        assertFalse( timerService.removeJob( handle1 ) );
+        assertTrue( timerService.removeJob( handle2 ) );
+        assertEquals( 0, timerService.size() );
+    }
+
+    @Test
+    public void testCascading() {
+        TimingWheelTimerService service = new TimingWheelTimerService( 1, 1 );
+        try {
+            Job job = new Job() {
+                public void execute(JobContext ctx) {
+                }
+            };
+            // one job for every level of the wheel, all far enough in the future
+            // not to be reached by the ticker thread during the test
+            long start = service.getCurrentTime() + 60000;
+            long delay = 1;
+            for ( int i = 0; i < TimingWheelTimerService.LEVELS; i++ ) {
+                schedule( service, job, i, start, delay, 0 );
+                delay *= TimingWheelTimerService.SLOTS;
+            }
+            synchronized ( service ) {
+                delay = 1;
+                for ( int i = 0; i < TimingWheelTimerService.LEVELS; i++ ) {
+                    assertEquals( 0, service.expire( start + delay - 1 ).size() );
+                    assertEquals( 1, service.expire( start + delay + 1 ).size() );
+                    delay *= TimingWheelTimerService.SLOTS;
+                }
+                assertEquals( 0, service.size() );
+            }
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testProcessTimer() throws Exception {
+        RuleFlowProcessFactory factory = RuleFlowProcessFactory.createProcess( "org.jbpm.process.timer.wheel" );
+        factory
+            .name( "Timer" ).packageName( "org.jbpm" )
+            .startNode( 1 ).name( "Start" ).done()
+            .timerNode( 2 ).name( "Timer" ).delay( "200" ).done()
+            .endNode( 3 ).name( "End" ).done()
+            .connection( 1, 2 )
+            .connection( 2, 3 );
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess( factory.validate().getProcess() );
+        Properties properties = new Properties();
+        properties.setProperty( "drools.timerService", TimingWheelTimerService.class.getName() );
+        KnowledgeSessionConfiguration config = KnowledgeBaseFactory.newKnowledgeSessionConfiguration( properties );
+        StatefulKnowledgeSession ksession = kbase.newStatefulKnowledgeSession( config, null );
+        try {
+            assertTrue( ksession.getSessionClock() instanceof TimingWheelTimerService );
+            ProcessInstance processInstance = ksession.startProcess( "org.jbpm.process.timer.wheel" );
+            assertEquals( ProcessInstance.STATE_ACTIVE, processInstance.getState() );
+            long end = System.currentTimeMillis() + 5000;
+            while ( processInstance.getState() == ProcessInstance.STATE_ACTIVE && System.currentTimeMillis() < end ) {
+                Thread.sleep( 50 );
+            }
+            assertEquals( ProcessInstance.STATE_COMPLETED, processInstance.getState() );
+        } finally {
+            ksession.dispose();
+        }
+    }
+
+    private JobHandle schedule(Job job, long id, long delay, long period) {
+        return schedule( timerService, job, id, timerService.getCurrentTime(), delay, period );
+    }
+
+    private JobHandle schedule(TimingWheelTimerService service, Job job, long id, long start, long delay, long period) {
+        TimerInstance timer = new TimerInstance();
+        timer.setId( id );
+        Trigger trigger = new IntervalTrigger( start,
+                                               null,
+                                               null,
+                                               -1,
+                                               delay,
+                                               period,
+                                               null,
+                                               null );
+        return service.scheduleJob( job,
+                                    new ProcessJobContext( timer, trigger, id, null ),
+                                    trigger );
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.core.impl;
+
+import java.util.List;
+
+import org.drools.definition.process.Node;
+import org.jbpm.JbpmTestCase;
+import org.jbpm.process.core.event.EventFilter;
+import org.jbpm.process.core.event.EventTypeFilter;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.workflow.core.node.ActionNode;
+import org.jbpm.workflow.core.node.EventNode;
+
+public class EventNodeIndexTest extends JbpmTestCase {
+
+    public void testIndexByEventType() {
+        RuleFlowProcess process = new RuleFlowProcess();
+        EventNode eventNode1 = createEventNode(1, "event1");
+        process.addNode(eventNode1);
+        EventNode eventNode2 = createEventNode(2, "event2");
+        process.addNode(eventNode2);
+        ActionNode actionNode = new ActionNode();
+        actionNode.setId(3);
+        actionNode.setName("action");
+        process.addNode(actionNode);
+
+        EventNodeIndex index = process.getEventNodeIndex();
+        List<Node> nodes = index.getEventNodes("event1");
+        assertEquals(1, nodes.size());
+        assertSame(eventNode1, nodes.get(0));
+        nodes = index.getEventNodes("event2");
+        assertEquals(1, nodes.size());
+        assertSame(eventNode2, nodes.get(0));
+        assertTrue(index.getEventNodes("unknown").isEmpty());
+        assertSame(actionNode, index.getDynamicNodes("action").get(0));
+        assertTrue(index.getDynamicNodes("unknown").isEmpty());
+    }
+
+    public void testCustomFilterIsReturnedForEveryType() {
+        RuleFlowProcess process = new RuleFlowProcess();
+        EventNode eventNode1 = createEventNode(1, "event1");
+        process.addNode(eventNode1);
+        EventNode eventNode2 = new EventNode();
+        eventNode2.setId(2);
+        eventNode2.addEventFilter(new EventFilter() {
+            public boolean acceptsEvent(String type, Object event) {
+                return type.startsWith("event");
+            }
+        });
+        process.addNode(eventNode2);
+
+        EventNodeIndex index = process.getEventNodeIndex();
+        assertEquals(2, index.getEventNodes("event1").size());
+        List<Node> nodes = index.getEventNodes("event3");
+        assertEquals(1, nodes.size());
+        assertSame(eventNode2, nodes.get(0));
+    }
+
+    public void testIndexRebuiltWhenNodeAdded() {
+        RuleFlowProcess process = new RuleFlowProcess();
+        process.addNode(createEventNode(1, "event1"));
+        assertTrue(process.getEventNodeIndex().getEventNodes("event2").isEmpty());
+        process.addNode(createEventNode(2, "event2"));
+        assertEquals(1, process.getEventNodeIndex().getEventNodes("event2").size());
+    }
+
+    private EventNode createEventNode(long id, String type) {
+        EventNode eventNode = new EventNode();
+        eventNode.setId(id);
+        EventTypeFilter eventFilter = new EventTypeFilter();
+        eventFilter.setType(type);
+        eventNode.addEventFilter(eventFilter);
+        return eventNode;
+    }
+
+}
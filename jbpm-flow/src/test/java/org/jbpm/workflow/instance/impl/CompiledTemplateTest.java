@@ -0,0 +1,103 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.common.AbstractRuleBase;
+import org.drools.definition.process.Node;
+import org.drools.impl.InternalKnowledgeBase;
+import org.drools.process.core.datatype.impl.type.StringDataType;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.WorkItem;
+import org.drools.runtime.process.WorkItemHandler;
+import org.drools.runtime.process.WorkItemManager;
+import org.jbpm.JbpmTestCase;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.ruleflow.core.RuleFlowProcessFactory;
+
+public class CompiledTemplateTest extends JbpmTestCase {
+
+    public void testCompile() {
+        CompiledTemplate template = CompiledTemplate.compile("#{a} and #{b.c} or #{a}!");
+        assertTrue(template.hasParameters());
+        assertEquals(Arrays.asList("a", "b.c"), Arrays.asList(template.getParameterNames()));
+        assertFalse(CompiledTemplate.compile("no parameters").hasParameters());
+    }
+
+    public void testWorkItemParameters() {
+        RuleFlowProcessFactory factory = RuleFlowProcessFactory.createProcess("org.jbpm.process.template");
+        factory
+            .name("Template").packageName("org.jbpm")
+            .variable("name", new StringDataType())
+            .startNode(1).name("Start").done()
+            .workItemNode(2).name("WorkItem").workName("MyWork")
+                .workParameter("Text", "Hello #{name}, #{name.length()} chars #{unknown.value}")
+                .inMapping("Length", "name.length()")
+                .inMapping("Name", "name").done()
+            .endNode(3).name("End").done()
+            .connection(1, 2)
+            .connection(2, 3);
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess(factory.validate().getProcess());
+        StatefulKnowledgeSession ksession = kbase.newStatefulKnowledgeSession();
+        final List<WorkItem> workItems = new ArrayList<WorkItem>();
+        ksession.getWorkItemManager().registerWorkItemHandler("MyWork", new WorkItemHandler() {
+            public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+                workItems.add(workItem);
+            }
+            public void abortWorkItem(WorkItem workItem, WorkItemManager manager) {
+            }
+        });
+
+        // the second instance uses the templates and expressions compiled for the first one
+        for (String name: new String[] { "Alice", "Bob" }) {
+            Map<String, Object> parameters = new HashMap<String, Object>();
+            parameters.put("name", name);
+            ksession.startProcess("org.jbpm.process.template", parameters);
+        }
+        assertEquals(2, workItems.size());
+        assertEquals("Hello Alice, 5 chars #{unknown.value}", workItems.get(0).getParameter("Text"));
+        assertEquals(5, workItems.get(0).getParameter("Length"));
+        assertEquals("Hello Bob, 3 chars #{unknown.value}", workItems.get(1).getParameter("Text"));
+        assertEquals(3, workItems.get(1).getParameter("Length"));
+        assertEquals("Bob", workItems.get(1).getParameter("Name"));
+
+        // parameter values copied from variables are not kept
+        Node node = ((RuleFlowProcess) kbase.getProcess("org.jbpm.process.template")).getNode(2);
+        assertEquals(1, NodeExpressionCache.getExpressionCache(node).getTemplateCount());
+    }
+
+    public void testTemplateCacheBounded() {
+        NodeExpressionCache expressionCache = new NodeExpressionCache();
+        for (int i = 0; i < 10; i++) {
+            assertFalse(expressionCache.getTemplate("value " + i).hasParameters());
+        }
+        assertEquals(0, expressionCache.getTemplateCount());
+        for (int i = 0; i < NodeExpressionCache.MAX_TEMPLATES + 10; i++) {
+            assertTrue(expressionCache.getTemplate("#{a} " + i).hasParameters());
+        }
+        assertEquals(NodeExpressionCache.MAX_TEMPLATES, expressionCache.getTemplateCount());
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.common.AbstractRuleBase;
+import org.drools.impl.InternalKnowledgeBase;
+import org.drools.process.core.datatype.impl.type.StringDataType;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.jbpm.JbpmTestCase;
+import org.jbpm.ruleflow.core.RuleFlowProcessFactory;
+
+public class DirtyTrackingTest extends JbpmTestCase {
+
+    public void testDirtyTracking() {
+        RuleFlowProcessFactory factory = RuleFlowProcessFactory.createProcess("org.jbpm.process.dirty");
+        factory
+            .name("Dirty tracking").packageName("org.jbpm")
+            .variable("x", new StringDataType())
+            .startNode(1).name("Start").done()
+            .eventNode(2).name("Event").eventType("myEvent").done()
+            .endNode(3).name("End").done()
+            .connection(1, 2)
+            .connection(2, 3);
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess(factory.validate().getProcess());
+        StatefulKnowledgeSession ksession = kbase.newStatefulKnowledgeSession();
+
+        WorkflowProcessInstanceImpl processInstance = (WorkflowProcessInstanceImpl)
+            ksession.startProcess("org.jbpm.process.dirty");
+        assertTrue(processInstance.isDirty());
+        final List<WorkflowProcessInstanceImpl> changed = new ArrayList<WorkflowProcessInstanceImpl>();
+        processInstance.setChangeListener(new ProcessInstanceChangeListener() {
+            public void processInstanceChanged(WorkflowProcessInstanceImpl processInstance) {
+                changed.add(processInstance);
+            }
+        });
+
+        // reading does not change the process instance
+        processInstance.resetDirty();
+        processInstance.getVariable("x");
+        processInstance.getNodeInstances();
+        assertFalse(processInstance.isDirty());
+        assertTrue(changed.isEmpty());
+
+        processInstance.setVariable("x", "value");
+        assertTrue(processInstance.isDirty());
+        processInstance.setVariable("x", "other value");
+        assertEquals(1, changed.size());
+
+        processInstance.resetDirty();
+        ksession.signalEvent("myEvent", null);
+        assertTrue(processInstance.isDirty());
+        assertEquals(2, changed.size());
+        assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getState());
+    }
+
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.common.AbstractRuleBase;
+import org.drools.event.process.ProcessCompletedEvent;
+import org.drools.event.process.ProcessEventListener;
+import org.drools.event.process.ProcessNodeLeftEvent;
+import org.drools.event.process.ProcessNodeTriggeredEvent;
+import org.drools.event.process.ProcessStartedEvent;
+import org.drools.event.process.ProcessVariableChangedEvent;
+import org.drools.impl.InternalKnowledgeBase;
+import org.drools.process.core.datatype.impl.type.ObjectDataType;
+import org.drools.runtime.Environment;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.jbpm.JbpmTestCase;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.ruleflow.core.RuleFlowProcessFactory;
+import org.jbpm.ruleflow.core.factory.CompositeNodeFactory;
+import org.jbpm.ruleflow.core.factory.ForEachNodeFactory;
+import org.jbpm.workflow.core.impl.NodeImpl;
+import org.jbpm.workflow.core.node.Join;
+import org.jbpm.workflow.core.node.Split;
+
+public class QueuedExecutionTest extends JbpmTestCase {
+
+    protected void tearDown() throws Exception {
+        System.clearProperty(WorkflowProcessInstanceImpl.QUEUED_EXECUTION);
+        super.tearDown();
+    }
+
+    public void testSameEventsAsRecursiveExecution() {
+        RuleFlowProcessFactory factory = RuleFlowProcessFactory.createProcess("org.jbpm.process.queued");
+        factory
+            .name("Queued execution").packageName("org.jbpm")
+            .startNode(1).name("Start").done()
+            .splitNode(2).name("Split").type(Split.TYPE_AND).done()
+            .joinNode(3).name("Branch1").type(Join.TYPE_XOR).done()
+            .joinNode(4).name("Branch1b").type(Join.TYPE_XOR).done()
+            .eventNode(5).name("Event").eventType("myEvent").done()
+            .joinNode(6).name("Branch2").type(Join.TYPE_XOR).done()
+            .joinNode(7).name("Join").type(Join.TYPE_AND).done()
+            .endNode(8).name("End").done()
+            .connection(1, 2)
+            .connection(2, 3)
+            .connection(3, 4)
+            .connection(4, 7)
+            .connection(2, 5)
+            .connection(5, 6)
+            .connection(6, 7)
+            .connection(7, 8);
+        RuleFlowProcess process = factory.validate().getProcess();
+
+        List<String> recursiveEvents = execute(process, false);
+        List<String> queuedEvents = execute(process, true);
+        assertTrue(recursiveEvents.contains("beforeNodeTriggered End"));
+        assertEquals(recursiveEvents, queuedEvents);
+    }
+
+    public void testCompositeNodeSameEventsAsRecursiveExecution() {
+        RuleFlowProcessFactory factory = RuleFlowProcessFactory.createProcess("org.jbpm.process.queued");
+        factory
+            .name("Queued execution").packageName("org.jbpm")
+            .startNode(1).name("Start").done();
+        CompositeNodeFactory composite = factory.compositeNode(2);
+        composite
+            .joinNode(1).name("Inner1").type(Join.TYPE_XOR).done()
+            .joinNode(2).name("Inner2").type(Join.TYPE_XOR).done()
+            .connection(1, 2);
+        composite.linkIncomingConnections(1).linkOutgoingConnections(2).done();
+        factory
+            .joinNode(3).name("After").type(Join.TYPE_XOR).done()
+            .endNode(4).name("End").done()
+            .connection(1, 2)
+            .connection(2, 3)
+            .connection(3, 4);
+        RuleFlowProcess process = factory.validate().getProcess();
+        ((NodeImpl) process.getNode(2)).setName("Composite");
+
+        List<String> recursiveEvents = executeToCompletion(process, null, false);
+        List<String> queuedEvents = executeToCompletion(process, null, true);
+        assertTrue(recursiveEvents.contains("beforeNodeTriggered Inner2"));
+        assertEquals(recursiveEvents, queuedEvents);
+    }
+
+    public void testForEachNodeSameEventsAsRecursiveExecution() {
+        ObjectDataType listType = new ObjectDataType();
+        listType.setClassName("java.util.List");
+        ObjectDataType itemType = new ObjectDataType();
+        itemType.setClassName("java.lang.String");
+        RuleFlowProcessFactory factory = RuleFlowProcessFactory.createProcess("org.jbpm.process.queued");
+        factory
+            .name("Queued execution").packageName("org.jbpm")
+            .variable("items", listType)
+            .startNode(1).name("Start").done();
+        ForEachNodeFactory forEach = factory.forEachNode(2)
+            .collectionExpression("items")
+            .variable("item", itemType);
+        forEach
+            .joinNode(1).name("Inner1").type(Join.TYPE_XOR).done()
+            .joinNode(2).name("Inner2").type(Join.TYPE_XOR).done()
+            .connection(1, 2);
+        forEach.linkIncomingConnections(1).linkOutgoingConnections(2).done();
+        factory
+            .joinNode(3).name("After").type(Join.TYPE_XOR).done()
+            .endNode(4).name("End").done()
+            .connection(1, 2)
+            .connection(2, 3)
+            .connection(3, 4);
+        RuleFlowProcess process = factory.validate().getProcess();
+        ((NodeImpl) process.getNode(2)).setName("ForEach");
+
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("items", Arrays.asList("a", "b", "c"));
+        List<String> recursiveEvents = executeToCompletion(process, parameters, false);
+        List<String> queuedEvents = executeToCompletion(process, parameters, true);
+        assertTrue(recursiveEvents.contains("beforeNodeTriggered Inner2"));
+        assertEquals(recursiveEvents, queuedEvents);
+    }
+
+    public void testLongChain() {
+        int length = 2000;
+        RuleFlowProcessFactory factory = RuleFlowProcessFactory.createProcess("org.jbpm.process.queued");
+        factory.name("Long chain").packageName("org.jbpm")
+            .startNode(1).name("Start").done();
+        for (int i = 2; i <= length; i++) {
+            factory.joinNode(i).name("Join" + i).type(Join.TYPE_XOR).done()
+                .connection(i - 1, i);
+        }
+        factory.endNode(length + 1).name("End").done()
+            .connection(length, length + 1);
+
+        System.setProperty(WorkflowProcessInstanceImpl.QUEUED_EXECUTION, "true");
+        StatefulKnowledgeSession ksession = createSession(factory.validate().getProcess());
+        final int[] maxDepth = new int[1];
+        ksession.addEventListener(new RecordingListener(new ArrayList<String>()) {
+            public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+                maxDepth[0] = Math.max(maxDepth[0], Thread.currentThread().getStackTrace().length);
+            }
+        });
+        ProcessInstance processInstance = ksession.startProcess("org.jbpm.process.queued");
+        assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getState());
+        // the stack depth does not grow with the length of the chain
+        assertTrue("Stack depth " + maxDepth[0], maxDepth[0] < 200);
+    }
+
+    private List<String> execute(RuleFlowProcess process, boolean queued) {
+        StatefulKnowledgeSession ksession = createSession(process, queued);
+        List<String> events = new ArrayList<String>();
+        ksession.addEventListener(new RecordingListener(events));
+        WorkflowProcessInstanceImpl processInstance = (WorkflowProcessInstanceImpl)
+            ksession.createProcessInstance("org.jbpm.process.queued", null);
+        // taken from the environment of the session
+        assertEquals(queued, processInstance.isQueuedExecution());
+        ksession.startProcessInstance(processInstance.getId());
+        assertEquals(ProcessInstance.STATE_ACTIVE, processInstance.getState());
+        ksession.signalEvent("myEvent", null);
+        assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getState());
+        return events;
+    }
+
+    private List<String> executeToCompletion(RuleFlowProcess process, Map<String, Object> parameters, boolean queued) {
+        StatefulKnowledgeSession ksession = createSession(process, queued);
+        List<String> events = new ArrayList<String>();
+        ksession.addEventListener(new RecordingListener(events));
+        ProcessInstance processInstance = ksession.startProcess("org.jbpm.process.queued", parameters);
+        assertEquals(queued, ((WorkflowProcessInstanceImpl) processInstance).isQueuedExecution());
+        assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getState());
+        return events;
+    }
+
+    private StatefulKnowledgeSession createSession(RuleFlowProcess process) {
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess(process);
+        return kbase.newStatefulKnowledgeSession();
+    }
+
+    private StatefulKnowledgeSession createSession(RuleFlowProcess process, boolean queued) {
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess(process);
+        Environment env = KnowledgeBaseFactory.newEnvironment();
+        env.set(WorkflowProcessInstanceImpl.QUEUED_EXECUTION, Boolean.toString(queued));
+        return kbase.newStatefulKnowledgeSession(null, env);
+    }
+
+    private static class RecordingListener implements ProcessEventListener {
+
+        private final List<String> events;
+
+        private RecordingListener(List<String> events) {
+            this.events = events;
+        }
+
+        public void beforeProcessStarted(ProcessStartedEvent event) {
+            events.add("beforeProcessStarted");
+        }
+
+        public void afterProcessStarted(ProcessStartedEvent event) {
+            events.add("afterProcessStarted");
+        }
+
+        public void beforeProcessCompleted(ProcessCompletedEvent event) {
+            events.add("beforeProcessCompleted");
+        }
+
+        public void afterProcessCompleted(ProcessCompletedEvent event) {
+            events.add("afterProcessCompleted");
+        }
+
+        public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+            events.add("beforeNodeTriggered " + event.getNodeInstance().getNodeName());
+        }
+
+        public void afterNodeTriggered(ProcessNodeTriggeredEvent event) {
+            events.add("afterNodeTriggered " + event.getNodeInstance().getNodeName());
+        }
+
+        public void beforeNodeLeft(ProcessNodeLeftEvent event) {
+            events.add("beforeNodeLeft " + event.getNodeInstance().getNodeName());
+        }
+
+        public void afterNodeLeft(ProcessNodeLeftEvent event) {
+            events.add("afterNodeLeft " + event.getNodeInstance().getNodeName());
+        }
+
+        public void beforeVariableChanged(ProcessVariableChangedEvent event) {
+        }
+
+        public void afterVariableChanged(ProcessVariableChangedEvent event) {
+        }
+
+    }
+
+}
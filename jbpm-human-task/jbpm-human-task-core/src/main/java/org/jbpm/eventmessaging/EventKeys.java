@@ -16,31 +16,53 @@
 
 package org.jbpm.eventmessaging;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * The targets registered for events, by key. Targets are registered and events
+ * are fired from several server threads concurrently: the lists returned by
+ * {@link #getTargets(EventKey)} can be iterated while they are changed, and a
+ * key is removed atomically once its last target is unregistered.
+ */
 public class EventKeys {
-    private Map<EventKey, List<EventTriggerTransport>> keys;
+    private ConcurrentMap<EventKey, List<EventTriggerTransport>> keys;
     
     public EventKeys() {
-        keys = new HashMap<EventKey, List<EventTriggerTransport>>();
+        keys = new ConcurrentHashMap<EventKey, List<EventTriggerTransport>>();
     }
     
     public void register(EventKey key, EventTriggerTransport target) {
-        List<EventTriggerTransport> list = keys.get( key);
-        if ( list == null ) {
-            list = new ArrayList<EventTriggerTransport>();
-            keys.put( key, list );
+        while ( true ) {
+            List<EventTriggerTransport> list = keys.get( key );
+            if ( list == null ) {
+                List<EventTriggerTransport> newList = new CopyOnWriteArrayList<EventTriggerTransport>();
+                list = keys.putIfAbsent( key, newList );
+                if ( list == null ) {
+                    list = newList;
+                }
+            }
+            synchronized ( list ) {
+                // otherwise the list was emptied and removed in the meantime
+                if ( keys.get( key ) == list ) {
+                    list.add( target );
+                    return;
+                }
+            }
         }
-        list.add( target );
     }
     
     public void unregister(EventKey key, EventTriggerTransport target) {
-        List<EventTriggerTransport> list = keys.get( key);
+        List<EventTriggerTransport> list = keys.get( key );
         if ( list != null ) {
-            list.remove( target );
+            synchronized ( list ) {
+                list.remove( target );
+                if ( list.isEmpty() ) {
+                    keys.remove( key, list );
+                }
+            }
         }
     }
     
@@ -18,6 +18,7 @@ package org.jbpm.process.workitem.wsht;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.drools.runtime.Environment;
 
 import org.jbpm.task.utils.OnErrorAction;
@@ -37,7 +38,9 @@ import org.jbpm.task.event.*;
 import org.jbpm.task.service.TaskClientHandler;
 import org.jbpm.task.service.TaskClientHandler.GetContentResponseHandler;
 import org.jbpm.task.service.TaskClientHandler.GetTaskResponseHandler;
+import org.jbpm.task.service.TaskResponseTimeoutException;
 import org.jbpm.task.service.responsehandlers.AbstractBaseResponseHandler;
+import org.jbpm.task.service.responsehandlers.TaskFuture;
 import org.jbpm.task.utils.ContentMarshallerHelper;
 
 public class AsyncGenericHTWorkItemHandler extends AbstractHTWorkItemHandler {
@@ -49,6 +52,7 @@ public class AsyncGenericHTWorkItemHandler extends AbstractHTWorkItemHandler {
     private boolean local = false;
     private boolean connected = false;
     private ClassLoader classLoader;
+    private long taskCreationTimeout;
 
     public AsyncGenericHTWorkItemHandler(KnowledgeRuntime session, OnErrorAction action, ClassLoader classLoader) {
         super(session, action);
@@ -107,6 +111,19 @@ public class AsyncGenericHTWorkItemHandler extends AbstractHTWorkItemHandler {
         this.classLoader = classLoader;
     }
 
+    public long getTaskCreationTimeout() {
+        return taskCreationTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds the task server has to confirm the creation of a task, after
+     * which the task is looked up and the outcome logged. The work item is left as it is, as the
+     * task may still be created. No limit by default.
+     */
+    public void setTaskCreationTimeout(long taskCreationTimeout) {
+        this.taskCreationTimeout = taskCreationTimeout;
+    }
+
     private void registerTaskEvents() {
         TaskCompletedHandler eventResponseHandler = new TaskCompletedHandler(client, classLoader);
         TaskEventKey key = new TaskEventKey(TaskCompletedEvent.class, -1);
@@ -154,9 +171,11 @@ public class AsyncGenericHTWorkItemHandler extends AbstractHTWorkItemHandler {
         Task task = createTaskBasedOnWorkItemParams(workItem);
         ContentData content = createTaskContentBasedOnWorkItemParams(workItem);
         connect();
-        client.addTask(task, content, new TaskAddedHandler(workItem.getId()));
-
-
+        TaskAddedHandler taskAddedHandler = new TaskAddedHandler(workItem.getId());
+        client.addTask(task, content, taskAddedHandler);
+        if (taskCreationTimeout > 0) {
+            taskAddedHandler.expireAfter(taskCreationTimeout, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
@@ -165,7 +184,7 @@ public class AsyncGenericHTWorkItemHandler extends AbstractHTWorkItemHandler {
         client.getTaskByWorkItemId(workItem.getId(), abortTaskResponseHandler);
     }
 
-    private class TaskAddedHandler extends AbstractBaseResponseHandler implements TaskClientHandler.AddTaskResponseHandler {
+    private class TaskAddedHandler extends TaskFuture<Long> implements TaskClientHandler.AddTaskResponseHandler {
 
         private long workItemId;
 
@@ -174,10 +193,26 @@ public class AsyncGenericHTWorkItemHandler extends AbstractHTWorkItemHandler {
         }
 
         public void execute(long taskId) {
+            set(taskId);
         }
 
         @Override
-        public synchronized void setError(RuntimeException error) {
+        public void setError(RuntimeException error) {
+            if (error instanceof TaskResponseTimeoutException) {
+                // the task server may still create the task, so the work item is left as it is
+                // and a server error still applies the error action when it arrives
+                logger.warn("Creation of the task of work item " + workItemId + " not confirmed within "
+                        + taskCreationTimeout + " ms, looking the task up");
+                client.getTaskByWorkItemId(workItemId, new TaskCreationCheckHandler(workItemId));
+                return;
+            }
+            handleError(error);
+        }
+
+        private synchronized void handleError(RuntimeException error) {
+            if (isDone()) {
+                return;
+            }
             super.setError(error);
 
             if (action.equals(OnErrorAction.ABORT)) {
@@ -195,6 +230,30 @@ public class AsyncGenericHTWorkItemHandler extends AbstractHTWorkItemHandler {
         }
     }
 
+    private static class TaskCreationCheckHandler extends AbstractBaseResponseHandler implements GetTaskResponseHandler {
+
+        private long workItemId;
+
+        public TaskCreationCheckHandler(long workItemId) {
+            this.workItemId = workItemId;
+        }
+
+        public void execute(Task task) {
+            if (task == null) {
+                logger.error("No task found for work item " + workItemId + " after its creation timed out,"
+                        + " the work item waits for the response of the task server");
+            } else {
+                logger.info("Task " + task.getId() + " of work item " + workItemId + " was created");
+            }
+        }
+
+        @Override
+        public void setError(RuntimeException error) {
+            super.setError(error);
+            logger.error("Could not look up the task of work item " + workItemId + " after its creation timed out", error);
+        }
+    }
+
     private class TaskCompletedHandler extends AbstractBaseResponseHandler implements EventResponseHandler {
 
         private AsyncTaskService client;
@@ -20,6 +20,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.drools.runtime.Environment;
 
 import org.drools.runtime.KnowledgeRuntime;
@@ -51,7 +52,9 @@ import org.jbpm.task.service.ContentData;
 import org.jbpm.task.service.TaskClientHandler.AddTaskResponseHandler;
 import org.jbpm.task.service.TaskClientHandler.GetContentResponseHandler;
 import org.jbpm.task.service.TaskClientHandler.GetTaskResponseHandler;
+import org.jbpm.task.service.TaskResponseTimeoutException;
 import org.jbpm.task.service.responsehandlers.AbstractBaseResponseHandler;
+import org.jbpm.task.service.responsehandlers.TaskFuture;
 import org.jbpm.task.utils.ContentMarshallerHelper;
 import org.jbpm.task.utils.OnErrorAction;
 import org.slf4j.Logger;
@@ -69,6 +72,7 @@ public class AsyncWSHumanTaskHandler implements WorkItemHandler {
     private WorkItemManager manager = null;
     private KnowledgeRuntime session;
     private OnErrorAction action;
+    private long taskCreationTimeout;
     private Map<TaskEventKey, EventResponseHandler> eventHandlers = new HashMap<TaskEventKey, EventResponseHandler>();
     
     public AsyncWSHumanTaskHandler() {
@@ -110,6 +114,15 @@ public class AsyncWSHumanTaskHandler implements WorkItemHandler {
 		this.action = action;
 	}
 
+    /**
+     * Sets the time in milliseconds the task server has to confirm the creation of a task, after
+     * which the task is looked up and the outcome logged. The work item is left as it is, as the
+     * task may still be created. No limit by default.
+     */
+    public void setTaskCreationTimeout(long taskCreationTimeout) {
+        this.taskCreationTimeout = taskCreationTimeout;
+    }
+
     public void connect() {
         if (client == null) {
             throw new IllegalStateException("You must set the client to the work item to work");
@@ -248,7 +261,11 @@ public class AsyncWSHumanTaskHandler implements WorkItemHandler {
         
         task.setDeadlines(HumanTaskHandlerHelper.setDeadlines(workItem, businessAdministrators, session.getEnvironment()));
 
-        client.addTask(task, content, new TaskAddedHandler(workItem.getId()));
+        TaskAddedHandler taskAddedHandler = new TaskAddedHandler(workItem.getId());
+        client.addTask(task, content, taskAddedHandler);
+        if (taskCreationTimeout > 0) {
+            taskAddedHandler.expireAfter(taskCreationTimeout, TimeUnit.MILLISECONDS);
+        }
     }
 
     public void dispose() throws Exception {
@@ -267,7 +284,7 @@ public class AsyncWSHumanTaskHandler implements WorkItemHandler {
         client.getTaskByWorkItemId(workItem.getId(), abortTaskResponseHandler);
     }
     
-    private class TaskAddedHandler extends AbstractBaseResponseHandler implements AddTaskResponseHandler {
+    private class TaskAddedHandler extends TaskFuture<Long> implements AddTaskResponseHandler {
 
 		private long workItemId;
 		
@@ -275,11 +292,26 @@ public class AsyncWSHumanTaskHandler implements WorkItemHandler {
 			this.workItemId = workItemId;
 		}
 		public void execute(long taskId) {
-			
+			set(taskId);
 		}
 
 		@Override
-		public synchronized void setError(RuntimeException error) {		
+		public void setError(RuntimeException error) {
+			if (error instanceof TaskResponseTimeoutException) {
+				// the task server may still create the task, so the work item is left as it is
+				// and a server error still applies the error action when it arrives
+				logger.warn("Creation of the task of work item " + workItemId + " not confirmed within "
+						+ taskCreationTimeout + " ms, looking the task up");
+				client.getTaskByWorkItemId(workItemId, new TaskCreationCheckHandler(workItemId));
+				return;
+			}
+			handleError(error);
+		}
+
+		private synchronized void handleError(RuntimeException error) {
+			if (isDone()) {
+				return;
+			}
 			super.setError(error);
 			
 			if (action.equals(OnErrorAction.ABORT)) {
@@ -298,6 +330,30 @@ public class AsyncWSHumanTaskHandler implements WorkItemHandler {
 	
     }
 
+    private static class TaskCreationCheckHandler extends AbstractBaseResponseHandler implements GetTaskResponseHandler {
+
+        private long workItemId;
+
+        public TaskCreationCheckHandler(long workItemId) {
+            this.workItemId = workItemId;
+        }
+
+        public void execute(Task task) {
+            if (task == null) {
+                logger.error("No task found for work item " + workItemId + " after its creation timed out,"
+                        + " the work item waits for the response of the task server");
+            } else {
+                logger.info("Task " + task.getId() + " of work item " + workItemId + " was created");
+            }
+        }
+
+        @Override
+        public void setError(RuntimeException error) {
+            super.setError(error);
+            logger.error("Could not look up the task of work item " + workItemId + " after its creation timed out", error);
+        }
+    }
+
     private static class TaskCompletedHandler extends AbstractBaseResponseHandler implements EventResponseHandler {
 
         private WorkItemManager manager;
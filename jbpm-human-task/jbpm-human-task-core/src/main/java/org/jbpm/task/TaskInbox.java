@@ -0,0 +1,210 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jbpm.task;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Denormalized projection of a task for one of its potential owners, holding the fields of
+ * a {@link org.jbpm.task.query.TaskSummary} with the texts in a single language. The potential
+ * owner inbox queries read these rows instead of joining the task with its I18N texts and
+ * potential owners. The unique constraint on (entityId, taskId) doubles as the index of
+ * those queries.
+ * <p>
+ * Rows are only maintained by the TaskServiceSession when the inbox is enabled, see
+ * org.jbpm.task.service.TaskService#setTaskInboxLanguage(String).
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = { "entityId", "taskId" }))
+@SequenceGenerator(name="taskInboxIdSeq", sequenceName="TASK_INBOX_ID_SEQ", allocationSize=1)
+public class TaskInbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO, generator="taskInboxIdSeq")
+    private long id;
+
+    private String entityId;
+
+    private long taskId;
+
+    private long processInstanceId = -1;
+
+    @Lob @Column(length=65535)
+    private String name;
+
+    @Lob @Column(length=65535)
+    private String subject;
+
+    @Lob @Column(length=65535)
+    private String description;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    private int priority;
+
+    private boolean skipable;
+
+    @ManyToOne()
+    private User actualOwner;
+
+    @ManyToOne()
+    private User createdBy;
+
+    private Date createdOn;
+
+    private Date activationTime;
+
+    private Date expirationTime;
+
+    private String processId;
+
+    private int processSessionId;
+
+    public TaskInbox() {
+    }
+
+    public TaskInbox(Task task, String entityId, String language) {
+        this.entityId = entityId;
+        this.taskId = task.getId();
+        this.priority = task.getPriority();
+        this.name = getText(task.getNames(), language);
+        this.subject = getText(task.getSubjects(), language);
+        this.description = getText(task.getDescriptions(), language);
+        TaskData taskData = task.getTaskData();
+        if (taskData != null) {
+            this.processInstanceId = taskData.getProcessInstanceId();
+            this.status = taskData.getStatus();
+            this.skipable = taskData.isSkipable();
+            this.actualOwner = taskData.getActualOwner();
+            this.createdBy = taskData.getCreatedBy();
+            this.createdOn = taskData.getCreatedOn();
+            this.activationTime = taskData.getActivationTime();
+            this.expirationTime = taskData.getExpirationTime();
+            this.processId = taskData.getProcessId();
+            this.processSessionId = taskData.getProcessSessionId();
+        }
+    }
+
+    /**
+     * Whether the texts of the given task are available in the given language. Like the
+     * potential owner queries, a task that has names, subjects or descriptions, but none in
+     * the requested language, is not listed.
+     */
+    public static boolean hasTexts(Task task, String language) {
+        return hasText(task.getNames(), language)
+            && hasText(task.getSubjects(), language)
+            && hasText(task.getDescriptions(), language);
+    }
+
+    private static boolean hasText(List<I18NText> texts, String language) {
+        return texts == null || texts.isEmpty() || getText(texts, language) != null;
+    }
+
+    private static String getText(List<I18NText> texts, String language) {
+        if (texts != null) {
+            for (I18NText text : texts) {
+                if (language.equals(text.getLanguage())) {
+                    return text.getText();
+                }
+            }
+        }
+        return null;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public long getTaskId() {
+        return taskId;
+    }
+
+    public long getProcessInstanceId() {
+        return processInstanceId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public boolean isSkipable() {
+        return skipable;
+    }
+
+    public User getActualOwner() {
+        return actualOwner;
+    }
+
+    public User getCreatedBy() {
+        return createdBy;
+    }
+
+    public Date getCreatedOn() {
+        return createdOn;
+    }
+
+    public Date getActivationTime() {
+        return activationTime;
+    }
+
+    public Date getExpirationTime() {
+        return expirationTime;
+    }
+
+    public String getProcessId() {
+        return processId;
+    }
+
+    public int getProcessSessionId() {
+        return processSessionId;
+    }
+
+}
@@ -89,6 +89,8 @@ public class TasksAdminImpl implements TasksAdmin {
             Task task = (Task) tpm.findEntity(Task.class, taskId);
             task.setArchived(true);
             tpm.saveEntity(task);
+            // archived tasks are no longer listed in the task inbox
+            tpm.deleteTaskInbox(taskId);
             archivedTasks++;
 
         }
@@ -105,6 +107,7 @@ public class TasksAdminImpl implements TasksAdmin {
             Task task = (Task) tpm.findEntity(Task.class, taskId);
             if (task.isArchived()) {
                 tpm.deleteEntity(task);
+                tpm.deleteTaskInbox(taskId);
 
                 removedTasks++;
             } else {
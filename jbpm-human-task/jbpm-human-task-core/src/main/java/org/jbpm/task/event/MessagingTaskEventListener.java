@@ -16,8 +16,6 @@
 
 package org.jbpm.task.event;
 
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import org.jbpm.eventmessaging.EventKey;
@@ -34,123 +32,42 @@ public class MessagingTaskEventListener implements TaskEventListener {
     }
     
     public void taskClaimed(TaskClaimedEvent event) {        
-        EventKey key = new TaskEventKey(TaskClaimedEvent.class, event.getTaskId() );
-        List<EventTriggerTransport> targets = null;
-        if(keys.getTargets( key ) == null){
-            return;
-        }else{
-            targets = new ArrayList<EventTriggerTransport>(keys.getTargets( key )); 
-        }
-        Payload payload = new EventPayload( event );
-        for ( Iterator<EventTriggerTransport> it = targets.iterator(); it.hasNext(); ) {
-            EventTriggerTransport target = it.next();
-            target.trigger( payload );
-            if ( target.isRemove() ) {
-                it.remove();
-            }
-        }
-        if ( targets.isEmpty() ) {
-            keys.removeKey( key );
-        }
+        trigger( new EventPayload( event ),
+                 new TaskEventKey(TaskClaimedEvent.class, event.getTaskId() ) );
     }
 
     public void taskCompleted(TaskCompletedEvent event) {
-        EventKey key = new TaskEventKey(TaskCompletedEvent.class, event.getTaskId() );
-        List<EventTriggerTransport> targets = null;
-        if ( keys.getTargets( key ) == null ){
-        	key = new TaskEventKey(TaskCompletedEvent.class, -1);
-        	if(keys.getTargets( key ) == null){
-            	return;
-            } else {
-            	targets = new ArrayList<EventTriggerTransport>(keys.getTargets( key ));
-            }
-        } else {
-        	targets = new ArrayList<EventTriggerTransport>(keys.getTargets( key ));
-                key = new TaskEventKey(TaskCompletedEvent.class, -1);
-                if(keys.getTargets( key ) != null){
-                    List<EventTriggerTransport> additionalTargets = new ArrayList<EventTriggerTransport>(keys.getTargets( key ));
-                    if (additionalTargets != null) {
-                            targets.addAll(additionalTargets);
-                    }
-                }
-        }
-        Payload payload = new EventPayload( event );
-        for ( Iterator<EventTriggerTransport> it = targets.iterator(); it.hasNext(); ) {
-            EventTriggerTransport target = it.next();
-            target.trigger( payload );
-            if ( target.isRemove() ) {
-                it.remove();
-            }
-        }
-        if ( targets.isEmpty() ) {
-            keys.removeKey( key );
-        }   
+        trigger( new EventPayload( event ),
+                 new TaskEventKey(TaskCompletedEvent.class, event.getTaskId() ),
+                 new TaskEventKey(TaskCompletedEvent.class, -1) );
     }
 
     public void taskFailed(TaskFailedEvent event) {
-        EventKey key = new TaskEventKey(TaskFailedEvent.class, event.getTaskId() );
-        List<EventTriggerTransport> targets = null;
-        if ( keys.getTargets( key ) == null ){
-        	key = new TaskEventKey(TaskFailedEvent.class, -1);
-        	if(keys.getTargets( key ) == null){
-            	return;
-            } else {
-            	targets = new ArrayList<EventTriggerTransport>(keys.getTargets( key ));
-            }
-        } else {
-                targets = new ArrayList<EventTriggerTransport>(keys.getTargets( key ));
-        	key = new TaskEventKey(TaskFailedEvent.class, -1);
-                if(keys.getTargets( key ) != null){
-                    List<EventTriggerTransport> additionalTargets = new ArrayList<EventTriggerTransport>(keys.getTargets( key ));
-                    if (additionalTargets != null) {
-                            targets.addAll(additionalTargets);
-                    }
-                }
-        }
-        Payload payload = new EventPayload( event );
-        for ( Iterator<EventTriggerTransport> it = targets.iterator(); it.hasNext(); ) {
-            EventTriggerTransport target = it.next();
-            target.trigger( payload );
-            if ( target.isRemove() ) {
-                it.remove();
-            }
-        }
-        if ( targets.isEmpty() ) {
-            keys.removeKey( key );
-        }
+        trigger( new EventPayload( event ),
+                 new TaskEventKey(TaskFailedEvent.class, event.getTaskId() ),
+                 new TaskEventKey(TaskFailedEvent.class, -1) );
 	}
 
     public void taskSkipped(TaskSkippedEvent event) {
-        EventKey key = new TaskEventKey(TaskSkippedEvent.class, event.getTaskId() );
-        List<EventTriggerTransport> targets = null;
-        if ( keys.getTargets( key ) == null ){
-        	key = new TaskEventKey(TaskSkippedEvent.class, -1);
-        	if(keys.getTargets( key ) == null){
-            	return;
-            } else {
-            	targets = new ArrayList<EventTriggerTransport>(keys.getTargets( key ));
+        trigger( new EventPayload( event ),
+                 new TaskEventKey(TaskSkippedEvent.class, event.getTaskId() ),
+                 new TaskEventKey(TaskSkippedEvent.class, -1) );
+	}
+
+    private void trigger(Payload payload, EventKey... eventKeys) {
+        for ( EventKey key : eventKeys ) {
+            List<EventTriggerTransport> targets = keys.getTargets( key );
+            if ( targets == null ) {
+                continue;
             }
-        } else {
-                targets = new ArrayList<EventTriggerTransport>(keys.getTargets( key ));
-        	key = new TaskEventKey(TaskSkippedEvent.class, -1);
-                if(keys.getTargets( key ) != null){
-                    List<EventTriggerTransport> additionalTargets = new ArrayList<EventTriggerTransport>(keys.getTargets( key ));
-                    if (additionalTargets != null) {
-                            targets.addAll(additionalTargets);
-                    }
+            // the targets are a snapshot safe to iterate while others register
+            for ( EventTriggerTransport target : targets ) {
+                target.trigger( payload );
+                if ( target.isRemove() ) {
+                    keys.unregister( key, target );
                 }
-        }
-        Payload payload = new EventPayload( event );
-        for ( Iterator<EventTriggerTransport> it = targets.iterator(); it.hasNext(); ) {
-            EventTriggerTransport target = it.next();
-            target.trigger( payload );
-            if ( target.isRemove() ) {
-                it.remove();
             }
         }
-        if ( targets.isEmpty() ) {
-            keys.removeKey( key );
-        }
-	}
+    }
 
 }
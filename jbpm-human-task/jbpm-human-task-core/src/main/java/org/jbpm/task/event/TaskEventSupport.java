@@ -19,6 +19,7 @@ package org.jbpm.task.event;
 import org.drools.event.AbstractEventSupport;
 
 import java.util.Iterator;
+import java.util.List;
 
 /**
  */
@@ -72,6 +73,31 @@ public class TaskEventSupport extends AbstractEventSupport<TaskEventListener> {
         }
     }
 
+    /**
+     * Fires the events of several tasks at once, so that each listener is looked up only once.
+     */
+    public void fireTaskEvents(final List<? extends TaskUserEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        final Iterator<TaskEventListener> iter = getEventListenersIterator();
+
+        while (iter.hasNext()) {
+            final TaskEventListener listener = iter.next();
+            for (TaskUserEvent event : events) {
+                if (event instanceof TaskClaimedEvent) {
+                    listener.taskClaimed((TaskClaimedEvent) event);
+                } else if (event instanceof TaskCompletedEvent) {
+                    listener.taskCompleted((TaskCompletedEvent) event);
+                } else if (event instanceof TaskFailedEvent) {
+                    listener.taskFailed((TaskFailedEvent) event);
+                } else if (event instanceof TaskSkippedEvent) {
+                    listener.taskSkipped((TaskSkippedEvent) event);
+                }
+            }
+        }
+    }
+
     public void reset() {
         this.clear();
     }
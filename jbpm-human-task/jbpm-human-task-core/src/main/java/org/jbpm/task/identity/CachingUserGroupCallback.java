@@ -0,0 +1,287 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.identity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link UserGroupCallback} decorator that caches the answers of another callback, for instance
+ * the {@link LDAPUserGroupCallbackImpl}, which otherwise performs a directory search for every
+ * potential owner, administrator and initiator of every task operation.
+ * <p>
+ * Positive answers (an existing user or group, a non-empty list of groups) and negative answers
+ * are cached with separate time-to-lives, so that new users are picked up quickly while known
+ * users are not looked up again. The number of cached answers is bounded. Concurrent lookups of the
+ * same key wait for a single call to the delegate. Failed lookups are not cached.
+ * <p>
+ * The groups of a user are cached by user and given groups only, as the list of all existing groups
+ * is large and grows with every new group. Delegates whose answer depends on that list must call
+ * {@link #clearGroupsForUser()} when it changes.
+ */
+public class CachingUserGroupCallback implements UserGroupCallback {
+
+    public static final long DEFAULT_POSITIVE_TTL = 5 * 60 * 1000;
+    public static final long DEFAULT_NEGATIVE_TTL = 30 * 1000;
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private static final String GROUPS_FOR_USER = "groupsForUser";
+
+    private final UserGroupCallback delegate;
+    private final long positiveTtl;
+    private final long negativeTtl;
+    private final int maxSize;
+
+    private final ConcurrentMap<Object, CacheEntry> cache = new ConcurrentHashMap<Object, CacheEntry>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CachingUserGroupCallback(UserGroupCallback delegate) {
+        this(delegate, DEFAULT_POSITIVE_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param delegate the callback that is asked on a cache miss
+     * @param positiveTtl how long positive answers are cached, in ms
+     * @param negativeTtl how long negative answers are cached, in ms (0 to not cache them)
+     * @param maxSize the maximum number of cached answers
+     */
+    public CachingUserGroupCallback(UserGroupCallback delegate, long positiveTtl, long negativeTtl, int maxSize) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate UserGroupCallback is null");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum cache size must be positive: " + maxSize);
+        }
+        this.delegate = delegate;
+        this.positiveTtl = positiveTtl;
+        this.negativeTtl = negativeTtl;
+        this.maxSize = maxSize;
+    }
+
+    public boolean existsUser(final String userId) {
+        return lookup(Arrays.asList("user", userId), new Callable<Boolean>() {
+            public Boolean call() {
+                return delegate.existsUser(userId);
+            }
+        });
+    }
+
+    public boolean existsGroup(final String groupId) {
+        return lookup(Arrays.asList("group", groupId), new Callable<Boolean>() {
+            public Boolean call() {
+                return delegate.existsGroup(groupId);
+            }
+        });
+    }
+
+    public List<String> getGroupsForUser(final String userId, final List<String> groupIds, final List<String> allExistingGroupIds) {
+        // the answer may depend on the given groups, so they are part of the key
+        List<String> groups = lookup(Arrays.asList(GROUPS_FOR_USER, userId, copy(groupIds)),
+            new Callable<List<String>>() {
+                public List<String> call() {
+                    List<String> groups = delegate.getGroupsForUser(userId, groupIds, allExistingGroupIds);
+                    return groups == null ? null : Collections.unmodifiableList(new ArrayList<String>(groups));
+                }
+            });
+        // callers may modify the returned list
+        return groups == null ? null : new ArrayList<String>(groups);
+    }
+
+    private static List<String> copy(List<String> list) {
+        return list == null ? null : new ArrayList<String>(list);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T lookup(Object key, Callable<T> loader) {
+        long now = System.currentTimeMillis();
+        CacheEntry entry = cache.get(key);
+        if (entry != null && entry.isExpired(now)) {
+            cache.remove(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            CacheEntry created = new CacheEntry(loader);
+            entry = cache.putIfAbsent(key, created);
+            if (entry == null) {
+                misses.incrementAndGet();
+                created.run();
+                Object value = created.getValue(key);
+                created.expireAt(now, isPositive(value) ? positiveTtl : negativeTtl);
+                if (created.isExpired(now)) {
+                    cache.remove(key, created);
+                }
+                evictIfNeeded(now);
+                return (T) value;
+            }
+        }
+        if (entry.isDone()) {
+            hits.incrementAndGet();
+        } else {
+            coalesced.incrementAndGet();
+        }
+        return (T) entry.getValue(key);
+    }
+
+    private static boolean isPositive(Object value) {
+        if (value instanceof Boolean) {
+            return ((Boolean) value).booleanValue();
+        }
+        return value != null && !((List<?>) value).isEmpty();
+    }
+
+    private void evictIfNeeded(long now) {
+        if (cache.size() <= maxSize) {
+            return;
+        }
+        for (Iterator<CacheEntry> it = cache.values().iterator(); it.hasNext(); ) {
+            if (it.next().isExpired(now)) {
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        // evict a tenth more than needed so that the next misses do not scan the cache again
+        int target = maxSize - maxSize / 10;
+        for (Iterator<Map.Entry<Object, CacheEntry>> it = cache.entrySet().iterator(); it.hasNext() && cache.size() > target; ) {
+            if (it.next().getValue().isDone()) {
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all cached answers, for instance after users or groups were changed in the directory.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Removes the cached groups of all users, for delegates whose answer depends on the list of all
+     * existing groups, when that list changed.
+     */
+    public void clearGroupsForUser() {
+        for (Iterator<Object> it = cache.keySet().iterator(); it.hasNext(); ) {
+            if (GROUPS_FOR_USER.equals(((List<?>) it.next()).get(0))) {
+                it.remove();
+            }
+        }
+    }
+
+    public UserGroupCallback getDelegate() {
+        return delegate;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of lookups that waited for the concurrent miss of another thread
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the fraction of lookups that did not call the delegate
+     */
+    public double getHitRate() {
+        long served = hits.get() + coalesced.get();
+        long total = served + misses.get();
+        return total == 0 ? 0 : (double) served / total;
+    }
+
+    public String toString() {
+        return "CachingUserGroupCallback[" + delegate.getClass().getName()
+            + ", size=" + size() + ", hits=" + hits + ", misses=" + misses
+            + ", coalesced=" + coalesced + ", evictions=" + evictions + "]";
+    }
+
+    private class CacheEntry extends FutureTask<Object> {
+
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        @SuppressWarnings("unchecked")
+        CacheEntry(Callable<?> loader) {
+            super((Callable<Object>) loader);
+        }
+
+        void expireAt(long now, long ttl) {
+            expiresAt = now + ttl;
+        }
+
+        boolean isExpired(long now) {
+            return isDone() && expiresAt <= now;
+        }
+
+        Object getValue(Object key) {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                // do not cache failures
+                cache.remove(key, this);
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException("Unable to look up " + key, cause);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+    }
+
+}
@@ -23,6 +23,11 @@ import org.slf4j.LoggerFactory;
 
 public class UserGroupCallbackManager {
     public static final String USER_GROUP_CALLBACK_KEY = "jbpm.usergroup.callback";
+    /**
+     * When "true", the callback is wrapped in a {@link CachingUserGroupCallback}, configured with
+     * the <code>.positive.ttl</code>, <code>.negative.ttl</code> and <code>.size</code> sub-keys.
+     */
+    public static final String USER_GROUP_CALLBACK_CACHE_KEY = "jbpm.usergroup.callback.cache";
     private static UserGroupCallbackManager instance;
     private UserGroupCallback callback = null;
     private static final Logger logger = LoggerFactory.getLogger(UserGroupCallbackManager.class);
@@ -33,6 +38,7 @@ public class UserGroupCallbackManager {
             if(System.getProperty(USER_GROUP_CALLBACK_KEY) != null) {
                 callback = (UserGroupCallback) Class.forName(System.getProperty(USER_GROUP_CALLBACK_KEY)).newInstance();
                 logger.info("UserGroupCallback registered from system property: " + callback.getClass().getName());
+                callback = cacheIfEnabled(callback, null);
             } else {
                 InputStream in = getClass().getResourceAsStream(USER_GROUP_CALLBACK_KEY + ".properties");
                 if(in != null) {
@@ -41,6 +47,7 @@ public class UserGroupCallbackManager {
                     if (!isEmpty(callbackproperties.getProperty(USER_GROUP_CALLBACK_KEY))) {
                         callback = (UserGroupCallback) Class.forName(callbackproperties.getProperty(USER_GROUP_CALLBACK_KEY)).newInstance();
                         logger.info("UserGroupCallback registered from properties file: " + callback.getClass().getName());
+                        callback = cacheIfEnabled(callback, callbackproperties);
                     }
                     in.close();
                 }
@@ -68,6 +75,7 @@ public class UserGroupCallbackManager {
 			if (!isEmpty(callbackproperties.getProperty(USER_GROUP_CALLBACK_KEY))) {
 			    callback = (UserGroupCallback) Class.forName(callbackproperties.getProperty(USER_GROUP_CALLBACK_KEY)).newInstance();
 			    logger.info("UserGroupCallback registered from properties file: " + callback.getClass().getName());
+			    callback = cacheIfEnabled(callback, callbackproperties);
 			}
 		} catch (Throwable t) {
 			logger.error("Error trying to create callback: " + t.getMessage());
@@ -107,6 +115,29 @@ public class UserGroupCallbackManager {
         this.callbackproperties.setProperty(name, value);
     }
     
+    private UserGroupCallback cacheIfEnabled(UserGroupCallback callback, Properties properties) {
+        if (!Boolean.parseBoolean(getSetting(properties, USER_GROUP_CALLBACK_CACHE_KEY, "false"))) {
+            return callback;
+        }
+        CachingUserGroupCallback cachingCallback = new CachingUserGroupCallback(callback,
+            Long.parseLong(getSetting(properties, USER_GROUP_CALLBACK_CACHE_KEY + ".positive.ttl", 
+                                      String.valueOf(CachingUserGroupCallback.DEFAULT_POSITIVE_TTL))),
+            Long.parseLong(getSetting(properties, USER_GROUP_CALLBACK_CACHE_KEY + ".negative.ttl", 
+                                      String.valueOf(CachingUserGroupCallback.DEFAULT_NEGATIVE_TTL))),
+            Integer.parseInt(getSetting(properties, USER_GROUP_CALLBACK_CACHE_KEY + ".size", 
+                                        String.valueOf(CachingUserGroupCallback.DEFAULT_MAX_SIZE))));
+        logger.info("UserGroupCallback answers are cached: " + cachingCallback);
+        return cachingCallback;
+    }
+    
+    private String getSetting(Properties properties, String name, String defaultValue) {
+        String value = properties == null ? null : properties.getProperty(name);
+        if (isEmpty(value)) {
+            value = System.getProperty(name);
+        }
+        return isEmpty(value) ? defaultValue : value.trim();
+    }
+    
     private boolean isEmpty(final CharSequence str) {
         if ( str == null || str.length() == 0 ) {
             return true;
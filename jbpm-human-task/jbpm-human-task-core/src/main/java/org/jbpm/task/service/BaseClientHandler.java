@@ -16,22 +16,34 @@
 
 package org.jbpm.task.service;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.drools.task.service.ResponseHandler;
 import org.jbpm.task.service.BaseHandler;
+import org.jbpm.task.service.responsehandlers.TaskFuture;
 
 public class BaseClientHandler implements BaseHandler {
 
+	// responses can be received by other threads than the ones sending the requests
 	protected Map<Integer, ResponseHandler> responseHandlers;
 
 	public BaseClientHandler() {
-		responseHandlers = new HashMap<Integer, ResponseHandler>();
+		responseHandlers = new ConcurrentHashMap<Integer, ResponseHandler>();
 	}
 
-	public void addResponseHandler(int id, ResponseHandler responseHandler) {
-		responseHandlers.put( id, responseHandler );
+	public void addResponseHandler(final int id, ResponseHandler responseHandler) {
+		if ( responseHandler != null ) {
+			responseHandlers.put( id, responseHandler );
+			if ( responseHandler instanceof TaskFuture ) {
+				// futures that expired or were cancelled never get their response
+				((TaskFuture<?>) responseHandler).addListener( new Runnable() {
+					public void run() {
+						responseHandlers.remove( id );
+					}
+				} );
+			}
+		}
 	}
 
 }
\ No newline at end of file
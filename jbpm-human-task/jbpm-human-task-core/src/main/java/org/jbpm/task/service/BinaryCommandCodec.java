@@ -0,0 +1,355 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jbpm.task.AccessType;
+import org.jbpm.task.Attachment;
+import org.jbpm.task.Comment;
+import org.jbpm.task.Content;
+import org.jbpm.task.Group;
+import org.jbpm.task.I18NText;
+import org.jbpm.task.Status;
+import org.jbpm.task.Task;
+import org.jbpm.task.User;
+import org.jbpm.task.event.EventPayload;
+import org.jbpm.task.event.TaskClaimedEvent;
+import org.jbpm.task.event.TaskCompletedEvent;
+import org.jbpm.task.event.TaskEventKey;
+import org.jbpm.task.event.TaskFailedEvent;
+import org.jbpm.task.event.TaskSkippedEvent;
+import org.jbpm.task.event.TaskUserEvent;
+import org.jbpm.task.query.TaskSummary;
+
+/**
+ * Compact binary encoding of the {@link Command}s exchanged between task clients and the task server,
+ * as an alternative to Java serialization.
+ * <p>
+ * Java serialization writes the class descriptors of the command, its argument list and every
+ * task, summary and user in it with each message. This codec writes a type tag per value instead,
+ * and a one byte type id for the task model classes, whose fields are written by their existing
+ * <code>writeExternal</code> methods. Values of other types fall back to Java serialization.
+ * <p>
+ * Encoded commands start with a marker that Java serialized messages never start with, so servers
+ * accept both encodings and answer each client in the encoding it used. Clients use this codec when
+ * the <code>jbpm.task.codec</code> system property is set to <code>binary</code>.
+ */
+public class BinaryCommandCodec {
+
+    public static final String CODEC = "jbpm.task.codec";
+
+    /**
+     * Sent by stream based clients before their first command. Read as the length prefix of a Java
+     * serialized object it exceeds any accepted object size, so it is never confused with one.
+     */
+    public static final int HANDSHAKE = 0x4A425443;
+
+    private static final byte MARKER = (byte) 0xCB;
+    private static final byte VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte INTEGER = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DATE = 5;
+    private static final byte LIST = 6;
+    private static final byte MAP = 7;
+    private static final byte BYTES = 8;
+    private static final byte KNOWN_ENUM = 9;
+    private static final byte ENUM = 10;
+    private static final byte KNOWN_EXTERNALIZABLE = 11;
+    private static final byte EXTERNALIZABLE = 12;
+    private static final byte SERIALIZABLE = 13;
+
+    // the position in these arrays is the id on the wire, only append to them
+    private static final Class<?>[] KNOWN_EXTERNALIZABLES = new Class<?>[] {
+        Task.class, TaskSummary.class, Content.class, ContentData.class, FaultData.class,
+        Comment.class, Attachment.class, User.class, Group.class, I18NText.class,
+        TaskEventKey.class, EventPayload.class, TaskUserEvent.class, TaskClaimedEvent.class,
+        TaskCompletedEvent.class, TaskFailedEvent.class, TaskSkippedEvent.class,
+        TaskOperationResult.class
+    };
+    private static final Class<?>[] KNOWN_ENUMS = new Class<?>[] {
+        Status.class, Operation.class, AccessType.class
+    };
+
+    private static final Map<Class<?>, Integer> KNOWN_EXTERNALIZABLE_IDS = ids(KNOWN_EXTERNALIZABLES);
+    private static final Map<Class<?>, Integer> KNOWN_ENUM_IDS = ids(KNOWN_ENUMS);
+
+    private static Map<Class<?>, Integer> ids(Class<?>[] classes) {
+        Map<Class<?>, Integer> ids = new HashMap<Class<?>, Integer>();
+        for (int i = 0; i < classes.length; i++) {
+            ids.put(classes[i], i);
+        }
+        return ids;
+    }
+
+    /**
+     * @return whether clients should encode their commands with this codec
+     */
+    public static boolean isEnabled() {
+        return "binary".equals(System.getProperty(CODEC));
+    }
+
+    /**
+     * @return whether the given message was encoded with this codec rather than Java serialization
+     */
+    public static boolean isBinary(byte[] message) {
+        return message.length > 1 && message[0] == MARKER && message[1] == VERSION;
+    }
+
+    public static byte[] encode(Command cmd) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        CommandOutput out = new CommandOutput(bytes);
+        out.writeByte(MARKER);
+        out.writeByte(VERSION);
+        out.writeInt(cmd.getId());
+        out.writeUTF(cmd.getName().name());
+        out.writeObject(cmd.getArguments());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Command decode(byte[] message) throws IOException {
+        if (!isBinary(message)) {
+            throw new IOException("Message is not a binary encoded command");
+        }
+        CommandInput in = new CommandInput(new ByteArrayInputStream(message, 2, message.length - 2));
+        int id = in.readInt();
+        CommandName name = CommandName.valueOf(in.readUTF());
+        try {
+            return new Command(id, name, (List<Object>) in.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to decode command " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a message that was either encoded with this codec or Java serialized.
+     */
+    public static Object read(byte[] message) throws IOException, ClassNotFoundException {
+        if (isBinary(message)) {
+            return decode(message);
+        }
+        return new ObjectInputStream(new ByteArrayInputStream(message)).readObject();
+    }
+
+    /**
+     * Writes a message with this codec if <code>binary</code> is true, with Java serialization otherwise.
+     */
+    public static byte[] write(Object message, boolean binary) throws IOException {
+        if (binary) {
+            return encode((Command) message);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(message);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Passed to <code>writeExternal</code>, so that nested objects are encoded the same way.
+     */
+    private static class CommandOutput extends DataOutputStream implements ObjectOutput {
+
+        CommandOutput(OutputStream out) {
+            super(out);
+        }
+
+        public void writeObject(Object value) throws IOException {
+            if (value == null) {
+                writeByte(NULL);
+            } else if (value instanceof String) {
+                writeByte(STRING);
+                writeString((String) value);
+            } else if (value instanceof Long) {
+                writeByte(LONG);
+                writeLong((Long) value);
+            } else if (value instanceof Integer) {
+                writeByte(INTEGER);
+                writeInt((Integer) value);
+            } else if (value instanceof Boolean) {
+                writeByte(BOOLEAN);
+                writeBoolean((Boolean) value);
+            } else if (value.getClass() == Date.class) {
+                writeByte(DATE);
+                writeLong(((Date) value).getTime());
+            } else if (value instanceof List<?>) {
+                writeByte(LIST);
+                writeCollection((List<?>) value);
+            } else if (value instanceof Map<?, ?>) {
+                writeByte(MAP);
+                writeInt(((Map<?, ?>) value).size());
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    writeObject(entry.getKey());
+                    writeObject(entry.getValue());
+                }
+            } else if (value instanceof byte[]) {
+                writeByte(BYTES);
+                writeInt(((byte[]) value).length);
+                write((byte[]) value);
+            } else if (value instanceof Enum<?>) {
+                Enum<?> constant = (Enum<?>) value;
+                Integer id = KNOWN_ENUM_IDS.get(constant.getDeclaringClass());
+                if (id != null) {
+                    writeByte(KNOWN_ENUM);
+                    writeByte(id);
+                } else {
+                    writeByte(ENUM);
+                    writeUTF(constant.getDeclaringClass().getName());
+                }
+                writeUTF(constant.name());
+            } else if (value instanceof Externalizable) {
+                Integer id = KNOWN_EXTERNALIZABLE_IDS.get(value.getClass());
+                if (id != null) {
+                    writeByte(KNOWN_EXTERNALIZABLE);
+                    writeByte(id);
+                } else {
+                    writeByte(EXTERNALIZABLE);
+                    writeUTF(value.getClass().getName());
+                }
+                ((Externalizable) value).writeExternal(this);
+            } else if (value instanceof Serializable) {
+                writeByte(SERIALIZABLE);
+                byte[] bytes = BinaryCommandCodec.write(value, false);
+                writeInt(bytes.length);
+                write(bytes);
+            } else {
+                throw new IOException("Unable to encode " + value.getClass().getName());
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            // writeUTF is limited to 64k
+            byte[] bytes = value.getBytes("UTF-8");
+            writeInt(bytes.length);
+            write(bytes);
+        }
+
+        private void writeCollection(Collection<?> values) throws IOException {
+            writeInt(values.size());
+            for (Object value : values) {
+                writeObject(value);
+            }
+        }
+
+    }
+
+    private static class CommandInput extends DataInputStream implements ObjectInput {
+
+        CommandInput(InputStream in) {
+            super(in);
+        }
+
+        @SuppressWarnings("unchecked")
+        public Object readObject() throws ClassNotFoundException, IOException {
+            byte tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case STRING:
+                    return new String(readBytes(), "UTF-8");
+                case LONG:
+                    return readLong();
+                case INTEGER:
+                    return readInt();
+                case BOOLEAN:
+                    return readBoolean();
+                case DATE:
+                    return new Date(readLong());
+                case LIST: {
+                    int size = readInt();
+                    List<Object> values = new ArrayList<Object>(size);
+                    for (int i = 0; i < size; i++) {
+                        values.add(readObject());
+                    }
+                    return values;
+                }
+                case MAP: {
+                    int size = readInt();
+                    Map<Object, Object> values = new HashMap<Object, Object>();
+                    for (int i = 0; i < size; i++) {
+                        values.put(readObject(), readObject());
+                    }
+                    return values;
+                }
+                case BYTES:
+                    return readBytes();
+                case KNOWN_ENUM:
+                    return Enum.valueOf((Class) KNOWN_ENUMS[readByte()], readUTF());
+                case ENUM:
+                    return Enum.valueOf((Class) loadClass(readUTF()), readUTF());
+                case KNOWN_EXTERNALIZABLE:
+                    return readExternalizable(KNOWN_EXTERNALIZABLES[readByte()]);
+                case EXTERNALIZABLE:
+                    return readExternalizable(loadClass(readUTF()));
+                case SERIALIZABLE:
+                    return new ObjectInputStream(new ByteArrayInputStream(readBytes())).readObject();
+                default:
+                    throw new IOException("Unknown type tag " + tag);
+            }
+        }
+
+        private byte[] readBytes() throws IOException {
+            byte[] bytes = new byte[readInt()];
+            readFully(bytes);
+            return bytes;
+        }
+
+        private Object readExternalizable(Class<?> type) throws IOException, ClassNotFoundException {
+            Externalizable value;
+            try {
+                value = (Externalizable) type.newInstance();
+            } catch (Exception e) {
+                throw new IOException("Unable to create " + type.getName() + ": " + e.getMessage());
+            }
+            value.readExternal(this);
+            return value;
+        }
+
+        private Class<?> loadClass(String name) throws ClassNotFoundException {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            if (classLoader == null) {
+                classLoader = BinaryCommandCodec.class.getClassLoader();
+            }
+            return Class.forName(name, true, classLoader);
+        }
+
+    }
+
+}
@@ -21,6 +21,9 @@ public enum CommandName {
     OperationRequest,
     OperationResponse,
     
+    BatchOperationRequest,
+    BatchOperationResponse,
+    
     ClaimRequest,
     ClaimResponse,
     
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.task.service;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jbpm.task.service.TaskService.ScheduledTaskDeadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules the escalation of task deadlines.
+ * <p>
+ * Only the unescalated deadlines that are due within a rolling horizon are kept in memory:
+ * they are loaded from the database page by page, and the window is refilled periodically.
+ * Deadlines of new tasks that lie beyond the horizon are not scheduled right away but picked
+ * up by the refill that moves the window past them.
+ * <p>
+ * Configured through the system properties
+ * <ul>
+ * <li><code>jbpm.task.deadline.horizon</code>: how far ahead deadlines are scheduled, in ms (default one hour)</li>
+ * <li><code>jbpm.task.deadline.refill.interval</code>: how often the window is refilled, in ms (default a quarter of the horizon)</li>
+ * <li><code>jbpm.task.deadline.page.size</code>: the number of deadlines loaded per query (default 1000)</li>
+ * <li><code>jbpm.task.deadline.threads</code>: the number of threads executing escalations (default 3)</li>
+ * </ul>
+ */
+public class DeadlineScheduler {
+
+    public static final String HORIZON = "jbpm.task.deadline.horizon";
+    public static final String REFILL_INTERVAL = "jbpm.task.deadline.refill.interval";
+    public static final String PAGE_SIZE = "jbpm.task.deadline.page.size";
+    public static final String THREADS = "jbpm.task.deadline.threads";
+
+    private static final long DEFAULT_HORIZON = 60 * 60 * 1000;
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadlineScheduler.class);
+
+    private final long horizon;
+    private final long refillInterval;
+    private final int pageSize;
+    private final int threads;
+
+    private TaskService service;
+    private ScheduledThreadPoolExecutor executor;
+    private volatile long windowEnd = Long.MAX_VALUE;
+
+    // task id -> deadline id -> escalation, each inner map guarded by itself
+    private final ConcurrentMap<Long, Map<Long, ScheduledFuture<?>>> scheduledDeadlines
+        = new ConcurrentHashMap<Long, Map<Long, ScheduledFuture<?>>>();
+
+    public DeadlineScheduler() {
+        this(Long.getLong(HORIZON, DEFAULT_HORIZON));
+    }
+
+    private DeadlineScheduler(long horizon) {
+        this(horizon,
+             Long.getLong(REFILL_INTERVAL, horizon / 4),
+             Integer.getInteger(PAGE_SIZE, 1000),
+             Integer.getInteger(THREADS, 3));
+    }
+
+    public DeadlineScheduler(long horizon, long refillInterval, int pageSize, int threads) {
+        if (refillInterval <= 0 || refillInterval > horizon) {
+            throw new IllegalArgumentException("The refill interval " + refillInterval
+                + " must be positive and not exceed the horizon " + horizon);
+        }
+        if (pageSize <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("The page size and number of threads must be positive");
+        }
+        this.horizon = horizon;
+        this.refillInterval = refillInterval;
+        this.pageSize = pageSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Loads the deadlines due within the horizon and starts refilling the window periodically.
+     */
+    public synchronized void start(TaskService service) {
+        if (executor != null) {
+            throw new IllegalStateException("Deadline scheduler has already been started");
+        }
+        this.service = service;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jbpm-task-deadline-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        refill();
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    refill();
+                } catch (RuntimeException e) {
+                    logger.error("Unable to load the deadlines due before " + new Date(windowEnd), e);
+                }
+            }
+        }, refillInterval, refillInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        scheduledDeadlines.clear();
+        windowEnd = Long.MAX_VALUE;
+    }
+
+    /**
+     * Moves the window to the horizon and schedules the unescalated deadlines due within it that
+     * are not scheduled yet. Every refill reloads the whole window, so deadlines committed after
+     * the previous refill are not missed.
+     */
+    public void refill() {
+        windowEnd = System.currentTimeMillis() + horizon;
+        TaskServiceSession session = service.createSession();
+        try {
+            session.scheduleUnescalatedDeadlines(new Date(windowEnd), pageSize);
+        } finally {
+            session.dispose();
+        }
+        // drop the cancelled escalations of completed tasks from the queue
+        executor.purge();
+    }
+
+    public void schedule(ScheduledTaskDeadline deadline, long delay) {
+        if (System.currentTimeMillis() + delay > windowEnd) {
+            return;
+        }
+        Long taskId = deadline.getTaskId();
+        Long deadlineId = deadline.getDeadlineId();
+        while (true) {
+            Map<Long, ScheduledFuture<?>> deadlines = scheduledDeadlines.get(taskId);
+            if (deadlines == null) {
+                deadlines = new HashMap<Long, ScheduledFuture<?>>(4);
+                Map<Long, ScheduledFuture<?>> existing = scheduledDeadlines.putIfAbsent(taskId, deadlines);
+                if (existing != null) {
+                    deadlines = existing;
+                }
+            }
+            synchronized (deadlines) {
+                if (scheduledDeadlines.get(taskId) != deadlines) {
+                    // unscheduled or completed concurrently
+                    continue;
+                }
+                if (!deadlines.containsKey(deadlineId)) {
+                    deadlines.put(deadlineId,
+                        executor.schedule(new Escalation(deadline), delay, TimeUnit.MILLISECONDS));
+                }
+                return;
+            }
+        }
+    }
+
+    public void unschedule(long taskId) {
+        Map<Long, ScheduledFuture<?>> deadlines = scheduledDeadlines.remove(taskId);
+        if (deadlines == null) {
+            return;
+        }
+        synchronized (deadlines) {
+            for (ScheduledFuture<?> scheduled : deadlines.values()) {
+                try {
+                    scheduled.cancel(true);
+                } catch (Exception e) {
+                    logger.error("Error while cancelling scheduled deadline task for Task with id " + taskId, e);
+                }
+            }
+        }
+    }
+
+    public long getWindowEnd() {
+        return windowEnd;
+    }
+
+    public int getScheduledTaskCount() {
+        return scheduledDeadlines.size();
+    }
+
+    private void escalated(long taskId, long deadlineId) {
+        Map<Long, ScheduledFuture<?>> deadlines = scheduledDeadlines.get(taskId);
+        if (deadlines == null) {
+            return;
+        }
+        synchronized (deadlines) {
+            deadlines.remove(deadlineId);
+            if (deadlines.isEmpty()) {
+                scheduledDeadlines.remove(taskId, deadlines);
+            }
+        }
+    }
+
+    private class Escalation implements Runnable {
+
+        private final ScheduledTaskDeadline deadline;
+
+        Escalation(ScheduledTaskDeadline deadline) {
+            this.deadline = deadline;
+        }
+
+        public void run() {
+            try {
+                deadline.call();
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+            } finally {
+                // a deadline that failed to escalate is still unescalated and reloaded by the next refill
+                escalated(deadline.getTaskId(), deadline.getDeadlineId());
+            }
+        }
+
+    }
+
+}
@@ -172,7 +172,7 @@ public class DefaultEscalatedDeadlineHandler
                                          Deadline deadline,
                                          Content content,
                                          TaskService service) {
-        if ( deadline == null || deadline.getEscalations() == null || !isInValidStatus(task) ) {
+        if ( deadline == null || deadline.getEscalations() == null || Boolean.TRUE.equals( deadline.isEscalated() ) || !isInValidStatus(task) ) {
             return;
         }
         
@@ -0,0 +1,291 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jbpm.task.AsyncTaskService;
+import org.jbpm.task.Comment;
+import org.jbpm.task.Content;
+import org.jbpm.task.OrganizationalEntity;
+import org.jbpm.task.Status;
+import org.jbpm.task.Task;
+import org.jbpm.task.query.TaskSummary;
+import org.jbpm.task.service.TaskClientHandler.AddCommentResponseHandler;
+import org.jbpm.task.service.TaskClientHandler.AddTaskResponseHandler;
+import org.jbpm.task.service.TaskClientHandler.DeleteCommentResponseHandler;
+import org.jbpm.task.service.TaskClientHandler.GetContentResponseHandler;
+import org.jbpm.task.service.TaskClientHandler.GetTaskResponseHandler;
+import org.jbpm.task.service.TaskClientHandler.SetDocumentResponseHandler;
+import org.jbpm.task.service.TaskClientHandler.TaskOperationResponseHandler;
+import org.jbpm.task.service.TaskClientHandler.TaskSummaryResponseHandler;
+import org.jbpm.task.service.responsehandlers.TaskFuture;
+
+/**
+ * Task client returning a {@link TaskFuture} for each request instead of taking a response handler.
+ * <p>
+ * Requests are sent right away and their responses are matched to their futures by command id, so
+ * one connection can have many requests in flight:
+ * <pre>
+ * FutureTaskClient client = new FutureTaskClient(taskClient);
+ * TaskFuture&lt;Void&gt; started = client.start(taskId, "Darth Vader");
+ * TaskFuture&lt;List&lt;TaskSummary&gt;&gt; tasks = client.getTasksOwned("Darth Vader", "en-UK");
+ * started.getResult();
+ * tasks.getResult();
+ * </pre>
+ * Every request fails with a {@link TaskResponseTimeoutException} if it gets no response before
+ * the deadline of the client, 10 seconds by default. Use {@link #withDeadline(long, TimeUnit)} for
+ * requests that need another deadline.
+ */
+public class FutureTaskClient {
+
+    private final AsyncTaskService client;
+    private final long timeout;
+    private final TimeUnit unit;
+
+    public FutureTaskClient(AsyncTaskService client) {
+        this(client, 10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param timeout the deadline of each request, no deadline if not positive
+     */
+    public FutureTaskClient(AsyncTaskService client, long timeout, TimeUnit unit) {
+        this.client = client;
+        this.timeout = timeout;
+        this.unit = unit;
+    }
+
+    /**
+     * @return a client sending its requests through the same connection with the given deadline
+     */
+    public FutureTaskClient withDeadline(long timeout, TimeUnit unit) {
+        return new FutureTaskClient(client, timeout, unit);
+    }
+
+    public AsyncTaskService getClient() {
+        return client;
+    }
+
+    public TaskFuture<Long> addTask(Task task, ContentData content) {
+        IdFuture future = new IdFuture();
+        client.addTask(task, content, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Task> getTask(long taskId) {
+        GetTaskFuture future = new GetTaskFuture();
+        client.getTask(taskId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Task> getTaskByWorkItemId(long workItemId) {
+        GetTaskFuture future = new GetTaskFuture();
+        client.getTaskByWorkItemId(workItemId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Content> getContent(long contentId) {
+        GetContentFuture future = new GetContentFuture();
+        client.getContent(contentId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Long> setDocumentContent(long taskId, Content content) {
+        IdFuture future = new IdFuture();
+        client.setDocumentContent(taskId, content, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Long> addComment(long taskId, Comment comment) {
+        IdFuture future = new IdFuture();
+        client.addComment(taskId, comment, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> deleteComment(long taskId, long commentId) {
+        OperationFuture future = new OperationFuture();
+        client.deleteComment(taskId, commentId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> activate(long taskId, String userId) {
+        OperationFuture future = new OperationFuture();
+        client.activate(taskId, userId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> claim(long taskId, String userId) {
+        OperationFuture future = new OperationFuture();
+        client.claim(taskId, userId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> claim(long taskId, String userId, List<String> groupIds) {
+        OperationFuture future = new OperationFuture();
+        client.claim(taskId, userId, groupIds, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> start(long taskId, String userId) {
+        OperationFuture future = new OperationFuture();
+        client.start(taskId, userId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> stop(long taskId, String userId) {
+        OperationFuture future = new OperationFuture();
+        client.stop(taskId, userId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> release(long taskId, String userId) {
+        OperationFuture future = new OperationFuture();
+        client.release(taskId, userId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> suspend(long taskId, String userId) {
+        OperationFuture future = new OperationFuture();
+        client.suspend(taskId, userId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> resume(long taskId, String userId) {
+        OperationFuture future = new OperationFuture();
+        client.resume(taskId, userId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> skip(long taskId, String userId) {
+        OperationFuture future = new OperationFuture();
+        client.skip(taskId, userId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> complete(long taskId, String userId, ContentData outputData) {
+        OperationFuture future = new OperationFuture();
+        client.complete(taskId, userId, outputData, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> completeWithResults(long taskId, String userId, Object results) {
+        OperationFuture future = new OperationFuture();
+        client.completeWithResults(taskId, userId, results, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> fail(long taskId, String userId, FaultData faultData) {
+        OperationFuture future = new OperationFuture();
+        client.fail(taskId, userId, faultData, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> exit(long taskId, String userId) {
+        OperationFuture future = new OperationFuture();
+        client.exit(taskId, userId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> delegate(long taskId, String userId, String targetUserId) {
+        OperationFuture future = new OperationFuture();
+        client.delegate(taskId, userId, targetUserId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> forward(long taskId, String userId, String targetEntityId) {
+        OperationFuture future = new OperationFuture();
+        client.forward(taskId, userId, targetEntityId, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<Void> nominate(long taskId, String userId, List<OrganizationalEntity> potentialOwners) {
+        OperationFuture future = new OperationFuture();
+        client.nominate(taskId, userId, potentialOwners, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<List<TaskSummary>> getTasksAssignedAsPotentialOwner(String userId, String language) {
+        TaskSummaryFuture future = new TaskSummaryFuture();
+        client.getTasksAssignedAsPotentialOwner(userId, language, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<List<TaskSummary>> getTasksAssignedAsPotentialOwner(String userId, List<String> groupIds, String language) {
+        TaskSummaryFuture future = new TaskSummaryFuture();
+        client.getTasksAssignedAsPotentialOwner(userId, groupIds, language, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<List<TaskSummary>> getTasksAssignedAsBusinessAdministrator(String userId, String language) {
+        TaskSummaryFuture future = new TaskSummaryFuture();
+        client.getTasksAssignedAsBusinessAdministrator(userId, language, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<List<TaskSummary>> getTasksOwned(String userId, String language) {
+        TaskSummaryFuture future = new TaskSummaryFuture();
+        client.getTasksOwned(userId, language, future);
+        return deadline(future);
+    }
+
+    public TaskFuture<List<TaskSummary>> getTasksOwned(String userId, List<Status> status, String language) {
+        TaskSummaryFuture future = new TaskSummaryFuture();
+        client.getTasksOwned(userId, status, language, future);
+        return deadline(future);
+    }
+
+    private <T> TaskFuture<T> deadline(TaskFuture<T> future) {
+        if (timeout > 0) {
+            future.expireAfter(timeout, unit);
+        }
+        return future;
+    }
+
+    private static class OperationFuture extends TaskFuture<Void> implements TaskOperationResponseHandler, DeleteCommentResponseHandler {
+        public void setIsDone(boolean done) {
+            if (done) {
+                set(null);
+            }
+        }
+    }
+
+    private static class IdFuture extends TaskFuture<Long> implements AddTaskResponseHandler, AddCommentResponseHandler, SetDocumentResponseHandler {
+        public void execute(long id) {
+            set(id);
+        }
+    }
+
+    private static class GetTaskFuture extends TaskFuture<Task> implements GetTaskResponseHandler {
+        public void execute(Task task) {
+            set(task);
+        }
+    }
+
+    private static class GetContentFuture extends TaskFuture<Content> implements GetContentResponseHandler {
+        public void execute(Content content) {
+            set(content);
+        }
+    }
+
+    private static class TaskSummaryFuture extends TaskFuture<List<TaskSummary>> implements TaskSummaryResponseHandler {
+        public void execute(List<TaskSummary> results) {
+            set(results);
+        }
+    }
+
+}
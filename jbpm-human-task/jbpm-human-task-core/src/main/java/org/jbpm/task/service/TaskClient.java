@@ -17,7 +17,9 @@
 package org.jbpm.task.service;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.drools.runtime.Environment;
 
@@ -33,6 +35,7 @@ import org.jbpm.task.Task;
 import org.jbpm.task.service.TaskClientHandler.AddAttachmentResponseHandler;
 import org.jbpm.task.service.TaskClientHandler.AddCommentResponseHandler;
 import org.jbpm.task.service.TaskClientHandler.AddTaskResponseHandler;
+import org.jbpm.task.service.TaskClientHandler.BatchOperationResponseHandler;
 import org.jbpm.task.service.TaskClientHandler.DeleteAttachmentResponseHandler;
 import org.jbpm.task.service.TaskClientHandler.DeleteCommentResponseHandler;
 import org.jbpm.task.service.TaskClientHandler.GetContentResponseHandler;
@@ -410,6 +413,64 @@ public class TaskClient implements AsyncTaskService{
         connector.write( cmd );
     }
 
+    /**
+     * Executes an operation on several tasks in one request, see
+     * {@link TaskServiceSession#taskOperations(Operation, List, String, String, Map, List)}. The
+     * response handler receives the result of the operation on each task.
+     *
+     * @param contents the content data of each task, such as the output of completed tasks, may be null
+     */
+    public void batchOperation(Operation operation,
+                               List<Long> taskIds,
+                               String userId,
+                               String targetEntityId,
+                               Map<Long, ContentData> contents,
+                               List<String> groupIds,
+                               BatchOperationResponseHandler responseHandler) {
+        List<Object> args = new ArrayList<Object>( 6 );
+        args.add( operation );
+        args.add( new ArrayList<Long>( taskIds ) );
+        args.add( userId );
+        args.add( targetEntityId );
+        args.add( contents == null ? null : new HashMap<Long, ContentData>( contents ) );
+        args.add( groupIds );
+        Command cmd = new Command( counter.getAndIncrement(),
+                                   CommandName.BatchOperationRequest,
+                                   args );
+
+        handler.addResponseHandler( cmd.getId(),
+                                    responseHandler );
+
+        connector.write( cmd );
+    }
+
+    public void claim(List<Long> taskIds,
+                      String userId,
+                      List<String> groupIds,
+                      BatchOperationResponseHandler responseHandler) {
+        batchOperation( Operation.Claim, taskIds, userId, null, null, groupIds, responseHandler );
+    }
+
+    public void start(List<Long> taskIds,
+                      String userId,
+                      BatchOperationResponseHandler responseHandler) {
+        batchOperation( Operation.Start, taskIds, userId, null, null, null, responseHandler );
+    }
+
+    public void complete(List<Long> taskIds,
+                         String userId,
+                         Map<Long, ContentData> outputData,
+                         BatchOperationResponseHandler responseHandler) {
+        batchOperation( Operation.Complete, taskIds, userId, null, outputData, null, responseHandler );
+    }
+
+    public void delegate(List<Long> taskIds,
+                         String userId,
+                         String targetUserId,
+                         BatchOperationResponseHandler responseHandler) {
+        batchOperation( Operation.Delegate, taskIds, userId, targetUserId, null, null, responseHandler );
+    }
+
     public void fail(long taskId,
                      String userId,
                      FaultData faultData,
@@ -71,6 +71,18 @@ public class TaskClientHandler {
                 }
                 break;
             }
+            case BatchOperationResponse: {
+                BatchOperationResponseHandler responseHandler = (BatchOperationResponseHandler) responseHandlers.remove(cmd.getId());
+                if (responseHandler != null) {
+                    if (!cmd.getArguments().isEmpty() && cmd.getArguments().get(0) instanceof RuntimeException) {
+                        responseHandler.setError((RuntimeException) cmd.getArguments().get(0));
+                    } else {
+                        List<TaskOperationResult> results = (List<TaskOperationResult>) cmd.getArguments().get(0);
+                        responseHandler.execute(results);
+                    }
+                }
+                break;
+            }
             case GetTaskResponse: {
                 GetTaskResponseHandler responseHandler = (GetTaskResponseHandler) responseHandlers.remove(cmd.getId());
                 if (responseHandler != null) {                    
@@ -239,6 +251,12 @@ public class TaskClientHandler {
         public void setIsDone(boolean done);
     }
 
+    public static interface BatchOperationResponseHandler
+            extends
+            ResponseHandler {
+        public void execute(List<TaskOperationResult> results);
+    }
+
     public static interface AddCommentResponseHandler
             extends
             ResponseHandler {
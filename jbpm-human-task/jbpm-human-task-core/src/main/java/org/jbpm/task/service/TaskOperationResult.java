@@ -0,0 +1,75 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Result of an operation on one of the tasks of a batch operation: either the operation succeeded,
+ * or the error it failed with.
+ *
+ * @see org.jbpm.task.service.TaskServiceSession#taskOperations(Operation, java.util.List, String, String, java.util.Map, java.util.List)
+ */
+public class TaskOperationResult implements Externalizable {
+
+    private long taskId;
+    private RuntimeException error;
+
+    public TaskOperationResult() {
+    }
+
+    public TaskOperationResult(long taskId) {
+        this.taskId = taskId;
+    }
+
+    public TaskOperationResult(long taskId, RuntimeException error) {
+        this.taskId = taskId;
+        this.error = error;
+    }
+
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeLong( taskId );
+        out.writeObject( error );
+    }
+
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        taskId = in.readLong();
+        error = (RuntimeException) in.readObject();
+    }
+
+    public long getTaskId() {
+        return taskId;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    /**
+     * @return the error of the operation on the task, or <code>null</code> if it succeeded
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    public String toString() {
+        return "TaskOperationResult[taskId=" + taskId + (error == null ? "" : ", error=" + error) + "]";
+    }
+
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service;
+
+/**
+ * Error of a request for which the task server did not respond before its deadline. The request
+ * may still have been executed by the server.
+ *
+ * @see org.jbpm.task.service.responsehandlers.TaskFuture#expireAfter(long, java.util.concurrent.TimeUnit)
+ */
+public class TaskResponseTimeoutException extends TaskException {
+
+    public TaskResponseTimeoutException(String message) {
+        super(message);
+    }
+
+}
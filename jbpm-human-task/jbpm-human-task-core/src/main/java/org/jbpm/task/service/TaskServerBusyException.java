@@ -0,0 +1,30 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service;
+
+/**
+ * Exception returned to the client when the task server rejects a command because too many
+ * commands are already waiting to be executed. The command was not executed and may be retried.
+ *
+ * @see org.jbpm.task.service.TaskServerExecutor
+ */
+public class TaskServerBusyException extends TaskException {
+
+    public TaskServerBusyException(String message) {
+        super(message);
+    }
+
+}
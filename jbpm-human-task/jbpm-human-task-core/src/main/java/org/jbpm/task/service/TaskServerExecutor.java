@@ -0,0 +1,326 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Execution stage between the transport of a task server and the {@link TaskServerHandler}, so that
+ * commands are not executed on the I/O thread of the transport.
+ * <p>
+ * Commands are executed by a bounded pool of worker threads. Commands that change the same task
+ * are executed one after the other, in the order they were received; other commands are executed
+ * concurrently. A batch operation is ordered against the commands of each of its tasks. When more
+ * commands are waiting than the configured queue size, the command is rejected and the client
+ * receives a {@link TaskServerBusyException} as response.
+ * <p>
+ * The number of threads (default 10) and the queue size (default 1000) can be set with the
+ * <code>jbpm.task.server.threads</code> and <code>jbpm.task.server.queue.size</code> system properties.
+ * With 0 threads all commands are executed on the calling thread.
+ */
+public class TaskServerExecutor {
+
+    public static final String THREADS = "jbpm.task.server.threads";
+    public static final String QUEUE_SIZE = "jbpm.task.server.queue.size";
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskServerExecutor.class);
+
+    private final TaskServerHandler handler;
+    private final int queueSize;
+    private final ThreadPoolExecutor executor;
+
+    // commands waiting for the previous command on the same task, guarded by lanes
+    private final Map<Long, Lane> lanes = new HashMap<Long, Lane>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger maxQueued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public TaskServerExecutor(TaskServerHandler handler) {
+        this(handler, Integer.getInteger(THREADS, 10), Integer.getInteger(QUEUE_SIZE, 1000));
+    }
+
+    /**
+     * @param handler the handler that executes the commands
+     * @param threads the number of worker threads, 0 to execute commands on the calling thread
+     * @param queueSize the maximum number of commands waiting for a worker thread
+     */
+    public TaskServerExecutor(TaskServerHandler handler, int threads, int queueSize) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Number of threads must not be negative: " + threads);
+        }
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("Queue size must be positive: " + queueSize);
+        }
+        this.handler = handler;
+        this.queueSize = queueSize;
+        if (threads > 0) {
+            // the queue is bounded by the queued counter, so that rejected commands can be answered
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+        } else {
+            this.executor = null;
+        }
+    }
+
+    public void exceptionCaught(SessionWriter session, Throwable cause) throws Exception {
+        handler.exceptionCaught(session, cause);
+    }
+
+    public void messageReceived(final SessionWriter session, final Object message) throws Exception {
+        final Command cmd = (Command) message;
+        if (executor == null || isInline(cmd.getName())) {
+            handler.messageReceived(session, message);
+            return;
+        }
+        if (queued.incrementAndGet() > queueSize) {
+            queued.decrementAndGet();
+            reject(session, cmd);
+            return;
+        }
+        updateMaxQueued();
+        Runnable command = new Runnable() {
+            public void run() {
+                queued.decrementAndGet();
+                active.incrementAndGet();
+                try {
+                    handler.messageReceived(session, message);
+                } catch (Throwable t) {
+                    try {
+                        handler.exceptionCaught(session, t);
+                    } catch (Exception e) {
+                        logger.error("Unable to handle exception of command " + cmd.getName(), e);
+                    }
+                } finally {
+                    active.decrementAndGet();
+                    completed.incrementAndGet();
+                }
+            }
+        };
+        List<Long> taskIds = TaskServerHandler.getTaskIds(cmd);
+        try {
+            if (taskIds == null || taskIds.isEmpty()) {
+                executor.execute(command);
+                return;
+            }
+            synchronized (lanes) {
+                Runnable laneCommand = taskIds.size() == 1 ? command : new Barrier(command, taskIds.size());
+                for (Long taskId : taskIds) {
+                    Lane lane = lanes.get(taskId);
+                    if (lane != null) {
+                        lane.commands.add(laneCommand);
+                        continue;
+                    }
+                    lane = new Lane(taskId);
+                    lane.commands.add(laneCommand);
+                    executor.execute(lane);
+                    lanes.put(taskId, lane);
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            // the executor was disposed
+            queued.decrementAndGet();
+            reject(session, cmd);
+        }
+    }
+
+    /**
+     * Registrations are cheap and must be known before the responses of the following commands are sent.
+     */
+    private static boolean isInline(CommandName name) {
+        return name == CommandName.RegisterClient || name == CommandName.RegisterForEventRequest;
+    }
+
+    private void updateMaxQueued() {
+        int current = queued.get();
+        int max = maxQueued.get();
+        while (current > max && !maxQueued.compareAndSet(max, current)) {
+            max = maxQueued.get();
+        }
+    }
+
+    private void reject(SessionWriter session, Command cmd) throws Exception {
+        rejected.incrementAndGet();
+        logger.warn("Rejecting command " + cmd.getName() + ", more than " + queueSize + " commands are waiting");
+        CommandName response = TaskServerHandler.getResponseName(cmd.getName());
+        if (response == null) {
+            return;
+        }
+        List<Object> args = new ArrayList<Object>(1);
+        args.add(new TaskServerBusyException("Command " + cmd.getName() + " rejected, the task server is busy. Please try again later."));
+        session.write(new Command(cmd.getId(), response, args));
+    }
+
+    /**
+     * Stops the worker threads after the waiting commands have been executed.
+     */
+    public void dispose() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public ExecutorService getExecutorService() {
+        return executor;
+    }
+
+    /**
+     * @return the number of commands waiting for a worker thread or for the previous command on the same task
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueued.get();
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public String toString() {
+        return "TaskServerExecutor[queueDepth=" + queued + ", maxQueueDepth=" + maxQueued
+            + ", active=" + active + ", completed=" + completed + ", rejected=" + rejected + "]";
+    }
+
+    /**
+     * The commands of one task, executed one after the other by a single worker thread.
+     */
+    private class Lane implements Runnable {
+
+        private final Long taskId;
+        private final LinkedList<Runnable> commands = new LinkedList<Runnable>();
+
+        Lane(Long taskId) {
+            this.taskId = taskId;
+        }
+
+        public void run() {
+            while (true) {
+                Runnable command;
+                synchronized (lanes) {
+                    if (commands.isEmpty()) {
+                        lanes.remove(taskId);
+                        return;
+                    }
+                    command = commands.removeFirst();
+                }
+                if (command instanceof Barrier) {
+                    if (!((Barrier) command).arrive(this)) {
+                        // resumed once the command of the barrier was executed
+                        return;
+                    }
+                } else {
+                    command.run();
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A command on several tasks, added to the lane of each of them. The lanes that reach it stop
+     * until the last one does, which executes the command and resumes the others, so the command is
+     * executed after the previous commands on all its tasks and before the following ones.
+     */
+    private class Barrier implements Runnable {
+
+        private final Runnable command;
+        private final List<Lane> waiting = new ArrayList<Lane>();
+        private int remaining;
+
+        Barrier(Runnable command, int lanes) {
+            this.command = command;
+            this.remaining = lanes;
+        }
+
+        /**
+         * @return true if the given lane was the last to arrive and the command was executed,
+         * false if the lane has to wait for the others
+         */
+        boolean arrive(Lane lane) {
+            synchronized (this) {
+                if (--remaining > 0) {
+                    waiting.add(lane);
+                    return false;
+                }
+            }
+            try {
+                command.run();
+            } finally {
+                for (Lane waitingLane : waiting) {
+                    try {
+                        executor.execute(waitingLane);
+                    } catch (RejectedExecutionException e) {
+                        logger.warn("Unable to resume the commands of task " + waitingLane.taskId + ", the executor was disposed");
+                    }
+                }
+            }
+            return true;
+        }
+
+        public void run() {
+            command.run();
+        }
+
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger poolNumber = new AtomicInteger();
+
+        private final int pool = poolNumber.incrementAndGet();
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "task-server-" + pool + "-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
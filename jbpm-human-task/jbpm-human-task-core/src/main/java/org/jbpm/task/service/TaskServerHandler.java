@@ -19,9 +19,10 @@ package org.jbpm.task.service;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.drools.SystemEventListener;
 import org.jbpm.eventmessaging.EventKey;
@@ -49,7 +50,8 @@ public class TaskServerHandler {
 
     public TaskServerHandler(TaskService service, SystemEventListener systemEventListener) {
         this.service = service;
-        this.clients = new HashMap<String, SessionWriter>();
+        // commands of the same client may be executed by different threads
+        this.clients = new ConcurrentHashMap<String, SessionWriter>();
         this.systemEventListener = systemEventListener;
     }
 
@@ -97,6 +99,38 @@ public class TaskServerHandler {
                     session.write(resultsCmnd);
                     break;
                 }
+                case BatchOperationRequest: {
+                    // prepare
+                    response = CommandName.BatchOperationResponse;
+                    Operation operation = (Operation) cmd.getArguments().get(0);
+
+                    systemEventListener.debug("Command receieved on server was batch operation of type: " + operation);
+
+                    List<Long> taskIds = (List<Long>) cmd.getArguments().get(1);
+                    String userId = (String) cmd.getArguments().get(2);
+                    String targetEntityId = (String) cmd.getArguments().get(3);
+                    Map<Long, ContentData> contents = (Map<Long, ContentData>) cmd.getArguments().get(4);
+                    List<String> groupIds = (List<String>) cmd.getArguments().get(5);
+
+                    // execute
+                    List<TaskOperationResult> results = taskSession.taskOperations(operation, taskIds, userId, targetEntityId, contents, groupIds);
+
+                    // return, hiding server side errors like failed commands do
+                    List<TaskOperationResult> clientResults = new ArrayList<TaskOperationResult>(results.size());
+                    for (TaskOperationResult result : results) {
+                        if (result.isSuccessful() || result.getError() instanceof TaskException) {
+                            clientResults.add(result);
+                        } else {
+                            String errorMessage = "Operation " + operation + " on task " + result.getTaskId() + " faild due to " + result.getError().getMessage() + ". Please contact task server administrator.";
+                            clientResults.add(new TaskOperationResult(result.getTaskId(), new RuntimeException(errorMessage)));
+                        }
+                    }
+                    List args = new ArrayList<Object>(1);
+                    args.add(clientResults);
+                    Command resultsCmnd = new Command(cmd.getId(), CommandName.BatchOperationResponse, args);
+                    session.write(resultsCmnd);
+                    break;
+                }
                 case ClaimNextAvailableRequest: {
                     // prepare
                     response = CommandName.OperationResponse;
@@ -671,4 +705,120 @@ public class TaskServerHandler {
         }
     }
 
+    /**
+     * Returns the ids of the tasks a command changes, or <code>null</code> if the command does not
+     * change given tasks. Commands on the same task must be executed in the order they were received.
+     */
+    public static List<Long> getTaskIds(Command cmd) {
+        if (cmd.getName() == CommandName.BatchOperationRequest) {
+            List<Long> taskIds = (List<Long>) cmd.getArguments().get(1);
+            return new ArrayList<Long>(new LinkedHashSet<Long>(taskIds));
+        }
+        Long taskId = getTaskId(cmd);
+        return taskId == null ? null : Collections.singletonList(taskId);
+    }
+
+    /**
+     * Returns the id of the task a command changes, or <code>null</code> if the command does not
+     * change a single task. Commands on the same task must be executed in the order they were received.
+     */
+    public static Long getTaskId(Command cmd) {
+        List<?> arguments = cmd.getArguments();
+        switch (cmd.getName()) {
+            case OperationRequest: {
+                return (Long) arguments.get(1);
+            }
+            case AddCommentRequest:
+            case DeleteCommentRequest:
+            case AddAttachmentRequest:
+            case DeleteAttachmentRequest:
+            case SetDocumentContentRequest:
+            case NominateTaskRequest:
+            case SetOutputRequest:
+            case DeleteOutputRequest:
+            case SetFaultRequest:
+            case DeleteFaultRequest:
+            case SetPriorityRequest: {
+                return (Long) arguments.get(0);
+            }
+            default: {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the command that is sent back to the client for the given request, or
+     * <code>null</code> if the client does not expect a response.
+     */
+    public static CommandName getResponseName(CommandName request) {
+        switch (request) {
+            case OperationRequest:
+            case ClaimNextAvailableRequest:
+            case NominateTaskRequest:
+            case SetOutputRequest:
+            case DeleteOutputRequest:
+            case SetFaultRequest:
+            case DeleteFaultRequest:
+            case SetPriorityRequest: {
+                return CommandName.OperationResponse;
+            }
+            case BatchOperationRequest: {
+                return CommandName.BatchOperationResponse;
+            }
+            case GetTaskRequest: {
+                return CommandName.GetTaskResponse;
+            }
+            case AddTaskRequest: {
+                return CommandName.AddTaskResponse;
+            }
+            case AddCommentRequest: {
+                return CommandName.AddCommentResponse;
+            }
+            case DeleteCommentRequest: {
+                return CommandName.DeleteCommentResponse;
+            }
+            case AddAttachmentRequest: {
+                return CommandName.AddAttachmentResponse;
+            }
+            case DeleteAttachmentRequest: {
+                return CommandName.DeleteAttachmentResponse;
+            }
+            case SetDocumentContentRequest: {
+                return CommandName.SetDocumentContentResponse;
+            }
+            case GetContentRequest: {
+                return CommandName.GetContentResponse;
+            }
+            case QueryTaskByWorkItemId: {
+                return CommandName.QueryTaskByWorkItemIdResponse;
+            }
+            case QueryTasksOwned:
+            case QueryTasksOwnedWithParticularStatus:
+            case QueryTasksAssignedAsBusinessAdministrator:
+            case QueryTasksAssignedAsPotentialOwner:
+            case QueryTasksAssignedAsPotentialOwnerByStatus:
+            case QueryTasksAssignedAsPotentialOwnerByStatusByGroup:
+            case QueryTasksAssignedAsPotentialOwnerWithGroup:
+            case QueryTasksAssignedAsPotentialOwnerByGroup:
+            case QuerySubTasksAssignedAsPotentialOwner:
+            case QueryGetSubTasksByParentTaskId:
+            case QueryTasksAssignedAsTaskInitiator:
+            case QueryTasksAssignedAsExcludedOwner:
+            case QueryTasksAssignedAsRecipient:
+            case QueryTasksAssignedAsTaskStakeholder: {
+                return CommandName.QueryTaskSummaryResponse;
+            }
+            case QueryGenericRequest: {
+                return CommandName.QueryGenericResponse;
+            }
+            case RegisterForEventRequest: {
+                return CommandName.EventTriggerResponse;
+            }
+            default: {
+                return null;
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -22,16 +22,10 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Serializable;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import javax.persistence.EntityManagerFactory;
 
@@ -57,7 +51,8 @@ public class TaskService {
 
     private TaskSessionFactory sessionFactory;
     
-    private ScheduledThreadPoolExecutor scheduler;
+    private DeadlineScheduler deadlineScheduler;
+    private String taskInboxLanguage = System.getProperty(TASK_INBOX_LANGUAGE);
     private EscalatedDeadlineHandler escalatedDeadlineHandler;
 
     private UserInfo userInfo;
@@ -65,6 +60,11 @@ public class TaskService {
     private TaskEventSupport eventSupport;
     private EventKeys eventKeys;
 
+    /**
+     * System property that enables the {@link TaskInbox} projection for the given language.
+     */
+    public static final String TASK_INBOX_LANGUAGE = "jbpm.task.inbox.language";
+
     private static final Logger logger = LoggerFactory.getLogger(TaskService.class);
     
     /**
@@ -74,8 +74,13 @@ public class TaskService {
 
     private Map<Operation, List<OperationCommand>> operations;
     
-    private Map<Long, List<ScheduledFuture<ScheduledTaskDeadline>>> scheduledTaskDeadlines 
-                                                        = new ConcurrentHashMap<Long, List<ScheduledFuture<ScheduledTaskDeadline>>>();
+    // escalations of the same task are serialized, those of different tasks run in parallel
+    private final Object[] escalationLocks = new Object[64];
+    {
+        for (int i = 0; i < escalationLocks.length; i++) {
+            escalationLocks[i] = new Object();
+        }
+    }
 
     /**
      * Constructor in which no EscalatedDeadlineHandler is given. 
@@ -118,11 +123,10 @@ public class TaskService {
         eventSupport = new TaskEventSupport();
         eventKeys = new EventKeys();
         eventSupport.addEventListener(new MessagingTaskEventListener(eventKeys));
-        scheduler = new ScheduledThreadPoolExecutor(3);
-
-        TaskServiceSession session = createSession();
-        session.scheduleUnescalatedDeadlines();
-        session.dispose();
+        if (deadlineScheduler == null) {
+            deadlineScheduler = new DeadlineScheduler();
+        }
+        deadlineScheduler.start(this);
 
         Map<String, Object> vars = new HashMap<String, Object>();
 
@@ -168,6 +172,33 @@ public class TaskService {
         this.sessionFactory = taskSessionFactory;
     }
 
+    /**
+     * Setter of the {@link DeadlineScheduler} field for Spring, to be called before {@link #initialize()}.
+     * @param deadlineScheduler a {@link DeadlineScheduler} instance
+     */
+    public void setDeadlineScheduler(DeadlineScheduler deadlineScheduler) { 
+        this.deadlineScheduler = deadlineScheduler;
+    }
+
+    public DeadlineScheduler getDeadlineScheduler() { 
+        return deadlineScheduler;
+    }
+
+    /**
+     * Enables the denormalized {@link TaskInbox} projection, which serves the potential owner 
+     * queries in the given language, or disables it when <code>null</code> (the default). 
+     * Tasks that existed before the projection was enabled are added by 
+     * {@link TaskServiceSession#rebuildTaskInbox()}.
+     * @param taskInboxLanguage the language of the projected texts
+     */
+    public void setTaskInboxLanguage(String taskInboxLanguage) { 
+        this.taskInboxLanguage = taskInboxLanguage;
+    }
+
+    public String getTaskInboxLanguage() { 
+        return taskInboxLanguage;
+    }
+
     public TaskServiceSession createSession() {
         return sessionFactory.createTaskServiceSession();
     }
@@ -178,35 +209,11 @@ public class TaskService {
 
     public void schedule(ScheduledTaskDeadline deadline,
                          long delay) {
-        ScheduledFuture<ScheduledTaskDeadline> scheduled = scheduler.schedule(deadline,
-                delay,
-                TimeUnit.MILLISECONDS);
-        List<ScheduledFuture<ScheduledTaskDeadline>> knownFeatures = scheduledTaskDeadlines.get(deadline.getTaskId());
-        if (knownFeatures == null) {
-            knownFeatures = new CopyOnWriteArrayList<ScheduledFuture<ScheduledTaskDeadline>>();
-        }
-        knownFeatures.add(scheduled);
-        
-        this.scheduledTaskDeadlines.put(deadline.getTaskId(), knownFeatures);
+        deadlineScheduler.schedule(deadline, delay);
     }
     
     public void unschedule(long taskId) {
-        List<ScheduledFuture<ScheduledTaskDeadline>> knownFeatures = scheduledTaskDeadlines.remove(taskId);
-        if (knownFeatures == null) {
-            return;
-        }
-        Iterator<ScheduledFuture<ScheduledTaskDeadline>> it = knownFeatures.iterator();
-        while (it.hasNext()) {
-            ScheduledFuture<ScheduledTaskDeadline> scheduled = it.next();
-            try {
-                if (!scheduled.isDone() && !scheduled.isCancelled()) {
-                    scheduled.cancel(true);
-                }
-                
-            } catch (Exception e) {
-                logger.error("Error while cancelling scheduled deadline task for Task with id " + taskId, e);
-            }
-        }       
+        deadlineScheduler.unschedule(taskId);
     }
 
     public Map<Operation, List<OperationCommand>> getOperations() {
@@ -249,12 +256,14 @@ public class TaskService {
         this.escalatedDeadlineHandler = escalatedDeadlineHandler;
     }
 
-    public synchronized void executeEscalatedDeadline(final long taskId, final long deadlineId) {
-        TaskServiceSession session = createSession();
-        
-        session.executeEscalatedDeadline(escalatedDeadlineHandler, this, taskId, deadlineId);
-
-        session.dispose();
+    public void executeEscalatedDeadline(final long taskId, final long deadlineId) {
+        synchronized (escalationLocks[(int) (taskId & (escalationLocks.length - 1))]) {
+            TaskServiceSession session = createSession();
+            
+            session.executeEscalatedDeadline(escalatedDeadlineHandler, this, taskId, deadlineId);
+    
+            session.dispose();
+        }
     }
 
     public void addUsersAndGroups(Map<String, User> users, Map<String, Group> groups) {
@@ -20,9 +20,11 @@ import static org.jbpm.task.service.persistence.TaskPersistenceManager.*;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.persistence.EntityNotFoundException;
 import javax.persistence.Query;
@@ -45,7 +47,13 @@ import org.jbpm.task.Status;
 import org.jbpm.task.SubTasksStrategy;
 import org.jbpm.task.Task;
 import org.jbpm.task.TaskData;
+import org.jbpm.task.TaskInbox;
 import org.jbpm.task.User;
+import org.jbpm.task.event.TaskClaimedEvent;
+import org.jbpm.task.event.TaskCompletedEvent;
+import org.jbpm.task.event.TaskFailedEvent;
+import org.jbpm.task.event.TaskSkippedEvent;
+import org.jbpm.task.event.TaskUserEvent;
 import org.jbpm.task.identity.UserGroupCallback;
 import org.jbpm.task.identity.UserGroupCallbackManager;
 import org.jbpm.task.query.DeadlineSummary;
@@ -63,9 +71,26 @@ public class TaskServiceSession {
     private Map<String, RuleBase> ruleBases;
     private Map<String, Map<String, Object>> globals;
     private Map<String, Boolean> userGroupsMap = new HashMap<String, Boolean>();
+    // users and groups from the callback that are known to be persisted
+    private Set<String> knownUserIds = new HashSet<String>();
+    private Set<String> knownGroupIds = new HashSet<String>();
+    // users and groups from the callback persisted in a transaction that is not committed yet
+    private Set<String> pendingUserIds = new HashSet<String>();
+    private Set<String> pendingGroupIds = new HashSet<String>();
     
     private static final Logger logger = LoggerFactory.getLogger(TaskServiceSession.class);
 
+    public static final String TASK_INBOX_PAGE_SIZE = "jbpm.task.inbox.page.size";
+
+    private static final List<Status> ACTIVE_STATUSES = new ArrayList<Status>();
+    static {
+        ACTIVE_STATUSES.add(Status.Created);
+        ACTIVE_STATUSES.add(Status.Ready);
+        ACTIVE_STATUSES.add(Status.Reserved);
+        ACTIVE_STATUSES.add(Status.InProgress);
+        ACTIVE_STATUSES.add(Status.Suspended);
+    }
+
     public TaskServiceSession(final TaskService service, final TaskPersistenceManager tpm) {
         this.service = service;
         this.tpm = tpm;
@@ -85,6 +110,22 @@ public class TaskServiceSession {
             userGroupsMap.clear();
             userGroupsMap = null;
         }
+        if( knownUserIds != null ) { 
+            knownUserIds.clear();
+            knownUserIds = null;
+        }
+        if( knownGroupIds != null ) { 
+            knownGroupIds.clear();
+            knownGroupIds = null;
+        }
+        if( pendingUserIds != null ) { 
+            pendingUserIds.clear();
+            pendingUserIds = null;
+        }
+        if( pendingGroupIds != null ) { 
+            pendingGroupIds.clear();
+            pendingGroupIds = null;
+        }
     }
 
     public TaskPersistenceManager getTaskPersistenceManager() { 
@@ -196,6 +237,7 @@ public class TaskServiceSession {
 
                     task.getTaskData().setDocument(content.getId(), contentData);
                 }
+                updateTaskInbox(task);
             }
         });
 
@@ -239,6 +281,31 @@ public class TaskServiceSession {
             this.service.schedule(deadline, delay);
         }
     }
+
+    /**
+     * Schedules the unescalated deadlines that are due before the given date, loading them
+     * in pages of the given size ordered by date.
+     */
+    public void scheduleUnescalatedDeadlines(Date dueBefore, int pageSize) { 
+        Date afterDate = new Date(0);
+        long afterDeadlineId = -1;
+        List<DeadlineSummary> page;
+        do {
+            page = tpm.getUnescalatedDeadlines(dueBefore, afterDate, afterDeadlineId, pageSize);
+            long now = System.currentTimeMillis();
+            for (DeadlineSummary summary : page) { 
+                ScheduledTaskDeadline deadline = new ScheduledTaskDeadline(summary.getTaskId(),
+                                                                           summary.getDeadlineId(),
+                                                                           this.service);
+                this.service.schedule(deadline, summary.getDate().getTime() - now);
+            }
+            if (!page.isEmpty()) { 
+                DeadlineSummary last = page.get(page.size() - 1);
+                afterDate = last.getDate();
+                afterDeadlineId = last.getDeadlineId();
+            }
+        } while (page.size() == pageSize);
+    }
     
     private void scheduleDeadlines(final List<Deadline> deadlines, final long now, final long taskId) {
         for (Deadline deadline : deadlines) {
@@ -417,45 +484,22 @@ public class TaskServiceSession {
 
             evalCommand(operation, commands, task, user, targetEntity, groupIds);
 
-            switch (operation) {
-                case Claim: {
-                    taskClaimOperation(task);
-                    break;
-                }
-                case Complete: {
-                    taskCompleteOperation(task, data);
-                    break;
-                }
-                case Fail: {
-                    taskFailOperation(task, data);
-                    break;
-                }
-                case Skip: {
-                    taskSkipOperation(task, userId);
-                    break;
-                }
-                case Remove: {
-                	taskRemoveOperation(task, user);
-                	break;
-                }
-                case Register: {
-                	taskRegisterOperation(task, user);
-                	break;
-                }
-            }
+            executeOperation(operation, task, user, userId, data);
+            updateTaskInbox(task);
             
-            tpm.endTransaction(transactionOwner);
+            endTransaction(transactionOwner);
             
         } catch (RuntimeException re) {
             
             // We may not be the tx owner -- but something has gone wrong.
             // ..which is why we make ourselves owner, and roll the tx back. 
             boolean takeOverTransaction = true;
-            tpm.rollBackTransaction(takeOverTransaction);
+            rollBackTransaction(takeOverTransaction);
 
             doOperationInTransaction(new TransactedOperation() {
                 public void doOperation() {
                     task.getTaskData().setStatus(Status.Error);
+                    updateTaskInbox(task);
                 }
             });
 
@@ -487,6 +531,214 @@ public class TaskServiceSession {
 
     }
 
+    private void executeOperation(final Operation operation, final Task task, final User user,
+                                  final String userId, final ContentData data) {
+        switch (operation) {
+            case Claim: {
+                taskClaimOperation(task);
+                break;
+            }
+            case Complete: {
+                taskCompleteOperation(task, data);
+                break;
+            }
+            case Fail: {
+                taskFailOperation(task, data);
+                break;
+            }
+            case Skip: {
+                taskSkipOperation(task, userId);
+                break;
+            }
+            case Remove: {
+            	taskRemoveOperation(task, user);
+            	break;
+            }
+            case Register: {
+            	taskRegisterOperation(task, user);
+            	break;
+            }
+        }
+    }
+
+    /**
+     * Executes an operation on several tasks, with the same outcome as calling
+     * {@link #taskOperation(Operation, long, String, String, ContentData, List)} for each of them:
+     * a task the operation fails on is set to the Error status while the other tasks are still
+     * changed. The tasks are changed in a single transaction. When the operation fails on a task,
+     * that transaction is rolled back, the task is set to Error and the remaining tasks are changed
+     * again in a new transaction. Only when that one fails too, or a transaction can't be committed,
+     * each of the remaining tasks is changed in its own transaction. The user group callback is
+     * consulted once for the whole batch, and the events of the changed tasks are fired together at
+     * the end.
+     * <p>
+     * When called within a transaction of the caller, the tasks can't be changed separately: the
+     * first failure rolls the transaction back and is thrown, like taskOperation does.
+     *
+     * @param contents the content data of each task, such as the output of completed tasks, may be null
+     * @return the result of the operation on each task, in the order of <code>taskIds</code>
+     */
+    public List<TaskOperationResult> taskOperations(final Operation operation, final List<Long> taskIds,
+                                                    final String userId, final String targetEntityId,
+                                                    final Map<Long, ContentData> contents,
+                                                    List<String> groupIds) throws TaskException {
+        groupIds = doUserGroupCallbackOperation(userId, groupIds);
+        doCallbackUserOperation(targetEntityId);
+
+        final List<OperationCommand> commands = service.getCommandsForOperation(operation);
+        Map<Long, RuntimeException> errors = new HashMap<Long, RuntimeException>();
+        List<Long> remaining = new ArrayList<Long>(taskIds);
+        int failedBatches = 0;
+
+        while (!remaining.isEmpty() && failedBatches < 2) {
+            Long currentTaskId = null;
+            boolean transactionOwner = false;
+            try {
+                transactionOwner = tpm.beginTransaction();
+
+                User user = getEntity(User.class, userId);
+                OrganizationalEntity targetEntity = targetEntityId == null ? null
+                        : getEntity(OrganizationalEntity.class, targetEntityId);
+                for (Long taskId : remaining) {
+                    currentTaskId = taskId;
+                    executeTaskOperation(operation, commands, taskId, user, targetEntity, userId, contents, groupIds);
+                }
+                currentTaskId = null;
+
+                endTransaction(transactionOwner);
+                remaining.clear();
+            } catch (RuntimeException re) {
+                rollBackTransaction(true);
+                if (!transactionOwner) {
+                    // the changes were rolled back with the transaction of the caller
+                    setTaskError(currentTaskId);
+                    throw re;
+                }
+                // the rolled back changes must not be seen by the next transaction
+                tpm.clearPersistenceContext();
+                failedBatches++;
+                if (currentTaskId == null) {
+                    // not caused by one of the tasks, such as a failed commit
+                    logger.debug("Operation " + operation + " failed on a batch of " + remaining.size()
+                                 + " tasks: " + re.getMessage());
+                    break;
+                }
+                logger.debug("Operation " + operation + " failed on task " + currentTaskId + ": " + re.getMessage());
+                remaining.remove(currentTaskId);
+                errors.put(currentTaskId, re);
+                setTaskError(currentTaskId);
+            }
+        }
+
+        for (Long taskId : remaining) {
+            boolean transactionOwner = false;
+            try {
+                transactionOwner = tpm.beginTransaction();
+
+                User user = getEntity(User.class, userId);
+                OrganizationalEntity targetEntity = targetEntityId == null ? null
+                        : getEntity(OrganizationalEntity.class, targetEntityId);
+                executeTaskOperation(operation, commands, taskId, user, targetEntity, userId, contents, groupIds);
+
+                endTransaction(transactionOwner);
+            } catch (RuntimeException re) {
+                logger.debug("Operation " + operation + " failed on task " + taskId + ": " + re.getMessage());
+                rollBackTransaction(true);
+                tpm.clearPersistenceContext();
+                errors.put(taskId, re);
+                setTaskError(taskId);
+            }
+        }
+
+        List<TaskOperationResult> results = new ArrayList<TaskOperationResult>(taskIds.size());
+        List<Task> changedTasks = new ArrayList<Task>(taskIds.size());
+        for (Long taskId : taskIds) {
+            RuntimeException error = errors.get(taskId);
+            if (error == null) {
+                changedTasks.add(getTask(taskId));
+                results.add(new TaskOperationResult(taskId));
+            } else {
+                results.add(new TaskOperationResult(taskId, error));
+            }
+        }
+
+        postTaskOperations(operation, changedTasks, userId);
+
+        return results;
+    }
+
+    private void executeTaskOperation(final Operation operation, final List<OperationCommand> commands,
+                                      final long taskId, final User user, final OrganizationalEntity targetEntity,
+                                      final String userId, final Map<Long, ContentData> contents,
+                                      final List<String> groupIds) {
+        Task task = (Task) tpm.findEntity(Task.class, taskId);
+        if (task == null) {
+            throw new IllegalArgumentException("Task " + taskId + " does not exist");
+        }
+        evalCommand(operation, commands, task, user, targetEntity, groupIds);
+        executeOperation(operation, task, user, userId, contents == null ? null : contents.get(taskId));
+        updateTaskInbox(task);
+    }
+
+    /**
+     * Sets the task a batch operation failed on to the Error status, like a failed single operation does.
+     */
+    private void setTaskError(final Long taskId) {
+        if (taskId == null) {
+            return;
+        }
+        try {
+            doOperationInTransaction(new TransactedOperation() {
+                public void doOperation() {
+                    Task task = (Task) tpm.findEntity(Task.class, taskId);
+                    if (task != null) {
+                        task.getTaskData().setStatus(Status.Error);
+                        updateTaskInbox(task);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.error("Unable to set task " + taskId + " to the Error status", e);
+        }
+    }
+
+    private void postTaskOperations(final Operation operation, final List<Task> tasks, final String userId) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        List<TaskUserEvent> events = new ArrayList<TaskUserEvent>(tasks.size());
+        for (Task task : tasks) {
+            switch (operation) {
+                case Claim: {
+                    events.add(new TaskClaimedEvent(task.getId(), task.getTaskData().getActualOwner().getId()));
+                    break;
+                }
+                case Complete: {
+                    events.add(new TaskCompletedEvent(task.getId(), task.getTaskData().getActualOwner().getId()));
+                    break;
+                }
+                case Fail: {
+                    events.add(new TaskFailedEvent(task.getId(), task.getTaskData().getActualOwner().getId()));
+                    break;
+                }
+                case Skip: {
+                    events.add(new TaskSkippedEvent(task.getId(), userId));
+                    break;
+                }
+            }
+        }
+        switch (operation) {
+            case Complete:
+            case Fail:
+            case Skip:
+            case Exit: {
+                clearDeadlines(tasks);
+                break;
+            }
+        }
+        service.getEventSupport().fireTaskEvents(events);
+    }
+
     private void taskClaimOperation(final Task task) {
         // Task was reserved so owner should get icals
         SendIcal.getInstance().sendIcalForTask(task, service.getUserinfo());
@@ -549,8 +801,13 @@ public class TaskServiceSession {
         return (Deadline) tpm.findEntity(Deadline.class, deadlineId);
     }
     
-    public void setTaskStatus(final long taskId, Status status) { 
-        tpm.setTaskStatusInTransaction(taskId, status);
+    public void setTaskStatus(final long taskId, final Status status) { 
+        doOperationInTransaction(new TransactedOperation() {
+            public void doOperation() {
+                tpm.setTaskStatusInTransaction(taskId, status);
+                updateTaskInbox(getTask(taskId));
+            }
+        });
     }
     
     public void addComment(final long taskId, final Comment comment) {
@@ -687,6 +944,9 @@ public class TaskServiceSession {
     public List<TaskSummary> getTasksAssignedAsPotentialOwner(final String userId,
                                                               final String language) {
         doCallbackUserOperation(userId);
+        if (isServedByTaskInbox(language)) {
+            return queryTaskInbox(userId, null, ACTIVE_STATUSES, -1, -1);
+        }
         return tpm.queryTasksWithUserIdAndLanguage("TasksAssignedAsPotentialOwner", userId, language);
     }
     
@@ -726,6 +986,9 @@ public class TaskServiceSession {
                                                               final String language, final int firstResult, int maxResults) {
         doCallbackUserOperation(userId);
         groupIds = doUserGroupCallbackOperation(userId, groupIds);
+        if (isServedByTaskInbox(language)) {
+            return queryTaskInbox(userId, groupIds, ACTIVE_STATUSES, firstResult, maxResults);
+        }
         
         HashMap<String, Object> params = addParametersToMap(
                 "userId", userId,
@@ -755,6 +1018,9 @@ public class TaskServiceSession {
     public List<TaskSummary> getTasksAssignedAsPotentialOwnerByGroup(final String groupId,
                                                                      final String language) {
         doCallbackGroupOperation(groupId);
+        if (isServedByTaskInbox(language)) {
+            return queryTaskInbox(groupId, null, ACTIVE_STATUSES, -1, -1);
+        }
         Map<String, Object> params = addParametersToMap(
                 "groupId", groupId,
                 "language", language);
@@ -843,6 +1109,7 @@ public class TaskServiceSession {
 					if (task.getTaskData().getStatus() == Status.Ready) {
 						task.getPeopleAssignments().setPotentialOwners(potentialOwners);
 					}
+					updateTaskInbox(task);
 				}
 	    	});
     	} else {
@@ -892,6 +1159,7 @@ public class TaskServiceSession {
     		public void doOperation() {
     			Task task = getEntity(Task.class, taskId);
     			task.setPriority(priority);
+    			updateTaskInbox(task);
     		}
     	});
     }
@@ -985,6 +1253,32 @@ public class TaskServiceSession {
         });
     }
 
+    /**
+     * Ends the transaction; once this session committed it, the users and groups persisted
+     * in it are known to exist.
+     */
+    private void endTransaction(boolean txOwner) {
+        tpm.endTransaction(txOwner);
+        if (txOwner) {
+            knownUserIds.addAll(pendingUserIds);
+            pendingUserIds.clear();
+            knownGroupIds.addAll(pendingGroupIds);
+            pendingGroupIds.clear();
+        }
+    }
+
+    /**
+     * Rolls back the transaction, forgetting the users and groups that may have been persisted
+     * in it, as they may be gone now.
+     */
+    private void rollBackTransaction(boolean txOwner) {
+        tpm.rollBackTransaction(txOwner);
+        pendingUserIds.clear();
+        pendingGroupIds.clear();
+        knownUserIds.clear();
+        knownGroupIds.clear();
+    }
+
     /**
      * Executes the specified operation within a transaction. Note that if there is a currently active
      * transaction, if will reuse it.
@@ -1006,9 +1300,9 @@ public class TaskServiceSession {
             operation.doOperation();
             operationSuccessful = true;
             
-            tpm.endTransaction(txOwner);
+            endTransaction(txOwner);
         } catch(Exception e) {
-            tpm.rollBackTransaction(txOwner);
+            rollBackTransaction(txOwner);
             
             String message; 
             if( !txStarted ) { message = "Could not start transaction."; }
@@ -1026,6 +1320,9 @@ public class TaskServiceSession {
 
     public List<TaskSummary> getTasksAssignedAsPotentialOwnerByStatus(String userId, List<Status> status, String language) {
         doCallbackUserOperation(userId);
+        if (isServedByTaskInbox(language)) {
+            return queryTaskInbox(userId, null, status, -1, -1);
+        }
         HashMap<String, Object> params = addParametersToMap(
                 "userId", userId,
                 "language", language,
@@ -1036,6 +1333,9 @@ public class TaskServiceSession {
 
     public List<TaskSummary> getTasksAssignedAsPotentialOwnerByStatusByGroup(String userId, List<String> groupIds, List<Status> status, String language) {
         doCallbackUserOperation(userId);
+        if (isServedByTaskInbox(language)) {
+            return queryTaskInbox(userId, groupIds, status, -1, -1);
+        }
         HashMap<String, Object> params = addParametersToMap(
                                          "userId", userId,
                                          "groupIds", groupIds,
@@ -1044,6 +1344,97 @@ public class TaskServiceSession {
         return (List<TaskSummary>) tpm.queryWithParametersInTransaction("TasksAssignedAsPotentialOwnerByStatusWithGroups", params);
     }
 
+    private boolean isServedByTaskInbox(String language) {
+        return language != null && language.equals(service.getTaskInboxLanguage());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<TaskSummary> queryTaskInbox(String entityId, List<String> groupIds, List<Status> status,
+                                             int firstResult, int maxResults) {
+        List<String> entityIds = new ArrayList<String>();
+        entityIds.add(entityId);
+        if (groupIds != null) {
+            entityIds.addAll(groupIds);
+        }
+        HashMap<String, Object> params = addParametersToMap(
+                "entityIds", entityIds,
+                "status", status);
+        if (maxResults != -1) {
+            params.put(TaskPersistenceManager.FIRST_RESULT, firstResult);
+            params.put(TaskPersistenceManager.MAX_RESULTS, maxResults);
+        }
+        return (List<TaskSummary>) tpm.queryWithParametersInTransaction("TaskInboxAssignedAsPotentialOwner", params);
+    }
+
+    /**
+     * Replaces the {@link TaskInbox} rows of the given task, one per potential owner, when 
+     * the projection is enabled. Must be called within the transaction that changed the task.
+     */
+    private void updateTaskInbox(Task task) {
+        String language = service.getTaskInboxLanguage();
+        if (language == null) {
+            return;
+        }
+        tpm.deleteTaskInbox(task.getId());
+        PeopleAssignments assignments = task.getPeopleAssignments();
+        if (Boolean.TRUE.equals(task.isArchived()) || assignments == null 
+                || assignments.getPotentialOwners() == null || !TaskInbox.hasTexts(task, language)) {
+            return;
+        }
+        Set<String> entityIds = new HashSet<String>();
+        for (OrganizationalEntity entity : assignments.getPotentialOwners()) {
+            if (entityIds.add(entity.getId())) {
+                tpm.saveEntity(new TaskInbox(task, entity.getId(), language));
+            }
+        }
+    }
+
+    /**
+     * Recreates the {@link TaskInbox} rows of all tasks that are not archived, for instance after 
+     * enabling the projection on an existing database. The tasks are loaded in pages of 
+     * <code>jbpm.task.inbox.page.size</code> (1000 by default) tasks.
+     */
+    public void rebuildTaskInbox() {
+        rebuildTaskInbox(Integer.getInteger(TASK_INBOX_PAGE_SIZE, 1000));
+    }
+
+    /**
+     * Recreates the {@link TaskInbox} rows of all tasks that are not archived, loading them in pages 
+     * of the given size ordered by id. Each page is changed in its own transaction and released 
+     * afterwards, unless called within a transaction of the caller.
+     */
+    @SuppressWarnings("unchecked")
+    public void rebuildTaskInbox(final int pageSize) {
+        long afterTaskId = -1;
+        List<Task> page;
+        do {
+            boolean txOwner = false;
+            try {
+                txOwner = tpm.beginTransaction();
+
+                page = tpm.createNewQuery("select t from Task t where t.archived = 0 and t.id > :afterTaskId order by t.id")
+                    .setParameter("afterTaskId", afterTaskId)
+                    .setMaxResults(pageSize)
+                    .getResultList();
+                for (Task task : page) {
+                    updateTaskInbox(task);
+                }
+
+                endTransaction(txOwner);
+            } catch (RuntimeException re) {
+                rollBackTransaction(txOwner);
+                throw re;
+            }
+            if (!page.isEmpty()) {
+                afterTaskId = page.get(page.size() - 1).getId();
+            }
+            if (txOwner) {
+                // the committed tasks are not needed anymore
+                tpm.clearPersistenceContext();
+            }
+        } while (page.size() == pageSize);
+    }
+
     private interface TransactedOperation {
         void doOperation();
     }
@@ -1059,6 +1450,13 @@ public class TaskServiceSession {
 
             Task task = (Task) tpm.findEntity(Task.class, taskId);
             Deadline deadline = (Deadline) tpm.findEntity(Deadline.class, deadlineId);
+            if (task == null || deadline == null || Boolean.TRUE.equals(deadline.isEscalated())) {
+                // escalated already, e.g. when a refill of the deadline window read the deadline
+                // before its escalation was committed
+                operationSuccessful = true;
+                endTransaction(txOwner);
+                return;
+            }
 
             TaskData taskData = task.getTaskData();
             Content content = null;
@@ -1070,11 +1468,15 @@ public class TaskServiceSession {
                     deadline,
                     content,
                     service);     
+            // not left to the handler, as the deadline would be escalated again by every refill
+            deadline.setEscalated(true);
+            // escalations may reassign the task
+            updateTaskInbox(task);
 
             operationSuccessful = true;
-            tpm.endTransaction(txOwner);
+            endTransaction(txOwner);
         } catch(Exception e) {
-            tpm.rollBackTransaction(txOwner);
+            rollBackTransaction(txOwner);
 
             String message; 
             if( !txStarted ) { message = "Could not start transaction."; }
@@ -1469,11 +1871,17 @@ public class TaskServiceSession {
     }
     
     private void addGroupFromCallbackOperation(String groupId) {
+        if (knownGroupIds.contains(groupId)) {
+            return;
+        }
         try {
             boolean groupExists = tpm.findEntity(Group.class, groupId) != null;
             if( ! StringUtils.isEmpty(groupId) && ! groupExists ) {
                 Group group = new Group(groupId);
+                pendingGroupIds.add(groupId);
                 persistInTransaction(group);
+            } else if (!pendingGroupIds.contains(groupId)) {
+                knownGroupIds.add(groupId);
             }
         } catch (Throwable t) {
             logger.debug("Trying to add group " + groupId + ", but it already exists. ");
@@ -1481,17 +1889,40 @@ public class TaskServiceSession {
     }
     
     private void addUserFromCallbackOperation(String userId) { 
+        if (knownUserIds.contains(userId)) {
+            return;
+        }
         try {
             boolean userExists = tpm.findEntity(User.class, userId) != null;
             if( ! StringUtils.isEmpty(userId) && ! userExists ) {
                 User user = new User(userId);
+                pendingUserIds.add(userId);
                 persistInTransaction(user);
+            } else if (!pendingUserIds.contains(userId)) {
+                knownUserIds.add(userId);
             }
         } catch (Throwable t) {
             logger.debug("Unable to add user " + userId);
         }
     }
     
+    private void clearDeadlines(final List<Task> tasks) { 
+        for (Task task : tasks) {
+            service.unschedule(task.getId());
+        }
+        try {
+            doOperationInTransaction(new TransactedOperation() {
+                public void doOperation() {
+                    for (Task task : tasks) {
+                        clearDeadlines(task);
+                    }
+                }
+            });
+        } catch (Throwable t) {
+            logger.error("Unable to clear deadlines of " + tasks.size() + " tasks", t);
+        }
+    }
+
     private void clearDeadlines(final Task task) { 
         
         if (task.getDeadlines() == null) {
@@ -15,6 +15,7 @@
  */
 package org.jbpm.task.service.persistence;
 
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -183,10 +184,41 @@ public class TaskPersistenceManager {
         return (List<DeadlineSummary>) result;
     }
     
+    /**
+     * Returns a page of the unescalated deadlines due before the given date, ordered by date and id, 
+     * starting after the given (date, deadline id) position. Paging by position instead of by offset 
+     * does not skip deadlines when earlier ones are escalated while paging. 
+     */
+    @SuppressWarnings("unchecked")
+    public List<DeadlineSummary> getUnescalatedDeadlines(Date dueBefore, Date afterDate, long afterDeadlineId, int maxResults) { 
+        HashMap<String, Object> params = addParametersToMap(
+                "dueBefore", dueBefore,
+                "afterDate", afterDate,
+                "afterDeadlineId", afterDeadlineId,
+                MAX_RESULTS, maxResults);
+        
+        return (List<DeadlineSummary>) queryWithParametersInTransaction("UnescalatedDeadlinesDueBefore", params);
+    }
+    
+    /**
+     * Removes the {@link org.jbpm.task.TaskInbox} rows of the given task. Must be called within a transaction. 
+     */
+    public int deleteTaskInbox(long taskId) { 
+        return em.createNamedQuery("DeleteTaskInbox").setParameter("taskId", taskId).executeUpdate();
+    }
+    
     public Object findEntity(Class<?> entityClass, Object primaryKey) { 
         return this.em.find(entityClass, primaryKey);
     }
     
+    /**
+     * Detaches all entities, for instance so that they are read again after a rollback 
+     * or to release the entities of a batch. 
+     */
+    public void clearPersistenceContext() { 
+        em.clear();
+    }
+    
     public void deleteEntity(Object entity) { 
         em.remove(entity);
     }
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.task.service.responsehandlers;
+
+import java.util.List;
+
+import org.jbpm.task.service.TaskClientHandler.BatchOperationResponseHandler;
+import org.jbpm.task.service.TaskOperationResult;
+
+public class BlockingBatchOperationResponseHandler extends AbstractBlockingResponseHandler implements BatchOperationResponseHandler {
+
+    private static final int RESULTS_WAIT_TIME = 10000;
+
+    private volatile List<TaskOperationResult> results;
+
+    public synchronized void execute(List<TaskOperationResult> results) {
+        this.results = results;
+        setDone(true);
+    }
+
+    public List<TaskOperationResult> getResults() {
+        return getResults(RESULTS_WAIT_TIME);
+    }
+
+    public List<TaskOperationResult> getResults(int resultsWaitTime) {
+        // note that this method doesn't need to be synced because if waitTillDone returns true,
+        // it means results is available
+        boolean done = waitTillDone(resultsWaitTime);
+
+        if (!done) {
+            throw new RuntimeException("Timeout : unable to retrieve results");
+        }
+
+        return results;
+    }
+
+}
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service.responsehandlers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jbpm.task.service.TaskResponseTimeoutException;
+
+/**
+ * Response handler that is also a {@link Future} of the response value. Subclasses implement the
+ * response handler interface of their request and pass the response to {@link #set(Object)}.
+ * <p>
+ * Unlike the blocking response handlers, nothing waits for the response unless {@link #get()} or
+ * {@link #getResult()} is called, so any number of requests can be sent before collecting their
+ * responses, and listeners can be notified of the response instead. A request can be given a
+ * deadline with {@link #expireAfter(long, TimeUnit)}, after which it fails with a
+ * {@link TaskResponseTimeoutException}.
+ * <p>
+ * A future completes only once: a response that arrives after the deadline or after the future was
+ * cancelled is ignored.
+ *
+ * @see org.jbpm.task.service.FutureTaskClient
+ */
+public class TaskFuture<T> extends AbstractBaseResponseHandler implements Future<T> {
+
+    private static final Executor DIRECT = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static ScheduledExecutorService deadlines;
+
+    private T value;
+    private boolean cancelled;
+    private List<Runnable> listeners = new ArrayList<Runnable>();
+
+    /**
+     * Completes this future with the response value, unless it already completed.
+     */
+    protected void set(T value) {
+        synchronized (this) {
+            if (isDone()) {
+                return;
+            }
+            this.value = value;
+            setDone(true);
+        }
+        fireListeners();
+    }
+
+    /**
+     * Completes this future with the error of the request, unless it already completed.
+     */
+    @Override
+    public void setError(RuntimeException error) {
+        synchronized (this) {
+            if (isDone()) {
+                return;
+            }
+            super.setError(error);
+        }
+        fireListeners();
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (isDone()) {
+                return false;
+            }
+            cancelled = true;
+            notifyAll();
+        }
+        fireListeners();
+        return true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true once the response or an error was received, or this future was cancelled
+     */
+    @Override
+    public synchronized boolean isDone() {
+        return super.isDone() || hasError() || cancelled;
+    }
+
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!isDone()) {
+            wait();
+        }
+        return value();
+    }
+
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isDone()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return value();
+    }
+
+    /**
+     * Waits for the response like {@link #get()}, but throws the error of the request itself, as the
+     * synchronous task service does. Requests should have a deadline when this is used.
+     */
+    public T getResult() {
+        try {
+            return get();
+        } catch (ExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the task server response", e);
+        }
+    }
+
+    private T value() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (hasError()) {
+            throw new ExecutionException(getError());
+        }
+        return value;
+    }
+
+    /**
+     * Runs the listener on the given executor once this future completes, or immediately if it
+     * already completed.
+     */
+    public void addListener(Runnable listener, Executor executor) {
+        Runnable task = new ListenerTask(listener, executor);
+        synchronized (this) {
+            if (!isDone()) {
+                listeners.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * Runs the listener on the thread that completes this future, usually the thread receiving
+     * the responses of the client, so listeners should not block.
+     */
+    public void addListener(Runnable listener) {
+        addListener(listener, DIRECT);
+    }
+
+    /**
+     * Fails this future with a {@link TaskResponseTimeoutException} if it did not complete within
+     * the given time.
+     */
+    public TaskFuture<T> expireAfter(final long timeout, final TimeUnit unit) {
+        final ScheduledFuture<?> expiry = deadlines().schedule(new Runnable() {
+            public void run() {
+                setError(new TaskResponseTimeoutException("No response from the task server within "
+                        + unit.toMillis(timeout) + " ms"));
+            }
+        }, timeout, unit);
+        addListener(new Runnable() {
+            public void run() {
+                expiry.cancel(false);
+            }
+        });
+        return this;
+    }
+
+    private void fireListeners() {
+        List<Runnable> fired;
+        synchronized (this) {
+            fired = listeners;
+            listeners = new ArrayList<Runnable>();
+        }
+        for (Runnable listener : fired) {
+            listener.run();
+        }
+    }
+
+    private static synchronized ScheduledExecutorService deadlines() {
+        if (deadlines == null) {
+            deadlines = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "TaskFuture deadlines");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return deadlines;
+    }
+
+    private static class ListenerTask implements Runnable {
+
+        private final Runnable listener;
+        private final Executor executor;
+
+        ListenerTask(Runnable listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        public void run() {
+            executor.execute(listener);
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.eventmessaging;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class EventKeysTest extends TestCase {
+
+    public void testLastUnregisterRemovesKey() {
+        EventKeys keys = new EventKeys();
+        EventKey key = new StringKey( "key" );
+        EventTriggerTransport target1 = new MockTransport();
+        EventTriggerTransport target2 = new MockTransport();
+        keys.register( key, target1 );
+        keys.register( key, target2 );
+
+        keys.unregister( key, target1 );
+        assertEquals( 1, keys.getTargets( key ).size() );
+        keys.unregister( key, target2 );
+        assertNull( keys.getTargets( key ) );
+    }
+
+    public void testConcurrentRegistrationsAreNotLost() throws Exception {
+        final EventKeys keys = new EventKeys();
+        final EventKey key = new StringKey( "key" );
+        final int threadCount = 4;
+        final int count = 2000;
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[threadCount];
+        for ( int i = 0; i < threadCount; i++ ) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        for ( int j = 0; j < count; j++ ) {
+                            // registering while another thread removes the emptied key
+                            EventTriggerTransport target = new MockTransport();
+                            keys.register( key, target );
+                            List<EventTriggerTransport> targets = keys.getTargets( key );
+                            if ( targets == null || !targets.contains( target ) ) {
+                                throw new AssertionError( "Registered target is lost" );
+                            }
+                            for ( EventTriggerTransport t : targets ) {
+                                t.isRemove();
+                            }
+                            keys.unregister( key, target );
+                        }
+                    } catch ( Throwable t ) {
+                        failure.compareAndSet( null, t );
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for ( Thread thread : threads ) {
+            thread.join();
+        }
+        if ( failure.get() != null ) {
+            fail( failure.get().toString() );
+        }
+        assertNull( keys.getTargets( key ) );
+    }
+
+    private static class StringKey implements EventKey {
+        private final String name;
+
+        StringKey(String name) {
+            this.name = name;
+        }
+
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        public boolean equals(Object obj) {
+            return obj instanceof StringKey && name.equals( ((StringKey) obj).name );
+        }
+    }
+
+    private static class MockTransport implements EventTriggerTransport {
+        public void trigger(Payload payload) {
+        }
+
+        public boolean isRemove() {
+            return true;
+        }
+    }
+
+}
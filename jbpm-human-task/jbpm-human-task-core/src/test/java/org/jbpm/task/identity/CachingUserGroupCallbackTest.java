@@ -0,0 +1,184 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.identity;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class CachingUserGroupCallbackTest {
+
+    @Test
+    public void testPositiveAndNegativeTtl() throws Exception {
+        CountingCallback delegate = new CountingCallback();
+        CachingUserGroupCallback callback = new CachingUserGroupCallback(delegate, 60000, 50, 100);
+
+        assertTrue(callback.existsUser("john"));
+        assertTrue(callback.existsUser("john"));
+        assertFalse(callback.existsUser("unknown"));
+        assertFalse(callback.existsUser("unknown"));
+        assertEquals(2, delegate.calls.get());
+        assertEquals(2, callback.getHitCount());
+        assertEquals(2, callback.getMissCount());
+        assertEquals(0.5, callback.getHitRate(), 0.001);
+
+        Thread.sleep(100);
+        // the negative answer expired, the positive one did not
+        assertFalse(callback.existsUser("unknown"));
+        assertTrue(callback.existsUser("john"));
+        assertEquals(3, delegate.calls.get());
+    }
+
+    @Test
+    public void testGroupsForUser() {
+        CountingCallback delegate = new CountingCallback();
+        CachingUserGroupCallback callback = new CachingUserGroupCallback(delegate);
+
+        List<String> groups = callback.getGroupsForUser("john", null, null);
+        assertEquals(1, groups.size());
+        groups.add("modified by caller");
+        assertEquals(1, callback.getGroupsForUser("john", null, null).size());
+        assertEquals(1, delegate.calls.get());
+
+        List<String> groupIds = new ArrayList<String>();
+        groupIds.add("sales");
+        callback.getGroupsForUser("john", groupIds, null);
+        assertEquals(2, delegate.calls.get());
+    }
+
+    @Test
+    public void testGroupsForUserIgnoreAllExistingGroups() {
+        CountingCallback delegate = new CountingCallback();
+        CachingUserGroupCallback callback = new CachingUserGroupCallback(delegate);
+
+        List<String> allExistingGroupIds = new ArrayList<String>();
+        allExistingGroupIds.add("sales");
+        callback.getGroupsForUser("john", null, allExistingGroupIds);
+        allExistingGroupIds.add("marketing");
+        callback.getGroupsForUser("john", null, allExistingGroupIds);
+        assertEquals(1, delegate.calls.get());
+
+        callback.existsUser("john");
+        callback.clearGroupsForUser();
+        assertEquals(1, callback.size());
+        callback.getGroupsForUser("john", null, allExistingGroupIds);
+        assertEquals(3, delegate.calls.get());
+    }
+
+    @Test
+    public void testSizeBound() {
+        CountingCallback delegate = new CountingCallback();
+        CachingUserGroupCallback callback = new CachingUserGroupCallback(delegate, 60000, 60000, 10);
+        for (int i = 0; i < 100; i++) {
+            callback.existsGroup("group" + i);
+        }
+        assertTrue(callback.size() <= 10);
+        assertTrue(callback.getEvictionCount() >= 90);
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+        final CountDownLatch lookupStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger lookups = new AtomicInteger();
+        final CachingUserGroupCallback callback = new CachingUserGroupCallback(new CountingCallback() {
+            public boolean existsUser(String userId) {
+                lookups.incrementAndGet();
+                lookupStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return true;
+            }
+        });
+
+        Thread[] threads = new Thread[4];
+        final AtomicInteger found = new AtomicInteger();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    if (callback.existsUser("john")) {
+                        found.incrementAndGet();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        lookupStarted.await();
+        // let the other threads reach the pending lookup
+        Thread.sleep(200);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, lookups.get());
+        assertEquals(threads.length, found.get());
+        assertEquals(1, callback.getMissCount());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        final AtomicInteger lookups = new AtomicInteger();
+        CachingUserGroupCallback callback = new CachingUserGroupCallback(new CountingCallback() {
+            public boolean existsGroup(String groupId) {
+                if (lookups.incrementAndGet() == 1) {
+                    throw new IllegalStateException("directory unavailable");
+                }
+                return true;
+            }
+        });
+        try {
+            callback.existsGroup("sales");
+            fail("Lookup should have failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(callback.existsGroup("sales"));
+        assertEquals(2, lookups.get());
+    }
+
+    private static class CountingCallback implements UserGroupCallback {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        public boolean existsUser(String userId) {
+            calls.incrementAndGet();
+            return !"unknown".equals(userId);
+        }
+
+        public boolean existsGroup(String groupId) {
+            calls.incrementAndGet();
+            return true;
+        }
+
+        public List<String> getGroupsForUser(String userId, List<String> groupIds, List<String> allExistingGroupIds) {
+            calls.incrementAndGet();
+            List<String> groups = new ArrayList<String>();
+            groups.add("users");
+            return groups;
+        }
+
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.jbpm.task.AccessType;
+import org.jbpm.task.BaseTest;
+import org.jbpm.task.Status;
+import org.jbpm.task.Task;
+import org.jbpm.task.event.EventPayload;
+import org.jbpm.task.event.TaskCompletedEvent;
+import org.jbpm.task.event.TaskUserEvent;
+import org.jbpm.task.query.TaskSummary;
+
+public class BinaryCommandCodecTest extends BaseTest {
+
+    public void testTaskAndSummaries() throws Exception {
+        Map<String, Object> vars = fillVariables();
+        String str = "(with (new Task()) { priority = 55, taskData = (with( new TaskData()) { } ), ";
+        str += "peopleAssignments = (with ( new PeopleAssignments() ) { potentialOwners = [users['bobba'], groups['crusaders']], }),";
+        str += "names = [ new I18NText( 'en-UK', 'This is my task name')] })";
+        Task task = (Task) eval(new StringReader(str), vars);
+        ContentData data = new ContentData();
+        data.setAccessType(AccessType.Inline);
+        data.setContent("content".getBytes());
+        taskSession.addTask(task, data);
+
+        Command request = roundTrip(new Command(1, CommandName.AddTaskRequest, Arrays.<Object>asList(task, data)));
+        assertEquals(CommandName.AddTaskRequest, request.getName());
+        assertEquals(task, request.getArguments().get(0));
+        assertEquals("content", new String(((ContentData) request.getArguments().get(1)).getContent()));
+
+        Task stored = taskSession.getTask(task.getId());
+        Command response = roundTrip(new Command(2, CommandName.GetTaskResponse, Arrays.<Object>asList(stored)));
+        assertEquals(stored, response.getArguments().get(0));
+
+        List<TaskSummary> summaries = taskSession.getTasksAssignedAsPotentialOwner(users.get("bobba").getId(), "en-UK");
+        List<Object> args = new ArrayList<Object>();
+        args.add(summaries);
+        response = roundTrip(new Command(3, CommandName.QueryTaskSummaryResponse, args));
+        assertEquals(summaries, response.getArguments().get(0));
+        assertEquals(Status.Ready, ((List<TaskSummary>) response.getArguments().get(0)).get(0).getStatus());
+    }
+
+    public void testArgumentsAndEvents() throws Exception {
+        List<String> groupIds = new ArrayList<String>();
+        groupIds.add("Crusaders");
+        List<Object> args = new ArrayList<Object>();
+        args.add(Operation.Claim);
+        args.add(42L);
+        args.add("Darth Vader");
+        args.add(null);
+        args.add(null);
+        args.add(groupIds);
+        Command operation = roundTrip(new Command(4, CommandName.OperationRequest, args));
+        assertEquals(4, operation.getId());
+        assertEquals(args, operation.getArguments());
+
+        args = new ArrayList<Object>();
+        args.add(new EventPayload(new TaskCompletedEvent(42, "Darth Vader")));
+        Command event = roundTrip(new Command(5, CommandName.EventTriggerResponse, args));
+        TaskUserEvent completed = (TaskUserEvent) ((EventPayload) event.getArguments().get(0)).get();
+        assertTrue(completed instanceof TaskCompletedEvent);
+        assertEquals(42, completed.getTaskId());
+        assertEquals("Darth Vader", completed.getUserId());
+
+        // other values, such as exceptions, are still Java serialized
+        args = new ArrayList<Object>();
+        args.add(new PermissionDeniedException("denied"));
+        Command error = roundTrip(new Command(6, CommandName.OperationResponse, args));
+        assertEquals("denied", ((PermissionDeniedException) error.getArguments().get(0)).getMessage());
+    }
+
+    public void testSmallerThanJavaSerialization() throws Exception {
+        List<Object> args = new ArrayList<Object>();
+        args.add(Operation.Start);
+        args.add(42L);
+        args.add("Darth Vader");
+        Command cmd = new Command(7, CommandName.OperationRequest, args);
+        byte[] binary = BinaryCommandCodec.write(cmd, true);
+        byte[] serialized = BinaryCommandCodec.write(cmd, false);
+        assertTrue(BinaryCommandCodec.isBinary(binary));
+        assertFalse(BinaryCommandCodec.isBinary(serialized));
+        assertTrue(binary.length * 4 < serialized.length);
+        assertEquals(args, ((Command) BinaryCommandCodec.read(serialized)).getArguments());
+    }
+
+    private Command roundTrip(Command cmd) throws Exception {
+        return (Command) BinaryCommandCodec.read(BinaryCommandCodec.encode(cmd));
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.task.service;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.jbpm.task.BaseTest;
+import org.jbpm.task.MvelFilePath;
+import org.jbpm.task.Task;
+
+public class DeadlineSchedulerTest extends BaseTest {
+
+    private DeadlineScheduler scheduler;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        taskService.getDeadlineScheduler().stop();
+        // deadlines more than 3 seconds ahead are loaded by a later refill
+        scheduler = new DeadlineScheduler(3000, 2500, 1, 2);
+        taskService.setDeadlineScheduler(scheduler);
+        scheduler.start(taskService);
+    }
+
+    protected void tearDown() throws Exception {
+        scheduler.stop();
+        super.tearDown();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testDeadlinesBeyondHorizonAreLoadedByRefill() throws Exception {
+        MockEscalatedDeadlineHandler handler = new MockEscalatedDeadlineHandler();
+        taskService.setEscalatedDeadlineHandler(handler);
+
+        Map<String, Object> vars = fillVariables();
+        Reader reader = new InputStreamReader(getClass().getResourceAsStream(MvelFilePath.UnescalatedDeadlines));
+        List<Task> tasks = (List<Task>) eval(reader, vars);
+        for (Task task : tasks) {
+            taskSession.addTask(task, null);
+        }
+        long now = ((Date) vars.get("now")).getTime();
+
+        // only the deadline at now + 2000 lies within the window
+        assertEquals(1, scheduler.getScheduledTaskCount());
+        assertTrue(scheduler.getWindowEnd() < now + 4000);
+
+        testDeadlines(now, handler);
+        assertEquals(0, scheduler.getScheduledTaskCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testEscalatedDeadlinesAreNotEscalatedAgain() throws Exception {
+        // the mock handler does not mark the deadlines escalated itself
+        MockEscalatedDeadlineHandler handler = new MockEscalatedDeadlineHandler();
+        taskService.setEscalatedDeadlineHandler(handler);
+
+        Map<String, Object> vars = fillVariables();
+        Reader reader = new InputStreamReader(getClass().getResourceAsStream(MvelFilePath.UnescalatedDeadlines));
+        List<Task> tasks = (List<Task>) eval(reader, vars);
+        for (Task task : tasks) {
+            taskSession.addTask(task, null);
+        }
+        long now = ((Date) vars.get("now")).getTime();
+        testDeadlines(now, handler);
+
+        scheduler.refill();
+        scheduler.refill();
+        Thread.sleep(500);
+        assertEquals(3, handler.getList().size());
+
+        // like an escalation scheduled by a refill that read the deadline before it was escalated
+        MockEscalatedDeadlineHandler.Item item = handler.getList().get(0);
+        taskService.executeEscalatedDeadline(item.getTask().getId(), item.getDeadline().getId());
+        assertEquals(3, handler.getList().size());
+    }
+
+}
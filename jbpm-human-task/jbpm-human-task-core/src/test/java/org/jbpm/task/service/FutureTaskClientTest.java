@@ -0,0 +1,180 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jbpm.task.AsyncTaskService;
+import org.jbpm.task.Task;
+import org.jbpm.task.service.TaskClientHandler.AddTaskResponseHandler;
+import org.jbpm.task.service.TaskClientHandler.GetTaskResponseHandler;
+import org.jbpm.task.service.TaskClientHandler.TaskOperationResponseHandler;
+import org.jbpm.task.service.responsehandlers.TaskFuture;
+import org.junit.Test;
+
+public class FutureTaskClientTest {
+
+    @Test
+    public void testManyRequestsInFlight() throws Exception {
+        RecordingTaskService service = new RecordingTaskService();
+        FutureTaskClient client = new FutureTaskClient(service.proxy());
+        List<TaskFuture<Task>> futures = new ArrayList<TaskFuture<Task>>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(client.getTask(i));
+        }
+        assertEquals(20, service.handlers.size());
+        for (TaskFuture<Task> future : futures) {
+            assertFalse(future.isDone());
+        }
+
+        // responses arrive out of order on another thread
+        for (int i = 19; i >= 0; i--) {
+            final GetTaskResponseHandler handler = (GetTaskResponseHandler) service.handlers.get(i);
+            final Task task = new Task();
+            task.setId(i);
+            Thread responder = new Thread() {
+                public void run() {
+                    handler.execute(task);
+                }
+            };
+            responder.start();
+            responder.join();
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, futures.get(i).get(1, TimeUnit.SECONDS).getId().longValue());
+        }
+    }
+
+    @Test
+    public void testErrorAndListener() throws Exception {
+        RecordingTaskService service = new RecordingTaskService();
+        FutureTaskClient client = new FutureTaskClient(service.proxy());
+        TaskFuture<Void> started = client.start(1, "Darth Vader");
+        final CountDownLatch notified = new CountDownLatch(1);
+        started.addListener(new Runnable() {
+            public void run() {
+                notified.countDown();
+            }
+        });
+
+        ((TaskOperationResponseHandler) service.handlers.get(0)).setError(new PermissionDeniedException("denied"));
+        assertTrue(notified.await(1, TimeUnit.SECONDS));
+        try {
+            started.get();
+            fail("Expected the error of the request");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof PermissionDeniedException);
+        }
+        try {
+            started.getResult();
+            fail("Expected the error of the request");
+        } catch (PermissionDeniedException e) {
+            assertEquals("denied", e.getMessage());
+        }
+
+        // a late response does not change the outcome
+        ((TaskOperationResponseHandler) service.handlers.get(0)).setIsDone(true);
+        assertNotNull(started.getError());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        RecordingTaskService service = new RecordingTaskService();
+        FutureTaskClient client = new FutureTaskClient(service.proxy(), 50, TimeUnit.MILLISECONDS);
+        TaskFuture<Long> added = client.addTask(new Task(), null);
+        TaskFuture<Long> answered = client.withDeadline(0, TimeUnit.MILLISECONDS).addTask(new Task(), null);
+        try {
+            answered.get(100, TimeUnit.MILLISECONDS);
+            fail("Expected the request without deadline to wait");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        try {
+            added.getResult();
+            fail("Expected the deadline to expire");
+        } catch (TaskResponseTimeoutException e) {
+            // expected
+        }
+
+        ((AddTaskResponseHandler) service.handlers.get(0)).execute(42);
+        ((AddTaskResponseHandler) service.handlers.get(1)).execute(43);
+        assertTrue(added.getError() instanceof TaskResponseTimeoutException);
+        assertEquals(43, answered.getResult().longValue());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        RecordingTaskService service = new RecordingTaskService();
+        TaskFuture<Task> future = new FutureTaskClient(service.proxy()).getTask(1);
+        assertTrue(future.cancel(false));
+        assertTrue(future.isDone());
+        assertTrue(future.isCancelled());
+        ((GetTaskResponseHandler) service.handlers.get(0)).execute(new Task());
+        assertFalse(future.cancel(false));
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testExpiredFuturesAreRemoved() throws Exception {
+        BaseClientHandler clientHandler = new BaseClientHandler();
+        TaskFuture<Task> expiring = new TaskFuture<Task>();
+        TaskFuture<Task> cancelled = new TaskFuture<Task>();
+        TaskFuture<Task> pending = new TaskFuture<Task>();
+        clientHandler.addResponseHandler(1, expiring);
+        clientHandler.addResponseHandler(2, cancelled);
+        clientHandler.addResponseHandler(3, pending);
+
+        expiring.expireAfter(10, TimeUnit.MILLISECONDS);
+        cancelled.cancel(false);
+        // the handlers are removed by listeners, after the futures completed
+        for (int i = 0; i < 100 && clientHandler.responseHandlers.size() > 1; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(expiring.getError() instanceof TaskResponseTimeoutException);
+        assertEquals(1, clientHandler.responseHandlers.size());
+        assertSame(pending, clientHandler.responseHandlers.get(3));
+    }
+
+    /**
+     * Records the response handler of each request, which the test then answers.
+     */
+    private static class RecordingTaskService implements InvocationHandler {
+
+        private final List<Object> handlers = new ArrayList<Object>();
+
+        AsyncTaskService proxy() {
+            return (AsyncTaskService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { AsyncTaskService.class }, this);
+        }
+
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) {
+            handlers.add(args[args.length - 1]);
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jbpm.task.AccessType;
+import org.jbpm.task.BaseTest;
+import org.jbpm.task.Status;
+import org.jbpm.task.Task;
+import org.jbpm.task.event.TaskClaimedEvent;
+import org.jbpm.task.event.TaskCompletedEvent;
+import org.jbpm.task.event.TaskEventListener;
+import org.jbpm.task.event.TaskFailedEvent;
+import org.jbpm.task.event.TaskSkippedEvent;
+
+public class TaskBatchOperationTest extends BaseTest {
+
+    private long addTask(String potentialOwners) {
+        Map<String, Object> vars = fillVariables();
+        String str = "(with (new Task()) { priority = 55, taskData = (with( new TaskData()) { } ), ";
+        str += "peopleAssignments = (with ( new PeopleAssignments() ) { potentialOwners = [" + potentialOwners + "], }),";
+        str += "names = [ new I18NText( 'en-UK', 'This is my task name')] })";
+        Task task = (Task) eval(new StringReader(str), vars);
+        taskSession.addTask(task, null);
+        return task.getId();
+    }
+
+    public void testBatchLifeCycle() throws Exception {
+        String darth = users.get("darth").getId();
+        long first = addTask("users['darth'], users['tony']");
+        long second = addTask("users['darth'], users['bobba']");
+        long other = addTask("users['bobba'], users['tony']");
+        List<Long> taskIds = Arrays.asList(first, second, other);
+
+        final List<Long> completed = new ArrayList<Long>();
+        taskService.addEventListener(new TaskEventListener() {
+            public void taskClaimed(TaskClaimedEvent event) {
+            }
+            public void taskCompleted(TaskCompletedEvent event) {
+                completed.add(event.getTaskId());
+            }
+            public void taskFailed(TaskFailedEvent event) {
+            }
+            public void taskSkipped(TaskSkippedEvent event) {
+            }
+        });
+
+        List<TaskOperationResult> results = taskSession.taskOperations(Operation.Claim, taskIds, darth, null, null, null);
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccessful());
+        assertTrue(results.get(1).isSuccessful());
+        assertEquals(other, results.get(2).getTaskId());
+        assertTrue(results.get(2).getError() instanceof PermissionDeniedException);
+
+        // the task the operation failed on is in error, like after a failed single operation
+        assertEquals(Status.Error, taskSession.getTask(other).getTaskData().getStatus());
+        assertEquals(Status.Reserved, taskSession.getTask(first).getTaskData().getStatus());
+        assertEquals(darth, taskSession.getTask(second).getTaskData().getActualOwner().getId());
+
+        taskIds = Arrays.asList(first, second);
+        results = taskSession.taskOperations(Operation.Start, taskIds, darth, null, null, null);
+        assertTrue(results.get(0).isSuccessful() && results.get(1).isSuccessful());
+
+        Map<Long, ContentData> outputs = new HashMap<Long, ContentData>();
+        ContentData output = new ContentData();
+        output.setAccessType(AccessType.Inline);
+        output.setContent("result".getBytes());
+        outputs.put(second, output);
+        results = taskSession.taskOperations(Operation.Complete, taskIds, darth, null, outputs, null);
+        assertTrue(results.get(0).isSuccessful() && results.get(1).isSuccessful());
+
+        assertEquals(Status.Completed, taskSession.getTask(first).getTaskData().getStatus());
+        assertEquals(-1, taskSession.getTask(first).getTaskData().getOutputContentId());
+        long outputContentId = taskSession.getTask(second).getTaskData().getOutputContentId();
+        assertEquals("result", new String(taskSession.getContent(outputContentId).getContent()));
+        assertEquals(taskIds, completed);
+    }
+
+    public void testBatchDelegate() throws Exception {
+        String darth = users.get("darth").getId();
+        List<Long> taskIds = new ArrayList<Long>();
+        for (int i = 0; i < 5; i++) {
+            // a single potential owner reserves the task on creation
+            taskIds.add(addTask("users['darth']"));
+        }
+        taskIds.add(-1L);
+
+        List<TaskOperationResult> results = taskSession.taskOperations(Operation.Delegate, taskIds, darth,
+                users.get("bobba").getId(), null, null);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(results.get(i).isSuccessful());
+            Task task = taskSession.getTask(taskIds.get(i));
+            assertEquals(Status.Reserved, task.getTaskData().getStatus());
+            assertEquals(users.get("bobba"), task.getTaskData().getActualOwner());
+        }
+        // unknown tasks only fail their own operation
+        assertFalse(results.get(5).isSuccessful());
+    }
+
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.task.service;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jbpm.task.BaseTest;
+import org.jbpm.task.Status;
+import org.jbpm.task.Task;
+import org.jbpm.task.query.TaskSummary;
+
+public class TaskInboxTest extends BaseTest {
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        taskService.setTaskInboxLanguage("en-UK");
+    }
+
+    private long addTask(String potentialOwners, String name) {
+        Map<String, Object> vars = fillVariables();
+        String str = "(with (new Task()) { priority = 55, taskData = (with( new TaskData()) { } ), ";
+        str += "peopleAssignments = (with ( new PeopleAssignments() ) { potentialOwners = [" + potentialOwners + "], }),";
+        str += "names = [ new I18NText( 'en-UK', '" + name + "'), new I18NText( 'nl-BE', 'Mijn taak') ] })";
+        Task task = (Task) eval(new StringReader(str), vars);
+        taskSession.addTask(task, null);
+        return task.getId();
+    }
+
+    public void testInboxFollowsTaskLifeCycle() throws Exception {
+        long taskId = addTask("users['bobba'], users['darth']", "This is my task name");
+
+        List<TaskSummary> tasks = taskSession.getTasksAssignedAsPotentialOwner(users.get("bobba").getId(), "en-UK");
+        assertEquals(1, tasks.size());
+        TaskSummary summary = tasks.get(0);
+        assertEquals(taskId, summary.getId());
+        assertEquals("This is my task name", summary.getName());
+        assertEquals(Status.Ready, summary.getStatus());
+        assertEquals(55, summary.getPriority());
+        assertNull(summary.getActualOwner());
+
+        taskSession.taskOperation(Operation.Claim, taskId, users.get("darth").getId(), null, null, null);
+        summary = taskSession.getTasksAssignedAsPotentialOwner(users.get("bobba").getId(), "en-UK").get(0);
+        assertEquals(Status.Reserved, summary.getStatus());
+        assertEquals("Darth Vader", summary.getActualOwner().getId());
+
+        taskSession.taskOperation(Operation.Start, taskId, users.get("darth").getId(), null, null, null);
+        taskSession.taskOperation(Operation.Complete, taskId, users.get("darth").getId(), null, null, null);
+        assertTrue(taskSession.getTasksAssignedAsPotentialOwner(users.get("bobba").getId(), "en-UK").isEmpty());
+        List<Status> completed = Collections.singletonList(Status.Completed);
+        assertEquals(1, taskSession.getTasksAssignedAsPotentialOwnerByStatus(users.get("bobba").getId(), completed, "en-UK").size());
+    }
+
+    public void testInboxMatchesJoinQueries() throws Exception {
+        addTask("users['bobba']", "First");
+        addTask("groups['crusaders']", "Second");
+        addTask("users['darth']", "Third");
+        List<String> groupIds = new ArrayList<String>();
+        groupIds.add("Crusaders");
+
+        List<TaskSummary> fromInbox = taskSession.getTasksAssignedAsPotentialOwner(users.get("bobba").getId(), groupIds, "en-UK");
+        assertEquals(2, fromInbox.size());
+        assertEquals("First", fromInbox.get(0).getName());
+        assertEquals("Second", fromInbox.get(1).getName());
+
+        List<TaskSummary> page = taskSession.getTasksAssignedAsPotentialOwner(users.get("bobba").getId(), groupIds, "en-UK", 1, 1);
+        assertEquals(1, page.size());
+        assertEquals("Second", page.get(0).getName());
+
+        // other languages are still served by the join queries
+        List<TaskSummary> dutch = taskSession.getTasksAssignedAsPotentialOwner(users.get("bobba").getId(), groupIds, "nl-BE");
+        assertEquals(2, dutch.size());
+        assertEquals("Mijn taak", dutch.get(0).getName());
+
+        taskService.setTaskInboxLanguage(null);
+        List<TaskSummary> fromJoins = taskSession.getTasksAssignedAsPotentialOwner(users.get("bobba").getId(), groupIds, "en-UK");
+        assertEquals(fromInbox.size(), fromJoins.size());
+        for (TaskSummary summary : fromJoins) {
+            assertTrue(summary.getName().equals("First") || summary.getName().equals("Second"));
+        }
+    }
+
+    public void testRebuildInboxInPages() throws Exception {
+        taskService.setTaskInboxLanguage(null);
+        for (int i = 0; i < 5; i++) {
+            addTask("users['bobba']", "Task " + i);
+        }
+        taskService.setTaskInboxLanguage("en-UK");
+        assertTrue(taskSession.getTasksAssignedAsPotentialOwner(users.get("bobba").getId(), "en-UK").isEmpty());
+
+        // the last page is full, so an empty page ends the rebuild
+        taskSession.rebuildTaskInbox(5);
+        assertEquals(5, taskSession.getTasksAssignedAsPotentialOwner(users.get("bobba").getId(), "en-UK").size());
+        taskSession.rebuildTaskInbox(2);
+        assertEquals(5, taskSession.getTasksAssignedAsPotentialOwner(users.get("bobba").getId(), "en-UK").size());
+    }
+
+}
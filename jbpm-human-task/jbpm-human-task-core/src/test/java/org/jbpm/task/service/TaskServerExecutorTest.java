@@ -0,0 +1,205 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.drools.SystemEventListenerFactory;
+import org.junit.Test;
+
+public class TaskServerExecutorTest {
+
+    @Test
+    public void testCommandsOnSameTaskAreOrdered() throws Exception {
+        final List<Integer> task1 = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> task2 = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(40);
+        TaskServerExecutor executor = new TaskServerExecutor(new RecordingHandler() {
+            protected void execute(Command cmd) throws Exception {
+                int current = concurrent.incrementAndGet();
+                if (current > maxConcurrent.get()) {
+                    maxConcurrent.set(current);
+                }
+                Thread.sleep(5);
+                concurrent.decrementAndGet();
+                (TaskServerHandler.getTaskId(cmd) == 1 ? task1 : task2).add(cmd.getId());
+                done.countDown();
+            }
+        }, 4, 100);
+
+        for (int i = 0; i < 20; i++) {
+            executor.messageReceived(new RecordingWriter(), operation(i, 1));
+            executor.messageReceived(new RecordingWriter(), operation(i, 2));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.dispose();
+        assertTrue(executor.getExecutorService().awaitTermination(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, task1.get(i).intValue());
+            assertEquals(i, task2.get(i).intValue());
+        }
+        // commands of the same task never run concurrently
+        assertTrue(maxConcurrent.get() <= 2);
+        assertEquals(40, executor.getCompletedCount());
+        assertEquals(0, executor.getQueueDepth());
+    }
+
+    @Test
+    public void testBatchIsOrderedAgainstItsTasks() throws Exception {
+        final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(6);
+        TaskServerExecutor executor = new TaskServerExecutor(new RecordingHandler() {
+            protected void execute(Command cmd) throws Exception {
+                if (cmd.getId() == 1) {
+                    Thread.sleep(50);
+                }
+                executed.add(cmd.getId());
+                done.countDown();
+            }
+        }, 4, 100);
+
+        executor.messageReceived(new RecordingWriter(), operation(1, 1));
+        executor.messageReceived(new RecordingWriter(), operation(2, 2));
+        executor.messageReceived(new RecordingWriter(), batch(3, 1L, 2L, 1L));
+        executor.messageReceived(new RecordingWriter(), operation(4, 1));
+        executor.messageReceived(new RecordingWriter(), operation(5, 2));
+        executor.messageReceived(new RecordingWriter(), operation(6, 3));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.dispose();
+        assertTrue(executor.getExecutorService().awaitTermination(5, TimeUnit.SECONDS));
+
+        // the batch waits for the slow command on task 1, the command on task 3 does not
+        int batch = executed.indexOf(3);
+        assertTrue(executed.indexOf(1) < batch);
+        assertTrue(executed.indexOf(2) < batch);
+        assertTrue(executed.indexOf(4) > batch);
+        assertTrue(executed.indexOf(5) > batch);
+        assertTrue(executed.indexOf(6) < executed.indexOf(1));
+        assertEquals(6, executor.getCompletedCount());
+        assertEquals(0, executor.getQueueDepth());
+    }
+
+    @Test
+    public void testRejectWhenQueueIsFull() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        TaskServerExecutor executor = new TaskServerExecutor(new RecordingHandler() {
+            protected void execute(Command cmd) throws Exception {
+                started.countDown();
+                release.await();
+            }
+        }, 1, 2);
+
+        executor.messageReceived(new RecordingWriter(), operation(1, 1));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.messageReceived(new RecordingWriter(), operation(2, 1));
+        executor.messageReceived(new RecordingWriter(), query(3));
+        RecordingWriter rejectedWriter = new RecordingWriter();
+        executor.messageReceived(rejectedWriter, query(4));
+
+        assertEquals(2, executor.getQueueDepth());
+        assertEquals(1, executor.getActiveCount());
+        assertEquals(1, executor.getRejectedCount());
+        assertEquals(1, rejectedWriter.messages.size());
+        Command response = (Command) rejectedWriter.messages.get(0);
+        assertEquals(4, response.getId());
+        assertEquals(CommandName.QueryTaskSummaryResponse, response.getName());
+        assertTrue(response.getArguments().get(0) instanceof TaskServerBusyException);
+
+        release.countDown();
+        executor.dispose();
+        assertTrue(executor.getExecutorService().awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(3, executor.getCompletedCount());
+        assertEquals(2, executor.getMaxQueueDepth());
+    }
+
+    @Test
+    public void testWithoutThreads() throws Exception {
+        final List<Thread> threads = new ArrayList<Thread>();
+        TaskServerExecutor executor = new TaskServerExecutor(new RecordingHandler() {
+            protected void execute(Command cmd) throws Exception {
+                threads.add(Thread.currentThread());
+            }
+        }, 0, 1);
+        executor.messageReceived(new RecordingWriter(), operation(1, 1));
+        executor.messageReceived(new RecordingWriter(), query(2));
+        assertEquals(2, threads.size());
+        assertSame(Thread.currentThread(), threads.get(0));
+        assertSame(Thread.currentThread(), threads.get(1));
+    }
+
+    private static Command operation(int id, long taskId) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(Operation.Start);
+        args.add(taskId);
+        args.add("Darth Vader");
+        return new Command(id, CommandName.OperationRequest, args);
+    }
+
+    private static Command batch(int id, Long... taskIds) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(Operation.Claim);
+        args.add(Arrays.asList(taskIds));
+        args.add("Darth Vader");
+        args.add(null);
+        args.add(null);
+        args.add(null);
+        return new Command(id, CommandName.BatchOperationRequest, args);
+    }
+
+    private static Command query(int id) {
+        List<Object> args = new ArrayList<Object>();
+        args.add("Darth Vader");
+        args.add("en-UK");
+        return new Command(id, CommandName.QueryTasksOwned, args);
+    }
+
+    private static abstract class RecordingHandler extends TaskServerHandler {
+
+        RecordingHandler() {
+            super(null, SystemEventListenerFactory.getSystemEventListener());
+        }
+
+        public void messageReceived(SessionWriter session, Object message) throws Exception {
+            execute((Command) message);
+        }
+
+        protected abstract void execute(Command cmd) throws Exception;
+
+    }
+
+    private static class RecordingWriter implements SessionWriter {
+
+        final List<Object> messages = new ArrayList<Object>();
+
+        public void write(Object message) {
+            messages.add(message);
+        }
+
+    }
+
+}
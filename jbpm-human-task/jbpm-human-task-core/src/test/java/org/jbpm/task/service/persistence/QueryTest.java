@@ -92,6 +92,38 @@ public class QueryTest extends BaseTest {
         assertTrue( "Third deadline was not met." , thirdDeadlineMet ); 
     }
     
+    public void testUnescalatedDeadlinesDueBeforeInPages() throws Exception {
+        Map vars = new HashMap();
+        vars.put( "users",
+                  users );
+        vars.put( "groups",
+                  groups );
+
+        Reader reader = new InputStreamReader( getClass().getResourceAsStream( MvelFilePath.UnescalatedDeadlines ) );
+        List<Task> tasks = (List<Task>) eval( reader,
+                                              vars );
+        for ( Task task : tasks ) {
+            taskSession.addTask( task, null );
+        }
+        long now = ((Date)vars.get( "now" )).getTime();
+        
+        // the deadline at now + 6000 lies beyond the horizon
+        TaskPersistenceManager tpm = new TaskPersistenceManager(emf.createEntityManager());
+        Date dueBefore = new Date( now + 5000 );
+        List<DeadlineSummary> page = tpm.getUnescalatedDeadlines( dueBefore, new Date( 0 ), -1, 1 );
+        assertEquals( 1, page.size() );
+        DeadlineSummary first = page.get( 0 );
+        assertEquals( now + 2000, first.getDate().getTime() );
+
+        page = tpm.getUnescalatedDeadlines( dueBefore, first.getDate(), first.getDeadlineId(), 1 );
+        assertEquals( 1, page.size() );
+        DeadlineSummary second = page.get( 0 );
+        assertEquals( now + 4000, second.getDate().getTime() );
+
+        page = tpm.getUnescalatedDeadlines( dueBefore, second.getDate(), second.getDeadlineId(), 1 );
+        assertTrue( page.isEmpty() );
+    }
+    
     String queryString = 
               "select new org.jbpm.task.query.TaskSummary("
             + "     t.id,"
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service.test.async;
+
+import static org.jbpm.task.service.test.impl.TestServerUtil.*;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.jbpm.task.BaseTest;
+import org.jbpm.task.Status;
+import org.jbpm.task.Task;
+import org.jbpm.task.service.Operation;
+import org.jbpm.task.service.PermissionDeniedException;
+import org.jbpm.task.service.TaskClient;
+import org.jbpm.task.service.TaskOperationResult;
+import org.jbpm.task.service.TaskServer;
+import org.jbpm.task.service.responsehandlers.BlockingAddTaskResponseHandler;
+import org.jbpm.task.service.responsehandlers.BlockingBatchOperationResponseHandler;
+import org.jbpm.task.service.responsehandlers.BlockingGetTaskResponseHandler;
+import org.jbpm.task.service.test.impl.TestTaskServer;
+
+public class TaskBatchOperationAsyncTest extends BaseTest {
+
+    private TaskServer server;
+    private TaskClient client;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        server = startAsyncServer(taskService);
+
+        client = new TaskClient(createTestTaskClientConnector("client 1", (TestTaskServer) server));
+        client.connect();
+    }
+
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        client.disconnect();
+        server.stop();
+    }
+
+    public void testBatchClaim() throws Exception {
+        String darth = users.get("darth").getId();
+        long first = addTask("users['darth'], users['tony']");
+        long other = addTask("users['bobba'], users['tony']");
+        long second = addTask("users['darth'], users['bobba']");
+
+        BlockingBatchOperationResponseHandler responseHandler = new BlockingBatchOperationResponseHandler();
+        client.batchOperation(Operation.Claim, Arrays.asList(first, other, second), darth, null, null, null,
+                              responseHandler);
+        List<TaskOperationResult> results = responseHandler.getResults();
+
+        assertEquals(3, results.size());
+        assertEquals(first, results.get(0).getTaskId());
+        assertTrue(results.get(0).isSuccessful());
+        assertEquals(other, results.get(1).getTaskId());
+        assertTrue(results.get(1).getError() instanceof PermissionDeniedException);
+        assertTrue(results.get(2).isSuccessful());
+
+        // the tasks before and after the failed one are changed all the same
+        assertEquals(Status.Reserved, getTask(first).getTaskData().getStatus());
+        assertEquals(Status.Error, getTask(other).getTaskData().getStatus());
+        assertEquals(Status.Reserved, getTask(second).getTaskData().getStatus());
+        assertEquals(darth, getTask(second).getTaskData().getActualOwner().getId());
+    }
+
+    private long addTask(String potentialOwners) {
+        Map<String, Object> vars = fillVariables();
+        String str = "(with (new Task()) { priority = 55, taskData = (with( new TaskData()) { } ), ";
+        str += "peopleAssignments = (with ( new PeopleAssignments() ) { potentialOwners = [" + potentialOwners + "], }),";
+        str += "names = [ new I18NText( 'en-UK', 'This is my task name')] })";
+        BlockingAddTaskResponseHandler addTaskResponseHandler = new BlockingAddTaskResponseHandler();
+        client.addTask((Task) eval(new StringReader(str), vars), null, addTaskResponseHandler);
+        return addTaskResponseHandler.getTaskId();
+    }
+
+    private Task getTask(long taskId) {
+        BlockingGetTaskResponseHandler getTaskResponseHandler = new BlockingGetTaskResponseHandler();
+        client.getTask(taskId, getTaskResponseHandler);
+        return getTaskResponseHandler.getTask();
+    }
+
+}
@@ -15,9 +15,6 @@
  */
 package org.jbpm.task.service.hornetq;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -37,6 +34,7 @@ import org.hornetq.core.remoting.impl.netty.NettyConnectorFactory;
 import org.hornetq.core.remoting.impl.netty.TransportConstants;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.HornetQServers;
+import org.jbpm.task.service.BinaryCommandCodec;
 import org.jbpm.task.service.TaskServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -81,9 +79,10 @@ public abstract class BaseHornetQTaskServer extends TaskServer {
             try {
                 ClientMessage clientMessage = consumer.receive();
                 if (clientMessage != null) {
-                    Object object = readMessage(clientMessage);
+                    byte[] message = readMessage(clientMessage);
                     String clientId = clientMessage.getStringProperty("producerId");
-                    handler.messageReceived(session, object, clientId);
+                    // answer each client in the encoding it used
+                    handler.messageReceived(session, BinaryCommandCodec.read(message), clientId, BinaryCommandCodec.isBinary(message));
                 }
             } catch (HornetQException e) {
                 switch (e.getCode()) {
@@ -103,19 +102,11 @@ public abstract class BaseHornetQTaskServer extends TaskServer {
 
     }
 
-    private Object readMessage(ClientMessage msgReceived) throws IOException {
+    private byte[] readMessage(ClientMessage msgReceived) {
         int bodySize = msgReceived.getBodySize();
         byte[] message = new byte[bodySize];
         msgReceived.getBodyBuffer().readBytes(message);
-        ByteArrayInputStream bais = new ByteArrayInputStream(message);
-        try {
-            ObjectInputStream ois = new ObjectInputStream(bais);
-            return ois.readObject();
-        } catch (IOException e) {
-            throw new IOException("Error reading message");
-        } catch (ClassNotFoundException e) {
-            throw new IOException("Error creating message");
-        }
+        return message;
     }
 
     public void start() throws Exception {
@@ -163,6 +154,7 @@ public abstract class BaseHornetQTaskServer extends TaskServer {
     public void stop() throws Exception {
         if (running) {
             running = false;
+            handler.dispose();
             closeAll();
         }
         if (embeddedServerRunning) {
@@ -16,35 +16,40 @@
 
 package org.jbpm.task.service.hornetq;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.client.ClientMessage;
 import org.hornetq.api.core.client.ClientProducer;
 import org.hornetq.api.core.client.ClientSession;
+import org.jbpm.task.service.BinaryCommandCodec;
 import org.jbpm.task.service.SessionWriter;
 
 public class HornetQSessionWriter implements SessionWriter {
 	
 	private final ClientSession session;
 	private final ClientProducer producer;
+	private final boolean binary;
 
 	public HornetQSessionWriter(ClientSession session, ClientProducer producer) {
+		this(session, producer, false);
+	}
+
+	public HornetQSessionWriter(ClientSession session, ClientProducer producer, boolean binary) {
 		this.session = session;
 		this.producer = producer;
+		this.binary = binary;
 	}
 
 	public void write(Object message) throws IOException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		ObjectOutputStream oout;
 		try {
-			oout = new ObjectOutputStream(baos);
-			oout.writeObject(message);
-			ClientMessage clientMessage = session.createMessage(true);
-			clientMessage.getBodyBuffer().writeBytes(baos.toByteArray());
-			producer.send(clientMessage);
+			byte[] bytes = BinaryCommandCodec.write(message, binary);
+			// responses are written by the worker threads of the task server, sessions are not thread safe
+			synchronized (session) {
+				ClientMessage clientMessage = session.createMessage(true);
+				clientMessage.getBodyBuffer().writeBytes(bytes);
+				producer.send(clientMessage);
+			}
 		} catch (IOException e) {
 			throw new IOException("Error creating message");
 		} catch (HornetQException e) {
@@ -21,25 +21,41 @@ import java.util.Map;
 import org.drools.SystemEventListener;
 import org.hornetq.api.core.client.ClientProducer;
 import org.hornetq.api.core.client.ClientSession;
+import org.jbpm.task.service.TaskServerExecutor;
 import org.jbpm.task.service.TaskServerHandler;
 import org.jbpm.task.service.TaskService;
 
 public class HornetQTaskServerHandler {
 
-    private TaskServerHandler handler;
+    private TaskServerExecutor handler;
     private Map<String, ClientProducer> producers;
 
     public HornetQTaskServerHandler(TaskService service, SystemEventListener systemEventListener) {
-        this.handler = new TaskServerHandler(service, systemEventListener);
+        this.handler = new TaskServerExecutor(new TaskServerHandler(service, systemEventListener));
         this.producers = new HashMap<String, ClientProducer>();
     }
 
     public void messageReceived(ClientSession session, Object message, String destination) throws Exception {
+        messageReceived(session, message, destination, false);
+    }
+
+    /**
+     * @param binary whether the response should be encoded with the <code>BinaryCommandCodec</code>
+     */
+    public void messageReceived(ClientSession session, Object message, String destination, boolean binary) throws Exception {
         ClientProducer producer = producers.get(destination);
         if (producer == null) {
             producer = session.createProducer(destination);
             producers.put(destination, producer);
         }
-        handler.messageReceived(new HornetQSessionWriter(session, producer), message);
+        handler.messageReceived(new HornetQSessionWriter(session, producer, binary), message);
+    }
+
+    public TaskServerExecutor getExecutor() {
+        return handler;
+    }
+
+    public void dispose() {
+        handler.dispose();
     }
 }
\ No newline at end of file
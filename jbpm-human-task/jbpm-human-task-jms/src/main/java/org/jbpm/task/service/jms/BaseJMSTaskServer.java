@@ -3,6 +3,7 @@ package org.jbpm.task.service.jms;
 import java.io.IOException;
 import java.util.Properties;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
@@ -15,6 +16,7 @@ import javax.jms.Session;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 
+import org.jbpm.task.service.BinaryCommandCodec;
 import org.jbpm.task.service.TaskServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,7 +52,8 @@ public abstract class BaseJMSTaskServer extends TaskServer {
 				if (clientMessage != null) {
 					Object object = readMessage(clientMessage);
 					String selector = readSelector(clientMessage);
-					this.handler.messageReceived(this.session, object, this.responseQueue, selector);
+					// answer each client in the encoding it used
+					this.handler.messageReceived(this.session, object, this.responseQueue, selector, clientMessage instanceof BytesMessage);
 				}
 			}
 		} catch (JMSException e) {
@@ -65,9 +68,14 @@ public abstract class BaseJMSTaskServer extends TaskServer {
 	}
 
 	private Object readMessage(Message msgReceived) throws IOException {
-		ObjectMessage strmMsgReceived = (ObjectMessage) msgReceived;
 		try {
-			return strmMsgReceived.getObject();
+			if (msgReceived instanceof BytesMessage) {
+				BytesMessage bytesMessage = (BytesMessage) msgReceived;
+				byte[] bytes = new byte[(int) bytesMessage.getBodyLength()];
+				bytesMessage.readBytes(bytes);
+				return BinaryCommandCodec.decode(bytes);
+			}
+			return ((ObjectMessage) msgReceived).getObject();
 		} catch (JMSException e) {
 			throw new IOException("Error reading message");
 		}
@@ -110,6 +118,7 @@ public abstract class BaseJMSTaskServer extends TaskServer {
 	public void stop() throws Exception {
 		if (this.running) {
 			this.running = false;
+			this.handler.dispose();
 			closeAll();
 		}
 	}
@@ -3,28 +3,53 @@ package org.jbpm.task.service.jms;
 import java.io.IOException;
 import java.io.Serializable;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.jms.MessageProducer;
 import javax.jms.ObjectMessage;
 import javax.jms.Session;
 
+import org.jbpm.task.service.BinaryCommandCodec;
+import org.jbpm.task.service.Command;
 import org.jbpm.task.service.SessionWriter;
 
 public class JMSSessionWriter implements SessionWriter {
 	private final Session session;
 	private final MessageProducer producer;
 	private final String selector;
+	private final boolean binary;
 
 	public JMSSessionWriter(Session session, MessageProducer producer, String selector) {
+		this(session, producer, selector, false);
+	}
+
+	public JMSSessionWriter(Session session, MessageProducer producer, String selector, boolean binary) {
 		this.session = session;
 		this.producer = producer;
 		this.selector = selector;
+		this.binary = binary;
 	}
 
 	public void write(Object message) throws IOException {
+		// responses are written by the worker threads of the task server, sessions are not thread safe
+		synchronized (this.session) {
+			send(message);
+		}
+	}
+
+	private void send(Object message) throws IOException {
 		try {
-			ObjectMessage clientMessage = this.session.createObjectMessage();
-			clientMessage.setObject((Serializable) message);
+			Message clientMessage;
+			if (this.binary) {
+				BytesMessage bytesMessage = this.session.createBytesMessage();
+				bytesMessage.writeBytes(BinaryCommandCodec.encode((Command) message));
+				clientMessage = bytesMessage;
+			} else {
+				ObjectMessage objectMessage = this.session.createObjectMessage();
+				objectMessage.setObject((Serializable) message);
+				clientMessage = objectMessage;
+			}
 			
 			clientMessage.setStringProperty(TaskServiceConstants.SELECTOR_NAME, this.selector);
 			this.producer.send(clientMessage);
@@ -1,11 +1,16 @@
 package org.jbpm.task.service.jms;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.MessageProducer;
 import javax.jms.ObjectMessage;
@@ -20,31 +25,44 @@ import javax.naming.InitialContext;
 import org.jbpm.task.event.TaskEventKey;
 import org.jbpm.task.service.BaseClientHandler;
 import org.jbpm.task.service.BaseHandler;
+import org.jbpm.task.service.BinaryCommandCodec;
 import org.jbpm.task.service.TaskClientConnector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.jbpm.task.service.Command;
 
+/**
+ * JMS connector of the task client. Requests are sent through a pool of producer sessions, and the
+ * responses of all requests are received by long-lived consumers that only select the messages
+ * addressed to this connector. Responses are routed to their response handlers by command id, so any
+ * number of requests can be in flight at the same time.
+ * <p>
+ * The number of producer and consumer sessions can be set with the
+ * {@link TaskServiceConstants#TASK_CLIENT_PRODUCER_SESSIONS_NAME} and
+ * {@link TaskServiceConstants#TASK_CLIENT_CONSUMER_SESSIONS_NAME} connection properties (default 1).
+ */
 public class JMSTaskClientConnector implements TaskClientConnector {
-	
+
 	private static final Logger logger = LoggerFactory.getLogger(JMSTaskClientConnector.class);
-	
+
 	protected final BaseClientHandler handler;
 	protected final String name;
 	protected AtomicInteger counter;
-	
-	private MessageProducer producer;
+
 	private Properties connectionProperties;
 	private Context context;
     private boolean transactedQueue = false;
     private boolean enableLog = false;
-	
-	private String selector;
+
+	// the server copies the selector of a request to its responses
+	private final String selector;
 	protected QueueConnection connection;
-	protected QueueSession producerSession;
-	protected QueueSession consumerSession;
 	protected Queue taskServerQueue;
 	protected Queue responseQueue;
+	private ProducerSession[] producerSessions;
+	private final AtomicInteger nextProducerSession = new AtomicInteger();
+	private List<Responder> responders;
+	private volatile boolean connected;
 
 	public JMSTaskClientConnector(String name, BaseClientHandler handler, Properties connectionProperties, Context context) {
 		if (name == null) {
@@ -55,6 +73,7 @@ public class JMSTaskClientConnector implements TaskClientConnector {
 		this.connectionProperties = connectionProperties;
 		this.context = context;
 		this.counter = new AtomicInteger();
+		this.selector = UUID.randomUUID().toString();
 		if(System.getProperty("enableLog") != null)
 			this.enableLog = Boolean.parseBoolean(System.getProperty("enableLog"));
 	}
@@ -64,16 +83,18 @@ public class JMSTaskClientConnector implements TaskClientConnector {
 	}
 
 	public boolean connect() {
-		if (this.producerSession != null) { 
+		if (this.producerSessions != null) {
 			return true;
 		}
 		try {
-			
+
 			String connFactoryName = connectionProperties.getProperty(TaskServiceConstants.TASK_CLIENT_CONNECTION_FACTORY_NAME);
 			String transactedQueueString = connectionProperties.getProperty(TaskServiceConstants.TASK_CLIENT_TRANSACTED_QUEUE_NAME);
 			String acknowledgeModeString = connectionProperties.getProperty(TaskServiceConstants.TASK_CLIENT_ACKNOWLEDGE_MODE_NAME);
 			String taskServerQueueName = connectionProperties.getProperty(TaskServiceConstants.TASK_CLIENT_QUEUE_NAME_NAME);
 			String responseQueueName = connectionProperties.getProperty(TaskServiceConstants.TASK_CLIENT_RESPONSE_QUEUE_NAME_NAME);
+			int producerSessionCount = Integer.parseInt(connectionProperties.getProperty(TaskServiceConstants.TASK_CLIENT_PRODUCER_SESSIONS_NAME, "1"));
+			int consumerSessionCount = Integer.parseInt(connectionProperties.getProperty(TaskServiceConstants.TASK_CLIENT_CONSUMER_SESSIONS_NAME, "1"));
 			transactedQueue = Boolean.valueOf(transactedQueueString);
 			int acknowledgeMode = Session.DUPS_OK_ACKNOWLEDGE; //default
 			if ("AUTO_ACKNOWLEDGE".equals(acknowledgeModeString)) {
@@ -87,33 +108,63 @@ public class JMSTaskClientConnector implements TaskClientConnector {
 			}
 			QueueConnectionFactory factory = (QueueConnectionFactory) ctx.lookup(connFactoryName);
 			this.connection = factory.createQueueConnection();
-			this.producerSession = this.connection.createQueueSession(transactedQueue, acknowledgeMode);
-			this.consumerSession = this.connection.createQueueSession(transactedQueue, acknowledgeMode);
-			this.taskServerQueue = this.producerSession.createQueue(taskServerQueueName);
-			this.responseQueue = this.consumerSession.createQueue(responseQueueName);
-			this.producer = this.producerSession.createProducer(this.taskServerQueue);
+			ProducerSession[] producerSessions = new ProducerSession[producerSessionCount];
+			for (int i = 0; i < producerSessionCount; i++) {
+				QueueSession session = this.connection.createQueueSession(transactedQueue, acknowledgeMode);
+				if (this.taskServerQueue == null) {
+					this.taskServerQueue = session.createQueue(taskServerQueueName);
+				}
+				producerSessions[i] = new ProducerSession(session, session.createProducer(this.taskServerQueue));
+			}
+			String messageSelector = TaskServiceConstants.SELECTOR_NAME + " = '" + this.selector + "'";
+			this.responders = new ArrayList<Responder>(consumerSessionCount);
+			for (int i = 0; i < consumerSessionCount; i++) {
+				QueueSession session = this.connection.createQueueSession(transactedQueue, acknowledgeMode);
+				if (this.responseQueue == null) {
+					this.responseQueue = session.createQueue(responseQueueName);
+				}
+				this.responders.add(new Responder(session, session.createConsumer(this.responseQueue, messageSelector)));
+			}
+			this.connected = true;
 			this.connection.start();
+			for (int i = 0; i < this.responders.size(); i++) {
+				Thread responseThread = new Thread(this.responders.get(i), "JMSTaskClientConnector " + this.name + " responder " + i);
+				responseThread.setDaemon(true);
+				responseThread.start();
+			}
+			this.producerSessions = producerSessions;
 			return true;
 		} catch (Exception e) {
             logger.error(e.getMessage(), e);
 		}
 		return false;
 	}
-	
-	private Object readMessage(ObjectMessage serverMessage) throws JMSException {
-		return serverMessage.getObject();
+
+	private Object readMessage(Message serverMessage) throws JMSException, IOException {
+		if (serverMessage instanceof BytesMessage) {
+			BytesMessage bytesMessage = (BytesMessage) serverMessage;
+			byte[] bytes = new byte[(int) bytesMessage.getBodyLength()];
+			bytesMessage.readBytes(bytes);
+			return BinaryCommandCodec.decode(bytes);
+		}
+		return ((ObjectMessage) serverMessage).getObject();
 	}
 
 	public void disconnect() {
+		this.connected = false;
 		try {
-			if (this.producer != null) 
-				this.producer.close();
-			if(this.producerSession != null) {
-				this.producerSession.close();
-			    this.producerSession = null;
+			if (this.producerSessions != null) {
+				for (ProducerSession producerSession : this.producerSessions) {
+					producerSession.close();
+				}
+				this.producerSessions = null;
+			}
+			if (this.responders != null) {
+				for (Responder responder : this.responders) {
+					responder.close();
+				}
+				this.responders = null;
 			}
-			if(this.consumerSession != null)
-				this.consumerSession.close();
 			if (this.connection != null)
 				this.connection.close();
 		} catch(Exception e){
@@ -123,29 +174,33 @@ public class JMSTaskClientConnector implements TaskClientConnector {
 
 	public void write(Object object) {
 		try {
-			ObjectMessage message = this.producerSession.createObjectMessage();
-			this.selector = UUID.randomUUID().toString();
-			
 			//JA Bride :  now making aware of TaskKeyEvent handling
 			Command cObj = (Command)object;
 			java.util.List<Object> args = cObj.getArguments();
-			boolean removeEvent = true;
-			if(args.get(0) instanceof TaskEventKey){
+			if(!args.isEmpty() && args.get(0) instanceof TaskEventKey){
 				TaskEventKey eventKey = (TaskEventKey)args.get(0);
-				removeEvent = (Boolean)args.get(1);
+				boolean removeEvent = (Boolean)args.get(1);
 				logger.info("write() registering following taskEventKey with Human Task Server :\n\t"+eventKey.getEvent()+ "\n\tremoveEvent = "+removeEvent+"\n\tselector = "+selector);
 			}else if(enableLog){
-				logger.info("write() selector = "+selector+" : command = "+args.get(0));
+				logger.info("write() selector = "+selector+" : command = "+(args.isEmpty() ? cObj.getName() : args.get(0)));
 			}
-			Thread responseThread = new Thread(new Responder(selector, removeEvent));
-			responseThread.start();
-			message.setStringProperty(TaskServiceConstants.SELECTOR_NAME, this.selector);
-			message.setObject((Serializable)object);
-			
-			synchronized(producer){
-				this.producer.send(message);
+
+			ProducerSession producerSession = nextProducerSession();
+			synchronized(producerSession){
+				Message message;
+				if (BinaryCommandCodec.isEnabled()) {
+					BytesMessage bytesMessage = producerSession.session.createBytesMessage();
+					bytesMessage.writeBytes(BinaryCommandCodec.encode(cObj));
+					message = bytesMessage;
+				} else {
+					ObjectMessage objectMessage = producerSession.session.createObjectMessage();
+					objectMessage.setObject((Serializable)object);
+					message = objectMessage;
+				}
+				message.setStringProperty(TaskServiceConstants.SELECTOR_NAME, this.selector);
+				producerSession.producer.send(message);
 				if(transactedQueue)
-					this.producerSession.commit();
+					producerSession.session.commit();
 			}
 		} catch (Throwable e) {
             logger.error("write() exception when attempting to write to : "+this.taskServerQueue);
@@ -153,6 +208,15 @@ public class JMSTaskClientConnector implements TaskClientConnector {
 		}
 	}
 
+	private ProducerSession nextProducerSession() {
+		ProducerSession[] producerSessions = this.producerSessions;
+		if (producerSessions == null) {
+			throw new IllegalStateException("Not connected");
+		}
+		int index = (nextProducerSession.getAndIncrement() & Integer.MAX_VALUE) % producerSessions.length;
+		return producerSessions[index];
+	}
+
 	public AtomicInteger getCounter() {
 		return this.counter;
 	}
@@ -164,53 +228,73 @@ public class JMSTaskClientConnector implements TaskClientConnector {
 	public String getName() {
 		return this.name;
 	}
-	
-	protected class Responder implements Runnable {
-		
-		private final String selector;
-		private final boolean removeEvent;
-		
-		protected Responder(String selector, boolean removeEvent) {
-			this.selector = selector;
-			this.removeEvent = removeEvent;
+
+	/**
+	 * A session with its producer, only used by one thread at a time.
+	 */
+	private static class ProducerSession {
+
+		private final QueueSession session;
+		private final MessageProducer producer;
+
+		ProducerSession(QueueSession session, MessageProducer producer) {
+			this.session = session;
+			this.producer = producer;
+		}
+
+		synchronized void close() throws JMSException {
+			this.producer.close();
+			this.session.close();
 		}
-		
-		private void handleMessage(ObjectMessage serverMessage) throws Exception{
-			if (serverMessage != null) {
-				((JMSTaskClientHandler) handler).messageReceived(consumerSession, readMessage(serverMessage), responseQueue, selector);
-			}else
-				throw new RuntimeException("handleMessage() message received from Human Task Server is null!");
+	}
+
+	/**
+	 * Receives the responses to all requests of this connector on its own session.
+	 */
+	protected class Responder implements Runnable {
+
+		private final QueueSession session;
+		private final MessageConsumer consumer;
+
+		protected Responder(QueueSession session, MessageConsumer consumer) {
+			this.session = session;
+			this.consumer = consumer;
 		}
-		
+
 		public void run() {
-			MessageConsumer consumer = null;
-			try {
-				consumer = consumerSession.createConsumer(responseQueue, " " + TaskServiceConstants.SELECTOR_NAME + " like '" + selector + "%' ");
-				ObjectMessage serverMessage = null;
-				if(removeEvent) {
-					serverMessage = (ObjectMessage) consumer.receive();
-					handleMessage(serverMessage);
-					if(transactedQueue)
-						consumerSession.commit();
-				}else {
-					while(true){
-						serverMessage = (ObjectMessage) consumer.receive();
-						handleMessage(serverMessage);
-						if(transactedQueue)
-							consumerSession.commit();
+			while (connected) {
+				Message serverMessage;
+				try {
+					serverMessage = this.consumer.receive();
+				} catch (JMSException e) {
+					if (connected) {
+						logger.error("Unable to receive responses of " + name, e);
 					}
+					return;
 				}
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			} finally {
-				if (consumer != null) {
+				if (serverMessage == null) {
+					// the consumer was closed
+					return;
+				}
+				try {
+					((JMSTaskClientHandler) handler).messageReceived(this.session, readMessage(serverMessage), responseQueue, selector);
+				} catch (Exception e) {
+					// continue receiving the responses of the other requests
+					logger.error("Unable to handle response of " + name, e);
+				}
+				if (transactedQueue) {
 					try {
-						consumer.close();
-					} catch (Exception e) {
-		                logger.error(e.getMessage(), e);
+						this.session.commit();
+					} catch (JMSException e) {
+						logger.error(e.getMessage(), e);
 					}
 				}
 			}
 		}
+
+		void close() throws JMSException {
+			this.consumer.close();
+			this.session.close();
+		}
 	}
-}
\ No newline at end of file
+}
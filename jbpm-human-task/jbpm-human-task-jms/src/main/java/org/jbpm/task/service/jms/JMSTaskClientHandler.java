@@ -1,7 +1,7 @@
 package org.jbpm.task.service.jms;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.jms.Destination;
 import javax.jms.MessageProducer;
@@ -16,11 +16,12 @@ import org.jbpm.task.service.TaskClientHandler;
 
 public class JMSTaskClientHandler extends BaseClientHandler {
 	private TaskClientHandler handler;
-	private Map<String, MessageProducer> producers;
+	// producers are created per session, as each consumer session is used by its own thread
+	private Map<Session, Map<String, MessageProducer>> producers;
 
 	public JMSTaskClientHandler(SystemEventListener systemEventListener) {
 		this.handler = new TaskClientHandler(this.responseHandlers, systemEventListener);
-		this.producers = new HashMap<String, MessageProducer>();
+		this.producers = new ConcurrentHashMap<Session, Map<String, MessageProducer>>();
 	}
 
 	public TaskClient getClient() {
@@ -41,10 +42,15 @@ public class JMSTaskClientHandler extends BaseClientHandler {
 		} else if (destination instanceof Topic) {
 			name = ((Topic) destination).getTopicName();
 		}
-		MessageProducer producer = (MessageProducer) this.producers.get(name);
+		Map<String, MessageProducer> sessionProducers = this.producers.get(session);
+		if (sessionProducers == null) {
+			sessionProducers = new ConcurrentHashMap<String, MessageProducer>();
+			this.producers.put(session, sessionProducers);
+		}
+		MessageProducer producer = sessionProducers.get(name);
 		if (producer == null) {
 			producer = session.createProducer(destination);
-			this.producers.put(name, producer);
+			sessionProducers.put(name, producer);
 		}
 		this.handler.messageReceived(new JMSSessionWriter(session, producer, selector), message);
 	}
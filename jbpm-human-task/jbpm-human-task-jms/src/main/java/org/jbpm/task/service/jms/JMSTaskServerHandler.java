@@ -10,20 +10,28 @@ import javax.jms.QueueSession;
 import javax.jms.Topic;
 
 import org.drools.SystemEventListener;
+import org.jbpm.task.service.TaskServerExecutor;
 import org.jbpm.task.service.TaskServerHandler;
 import org.jbpm.task.service.TaskService;
 
 public class JMSTaskServerHandler {
 	
-	private TaskServerHandler handler;
+	private TaskServerExecutor handler;
 	private Map<String, MessageProducer> producers;
 
 	public JMSTaskServerHandler(TaskService service, SystemEventListener systemEventListener) {
-		this.handler = new TaskServerHandler(service, systemEventListener);
+		this.handler = new TaskServerExecutor(new TaskServerHandler(service, systemEventListener));
 		this.producers = new HashMap<String, MessageProducer>();
 	}
 
 	public void messageReceived(QueueSession session, Object message, Destination destination, String selector) throws Exception {
+		messageReceived(session, message, destination, selector, false);
+	}
+
+	/**
+	 * @param binary whether the response should be encoded with the <code>BinaryCommandCodec</code>
+	 */
+	public void messageReceived(QueueSession session, Object message, Destination destination, String selector, boolean binary) throws Exception {
 		String name = "";
 		if (destination instanceof Queue) {
 			name = ((Queue) destination).getQueueName();
@@ -35,6 +43,14 @@ public class JMSTaskServerHandler {
 			producer = session.createProducer(destination);
 			this.producers.put(name, producer);
 		}
-		this.handler.messageReceived(new JMSSessionWriter(session, producer, selector), message);
+		this.handler.messageReceived(new JMSSessionWriter(session, producer, selector, binary), message);
+	}
+
+	public TaskServerExecutor getExecutor() {
+		return this.handler;
+	}
+
+	public void dispose() {
+		this.handler.dispose();
 	}
 }
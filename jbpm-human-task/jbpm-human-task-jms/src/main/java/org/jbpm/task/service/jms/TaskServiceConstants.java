@@ -15,6 +15,8 @@ public interface TaskServiceConstants {
 	String TASK_CLIENT_ACKNOWLEDGE_MODE_NAME = "JMSTaskClient.acknowledgeMode";
 	String TASK_CLIENT_TRANSACTED_QUEUE_NAME = "JMSTaskClient.transactedQueue";
 	String TASK_CLIENT_CONNECTION_FACTORY_NAME = "JMSTaskClient.connectionFactory";
+	String TASK_CLIENT_PRODUCER_SESSIONS_NAME = "JMSTaskClient.producerSessions";
+	String TASK_CLIENT_CONSUMER_SESSIONS_NAME = "JMSTaskClient.consumerSessions";
 	
 	String NAMING_FACTORY_INITIAL_NAME = "java.naming.factory.initial";
 	String NAMING_PROVIDER_URL_NAME = "java.naming.provider.url";
@@ -23,7 +23,6 @@ import org.apache.mina.core.service.IoAcceptor;
 import org.apache.mina.core.service.IoHandlerAdapter;
 import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
-import org.apache.mina.filter.codec.serialization.ObjectSerializationCodecFactory;
 import org.apache.mina.filter.logging.LoggingFilter;
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
 import org.jbpm.task.service.TaskServer;
@@ -74,8 +73,9 @@ public class BaseMinaTaskServer extends TaskServer {
 
         acceptor.getFilterChain().addLast( "logger",
                                            new LoggingFilter() );
+        // accepts Java serialized and binary encoded commands
         acceptor.getFilterChain().addLast( "codec",
-                                           new ProtocolCodecFilter( new ObjectSerializationCodecFactory() ) );
+                                           new ProtocolCodecFilter( new CommandCodecFactory( false ) ) );
 
         acceptor.setHandler( handler );
         acceptor.getSessionConfig().setReadBufferSize( 2048 );
@@ -91,6 +91,9 @@ public class BaseMinaTaskServer extends TaskServer {
     public void stop() {
     	running = false;
         acceptor.dispose();
+        if (handler instanceof MinaTaskServerHandler) {
+            ((MinaTaskServerHandler) handler).dispose();
+        }
     }
     
     public boolean isRunning() {
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service.mina;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.CumulativeProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolCodecFactory;
+import org.apache.mina.filter.codec.ProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.apache.mina.filter.codec.ProtocolEncoder;
+import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+import org.jbpm.task.service.BinaryCommandCodec;
+import org.jbpm.task.service.Command;
+
+/**
+ * Codec that encodes commands either with the {@link BinaryCommandCodec} or with Java serialization,
+ * compatible with the <code>ObjectSerializationCodecFactory</code> used before.
+ * <p>
+ * The encoding is chosen per connection: a binary client sends {@link BinaryCommandCodec#HANDSHAKE}
+ * with {@link #sessionConnected(IoSession)} once connected, before any command is written, and the
+ * server then answers it with binary commands too. Connections without the handshake keep using Java
+ * serialization, so existing clients work unchanged.
+ */
+public class CommandCodecFactory implements ProtocolCodecFactory {
+
+    private static final AttributeKey BINARY = new AttributeKey(CommandCodecFactory.class, "binary");
+
+    private static final int MAX_OBJECT_SIZE = 1048576;
+
+    private static final Object HANDSHAKE = new Object();
+
+    private final boolean binaryClient;
+    private final ClassLoader classLoader;
+    private final ProtocolEncoder encoder = new CommandEncoder();
+    private final ProtocolDecoder decoder = new CommandDecoder();
+
+    /**
+     * @param binaryClient true on a client that should use the binary encoding, false on the server
+     */
+    public CommandCodecFactory(boolean binaryClient) {
+        this.binaryClient = binaryClient;
+        this.classLoader = Thread.currentThread().getContextClassLoader();
+    }
+
+    public ProtocolEncoder getEncoder(IoSession session) {
+        return encoder;
+    }
+
+    public ProtocolDecoder getDecoder(IoSession session) {
+        return decoder;
+    }
+
+    /**
+     * Sends the handshake on a binary client. Must be called once the session is connected and
+     * before any command is written on it.
+     */
+    public void sessionConnected(IoSession session) {
+        if (binaryClient) {
+            session.write(HANDSHAKE).awaitUninterruptibly();
+        }
+    }
+
+    private class CommandEncoder extends ProtocolEncoderAdapter {
+
+        public void encode(IoSession session, Object message, ProtocolEncoderOutput out) throws Exception {
+            IoBuffer buffer;
+            if (message == HANDSHAKE) {
+                session.setAttribute(BINARY, Boolean.TRUE);
+                buffer = IoBuffer.allocate(4);
+                buffer.putInt(BinaryCommandCodec.HANDSHAKE);
+            } else if (Boolean.TRUE.equals(session.getAttribute(BINARY))) {
+                byte[] bytes = BinaryCommandCodec.encode((Command) message);
+                buffer = IoBuffer.allocate(bytes.length + 4);
+                buffer.putInt(bytes.length);
+                buffer.put(bytes);
+            } else {
+                buffer = IoBuffer.allocate(64);
+                buffer.setAutoExpand(true);
+                buffer.putObject(message);
+            }
+            buffer.flip();
+            out.write(buffer);
+        }
+
+    }
+
+    private class CommandDecoder extends CumulativeProtocolDecoder {
+
+        protected boolean doDecode(IoSession session, IoBuffer in, ProtocolDecoderOutput out) throws Exception {
+            Boolean binary = (Boolean) session.getAttribute(BINARY);
+            if (binary == null) {
+                if (in.remaining() < 4) {
+                    return false;
+                }
+                binary = in.getInt(in.position()) == BinaryCommandCodec.HANDSHAKE;
+                if (binary) {
+                    in.getInt();
+                }
+                session.setAttribute(BINARY, binary);
+            }
+            if (!in.prefixedDataAvailable(4, MAX_OBJECT_SIZE)) {
+                return false;
+            }
+            if (binary) {
+                byte[] bytes = new byte[in.getInt()];
+                in.get(bytes);
+                out.write(BinaryCommandCodec.decode(bytes));
+            } else {
+                out.write(in.getObject(classLoader));
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -22,11 +22,13 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.mina.core.future.ConnectFuture;
 import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecFactory;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.apache.mina.filter.codec.serialization.ObjectSerializationCodecFactory;
 import org.apache.mina.transport.socket.SocketConnector;
 import org.apache.mina.transport.socket.nio.NioSocketConnector;
 import org.jbpm.task.service.BaseHandler;
+import org.jbpm.task.service.BinaryCommandCodec;
 import org.jbpm.task.service.TaskClientConnector;
 import org.jbpm.task.service.TaskService;
 import org.slf4j.Logger;
@@ -95,16 +97,25 @@ public class MinaTaskClientConnector implements TaskClientConnector {
             
             //connector.setHandler( arg0 );
             
+            ProtocolCodecFactory codecFactory;
+            if (BinaryCommandCodec.isEnabled()) {
+                codecFactory = new CommandCodecFactory(true);
+            } else {
+                codecFactory = new ObjectSerializationCodecFactory();
+            }
             connector.getFilterChain().addLast(
                                                "codec",
-                                               new ProtocolCodecFilter(
-                                                       new ObjectSerializationCodecFactory()));
+                                               new ProtocolCodecFilter(codecFactory));
 
             ConnectFuture future1 = connector.connect( address );
             future1.awaitUninterruptibly();
             if (!future1.isConnected()) {
                 return false;
             }
+            if (codecFactory instanceof CommandCodecFactory) {
+                // before the session is used, so that no command is written ahead of the handshake
+                ((CommandCodecFactory) codecFactory).sessionConnected(future1.getSession());
+            }
             session = future1.getSession();
             return true;
         } catch (Exception e) {
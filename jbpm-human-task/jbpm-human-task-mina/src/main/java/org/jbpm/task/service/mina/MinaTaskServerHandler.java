@@ -20,15 +20,16 @@ import org.apache.mina.core.service.IoHandlerAdapter;
 import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.core.session.IoSession;
 import org.drools.SystemEventListener;
+import org.jbpm.task.service.TaskServerExecutor;
 import org.jbpm.task.service.TaskServerHandler;
 import org.jbpm.task.service.TaskService;
 
 public class MinaTaskServerHandler extends IoHandlerAdapter {
 	
-    private TaskServerHandler handler;
+    private TaskServerExecutor handler;
 
     public MinaTaskServerHandler(TaskService service, SystemEventListener systemEventListener) {
-        this.handler = new TaskServerHandler(service, systemEventListener);
+        this.handler = new TaskServerExecutor(new TaskServerHandler(service, systemEventListener));
     }
 
     @Override
@@ -45,4 +46,12 @@ public class MinaTaskServerHandler extends IoHandlerAdapter {
     public void sessionIdle(IoSession session, IdleStatus status) throws Exception {
 //    	handler.sessionIdle(session, status);
     }
+
+    public TaskServerExecutor getExecutor() {
+        return handler;
+    }
+
+    public void dispose() {
+        handler.dispose();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import org.drools.KnowledgeBase;
+import org.drools.builder.KnowledgeBuilder;
+import org.drools.builder.KnowledgeBuilderFactory;
+import org.drools.builder.ResourceType;
+import org.drools.io.ResourceFactory;
+import org.drools.runtime.process.WorkItem;
+import org.drools.runtime.process.WorkItemHandler;
+import org.drools.runtime.process.WorkItemManager;
+
+/**
+ * Shared setup of the benchmarks.
+ */
+public final class BenchmarkSupport {
+
+    public static final String PACKAGE = "org.jbpm.perf.";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Creates a knowledge base containing the given BPMN2 processes of this package,
+     * e.g. <code>"Linear"</code> for <code>org/jbpm/perf/Linear.bpmn2</code>.
+     */
+    public static KnowledgeBase createKnowledgeBase(String... processes) {
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        for ( String process : processes ) {
+            kbuilder.add( ResourceFactory.newClassPathResource( process + ".bpmn2",
+                                                                BenchmarkSupport.class ),
+                          ResourceType.BPMN2 );
+        }
+        if ( kbuilder.hasErrors() ) {
+            throw new IllegalArgumentException( "Could not parse processes: " + kbuilder.getErrors() );
+        }
+        KnowledgeBase kbase = kbuilder.newKnowledgeBase();
+        return kbase;
+    }
+
+    /**
+     * Work item handler that leaves work items active, remembering the last one,
+     * so they can be completed by the benchmark itself.
+     */
+    public static class WaitingWorkItemHandler
+        implements
+        WorkItemHandler {
+
+        private WorkItem workItem;
+
+        public void executeWorkItem(WorkItem workItem,
+                                    WorkItemManager manager) {
+            this.workItem = workItem;
+        }
+
+        public void abortWorkItem(WorkItem workItem,
+                                  WorkItemManager manager) {
+        }
+
+        public WorkItem getWorkItem() {
+            return workItem;
+        }
+
+    }
+
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.drools.KnowledgeBase;
+import org.drools.persistence.jpa.JPAKnowledgeService;
+import org.drools.runtime.Environment;
+import org.drools.runtime.EnvironmentFactory;
+import org.drools.runtime.EnvironmentName;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.jbpm.perf.BenchmarkSupport.WaitingWorkItemHandler;
+import org.jbpm.persistence.processinstance.JPAProcessInstanceManager;
+import org.jbpm.persistence.processinstance.ProcessInstanceInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+
+/**
+ * Round-trips of process instances through the {@link JPAProcessInstanceManager},
+ * using an embedded in-memory H2 database, so no database server is needed. The
+ * process instance cache and dirty tracking can be switched on to compare their
+ * effect.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class JPAProcessInstanceManagerBenchmark {
+
+    private static final String PROCESS_ID = BenchmarkSupport.PACKAGE + "UserTask";
+
+    @Param({ "0", "100" })
+    public int cacheSize;
+
+    @Param({ "false", "true" })
+    public boolean dirtyTracking;
+
+    private PoolingDataSource dataSource;
+    private EntityManagerFactory emf;
+    private StatefulKnowledgeSession ksession;
+    private WaitingWorkItemHandler handler;
+    private long processInstanceId;
+
+    @Setup
+    public void setUp() {
+        // no transaction logs are needed for benchmarks
+        TransactionManagerServices.getConfiguration().setJournal( "null" );
+        dataSource = new PoolingDataSource();
+        dataSource.setUniqueName( "jdbc/jbpm-perf-ds" );
+        dataSource.setClassName( "bitronix.tm.resource.jdbc.lrc.LrcXADataSource" );
+        dataSource.setMaxPoolSize( 5 );
+        dataSource.setAllowLocalTransactions( true );
+        dataSource.getDriverProperties().put( "user", "sa" );
+        dataSource.getDriverProperties().put( "password", "" );
+        dataSource.getDriverProperties().put( "url", "jdbc:h2:mem:jbpm-perf;DB_CLOSE_DELAY=-1" );
+        dataSource.getDriverProperties().put( "driverClassName", "org.h2.Driver" );
+        dataSource.init();
+        emf = Persistence.createEntityManagerFactory( "org.jbpm.persistence.perf" );
+
+        Environment env = EnvironmentFactory.newEnvironment();
+        env.set( EnvironmentName.ENTITY_MANAGER_FACTORY, emf );
+        env.set( EnvironmentName.TRANSACTION_MANAGER, TransactionManagerServices.getTransactionManager() );
+        if ( cacheSize > 0 ) {
+            env.set( JPAProcessInstanceManager.CACHE_SIZE, cacheSize );
+        }
+        env.set( ProcessInstanceInfo.DIRTY_TRACKING, Boolean.toString( dirtyTracking ) );
+
+        KnowledgeBase kbase = BenchmarkSupport.createKnowledgeBase( "UserTask" );
+        ksession = JPAKnowledgeService.newStatefulKnowledgeSession( kbase, null, env );
+        handler = new WaitingWorkItemHandler();
+        ksession.getWorkItemManager().registerWorkItemHandler( "Human Task",
+                                                               handler );
+        processInstanceId = ksession.startProcess( PROCESS_ID ).getId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        ksession.dispose();
+        emf.close();
+        dataSource.close();
+        TransactionManagerServices.getTransactionManager().shutdown();
+    }
+
+    /**
+     * Loads a waiting process instance in its own transaction.
+     */
+    @Benchmark
+    public ProcessInstance getProcessInstance() {
+        return ksession.getProcessInstance( processInstanceId );
+    }
+
+    /**
+     * Inserts a process instance, then loads, completes and deletes it again,
+     * in two transactions.
+     */
+    @Benchmark
+    public long startAndCompleteProcess() {
+        ksession.startProcess( PROCESS_ID );
+        long workItemId = handler.getWorkItem().getId();
+        ksession.getWorkItemManager().completeWorkItem( workItemId,
+                                                        null );
+        return workItemId;
+    }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.drools.common.InternalRuleBase;
+import org.drools.impl.InternalKnowledgeBase;
+import org.drools.impl.StatefulKnowledgeSessionImpl;
+import org.drools.marshalling.impl.MarshallerReaderContext;
+import org.drools.marshalling.impl.MarshallerWriteContext;
+import org.drools.marshalling.impl.PersisterHelper;
+import org.drools.marshalling.impl.ProtobufMarshaller;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.jbpm.marshalling.impl.JBPMMessages;
+import org.jbpm.marshalling.impl.ProtobufRuleFlowProcessInstanceMarshaller;
+import org.jbpm.perf.BenchmarkSupport.WaitingWorkItemHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes and reads a process instance waiting in a user task with the protobuf
+ * process instance marshaller, the same way <code>ProcessInstanceInfo</code> does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ProcessInstanceMarshallingBenchmark {
+
+    @Param({ "1", "20" })
+    public int variables;
+
+    private StatefulKnowledgeSession ksession;
+    private InternalRuleBase ruleBase;
+    private ProcessInstance processInstance;
+    private byte[] processInstanceByteArray;
+
+    @Setup
+    public void setUp() throws IOException {
+        ksession = BenchmarkSupport.createKnowledgeBase( "UserTask" ).newStatefulKnowledgeSession();
+        ruleBase = (InternalRuleBase) ((InternalKnowledgeBase) ksession.getKnowledgeBase()).getRuleBase();
+        ksession.getWorkItemManager().registerWorkItemHandler( "Human Task",
+                                                               new WaitingWorkItemHandler() );
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        for ( int i = 0; i < variables; i++ ) {
+            parameters.put( "variable" + i,
+                            "value of variable " + i );
+        }
+        processInstance = ksession.startProcess( BenchmarkSupport.PACKAGE + "UserTask",
+                                                 parameters );
+        processInstanceByteArray = write();
+    }
+
+    @TearDown
+    public void tearDown() {
+        ksession.dispose();
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        MarshallerWriteContext context = new MarshallerWriteContext( baos,
+                                                                     null,
+                                                                     null,
+                                                                     null,
+                                                                     null,
+                                                                     ksession.getEnvironment() );
+        JBPMMessages.ProcessInstance _instance = ProtobufRuleFlowProcessInstanceMarshaller.INSTANCE.writeProcessInstance( context,
+                                                                                                                         processInstance );
+        PersisterHelper.writeToStreamWithHeader( context,
+                                                 _instance );
+        context.close();
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public ProcessInstance read() throws IOException {
+        MarshallerReaderContext context = new MarshallerReaderContext( new ByteArrayInputStream( processInstanceByteArray ),
+                                                                       ruleBase,
+                                                                       null,
+                                                                       null,
+                                                                       ProtobufMarshaller.TIMER_READERS,
+                                                                       ksession.getEnvironment() );
+        context.wm = ((StatefulKnowledgeSessionImpl) ksession).getInternalWorkingMemory();
+        ProcessInstance result = ProtobufRuleFlowProcessInstanceMarshaller.INSTANCE.readProcessInstance( context );
+        context.close();
+        return result;
+    }
+
+}
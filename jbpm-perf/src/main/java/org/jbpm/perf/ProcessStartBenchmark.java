@@ -0,0 +1,85 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Starts (and runs to completion) in-memory process instances of processes that
+ * do not wait, which measures <code>ProcessRuntimeImpl.startProcess</code> and the
+ * node instances triggered by it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ProcessStartBenchmark {
+
+    @Param({ "Linear", "ParallelGateway", "ForEach" })
+    public String process;
+
+    private StatefulKnowledgeSession ksession;
+    private String processId;
+    private Map<String, Object> parameters;
+
+    @Setup
+    public void setUp() {
+        ksession = BenchmarkSupport.createKnowledgeBase( process ).newStatefulKnowledgeSession();
+        processId = BenchmarkSupport.PACKAGE + process;
+        parameters = new HashMap<String, Object>();
+        if ( "ForEach".equals( process ) ) {
+            List<String> list = new ArrayList<String>();
+            for ( int i = 0; i < 10; i++ ) {
+                list.add( "item" + i );
+            }
+            parameters.put( "list", list );
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ksession.dispose();
+    }
+
+    @Benchmark
+    public ProcessInstance startProcess() {
+        return ksession.startProcess( processId,
+                                      parameters );
+    }
+
+}
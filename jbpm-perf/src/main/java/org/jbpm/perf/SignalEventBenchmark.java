@@ -0,0 +1,79 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Signals an in-memory process instance waiting in an intermediate catch event,
+ * which measures <code>WorkflowProcessInstanceImpl.signalEvent</code> and the
+ * completion of the process instance. A new process instance is started before
+ * every invocation, outside of the measured time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SignalEventBenchmark {
+
+    private StatefulKnowledgeSession ksession;
+    private WorkflowProcessInstanceImpl processInstance;
+
+    @Setup
+    public void setUp() {
+        ksession = BenchmarkSupport.createKnowledgeBase( "Signal" ).newStatefulKnowledgeSession();
+    }
+
+    @Setup(Level.Invocation)
+    public void startProcess() {
+        processInstance = (WorkflowProcessInstanceImpl) ksession.startProcess( BenchmarkSupport.PACKAGE + "Signal" );
+    }
+
+    @TearDown
+    public void tearDown() {
+        ksession.dispose();
+    }
+
+    @Benchmark
+    public int signalEvent() {
+        processInstance.signalEvent( "Continue",
+                                     "value" );
+        if ( processInstance.getState() != ProcessInstance.STATE_COMPLETED ) {
+            throw new IllegalStateException( "Process instance was not completed by the signal" );
+        }
+        return processInstance.getState();
+    }
+
+}
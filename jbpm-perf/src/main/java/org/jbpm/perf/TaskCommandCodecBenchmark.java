@@ -0,0 +1,142 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jbpm.task.Group;
+import org.jbpm.task.I18NText;
+import org.jbpm.task.OrganizationalEntity;
+import org.jbpm.task.PeopleAssignments;
+import org.jbpm.task.Status;
+import org.jbpm.task.Task;
+import org.jbpm.task.TaskData;
+import org.jbpm.task.User;
+import org.jbpm.task.query.TaskSummary;
+import org.jbpm.task.service.BinaryCommandCodec;
+import org.jbpm.task.service.Command;
+import org.jbpm.task.service.CommandName;
+import org.jbpm.task.service.Operation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes and decodes human task commands with Java serialization and with the
+ * <code>BinaryCommandCodec</code>: a task operation request, a task and a list of
+ * task summaries. The payload size of each message is printed during setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class TaskCommandCodecBenchmark {
+
+    @Param({ "operation", "task", "summaries" })
+    public String message;
+
+    @Param({ "serialization", "binary" })
+    public String codec;
+
+    private Command command;
+    private byte[] encoded;
+    private boolean binary;
+
+    @Setup
+    public void setUp() throws IOException {
+        binary = "binary".equals( codec );
+        List<Object> args = new ArrayList<Object>();
+        if ( "operation".equals( message ) ) {
+            args.add( Operation.Start );
+            args.add( 42L );
+            args.add( "Darth Vader" );
+            command = new Command( 1, CommandName.OperationRequest, args );
+        } else if ( "task".equals( message ) ) {
+            args.add( createTask() );
+            command = new Command( 1, CommandName.GetTaskResponse, args );
+        } else {
+            List<TaskSummary> summaries = new ArrayList<TaskSummary>();
+            for ( int i = 0; i < 50; i++ ) {
+                summaries.add( new TaskSummary( i, 100 + i, "Task " + i, "Subject of task " + i, "Description of task " + i,
+                                                Status.Reserved, 5, true, new User( "Darth Vader" ), new User( "Administrator" ),
+                                                new Date(), new Date(), null, "org.jbpm.perf.UserTask", 1 ) );
+            }
+            args.add( summaries );
+            command = new Command( 1, CommandName.QueryTaskSummaryResponse, args );
+        }
+        encoded = encode();
+        System.out.println( message + " encoded with " + codec + ": " + encoded.length + " bytes" );
+    }
+
+    private static Task createTask() {
+        Task task = new Task();
+        task.setId( 42 );
+        task.setPriority( 5 );
+        List<I18NText> names = new ArrayList<I18NText>();
+        names.add( new I18NText( "en-UK", "Review the order" ) );
+        task.setNames( names );
+        task.setSubjects( names );
+        task.setDescriptions( names );
+        PeopleAssignments peopleAssignments = new PeopleAssignments();
+        List<OrganizationalEntity> potentialOwners = new ArrayList<OrganizationalEntity>();
+        potentialOwners.add( new User( "Darth Vader" ) );
+        potentialOwners.add( new Group( "Crusaders" ) );
+        peopleAssignments.setPotentialOwners( potentialOwners );
+        List<OrganizationalEntity> businessAdministrators = new ArrayList<OrganizationalEntity>();
+        businessAdministrators.add( new User( "Administrator" ) );
+        peopleAssignments.setBusinessAdministrators( businessAdministrators );
+        task.setPeopleAssignments( peopleAssignments );
+        TaskData taskData = new TaskData();
+        taskData.setStatus( Status.Reserved );
+        taskData.setActualOwner( new User( "Darth Vader" ) );
+        taskData.setCreatedBy( new User( "Administrator" ) );
+        taskData.setCreatedOn( new Date() );
+        taskData.setActivationTime( new Date() );
+        taskData.setWorkItemId( 7 );
+        taskData.setProcessInstanceId( 100 );
+        taskData.setProcessId( "org.jbpm.perf.UserTask" );
+        taskData.setProcessSessionId( 1 );
+        task.setTaskData( taskData );
+        return task;
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return BinaryCommandCodec.write( command,
+                                         binary );
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        return BinaryCommandCodec.read( encoded );
+    }
+
+}
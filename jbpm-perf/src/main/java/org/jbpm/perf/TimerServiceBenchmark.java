@@ -0,0 +1,126 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.drools.time.Job;
+import org.drools.time.JobContext;
+import org.drools.time.JobHandle;
+import org.drools.time.TimerService;
+import org.drools.time.Trigger;
+import org.drools.time.impl.IntervalTrigger;
+import org.drools.time.impl.JDKTimerService;
+import org.jbpm.process.instance.timer.TimerInstance;
+import org.jbpm.process.instance.timer.TimerManager.ProcessJobContext;
+import org.jbpm.process.instance.timer.TimingWheelTimerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Schedules a million SLA-like timers, with delays between an hour and 30 days,
+ * with the timing wheel and with the default JDK timer service, and cancels them
+ * again. The timer service and the triggers are created before every invocation,
+ * outside of the measured time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TimerServiceBenchmark {
+
+    private static final int TIMERS = 1000000;
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private static final Job JOB = new Job() {
+        public void execute(JobContext ctx) {
+            throw new IllegalStateException( "Timer should not fire during the benchmark" );
+        }
+    };
+
+    @Param({ "wheel", "jdk" })
+    public String timerService;
+
+    private TimerService service;
+    private ProcessJobContext[] contexts;
+    private JobHandle[] handles;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        service = "wheel".equals( timerService ) ? new TimingWheelTimerService() : new JDKTimerService();
+        Random random = new Random( 42 );
+        long now = service.getCurrentTime();
+        contexts = new ProcessJobContext[TIMERS];
+        for ( int i = 0; i < TIMERS; i++ ) {
+            TimerInstance timer = new TimerInstance();
+            timer.setId( i );
+            timer.setDelay( HOUR + (long) (random.nextDouble() * 30 * 24 * HOUR) );
+            Trigger trigger = new IntervalTrigger( now,
+                                                   null,
+                                                   null,
+                                                   -1,
+                                                   timer.getDelay(),
+                                                   0,
+                                                   null,
+                                                   null );
+            contexts[i] = new ProcessJobContext( timer,
+                                                 trigger,
+                                                 (long) i,
+                                                 null );
+        }
+        handles = new JobHandle[TIMERS];
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public JobHandle[] schedule() {
+        for ( int i = 0; i < TIMERS; i++ ) {
+            handles[i] = service.scheduleJob( JOB,
+                                              contexts[i],
+                                              contexts[i].getTrigger() );
+        }
+        return handles;
+    }
+
+    @Benchmark
+    public JobHandle[] scheduleAndCancel() {
+        schedule();
+        for ( int i = 0; i < TIMERS; i++ ) {
+            service.removeJob( handles[i] );
+        }
+        return handles;
+    }
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.jbpm.perf.BenchmarkSupport.WaitingWorkItemHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Completes the work item of an in-memory process instance waiting in a user task,
+ * including the result mapping and the completion of the process instance. A new
+ * process instance is started before every invocation, outside of the measured time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class WorkItemCompletionBenchmark {
+
+    private StatefulKnowledgeSession ksession;
+    private WaitingWorkItemHandler handler;
+    private Map<String, Object> results;
+
+    @Setup
+    public void setUp() {
+        ksession = BenchmarkSupport.createKnowledgeBase( "UserTask" ).newStatefulKnowledgeSession();
+        handler = new WaitingWorkItemHandler();
+        ksession.getWorkItemManager().registerWorkItemHandler( "Human Task",
+                                                               handler );
+        results = new HashMap<String, Object>();
+        results.put( "Result",
+                     "value" );
+    }
+
+    @Setup(Level.Invocation)
+    public void startProcess() {
+        ksession.startProcess( BenchmarkSupport.PACKAGE + "UserTask" );
+    }
+
+    @TearDown
+    public void tearDown() {
+        ksession.dispose();
+    }
+
+    @Benchmark
+    public long completeWorkItem() {
+        long workItemId = handler.getWorkItem().getId();
+        ksession.getWorkItemManager().completeWorkItem( workItemId,
+                                                        results );
+        return workItemId;
+    }
+
+}
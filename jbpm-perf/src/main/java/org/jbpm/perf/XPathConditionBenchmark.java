@@ -0,0 +1,133 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathFunction;
+import javax.xml.xpath.XPathFunctionException;
+import javax.xml.xpath.XPathFunctionResolver;
+import javax.xml.xpath.XPathVariableResolver;
+
+import org.drools.runtime.process.ProcessContext;
+import org.jbpm.process.instance.impl.XPATHReturnValueEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+
+/**
+ * Evaluates XPath gateway conditions with the precompiled XPATHReturnValueEvaluator
+ * and with the previous implementation, which created the XPath, its resolvers and
+ * an empty document and compiled the expression on every evaluation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class XPathConditionBenchmark {
+
+    @Param({ "count($instanceMetadata/instanceMetadata/user[@approved='true']) = 1",
+             "$status = 'approved'" })
+    public String expression;
+
+    private XPATHReturnValueEvaluator evaluator;
+    private ProcessContext context;
+
+    @Setup
+    public void setUp() throws Exception {
+        evaluator = new XPATHReturnValueEvaluator( expression,
+                                                   "XPath" );
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        final Map<String, Object> variables = new HashMap<String, Object>();
+        variables.put( "instanceMetadata",
+                       builder.parse( new InputSource( new StringReader( "<instanceMetadata>"
+                                                                         + "<user approved='true'/><user approved='false'/>"
+                                                                         + "</instanceMetadata>" ) ) ) );
+        variables.put( "status",
+                       "approved" );
+        // only the variables are used by the evaluator
+        context = (ProcessContext) Proxy.newProxyInstance( getClass().getClassLoader(),
+                                                           new Class[]{ProcessContext.class},
+                                                           new InvocationHandler() {
+                                                               public Object invoke(Object proxy,
+                                                                                    Method method,
+                                                                                    Object[] args) {
+                                                                   if ( "getVariable".equals( method.getName() ) ) {
+                                                                       return variables.get( args[0] );
+                                                                   }
+                                                                   throw new UnsupportedOperationException( method.getName() );
+                                                               }
+                                                           } );
+        if ( !Boolean.TRUE.equals( compiled() ) || !Boolean.TRUE.equals( uncompiled() ) ) {
+            throw new IllegalStateException( "Unexpected result of " + expression );
+        }
+    }
+
+    @Benchmark
+    public Object compiled() throws Exception {
+        return evaluator.evaluate( context );
+    }
+
+    @Benchmark
+    public Object uncompiled() throws Exception {
+        XPath xpathEvaluator = XPathFactory.newInstance().newXPath();
+        xpathEvaluator.setXPathFunctionResolver( new XPathFunctionResolver() {
+            public XPathFunction resolveFunction(QName functionName,
+                                                 int arity) {
+                return new XPathFunction() {
+                    public Object evaluate(List args) throws XPathFunctionException {
+                        return context.getVariable( (String) args.get( 0 ) );
+                    }
+                };
+            }
+        } );
+        xpathEvaluator.setXPathVariableResolver( new XPathVariableResolver() {
+            public Object resolveVariable(QName variableName) {
+                return context.getVariable( variableName.getLocalPart() );
+            }
+        } );
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        return xpathEvaluator.evaluate( expression,
+                                        builder.newDocument(),
+                                        XPathConstants.BOOLEAN );
+    }
+
+}
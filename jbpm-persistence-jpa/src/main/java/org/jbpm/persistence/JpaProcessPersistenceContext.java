@@ -1,5 +1,6 @@
 package org.jbpm.persistence;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.persistence.EntityManager;
@@ -38,5 +39,28 @@ public class JpaProcessPersistenceContext extends JpaPersistenceContext
                                                type );
         return (List<Long>) processInstancesForEvent.getResultList();
     }
+
+    @SuppressWarnings("unchecked")
+    public List<ProcessInstanceInfo> findProcessInstanceInfos(List<Long> processInstanceIds) {
+        if ( processInstanceIds.isEmpty() ) {
+            return new ArrayList<ProcessInstanceInfo>();
+        }
+        Query processInstanceInfos = getEntityManager().createNamedQuery( "ProcessInstanceInfosByIds" );
+        processInstanceInfos.setFlushMode(FlushModeType.COMMIT);
+        processInstanceInfos.setParameter( "ids",
+                                           processInstanceIds );
+        return (List<ProcessInstanceInfo>) processInstanceInfos.getResultList();
+    }
+
+    public void flush() {
+        getEntityManager().flush();
+    }
+
+    public void detach(ProcessInstanceInfo processInstanceInfo) {
+        EntityManager em = getEntityManager();
+        if ( em.contains( processInstanceInfo ) ) {
+            em.detach( processInstanceInfo );
+        }
+    }
     
 }
@@ -56,6 +56,25 @@ public class MapBasedProcessPersistenceContext extends MapBasedPersistenceContex
         return storage.getProcessInstancesWaitingForEvent( type );
     }
 
+    public List<ProcessInstanceInfo> findProcessInstanceInfos(List<Long> processInstanceIds) {
+        List<ProcessInstanceInfo> result = new ArrayList<ProcessInstanceInfo>();
+        for ( Long processInstanceId : processInstanceIds ) {
+            ProcessInstanceInfo processInstanceInfo = findProcessInstanceInfo( processInstanceId );
+            if ( processInstanceInfo != null ) {
+                result.add( processInstanceInfo );
+            }
+        }
+        return result;
+    }
+
+    public void flush() {
+        // process instances are only saved to the storage on commit
+    }
+
+    public void detach(ProcessInstanceInfo processInstanceInfo) {
+        // process instances need to be kept until they are saved on commit
+    }
+
     public void clearStoredProcessInstances() {
         processes.clear();
     }
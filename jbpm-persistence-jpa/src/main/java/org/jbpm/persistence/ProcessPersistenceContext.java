@@ -16,4 +16,10 @@ public interface ProcessPersistenceContext
     void remove(ProcessInstanceInfo processInstanceInfo);
 
     List<Long> getProcessInstancesWaitingForEvent(String type);
+    
+    List<ProcessInstanceInfo> findProcessInstanceInfos(List<Long> processInstanceIds);
+    
+    void flush();
+    
+    void detach(ProcessInstanceInfo processInstanceInfo);
 }
@@ -0,0 +1,74 @@
+package org.jbpm.persistence.processinstance;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link ProcessInstanceCompressor} using the deflate algorithm of <code>java.util.zip</code>.
+ */
+public class DeflateProcessInstanceCompressor
+    implements
+    ProcessInstanceCompressor {
+
+    public static final byte ID = 1;
+
+    private final int level;
+
+    public DeflateProcessInstanceCompressor() {
+        this( Deflater.BEST_SPEED );
+    }
+
+    public DeflateProcessInstanceCompressor(int level) {
+        this.level = level;
+    }
+
+    public byte getId() {
+        return ID;
+    }
+
+    public byte[] compress(byte[] data) throws IOException {
+        Deflater deflater = new Deflater( level );
+        try {
+            deflater.setInput( data );
+            deflater.finish();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream( data.length / 2 + 16 );
+            byte[] buffer = new byte[4096];
+            while ( !deflater.finished() ) {
+                int count = deflater.deflate( buffer );
+                baos.write( buffer, 0, count );
+            }
+            return baos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public byte[] decompress(byte[] data,
+                             int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput( data );
+            byte[] result = new byte[length];
+            int offset = 0;
+            while ( offset < length ) {
+                int count = inflater.inflate( result, offset, length - offset );
+                if ( count == 0 && (inflater.finished() || inflater.needsInput()) ) {
+                    throw new IOException( "Compressed process instance data is truncated" );
+                }
+                offset += count;
+            }
+            return result;
+        } catch ( DataFormatException e ) {
+            // Java 5 does not accept [new IOException(String, Throwable)]
+            IOException ioe = new IOException( "Compressed process instance data is corrupt: " + e.getMessage() );
+            ioe.initCause( e );
+            throw ioe;
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -4,17 +4,27 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionSynchronizationRegistry;
+
 import org.drools.common.InternalKnowledgeRuntime;
 import org.drools.definition.process.Process;
+import org.drools.persistence.TransactionManager;
+import org.drools.persistence.TransactionSynchronization;
 import org.drools.runtime.EnvironmentName;
 import org.drools.runtime.process.ProcessInstance;
 import org.jbpm.persistence.ProcessPersistenceContext;
 import org.jbpm.persistence.ProcessPersistenceContextManager;
 import org.jbpm.process.instance.ProcessInstanceManager;
 import org.jbpm.process.instance.impl.ProcessInstanceImpl;
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * This is an implementation of the {@link ProcessInstanceManager} that uses JPA.
@@ -23,20 +33,58 @@ import org.jbpm.process.instance.impl.ProcessInstanceImpl;
  * which is used by multiple threads: each request sent to the jbpm-console is picked up in it's own thread. 
  * </p>
  * This means that multiple threads can be using the same instance of this class. 
+ * </p>
+ * When the <code>jbpm.processinstance.cache.size</code> environment entry (or system property)
+ * is set to a positive number, process instances are kept in a {@link ProcessInstanceCache} of
+ * that size when they are cleared at the end of a command, so they don't need to be unmarshalled
+ * again when the same session accesses them in a later command. Instances are only cached
+ * once the transaction they were used in has been committed, so the cache never holds the
+ * state of a transaction that was rolled back (after it was flushed).
  */
 public class JPAProcessInstanceManager
     implements
     ProcessInstanceManager {
 
+    public static final String CACHE_SIZE = "jbpm.processinstance.cache.size";
+
+    private static final Logger logger = LoggerFactory.getLogger( JPAProcessInstanceManager.class );
+
     private InternalKnowledgeRuntime kruntime;
     // In a scenario in which 1000's of processes are running daily,
     //   lazy initialization is more costly than eager initialization
     // Added volatile so that if something happens, we can figure out what
     private volatile transient Map<Long, ProcessInstance> processInstances = new ConcurrentHashMap<Long, ProcessInstance>();
+    private transient Map<Long, ProcessInstanceInfo> processInstanceInfos = new ConcurrentHashMap<Long, ProcessInstanceInfo>();
+    private ProcessInstanceCache processInstanceCache;
+    // fills the cache when the current transaction commits
+    private CacheSynchronization cacheSynchronization;
+    private boolean dirtyTracking;
 
     
     public void setKnowledgeRuntime(InternalKnowledgeRuntime kruntime) {
         this.kruntime = kruntime;
+        Object cacheSize = kruntime.getEnvironment().get( CACHE_SIZE );
+        if ( cacheSize == null ) {
+            cacheSize = System.getProperty( CACHE_SIZE );
+        }
+        if ( cacheSize != null ) {
+            int size = cacheSize instanceof Number ? ((Number) cacheSize).intValue() : Integer.parseInt( cacheSize.toString().trim() );
+            if ( size > 0 ) {
+                processInstanceCache = new ProcessInstanceCache( size );
+            }
+        }
+        Object dirtyTracking = kruntime.getEnvironment().get( ProcessInstanceInfo.DIRTY_TRACKING );
+        if ( dirtyTracking == null ) {
+            dirtyTracking = System.getProperty( ProcessInstanceInfo.DIRTY_TRACKING );
+        }
+        this.dirtyTracking = dirtyTracking != null && Boolean.parseBoolean( dirtyTracking.toString().trim() );
+    }
+
+    /**
+     * @return the cache of process instances, or <code>null</code> if caching is disabled
+     */
+    public ProcessInstanceCache getProcessInstanceCache() {
+        return processInstanceCache;
     }
 
     public void addProcessInstance(ProcessInstance processInstance) {
@@ -49,7 +97,9 @@ public class JPAProcessInstanceManager
         context.persist( processInstanceInfo );
         ((org.jbpm.process.instance.ProcessInstance) processInstance).setId( processInstanceInfo.getId() );
         processInstanceInfo.updateLastReadDate();
+        registerCacheSynchronization();
         internalAddProcessInstance(processInstance);
+        processInstanceInfos.put( processInstance.getId(), processInstanceInfo );
     }
     
     public void internalAddProcessInstance(ProcessInstance processInstance) {
@@ -79,7 +129,16 @@ public class JPAProcessInstanceManager
         if ( processInstanceInfo == null ) {
             return null;
         }
-        processInstanceInfo.updateLastReadDate();
+        if ( !dirtyTracking ) {
+            // makes sure the process instance is written (if changed) when flushing,
+            // with dirty tracking this is done when the process instance is changed
+            processInstanceInfo.updateLastReadDate();
+        }
+        registerCacheSynchronization();
+        if ( processInstanceCache != null && processInstanceInfo.processInstance == null ) {
+            // skip unmarshalling if this version of the process instance is still cached
+            processInstanceInfo.processInstance = processInstanceCache.take( id, processInstanceInfo.getVersion() );
+        }
         processInstance = (org.jbpm.process.instance.ProcessInstance)
         	processInstanceInfo.getProcessInstance(kruntime, this.kruntime.getEnvironment());
         Process process = kruntime.getKnowledgeBase().getProcess( processInstance.getProcessId() );
@@ -91,6 +150,7 @@ public class JPAProcessInstanceManager
             processInstance.setKnowledgeRuntime( kruntime );
             ((ProcessInstanceImpl) processInstance).reconnect();
         }
+        processInstanceInfos.put( id, processInstanceInfo );
         return processInstance;
     }
 
@@ -106,16 +166,126 @@ public class JPAProcessInstanceManager
             context.remove( processInstanceInfo );
         }
         internalRemoveProcessInstance(processInstance);
+        if ( processInstanceCache != null ) {
+            processInstanceCache.remove( processInstance.getId() );
+        }
     }
 
     public void internalRemoveProcessInstance(ProcessInstance processInstance) {
         processInstances.remove( processInstance.getId() );
+        processInstanceInfos.remove( processInstance.getId() );
     }
     
     public void clearProcessInstances() {
+        Map<ProcessInstance, Integer> cacheable = new LinkedHashMap<ProcessInstance, Integer>();
         for (ProcessInstance processInstance: new ArrayList<ProcessInstance>(processInstances.values())) {
+            ProcessInstanceInfo processInstanceInfo = processInstanceInfos.get( processInstance.getId() );
             ((ProcessInstanceImpl) processInstance).disconnect();
+            // only cache instances that were written (or not changed) since they were loaded,
+            // so they cannot contain changes that were not flushed
+            if ( processInstanceCache != null && processInstanceInfo != null
+                    && (processInstanceInfo.updated || (dirtyTracking && !isDirty( processInstance )))
+                    && processInstance.getState() == ProcessInstance.STATE_ACTIVE ) {
+                cacheable.put( processInstance,
+                               processInstanceInfo.getVersion() );
+            }
         }
+        processInstanceInfos.clear();
+        CacheSynchronization synchronization = cacheSynchronization;
+        cacheSynchronization = null;
+        if ( synchronization != null ) {
+            synchronization.cleared( cacheable );
+        }
+    }
+
+    /**
+     * Registers the synchronization that fills the cache with the process instances
+     * of the current transaction once it has been committed, if not done yet.
+     */
+    private void registerCacheSynchronization() {
+        if ( processInstanceCache == null
+                || (cacheSynchronization != null && !cacheSynchronization.isCompleted()) ) {
+            return;
+        }
+        CacheSynchronization synchronization = new CacheSynchronization( processInstanceCache );
+        Object tm = kruntime.getEnvironment().get( EnvironmentName.TRANSACTION_MANAGER );
+        Object tsr = kruntime.getEnvironment().get( EnvironmentName.TRANSACTION_SYNCHRONIZATION_REGISTRY );
+        try {
+            if ( tm instanceof TransactionManager ) {
+                ((TransactionManager) tm).registerTransactionSynchronization( synchronization );
+            } else if ( tsr instanceof TransactionSynchronizationRegistry ) {
+                ((TransactionSynchronizationRegistry) tsr).registerInterposedSynchronization( synchronization );
+            } else if ( tm instanceof javax.transaction.TransactionManager
+                    && ((javax.transaction.TransactionManager) tm).getTransaction() != null ) {
+                Transaction transaction = ((javax.transaction.TransactionManager) tm).getTransaction();
+                transaction.registerSynchronization( synchronization );
+            } else {
+                // without a transaction to wait for, nothing is cached
+                return;
+            }
+        } catch ( Exception e ) {
+            logger.debug( "Unable to register process instance cache synchronization, not caching: " + e.getMessage() );
+            return;
+        }
+        cacheSynchronization = synchronization;
+    }
+
+    private static boolean isDirty(ProcessInstance processInstance) {
+        return !(processInstance instanceof WorkflowProcessInstanceImpl)
+            || ((WorkflowProcessInstanceImpl) processInstance).isDirty();
+    }
+
+    /**
+     * Caches the process instances of a transaction once it has been committed, whether
+     * they are cleared before or after the transaction completes.
+     */
+    private static class CacheSynchronization
+        implements
+        TransactionSynchronization,
+        Synchronization {
+
+        private static final int UNKNOWN = -1;
+
+        private final ProcessInstanceCache processInstanceCache;
+        private Map<ProcessInstance, Integer> cacheable;
+        private int status = UNKNOWN;
+
+        private CacheSynchronization(ProcessInstanceCache processInstanceCache) {
+            this.processInstanceCache = processInstanceCache;
+        }
+
+        public void beforeCompletion() {
+        }
+
+        public synchronized void afterCompletion(int status) {
+            this.status = status;
+            if ( cacheable != null ) {
+                complete();
+            }
+        }
+
+        synchronized void cleared(Map<ProcessInstance, Integer> cacheable) {
+            this.cacheable = cacheable;
+            if ( status != UNKNOWN ) {
+                complete();
+            }
+        }
+
+        synchronized boolean isCompleted() {
+            return status != UNKNOWN;
+        }
+
+        private void complete() {
+            // javax.transaction.Status and TransactionManager share the status values
+            if ( status == TransactionManager.STATUS_COMMITTED ) {
+                for ( Map.Entry<ProcessInstance, Integer> entry : cacheable.entrySet() ) {
+                    processInstanceCache.put( entry.getKey(),
+                                              entry.getValue() );
+                }
+            }
+            cacheable = Collections.emptyMap();
+        }
+
     }
 
 }
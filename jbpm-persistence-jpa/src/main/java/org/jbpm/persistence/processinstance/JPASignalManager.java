@@ -1,25 +1,62 @@
 package org.jbpm.persistence.processinstance;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-
-import javax.persistence.EntityManager;
-import javax.persistence.FlushModeType;
-import javax.persistence.Query;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.drools.common.InternalKnowledgeRuntime;
+import org.drools.runtime.Environment;
 import org.drools.runtime.EnvironmentName;
+import org.drools.runtime.process.ProcessInstance;
+import org.jbpm.persistence.NonTransactionalProcessPersistentSession;
 import org.jbpm.persistence.ProcessPersistenceContext;
 import org.jbpm.persistence.ProcessPersistenceContextManager;
+import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.event.DefaultSignalManager;
+import org.jbpm.process.instance.impl.ProcessInstanceImpl;
 
+/**
+ * Signal manager that makes sure that all persisted process instances waiting
+ * for an event are loaded before the event is signalled.
+ * </p>
+ * By default all waiting process instances are loaded one by one and kept in memory
+ * until the end of the command. When the <code>jbpm.signal.batch.size</code> environment
+ * entry (or system property) is set to a positive number, the waiting process instances
+ * are instead loaded in chunks of that size with a single query, signalled, flushed and
+ * then released again, so memory stays bounded for signals with a large fan-out.
+ * Setting <code>jbpm.signal.parallelism</code> to a value larger than 1 additionally
+ * parses the marshalled process instances of a chunk on that many threads; these threads
+ * are started for the signal that needs them and stopped again once it has been delivered.
+ */
 public class JPASignalManager extends DefaultSignalManager {
 
+    public static final String SIGNAL_BATCH_SIZE = "jbpm.signal.batch.size";
+    public static final String SIGNAL_PARALLELISM = "jbpm.signal.parallelism";
+
+    // how often the batched and parallel paths were taken, for tests
+    int batchedSignalCount;
+    int parallelChunkCount;
+
     public JPASignalManager(InternalKnowledgeRuntime kruntime) {
         super(kruntime);
     }
-    
+
     public void signalEvent(String type,
                             Object event) {
+        ProcessPersistenceContext context = getProcessPersistenceContext();
+        int batchSize = getIntProperty( SIGNAL_BATCH_SIZE );
+        if ( batchSize > 0 && !(context instanceof NonTransactionalProcessPersistentSession) ) {
+            signalEventInBatches( context, type, event, batchSize );
+            return;
+        }
         for ( long id : getProcessInstancesForEvent( type ) ) {
             getKnowledgeRuntime().getProcessInstance( id );
         }
@@ -27,7 +64,129 @@ public class JPASignalManager extends DefaultSignalManager {
                            event );
     }
 
-    @SuppressWarnings("unchecked")
+    private void signalEventInBatches(ProcessPersistenceContext context,
+                                      String type,
+                                      Object event,
+                                      int batchSize) {
+        // process instances that are already loaded receive the event as a registered listener
+        Set<Long> loaded = new HashSet<Long>();
+        for ( ProcessInstance processInstance : ((InternalProcessRuntime) getKnowledgeRuntime().getProcessRuntime())
+                .getProcessInstanceManager().getProcessInstances() ) {
+            loaded.add( processInstance.getId() );
+        }
+        List<Long> ids = new ArrayList<Long>();
+        for ( Long id : context.getProcessInstancesWaitingForEvent( type ) ) {
+            if ( !loaded.contains( id ) ) {
+                ids.add( id );
+            }
+        }
+        super.signalEvent( type,
+                           event );
+
+        batchedSignalCount++;
+        int parallelism = getIntProperty( SIGNAL_PARALLELISM );
+        ExecutorService executor = null;
+        try {
+            for ( int i = 0; i < ids.size(); i += batchSize ) {
+                List<Long> chunk = ids.subList( i, Math.min( i + batchSize, ids.size() ) );
+                if ( parallelism > 1 && executor == null ) {
+                    executor = newUnmarshallingExecutor( parallelism );
+                }
+                signalChunk( context, chunk, type, event, executor );
+            }
+        } finally {
+            if ( executor != null ) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private void signalChunk(ProcessPersistenceContext context,
+                             List<Long> chunk,
+                             String type,
+                             Object event,
+                             ExecutorService executor) {
+        List<ProcessInstanceInfo> processInstanceInfos = context.findProcessInstanceInfos( new ArrayList<Long>( chunk ) );
+        if ( executor != null ) {
+            prepareProcessInstances( processInstanceInfos, executor );
+        }
+        List<ProcessInstanceInfo> released = new ArrayList<ProcessInstanceInfo>();
+        for ( ProcessInstanceInfo processInstanceInfo : processInstanceInfos ) {
+            // instances unmarshalled before (e.g. by a previous chunk) stay in the command scope
+            boolean alreadyLoaded = processInstanceInfo.processInstance != null;
+            ProcessInstance processInstance = getKnowledgeRuntime().getProcessInstance( processInstanceInfo.getId() );
+            if ( processInstance == null ) {
+                continue;
+            }
+            super.signalEvent( processInstance.getId(), type, event );
+            if ( !alreadyLoaded ) {
+                released.add( processInstanceInfo );
+            }
+        }
+        context.flush();
+        for ( ProcessInstanceInfo processInstanceInfo : released ) {
+            ProcessInstanceImpl processInstance = (ProcessInstanceImpl) processInstanceInfo.processInstance;
+            if ( processInstance != null && processInstance.getKnowledgeRuntime() != null ) {
+                processInstance.disconnect();
+            }
+            processInstanceInfo.clearProcessInstance();
+            context.detach( processInstanceInfo );
+        }
+    }
+
+    private void prepareProcessInstances(List<ProcessInstanceInfo> processInstanceInfos,
+                                         ExecutorService executor) {
+        parallelChunkCount++;
+        final InternalKnowledgeRuntime kruntime = getKnowledgeRuntime();
+        final Environment env = kruntime.getEnvironment();
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for ( final ProcessInstanceInfo processInstanceInfo : processInstanceInfos ) {
+            if ( processInstanceInfo.processInstance == null ) {
+                futures.add( executor.submit( new Callable<Object>() {
+                    public Object call() throws Exception {
+                        processInstanceInfo.prepareProcessInstance( kruntime, env );
+                        return null;
+                    }
+                } ) );
+            }
+        }
+        try {
+            for ( Future<Object> future : futures ) {
+                future.get();
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while unmarshalling process instances", e );
+        } catch ( ExecutionException e ) {
+            throw new RuntimeException( "Could not unmarshall process instance", e.getCause() );
+        }
+    }
+
+    private static ExecutorService newUnmarshallingExecutor(int parallelism) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool( parallelism, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread( runnable, "jbpm-signal-unmarshaller-" + threadCount.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+
+    private int getIntProperty(String name) {
+        Object value = getKnowledgeRuntime().getEnvironment().get( name );
+        if ( value == null ) {
+            value = System.getProperty( name );
+        }
+        if ( value == null ) {
+            return 0;
+        }
+        if ( value instanceof Number ) {
+            return ((Number) value).intValue();
+        }
+        return Integer.parseInt( value.toString().trim() );
+    }
+
     private List<Long> getProcessInstancesForEvent(String type) {
 //        EntityManager em = (EntityManager) getKnowledgeRuntime().getEnvironment().get( EnvironmentName.CMD_SCOPED_ENTITY_MANAGER );
 //        Query processInstancesForEvent = em.createNamedQuery( "ProcessInstancesWaitingForEvent" );
@@ -36,8 +195,11 @@ public class JPASignalManager extends DefaultSignalManager {
 //                                               type );
 //        List<Long> list = (List<Long>) processInstancesForEvent.getResultList();
 //        return list;
-        ProcessPersistenceContext context = ((ProcessPersistenceContextManager) getKnowledgeRuntime().getEnvironment().get( EnvironmentName.PERSISTENCE_CONTEXT_MANAGER )).getProcessPersistenceContext();
-        return context.getProcessInstancesWaitingForEvent(type);
+        return getProcessPersistenceContext().getProcessInstancesWaitingForEvent(type);
+    }
+
+    private ProcessPersistenceContext getProcessPersistenceContext() {
+        return ((ProcessPersistenceContextManager) getKnowledgeRuntime().getEnvironment().get( EnvironmentName.PERSISTENCE_CONTEXT_MANAGER )).getProcessPersistenceContext();
     }
 
-}
\ No newline at end of file
+}
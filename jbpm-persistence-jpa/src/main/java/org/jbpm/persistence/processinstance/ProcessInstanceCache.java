@@ -0,0 +1,126 @@
+package org.jbpm.persistence.processinstance;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.drools.runtime.process.ProcessInstance;
+
+/**
+ * Bounded, least recently used cache of (disconnected) process instances, used by
+ * {@link JPAProcessInstanceManager} to avoid unmarshalling the same process instance
+ * again in every command.
+ * </p>
+ * Every entry records the version of the {@link ProcessInstanceInfo} the instance was
+ * stored with. A cached instance is only returned for the same version, so changes
+ * made by other sessions (or rolled back transactions) are never hidden. A returned
+ * instance is removed from the cache, so it is never shared by two commands.
+ */
+public class ProcessInstanceCache {
+
+    private final int maxSize;
+    private final Map<Long, Entry> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong staleCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public ProcessInstanceCache(int maxSize) {
+        if ( maxSize <= 0 ) {
+            throw new IllegalArgumentException( "The size of the process instance cache must be positive: " + maxSize );
+        }
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<Long, Entry>( 16, 0.75f, true ) {
+            private static final long serialVersionUID = 510l;
+
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if ( size() > ProcessInstanceCache.this.maxSize ) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized void put(ProcessInstance processInstance,
+                                 int version) {
+        entries.put( processInstance.getId(),
+                     new Entry( processInstance, version ) );
+    }
+
+    /**
+     * Removes the process instance with the given id from the cache and returns it,
+     * if it was cached for the given version.
+     * @return the cached process instance, or <code>null</code>
+     */
+    public synchronized ProcessInstance take(long processInstanceId,
+                                             int version) {
+        Entry entry = entries.remove( processInstanceId );
+        if ( entry == null ) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if ( entry.version != version ) {
+            staleCount.incrementAndGet();
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.processInstance;
+    }
+
+    public synchronized void remove(long processInstanceId) {
+        entries.remove( processInstanceId );
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of lookups that did not return a cached instance,
+     * including the ones for which only an outdated version was cached.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of lookups for which only an outdated version was cached.
+     */
+    public long getStaleCount() {
+        return staleCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private static class Entry {
+
+        private final ProcessInstance processInstance;
+        private final int version;
+
+        private Entry(ProcessInstance processInstance,
+                      int version) {
+            this.processInstance = processInstance;
+            this.version = version;
+        }
+
+    }
+
+}
@@ -0,0 +1,232 @@
+package org.jbpm.persistence.processinstance;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.drools.runtime.Environment;
+
+/**
+ * Optional compression of the byte arrays stored by {@link ProcessInstanceInfo}.
+ * </p>
+ * Compression is enabled by setting the <code>jbpm.persistence.compression</code> environment
+ * entry (or system property) to <code>deflate</code> or to the class name of a
+ * {@link ProcessInstanceCompressor}. Only byte arrays of at least
+ * <code>jbpm.persistence.compression.threshold</code> bytes (4096 by default) are compressed.
+ * </p>
+ * Compressed byte arrays start with a header that differs from the serialization stream header
+ * every marshalled process instance (or variable) starts with, so byte arrays
+ * that were stored uncompressed (before compression was enabled, or because they were too small)
+ * can still be read.
+ */
+public final class ProcessInstanceCompression {
+
+    public static final String COMPRESSION = "jbpm.persistence.compression";
+    public static final String COMPRESSION_THRESHOLD = "jbpm.persistence.compression.threshold";
+
+    public static final int DEFAULT_THRESHOLD = 4096;
+
+    private static final byte MAGIC_1 = (byte) 0xFF;
+    private static final byte MAGIC_2 = (byte) 0xCB;
+    // magic (2 bytes), compressor id (1 byte), uncompressed length (4 bytes)
+    private static final int HEADER_LENGTH = 7;
+
+    private static final Map<Byte, ProcessInstanceCompressor> compressorsById = new ConcurrentHashMap<Byte, ProcessInstanceCompressor>();
+    private static final Map<String, ProcessInstanceCompressor> compressorsByName = new ConcurrentHashMap<String, ProcessInstanceCompressor>();
+
+    private static final AtomicLong uncompressedBytes = new AtomicLong();
+    private static final AtomicLong storedBytes = new AtomicLong();
+    private static final AtomicLong compressedCount = new AtomicLong();
+    private static final AtomicLong uncompressedCount = new AtomicLong();
+
+    static {
+        registerDefaultCompressors();
+    }
+
+    private ProcessInstanceCompression() {
+    }
+
+    private static void registerDefaultCompressors() {
+        ProcessInstanceCompressor deflate = new DeflateProcessInstanceCompressor();
+        compressorsById.put( deflate.getId(), deflate );
+        compressorsByName.put( "deflate", deflate );
+    }
+
+    /**
+     * Forgets all registered compressors but the default ones, like after a restart.
+     */
+    static void resetRegistry() {
+        compressorsById.clear();
+        compressorsByName.clear();
+        registerDefaultCompressors();
+    }
+
+    public static void registerCompressor(ProcessInstanceCompressor compressor) {
+        ProcessInstanceCompressor existing = compressorsById.get( compressor.getId() );
+        if ( existing != null && existing.getClass() != compressor.getClass() ) {
+            throw new IllegalArgumentException( "Compressor id " + compressor.getId() + " is already used by " + existing.getClass().getName() );
+        }
+        compressorsById.put( compressor.getId(), compressor );
+        compressorsByName.put( compressor.getClass().getName(), compressor );
+    }
+
+    /**
+     * Compresses the given data if compression is enabled in the given environment
+     * and the data is large enough, otherwise returns the data itself.
+     */
+    public static byte[] compress(byte[] data,
+                                  Environment env) throws IOException {
+        ProcessInstanceCompressor compressor = getCompressor( env );
+        if ( compressor == null ) {
+            return data;
+        }
+        uncompressedBytes.addAndGet( data.length );
+        if ( data.length >= getThreshold( env ) ) {
+            byte[] compressed = compressor.compress( data );
+            if ( compressed.length + HEADER_LENGTH < data.length ) {
+                byte[] result = new byte[compressed.length + HEADER_LENGTH];
+                result[0] = MAGIC_1;
+                result[1] = MAGIC_2;
+                result[2] = compressor.getId();
+                result[3] = (byte) (data.length >>> 24);
+                result[4] = (byte) (data.length >>> 16);
+                result[5] = (byte) (data.length >>> 8);
+                result[6] = (byte) data.length;
+                System.arraycopy( compressed, 0, result, HEADER_LENGTH, compressed.length );
+                storedBytes.addAndGet( result.length );
+                compressedCount.incrementAndGet();
+                return result;
+            }
+        }
+        storedBytes.addAndGet( data.length );
+        uncompressedCount.incrementAndGet();
+        return data;
+    }
+
+    /**
+     * Decompresses the given data if it was compressed, otherwise returns the data itself.
+     * </p>
+     * The compressor configured in the given environment is registered first, so data
+     * compressed by it can be read before anything was compressed since the last restart.
+     */
+    public static byte[] decompress(byte[] data,
+                                    Environment env) throws IOException {
+        if ( isCompressed( data ) ) {
+            getCompressor( env );
+        }
+        return decompress( data );
+    }
+
+    /**
+     * Decompresses the given data if it was compressed, otherwise returns the data itself.
+     * Only compressors that were registered can be used.
+     */
+    public static byte[] decompress(byte[] data) throws IOException {
+        if ( !isCompressed( data ) ) {
+            return data;
+        }
+        ProcessInstanceCompressor compressor = compressorsById.get( data[2] );
+        if ( compressor == null ) {
+            throw new IOException( "Unknown process instance compressor " + data[2] );
+        }
+        int length = ((data[3] & 0xFF) << 24) | ((data[4] & 0xFF) << 16) | ((data[5] & 0xFF) << 8) | (data[6] & 0xFF);
+        byte[] compressed = new byte[data.length - HEADER_LENGTH];
+        System.arraycopy( data, HEADER_LENGTH, compressed, 0, compressed.length );
+        return compressor.decompress( compressed, length );
+    }
+
+    public static boolean isCompressed(byte[] data) {
+        return data != null && data.length >= HEADER_LENGTH && data[0] == MAGIC_1 && data[1] == MAGIC_2;
+    }
+
+    private static ProcessInstanceCompressor getCompressor(Environment env) {
+        Object value = getProperty( env, COMPRESSION );
+        if ( value == null ) {
+            return null;
+        }
+        if ( value instanceof ProcessInstanceCompressor ) {
+            ProcessInstanceCompressor compressor = (ProcessInstanceCompressor) value;
+            if ( compressorsById.get( compressor.getId() ) != compressor ) {
+                registerCompressor( compressor );
+            }
+            return compressor;
+        }
+        String name = value.toString().trim();
+        if ( name.length() == 0 || "none".equalsIgnoreCase( name ) ) {
+            return null;
+        }
+        ProcessInstanceCompressor compressor = compressorsByName.get( name.toLowerCase() );
+        if ( compressor == null ) {
+            compressor = compressorsByName.get( name );
+        }
+        if ( compressor == null ) {
+            try {
+                compressor = (ProcessInstanceCompressor) Class.forName( name, true, Thread.currentThread().getContextClassLoader() ).newInstance();
+            } catch ( Exception e ) {
+                throw new IllegalArgumentException( "Could not create process instance compressor " + name, e );
+            }
+            registerCompressor( compressor );
+        }
+        return compressor;
+    }
+
+    private static int getThreshold(Environment env) {
+        Object value = getProperty( env, COMPRESSION_THRESHOLD );
+        if ( value == null ) {
+            return DEFAULT_THRESHOLD;
+        }
+        if ( value instanceof Number ) {
+            return ((Number) value).intValue();
+        }
+        return Integer.parseInt( value.toString().trim() );
+    }
+
+    private static Object getProperty(Environment env,
+                                      String name) {
+        Object value = env == null ? null : env.get( name );
+        if ( value == null ) {
+            value = System.getProperty( name );
+        }
+        return value;
+    }
+
+    // Statistics
+
+    /**
+     * @return the total size of the byte arrays passed to {@link #compress(byte[], Environment)}
+     * while compression was enabled, divided by the total size of the byte arrays that were
+     * stored for them, or 1 if nothing was compressed yet.
+     */
+    public static double getCompressionRatio() {
+        long stored = storedBytes.get();
+        if ( stored == 0 ) {
+            return 1;
+        }
+        return (double) uncompressedBytes.get() / stored;
+    }
+
+    public static long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    public static long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    public static long getCompressedCount() {
+        return compressedCount.get();
+    }
+
+    public static long getUncompressedCount() {
+        return uncompressedCount.get();
+    }
+
+    public static void resetStatistics() {
+        uncompressedBytes.set( 0 );
+        storedBytes.set( 0 );
+        compressedCount.set( 0 );
+        uncompressedCount.set( 0 );
+    }
+
+}
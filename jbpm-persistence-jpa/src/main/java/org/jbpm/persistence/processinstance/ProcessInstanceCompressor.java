@@ -0,0 +1,29 @@
+package org.jbpm.persistence.processinstance;
+
+import java.io.IOException;
+
+/**
+ * Compresses the marshalled process instances (and separately stored process
+ * variables) that are stored by {@link ProcessInstanceInfo}.
+ * </p>
+ * Implementations must be thread-safe and are registered with
+ * {@link ProcessInstanceCompression#registerCompressor(ProcessInstanceCompressor)}.
+ */
+public interface ProcessInstanceCompressor {
+
+    /**
+     * @return the id that is written in the header of compressed byte arrays,
+     * so that they can be decompressed again. Ids must be unique and must never change.
+     */
+    byte getId();
+
+    byte[] compress(byte[] data) throws IOException;
+
+    /**
+     * @param data The compressed data.
+     * @param length The length of the uncompressed data.
+     */
+    byte[] decompress(byte[] data,
+                      int length) throws IOException;
+
+}
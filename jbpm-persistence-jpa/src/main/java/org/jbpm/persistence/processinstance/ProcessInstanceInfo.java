@@ -7,7 +7,10 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.PreUpdate;
@@ -21,14 +24,22 @@ import org.drools.marshalling.impl.MarshallerReaderContext;
 import org.drools.marshalling.impl.MarshallerWriteContext;
 import org.drools.marshalling.impl.PersisterHelper;
 import org.drools.marshalling.impl.ProtobufMarshaller;
+import org.drools.marshalling.impl.ProtobufMessages.Header;
 import org.drools.runtime.Environment;
 import org.drools.runtime.process.ProcessInstance;
+import org.jbpm.marshalling.impl.AbstractProtobufProcessInstanceMarshaller;
 import org.jbpm.marshalling.impl.JBPMMessages;
 import org.jbpm.marshalling.impl.ProcessInstanceMarshaller;
 import org.jbpm.marshalling.impl.ProcessMarshallerRegistry;
+import org.jbpm.marshalling.impl.ProtobufProcessMarshaller;
 import org.jbpm.marshalling.impl.ProtobufRuleFlowProcessInstanceMarshaller;
+import org.jbpm.process.core.context.variable.VariableScope;
 import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.process.instance.impl.ProcessInstanceImpl;
+import org.jbpm.workflow.instance.impl.ProcessInstanceChangeListener;
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
+
+import com.google.protobuf.ExtensionRegistry;
 
 /**
  * This is the object that contains the 
@@ -37,9 +48,24 @@ import org.jbpm.process.instance.impl.ProcessInstanceImpl;
  * 
  * Because of Hibernate 3.3.x/3.4.x <-> 4.x  compatibility issues,
  * the mapping for this class has been moved to 
+ * </p>
+ * When the <code>jbpm.persistence.delta</code> environment entry (or system property) is
+ * set to <code>true</code>, the process variables are stored one by one, separately from
+ * the rest of the process instance, and only the variables that were changed (using
+ * {@link VariableScopeInstance#setVariable(String, Object)}) are marshalled and written again.
+ * Note that in this mode, a variable value that is modified in place must be set again
+ * for the change to be persisted.
+ * </p>
+ * When <code>jbpm.persistence.dirty.tracking</code> is set to <code>true</code>, a process instance
+ * is only marshalled and written again if it was changed (see {@link WorkflowProcessInstanceImpl#markDirty()}),
+ * so commands that only read a process instance do not update it. The last read date is then only
+ * updated by commands that change the process instance.
  */
 public class ProcessInstanceInfo{
 
+    public static final String DELTA_PERSISTENCE = "jbpm.persistence.delta";
+    public static final String DIRTY_TRACKING = "jbpm.persistence.dirty.tracking";
+
     private Long                              processInstanceId;
 
     private int                               version;
@@ -53,9 +79,17 @@ public class ProcessInstanceInfo{
     byte[]                                    processInstanceByteArray;
 
     private Set<String>                       eventTypes         = new HashSet<String>();
+
+    private Boolean                           separateVariables;
+    private Map<String, byte[]>               variableByteArrays = new HashMap<String, byte[]>();
     
     ProcessInstance                           processInstance;
     
+    private transient MarshallerReaderContext preparedContext;
+    private transient ProcessInstanceMarshaller preparedMarshaller;
+    // whether the process instance was written by update() since this entity was loaded
+    transient boolean                         updated;
+    
     Environment                               env;
 
     protected ProcessInstanceInfo() {
@@ -71,6 +105,7 @@ public class ProcessInstanceInfo{
                                Environment env) {
         this(processInstance);
         this.env = env;
+        registerChangeListener();
     }
 
     /**
@@ -129,33 +164,182 @@ public class ProcessInstanceInfo{
         this.env = env;
         if ( processInstance == null ) {
             try {
-                ByteArrayInputStream bais = new ByteArrayInputStream( processInstanceByteArray );
-                MarshallerReaderContext context = new MarshallerReaderContext( bais,
-                                                                               (InternalRuleBase) ((InternalKnowledgeBase) kruntime.getKnowledgeBase()).getRuleBase(),
-                                                                               null,
-                                                                               null,
-                                                                               ProtobufMarshaller.TIMER_READERS,
-                                                                               this.env
-                                                                              );
-                ProcessInstanceMarshaller marshaller = getMarshallerFromContext( context );
+                MarshallerReaderContext context = preparedContext;
+                ProcessInstanceMarshaller marshaller = preparedMarshaller;
+                preparedContext = null;
+                preparedMarshaller = null;
+                if ( context == null ) {
+                    context = createReaderContext( kruntime );
+                    marshaller = getMarshallerFromContext( context );
+                }
                 context.wm = ((StatefulKnowledgeSessionImpl) kruntime).getInternalWorkingMemory();
-                processInstance = marshaller.readProcessInstance(context);
+                if ( Boolean.TRUE.equals( separateVariables ) && marshaller instanceof AbstractProtobufProcessInstanceMarshaller ) {
+                    processInstance = ((AbstractProtobufProcessInstanceMarshaller) marshaller).readProcessInstance( context,
+                                                                                                                    readVariables( kruntime ) );
+                    // only variables changed after loading need to be written again
+                    ((VariableScopeInstance) ((ProcessInstanceImpl) processInstance)
+                        .getContextInstance( VariableScope.VARIABLE_SCOPE )).clearChangedVariables();
+                } else {
+                    processInstance = marshaller.readProcessInstance(context);
+                }
                 context.close();
+                if ( processInstance instanceof WorkflowProcessInstanceImpl ) {
+                    ((WorkflowProcessInstanceImpl) processInstance).resetDirty();
+                }
             } catch ( IOException e ) {
                 e.printStackTrace();
                 throw new IllegalArgumentException( "IOException while loading process instance: " + e.getMessage(),
                                                     e );
             }
         }
+        registerChangeListener();
         return processInstance;
     }
+
+    private void registerChangeListener() {
+        if ( processInstance instanceof WorkflowProcessInstanceImpl && isEnabled( DIRTY_TRACKING ) ) {
+            // the first change makes this entity dirty, so update() is called when flushing
+            ((WorkflowProcessInstanceImpl) processInstance).setChangeListener( new ProcessInstanceChangeListener() {
+                public void processInstanceChanged(WorkflowProcessInstanceImpl processInstance) {
+                    updateLastReadDate();
+                }
+            } );
+        }
+    }
    
+    /**
+     * Parses the marshalled process instance, so that a following call to
+     * {@link #getProcessInstance(InternalKnowledgeRuntime, Environment)} only needs to
+     * rebuild and reconnect the instance. This does not modify the knowledge runtime,
+     * so it may be called concurrently for different process instances.
+     */
+    public void prepareProcessInstance(InternalKnowledgeRuntime kruntime,
+                                       Environment env) {
+        if ( processInstance != null || preparedContext != null ) {
+            return;
+        }
+        this.env = env;
+        try {
+            MarshallerReaderContext context = createReaderContext( kruntime );
+            ProcessInstanceMarshaller marshaller = getMarshallerFromContext( context );
+            if ( marshaller instanceof AbstractProtobufProcessInstanceMarshaller ) {
+                context.parameterObject = ((AbstractProtobufProcessInstanceMarshaller) marshaller).parseProcessInstance( context );
+                preparedMarshaller = marshaller;
+                preparedContext = context;
+            } else {
+                context.close();
+            }
+        } catch ( IOException e ) {
+            throw new IllegalArgumentException( "IOException while loading process instance: " + e.getMessage(),
+                                                e );
+        }
+    }
+
+    private MarshallerReaderContext createReaderContext(InternalKnowledgeRuntime kruntime) throws IOException {
+        return createReaderContext( kruntime,
+                                    processInstanceByteArray );
+    }
+
+    private MarshallerReaderContext createReaderContext(InternalKnowledgeRuntime kruntime,
+                                                        byte[] byteArray) throws IOException {
+        ByteArrayInputStream bais = new ByteArrayInputStream( ProcessInstanceCompression.decompress( byteArray,
+                                                                                                   this.env ) );
+        return new MarshallerReaderContext( bais,
+                                            (InternalRuleBase) ((InternalKnowledgeBase) kruntime.getKnowledgeBase()).getRuleBase(),
+                                            null,
+                                            null,
+                                            ProtobufMarshaller.TIMER_READERS,
+                                            this.env
+                                           );
+    }
+
     private ProcessInstanceMarshaller getMarshallerFromContext(MarshallerReaderContext context) throws IOException {
         ObjectInputStream stream = context.stream;
         String processInstanceType = stream.readUTF();
         return ProcessMarshallerRegistry.INSTANCE.getMarshaller( processInstanceType );
     }
 
+    private Map<String, Object> readVariables(InternalKnowledgeRuntime kruntime) throws IOException {
+        Map<String, Object> variables = new HashMap<String, Object>();
+        for ( Map.Entry<String, byte[]> entry : variableByteArrays.entrySet() ) {
+            MarshallerReaderContext context = createReaderContext( kruntime,
+                                                                   entry.getValue() );
+            try {
+                ExtensionRegistry registry = PersisterHelper.buildRegistry( context, null );
+                Header _header = PersisterHelper.readFromStreamWithHeader( context, registry );
+                JBPMMessages.Variable _variable = JBPMMessages.Variable.parseFrom( _header.getPayload(), registry );
+                variables.put( entry.getKey(),
+                               ProtobufProcessMarshaller.unmarshallVariableValue( context, _variable ) );
+            } catch ( ClassNotFoundException e ) {
+                throw new IllegalArgumentException( "Could not reload variable " + entry.getKey(), e );
+            }
+            context.close();
+        }
+        return variables;
+    }
+
+    private byte[] writeVariable(String name,
+                                 Object value) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        MarshallerWriteContext context = new MarshallerWriteContext( baos,
+                                                                     null,
+                                                                     null,
+                                                                     null,
+                                                                     null,
+                                                                     this.env );
+        PersisterHelper.writeToStreamWithHeader( context,
+                                                 ProtobufProcessMarshaller.marshallVariable( context, name, value ) );
+        context.close();
+        return ProcessInstanceCompression.compress( baos.toByteArray(),
+                                                    this.env );
+    }
+
+    /**
+     * Writes the process variables that were changed (or that have not been stored separately yet)
+     * and removes the ones that no longer exist.
+     * @return whether any of the stored variables changed
+     */
+    private boolean updateVariables() throws IOException {
+        VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
+            ((ProcessInstanceImpl) processInstance).getContextInstance( VariableScope.VARIABLE_SCOPE );
+        Map<String, Object> variables = variableScopeInstance.getVariables();
+        Set<String> changedVariables = variableScopeInstance.getChangedVariables();
+        boolean variablesChanged = false;
+        for ( Iterator<String> iterator = variableByteArrays.keySet().iterator(); iterator.hasNext(); ) {
+            if ( variables.get( iterator.next() ) == null ) {
+                iterator.remove();
+                variablesChanged = true;
+            }
+        }
+        for ( Map.Entry<String, Object> variable : variables.entrySet() ) {
+            String name = variable.getKey();
+            if ( variable.getValue() == null ) {
+                continue;
+            }
+            byte[] oldByteArray = variableByteArrays.get( name );
+            if ( oldByteArray == null || changedVariables.contains( name ) ) {
+                byte[] newByteArray = writeVariable( name,
+                                                     variable.getValue() );
+                if ( !Arrays.equals( newByteArray,
+                                     oldByteArray ) ) {
+                    variableByteArrays.put( name,
+                                            newByteArray );
+                    variablesChanged = true;
+                }
+            }
+        }
+        variableScopeInstance.clearChangedVariables();
+        return variablesChanged;
+    }
+
+    private boolean isEnabled(String name) {
+        Object value = env == null ? null : env.get( name );
+        if ( value == null ) {
+            value = System.getProperty( name );
+        }
+        return value != null && Boolean.parseBoolean( value.toString().trim() );
+    }
+
     private void saveProcessInstanceType(MarshallerWriteContext context,
                                          ProcessInstance processInstance,
                                          String processInstanceType) throws IOException {
@@ -180,8 +364,15 @@ public class ProcessInstanceInfo{
      */
     @PreUpdate
     public void update() {
+        if ( processInstanceByteArray != null && processInstance instanceof WorkflowProcessInstanceImpl
+                && !((WorkflowProcessInstanceImpl) processInstance).isDirty() && isEnabled( DIRTY_TRACKING ) ) {
+            // nothing changed since the process instance was loaded or last written
+            this.updated = true;
+            return;
+        }
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         boolean variablesChanged = false;
+        byte[] newByteArray;
         try {
             MarshallerWriteContext context = new MarshallerWriteContext( baos,
                                                                          null,
@@ -195,18 +386,37 @@ public class ProcessInstanceInfo{
                                      processType );
             ProcessInstanceMarshaller marshaller = ProcessMarshallerRegistry.INSTANCE.getMarshaller( processType );
             
-            Object result = marshaller.writeProcessInstance( context,
-                                                             processInstance);
+            boolean delta = isEnabled( DELTA_PERSISTENCE )
+                            && marshaller instanceof AbstractProtobufProcessInstanceMarshaller
+                            && ((ProcessInstanceImpl) processInstance).getContextInstance( VariableScope.VARIABLE_SCOPE ) != null;
+            Object result;
+            if ( delta ) {
+                result = ((AbstractProtobufProcessInstanceMarshaller) marshaller).writeProcessInstance( context,
+                                                                                                        processInstance,
+                                                                                                        false );
+                variablesChanged = updateVariables() || !Boolean.TRUE.equals( separateVariables );
+                separateVariables = Boolean.TRUE;
+            } else {
+                result = marshaller.writeProcessInstance( context,
+                                                          processInstance);
+                if ( Boolean.TRUE.equals( separateVariables ) ) {
+                    // switching back to storing the variables as part of the process instance
+                    variableByteArrays.clear();
+                    separateVariables = Boolean.FALSE;
+                    variablesChanged = true;
+                }
+            }
             if( marshaller instanceof ProtobufRuleFlowProcessInstanceMarshaller && result != null ) {
                 JBPMMessages.ProcessInstance _instance = (JBPMMessages.ProcessInstance)result;
                 PersisterHelper.writeToStreamWithHeader( context, 
                                                          _instance );
             }
             context.close();
+            newByteArray = ProcessInstanceCompression.compress( baos.toByteArray(),
+                                                                this.env );
         } catch ( IOException e ) {
             throw new IllegalArgumentException( "IOException while storing process instance " + processInstance.getId() + ": " + e.getMessage() );
         }
-        byte[] newByteArray = baos.toByteArray();
         if ( variablesChanged || !Arrays.equals( newByteArray,
                                                  processInstanceByteArray ) ) {
             this.state = processInstance.getState();
@@ -217,6 +427,10 @@ public class ProcessInstanceInfo{
                 eventTypes.add( type );
             }
         }
+        if ( processInstance instanceof WorkflowProcessInstanceImpl ) {
+            ((WorkflowProcessInstanceImpl) processInstance).resetDirty();
+        }
+        this.updated = true;
     }
 
 
@@ -295,6 +509,10 @@ public class ProcessInstanceInfo{
     public byte [] getProcessInstanceByteArray() { 
         return processInstanceByteArray;
     }
+
+    public Map<String, byte[]> getVariableByteArrays() {
+        return variableByteArrays;
+    }
     
     public void clearProcessInstance(){
         processInstance = null;
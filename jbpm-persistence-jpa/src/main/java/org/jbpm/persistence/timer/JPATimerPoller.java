@@ -0,0 +1,308 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.persistence.timer;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.transaction.Status;
+import javax.transaction.UserTransaction;
+
+import org.drools.runtime.Environment;
+import org.drools.runtime.EnvironmentName;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fires the timers kept by the {@link JPATimerStore}. Every poll claims the due
+ * timers in batches of <code>jbpm.timer.poll.batch.size</code> (100 by default),
+ * oldest first, by setting this poller as their owner with an update that checks
+ * the version of the row, so pollers on several nodes can share the table without
+ * firing a timer twice. Each claimed timer is then signalled as a
+ * <code>timerTriggered</code> event to its process instance through the given
+ * session in the same transaction that removes it or, for repeating timers,
+ * reschedules it. A timer that is no longer claimed by this poller is not
+ * signalled.
+ * </p>
+ * Any session of the knowledge base can deliver timers, as process instances are
+ * loaded by id. When a delivery fails, the timer is claimed again once its claim
+ * has expired after <code>jbpm.timer.claim.timeout</code> milliseconds (one
+ * minute by default). Both settings are read from the environment of the session
+ * or from system properties.
+ */
+public class JPATimerPoller {
+
+    private static final Logger logger = LoggerFactory.getLogger( JPATimerPoller.class );
+
+    public static final String BATCH_SIZE = "jbpm.timer.poll.batch.size";
+    public static final String CLAIM_TIMEOUT = "jbpm.timer.claim.timeout";
+
+    private final StatefulKnowledgeSession ksession;
+    private final EntityManagerFactory emf;
+    private final String owner;
+    private final int batchSize;
+    private final long claimTimeout;
+    private ScheduledExecutorService scheduler;
+
+    public JPATimerPoller(StatefulKnowledgeSession ksession) {
+        this( ksession, defaultOwner() );
+    }
+
+    public JPATimerPoller(StatefulKnowledgeSession ksession,
+                          String owner) {
+        this.ksession = ksession;
+        this.owner = owner;
+        Environment env = ksession.getEnvironment();
+        this.emf = (EntityManagerFactory) env.get( EnvironmentName.ENTITY_MANAGER_FACTORY );
+        this.batchSize = (int) getLongProperty( env, BATCH_SIZE, 100 );
+        this.claimTimeout = getLongProperty( env, CLAIM_TIMEOUT, 60000 );
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * Starts polling every <code>interval</code> milliseconds on a background thread.
+     */
+    public synchronized void start(long interval) {
+        if ( scheduler != null ) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread( runnable, "jbpm-timer-poller-" + owner );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+        scheduler.scheduleWithFixedDelay( new Runnable() {
+            public void run() {
+                try {
+                    poll( System.currentTimeMillis() );
+                } catch ( Throwable t ) {
+                    logger.error( "Unable to poll timers: " + t.getMessage(), t );
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS );
+    }
+
+    public synchronized void stop() {
+        if ( scheduler != null ) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Delivers all timers that are due at the given time and returns how many
+     * were delivered.
+     */
+    public int poll(long now) {
+        int delivered = 0;
+        while ( true ) {
+            List<TimerInfo> claimed = claimDueTimers( now );
+            for ( TimerInfo timerInfo : claimed ) {
+                if ( deliver( timerInfo, now ) ) {
+                    delivered++;
+                }
+            }
+            if ( claimed.size() < batchSize ) {
+                return delivered;
+            }
+        }
+    }
+
+    /**
+     * Claims a batch of timers that are due at the given time and not claimed
+     * by another poller.
+     */
+    @SuppressWarnings("unchecked")
+    public List<TimerInfo> claimDueTimers(long now) {
+        List<TimerInfo> claimed = new ArrayList<TimerInfo>();
+        EntityManager em = emf.createEntityManager();
+        UserTransaction ut = beginTransaction( em );
+        try {
+            List<TimerInfo> due = em.createNamedQuery( "DueTimerInfos" )
+                .setParameter( "now", new Date( now ) )
+                .setMaxResults( batchSize )
+                .getResultList();
+            for ( TimerInfo timerInfo : due ) {
+                int updated = em.createNamedQuery( "ClaimTimerInfo" )
+                    .setParameter( "owner", owner )
+                    .setParameter( "claimedUntil", new Date( now + claimTimeout ) )
+                    .setParameter( "id", timerInfo.getId() )
+                    .setParameter( "version", timerInfo.getVersion() )
+                    .executeUpdate();
+                // otherwise claimed by another poller in the meantime
+                if ( updated == 1 ) {
+                    claimed.add( timerInfo );
+                }
+            }
+            commit( em, ut );
+        } catch ( RuntimeException e ) {
+            rollback( em, ut );
+            throw e;
+        }
+        return claimed;
+    }
+
+    /**
+     * Removes or reschedules a claimed timer and signals it to its process
+     * instance. Returns <code>false</code> if the delivery failed or the timer is
+     * no longer claimed by this poller, because it was cancelled or claimed by
+     * another poller after the claim expired.
+     */
+    public boolean deliver(TimerInfo timerInfo,
+                           long now) {
+        EntityManager em = emf.createEntityManager();
+        UserTransaction ut = beginTransaction( em );
+        try {
+            // the owner checked update locks the row until the signal is committed
+            int updated;
+            if ( timerInfo.getPeriod() > 0 ) {
+                long dueDate = timerInfo.getDueDate().getTime() + timerInfo.getPeriod();
+                updated = em.createNamedQuery( "RescheduleTimerInfo" )
+                    .setParameter( "dueDate", new Date( Math.max( dueDate, now ) ) )
+                    .setParameter( "lastTriggered", new Date( now ) )
+                    .setParameter( "id", timerInfo.getId() )
+                    .setParameter( "owner", owner )
+                    .executeUpdate();
+            } else {
+                updated = em.createNamedQuery( "DeleteClaimedTimerInfo" )
+                    .setParameter( "id", timerInfo.getId() )
+                    .setParameter( "owner", owner )
+                    .executeUpdate();
+            }
+            if ( updated == 0 ) {
+                logger.debug( "Timer " + timerInfo.getId() + " is no longer claimed by " + owner );
+                rollback( em, ut );
+                return false;
+            }
+            if ( ksession.getProcessInstance( timerInfo.getProcessInstanceId() ) != null ) {
+                ksession.signalEvent( "timerTriggered",
+                                      timerInfo.toTimerInstance( new Date( now ) ),
+                                      timerInfo.getProcessInstanceId() );
+            }
+            commit( em, ut );
+            return true;
+        } catch ( RuntimeException e ) {
+            logger.error( "Unable to deliver timer " + timerInfo.getId() + " of process instance "
+                          + timerInfo.getProcessInstanceId() + ": " + e.getMessage(), e );
+            rollback( em, ut );
+            return false;
+        }
+    }
+
+    private UserTransaction beginTransaction(EntityManager em) {
+        UserTransaction ut = getUserTransaction();
+        try {
+            if ( ut.getStatus() != Status.STATUS_NO_TRANSACTION ) {
+                throw new IllegalStateException( "Timers cannot be polled inside a running transaction" );
+            }
+            ut.begin();
+        } catch ( IllegalStateException e ) {
+            em.close();
+            throw e;
+        } catch ( Exception e ) {
+            em.close();
+            throw new RuntimeException( "Unable to begin transaction", e );
+        }
+        em.joinTransaction();
+        return ut;
+    }
+
+    private void commit(EntityManager em,
+                        UserTransaction ut) {
+        try {
+            em.flush();
+            ut.commit();
+        } catch ( RuntimeException e ) {
+            throw e;
+        } catch ( Exception e ) {
+            throw new RuntimeException( "Unable to commit transaction", e );
+        } finally {
+            em.close();
+        }
+    }
+
+    private void rollback(EntityManager em,
+                          UserTransaction ut) {
+        try {
+            if ( ut.getStatus() != Status.STATUS_NO_TRANSACTION ) {
+                ut.rollback();
+            }
+        } catch ( Exception e ) {
+            logger.error( "Unable to roll back transaction: " + e.getMessage(), e );
+        }
+        if ( em.isOpen() ) {
+            em.close();
+        }
+    }
+
+    private UserTransaction getUserTransaction() {
+        Object ut = ksession.getEnvironment().get( EnvironmentName.TRANSACTION );
+        if ( ut instanceof UserTransaction ) {
+            return (UserTransaction) ut;
+        }
+        try {
+            return (UserTransaction) new InitialContext().lookup( "java:comp/UserTransaction" );
+        } catch ( NamingException e ) {
+            throw new IllegalStateException( "Unable to find a UserTransaction to poll timers", e );
+        }
+    }
+
+    private static long getLongProperty(Environment env,
+                                        String name,
+                                        long defaultValue) {
+        Object value = env.get( name );
+        if ( value == null ) {
+            value = System.getProperty( name );
+        }
+        if ( value == null ) {
+            return defaultValue;
+        }
+        if ( value instanceof Number ) {
+            return ((Number) value).longValue();
+        }
+        return Long.parseLong( value.toString().trim() );
+    }
+
+    private static String defaultOwner() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch ( Exception e ) {
+            host = "unknown";
+        }
+        // unique per poller, also with several pollers on one host
+        return host + "-" + UUID.randomUUID().toString().substring( 0, 8 );
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.persistence.timer;
+
+import javax.persistence.EntityManager;
+
+import org.drools.common.InternalKnowledgeRuntime;
+import org.drools.runtime.EnvironmentName;
+import org.jbpm.process.instance.timer.TimerInstance;
+import org.jbpm.process.instance.timer.TimerManager;
+import org.jbpm.process.instance.timer.TimerStore;
+
+/**
+ * Keeps the process timers of JPA persisted sessions in the <code>TimerInfo</code>
+ * table instead of in the session, so they survive restarts without the session
+ * being loaded and can be fired by any node running a {@link JPATimerPoller}.
+ * Timers are stored and cancelled as part of the command that registers or
+ * cancels them. To use it, set an instance as the {@link TimerManager#TIMER_STORE}
+ * environment entry of the sessions and add <code>TimerInfo</code> to the
+ * persistence unit.
+ */
+public class JPATimerStore implements TimerStore {
+
+    public void registerTimer(InternalKnowledgeRuntime kruntime,
+                              TimerInstance timer) {
+        TimerInfo timerInfo = new TimerInfo( kruntime.getId(),
+                                             timer );
+        getEntityManager( kruntime ).persist( timerInfo );
+        timer.setId( timerInfo.getId() );
+    }
+
+    public void cancelTimer(InternalKnowledgeRuntime kruntime,
+                            long timerId) {
+        // no version check, the timer may be claimed by a poller at the same time
+        getEntityManager( kruntime ).createNamedQuery( "DeleteTimerInfo" )
+            .setParameter( "id", timerId )
+            .executeUpdate();
+    }
+
+    private EntityManager getEntityManager(InternalKnowledgeRuntime kruntime) {
+        EntityManager em = (EntityManager) kruntime.getEnvironment().get( EnvironmentName.CMD_SCOPED_ENTITY_MANAGER );
+        if ( em == null ) {
+            throw new IllegalStateException( "The JPA timer store can only be used with JPA persisted sessions" );
+        }
+        return em;
+    }
+
+}
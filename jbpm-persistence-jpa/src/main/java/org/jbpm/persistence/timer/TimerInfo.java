@@ -0,0 +1,185 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.persistence.timer;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Index;
+import org.jbpm.process.instance.timer.TimerInstance;
+
+/**
+ * A process timer kept by the {@link JPATimerStore}. A timer is claimed by a
+ * {@link JPATimerPoller} by setting its owner with an update that checks the
+ * version of the row, so only one poller delivers it.
+ * </p>
+ * The queries are declared on the entity (instead of in JBPMorm.xml) so that
+ * persistence units that do not list this entity are not affected by them.
+ */
+@Entity
+@SequenceGenerator(name="timerInfoIdSeq", sequenceName="TIMER_INFO_ID_SEQ", allocationSize=1)
+@NamedQueries({
+    @NamedQuery(name="DueTimerInfos",
+                query="select timerInfo from TimerInfo timerInfo "
+                    + "where timerInfo.dueDate <= :now "
+                    + "and (timerInfo.owner is null or timerInfo.claimedUntil < :now) "
+                    + "order by timerInfo.dueDate"),
+    @NamedQuery(name="ClaimTimerInfo",
+                query="update TimerInfo timerInfo "
+                    + "set timerInfo.owner = :owner, timerInfo.claimedUntil = :claimedUntil, "
+                    + "timerInfo.version = timerInfo.version + 1 "
+                    + "where timerInfo.id = :id and timerInfo.version = :version"),
+    @NamedQuery(name="RescheduleTimerInfo",
+                query="update TimerInfo timerInfo "
+                    + "set timerInfo.dueDate = :dueDate, timerInfo.lastTriggered = :lastTriggered, "
+                    + "timerInfo.owner = null, timerInfo.claimedUntil = null, "
+                    + "timerInfo.version = timerInfo.version + 1 "
+                    + "where timerInfo.id = :id and timerInfo.owner = :owner"),
+    @NamedQuery(name="DeleteClaimedTimerInfo",
+                query="delete from TimerInfo timerInfo "
+                    + "where timerInfo.id = :id and timerInfo.owner = :owner"),
+    @NamedQuery(name="DeleteTimerInfo",
+                query="delete from TimerInfo timerInfo where timerInfo.id = :id")
+})
+public class TimerInfo {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO, generator="timerInfoIdSeq")
+    private long id;
+
+    @Version
+    @Column(name = "OPTLOCK")
+    private int version;
+
+    private int sessionId;
+
+    private long processInstanceId;
+
+    // id of the timer definition in the process
+    private long timerId;
+
+    @Column(name = "timerDelay")
+    private long delay;
+
+    // PERIOD is reserved by some databases
+    @Column(name = "timerPeriod")
+    private long period;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date activated;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastTriggered;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Index(name = "IDX_TimerInfo_dueDate")
+    private Date dueDate;
+
+    private String owner;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date claimedUntil;
+
+    protected TimerInfo() {
+    }
+
+    public TimerInfo(int sessionId,
+                     TimerInstance timer) {
+        this.sessionId = sessionId;
+        this.processInstanceId = timer.getProcessInstanceId();
+        this.timerId = timer.getTimerId();
+        this.delay = timer.getDelay();
+        this.period = timer.getPeriod();
+        this.activated = timer.getActivated();
+        this.dueDate = new Date( timer.getActivated().getTime() + timer.getDelay() );
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    public long getProcessInstanceId() {
+        return processInstanceId;
+    }
+
+    public long getTimerId() {
+        return timerId;
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    public long getPeriod() {
+        return period;
+    }
+
+    public Date getActivated() {
+        return activated;
+    }
+
+    public Date getLastTriggered() {
+        return lastTriggered;
+    }
+
+    public Date getDueDate() {
+        return dueDate;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public Date getClaimedUntil() {
+        return claimedUntil;
+    }
+
+    /**
+     * Creates the timer instance that is signalled to the process instance.
+     */
+    public TimerInstance toTimerInstance(Date triggered) {
+        TimerInstance timer = new TimerInstance();
+        timer.setId( id );
+        timer.setProcessInstanceId( processInstanceId );
+        timer.setTimerId( timerId );
+        timer.setDelay( delay );
+        timer.setPeriod( period );
+        timer.setActivated( activated );
+        timer.setLastTriggered( triggered );
+        return timer;
+    }
+
+}
@@ -0,0 +1,92 @@
+package org.jbpm.persistence.processinstance;
+
+import static org.drools.persistence.util.PersistenceUtil.*;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.command.Context;
+import org.drools.command.impl.GenericCommand;
+import org.drools.command.impl.KnowledgeCommandContext;
+import org.drools.common.AbstractRuleBase;
+import org.drools.impl.InternalKnowledgeBase;
+import org.drools.persistence.jpa.JPAKnowledgeService;
+import org.drools.persistence.util.PersistenceUtil;
+import org.drools.runtime.Environment;
+import org.drools.runtime.EnvironmentName;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.drools.runtime.process.WorkflowProcessInstance;
+import org.jbpm.persistence.map.impl.ProcessCreatorForHelp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirtyTrackingPersistenceTest {
+
+    private static final String PROCESS_ID = "dirtyProcessTest";
+    private static final String EVENT_TYPE = "myEvent";
+
+    private HashMap<String, Object> context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = PersistenceUtil.setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PersistenceUtil.tearDown(context);
+    }
+
+    @Test
+    public void testUnchangedProcessInstanceIsNotUpdated() {
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase())
+            .addProcess( ProcessCreatorForHelp.newSimpleEventProcess( PROCESS_ID, EVENT_TYPE ) );
+
+        Environment env = createEnvironment(context);
+        env.set( ProcessInstanceInfo.DIRTY_TRACKING, "true" );
+        StatefulKnowledgeSession ksession = JPAKnowledgeService.newStatefulKnowledgeSession( kbase, null, env );
+        final long processInstanceId = ksession.startProcess( PROCESS_ID ).getId();
+        int version = findProcessInstanceInfo( env, processInstanceId ).getVersion();
+
+        // reading the process instance does not write it back
+        assertEquals( ProcessInstance.STATE_ACTIVE, ksession.getProcessInstance( processInstanceId ).getState() );
+        assertEquals( version, findProcessInstanceInfo( env, processInstanceId ).getVersion() );
+
+        // changing it does
+        ksession.execute( new GenericCommand<Void>() {
+            public Void execute(Context context) {
+                StatefulKnowledgeSession ksession = ((KnowledgeCommandContext) context).getStatefulKnowledgesession();
+                ((WorkflowProcessInstance) ksession.getProcessInstance( processInstanceId )).setVariable( "x", "value" );
+                return null;
+            }
+        } );
+        ProcessInstanceInfo processInstanceInfo = findProcessInstanceInfo( env, processInstanceId );
+        assertTrue( processInstanceInfo.getVersion() > version );
+        assertEquals( "value", ((WorkflowProcessInstance) ksession.getProcessInstance( processInstanceId )).getVariable( "x" ) );
+
+        ksession.signalEvent( EVENT_TYPE, null );
+        assertNull( ksession.getProcessInstance( processInstanceId ) );
+        ksession.dispose();
+    }
+
+    private ProcessInstanceInfo findProcessInstanceInfo(Environment env,
+                                                        long processInstanceId) {
+        EntityManager em = ((EntityManagerFactory) env.get( EnvironmentName.ENTITY_MANAGER_FACTORY )).createEntityManager();
+        try {
+            ProcessInstanceInfo processInstanceInfo = em.find( ProcessInstanceInfo.class, processInstanceId );
+            assertNotNull( processInstanceInfo );
+            return processInstanceInfo;
+        } finally {
+            em.close();
+        }
+    }
+
+}
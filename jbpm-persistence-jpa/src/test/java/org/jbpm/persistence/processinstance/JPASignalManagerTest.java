@@ -0,0 +1,99 @@
+package org.jbpm.persistence.processinstance;
+
+import static org.drools.persistence.util.PersistenceUtil.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.command.Context;
+import org.drools.command.impl.GenericCommand;
+import org.drools.command.impl.KnowledgeCommandContext;
+import org.drools.common.AbstractRuleBase;
+import org.drools.common.InternalKnowledgeRuntime;
+import org.drools.impl.InternalKnowledgeBase;
+import org.drools.persistence.jpa.JPAKnowledgeService;
+import org.drools.persistence.util.PersistenceUtil;
+import org.drools.runtime.Environment;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.jbpm.persistence.map.impl.ProcessCreatorForHelp;
+import org.jbpm.process.instance.InternalProcessRuntime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JPASignalManagerTest {
+
+    private static final String PROCESS_ID = "signalProcessTest";
+    private static final String EVENT_TYPE = "myEvent";
+
+    private HashMap<String, Object> context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = PersistenceUtil.setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PersistenceUtil.tearDown(context);
+    }
+
+    @Test
+    public void testSignalEventInBatches() {
+        JPASignalManager signalManager = signalWaitingProcessInstances(3, 1);
+        assertEquals( 1, signalManager.batchedSignalCount );
+        assertEquals( 0, signalManager.parallelChunkCount );
+    }
+
+    @Test
+    public void testSignalEventInBatchesWithParallelUnmarshalling() {
+        JPASignalManager signalManager = signalWaitingProcessInstances(4, 3);
+        assertEquals( 1, signalManager.batchedSignalCount );
+        // 10 waiting process instances in chunks of 4
+        assertEquals( 3, signalManager.parallelChunkCount );
+    }
+
+    private JPASignalManager signalWaitingProcessInstances(int batchSize, int parallelism) {
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase())
+            .addProcess( ProcessCreatorForHelp.newSimpleEventProcess( PROCESS_ID, EVENT_TYPE ) );
+
+        StatefulKnowledgeSession ksession = JPAKnowledgeService.newStatefulKnowledgeSession( kbase, null, createEnvironment(context) );
+        int ksessionId = ksession.getId();
+        List<Long> processInstanceIds = new ArrayList<Long>();
+        for ( int i = 0; i < 10; i++ ) {
+            ProcessInstance processInstance = ksession.startProcess( PROCESS_ID );
+            assertEquals( ProcessInstance.STATE_ACTIVE, processInstance.getState() );
+            processInstanceIds.add( processInstance.getId() );
+        }
+        ksession.dispose();
+
+        Environment env = createEnvironment(context);
+        env.set( JPASignalManager.SIGNAL_BATCH_SIZE, batchSize );
+        env.set( JPASignalManager.SIGNAL_PARALLELISM, parallelism );
+        ksession = JPAKnowledgeService.loadStatefulKnowledgeSession( ksessionId, kbase, null, env );
+        ksession.signalEvent( EVENT_TYPE, null );
+
+        for ( Long processInstanceId : processInstanceIds ) {
+            assertNull( ksession.getProcessInstance( processInstanceId ) );
+        }
+        JPASignalManager signalManager = getSignalManager( ksession );
+        ksession.dispose();
+        return signalManager;
+    }
+
+    private JPASignalManager getSignalManager(StatefulKnowledgeSession ksession) {
+        return ksession.execute( new GenericCommand<JPASignalManager>() {
+            public JPASignalManager execute(Context context) {
+                InternalKnowledgeRuntime kruntime = (InternalKnowledgeRuntime) ((KnowledgeCommandContext) context).getStatefulKnowledgesession();
+                return (JPASignalManager) ((InternalProcessRuntime) kruntime.getProcessRuntime()).getSignalManager();
+            }
+        } );
+    }
+
+}
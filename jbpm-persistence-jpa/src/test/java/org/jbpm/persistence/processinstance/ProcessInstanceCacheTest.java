@@ -0,0 +1,141 @@
+package org.jbpm.persistence.processinstance;
+
+import static org.drools.persistence.util.PersistenceUtil.*;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import javax.naming.InitialContext;
+import javax.persistence.EntityManager;
+import javax.transaction.UserTransaction;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.command.Context;
+import org.drools.command.impl.GenericCommand;
+import org.drools.command.impl.KnowledgeCommandContext;
+import org.drools.common.AbstractRuleBase;
+import org.drools.common.InternalKnowledgeRuntime;
+import org.drools.impl.InternalKnowledgeBase;
+import org.drools.persistence.jpa.JPAKnowledgeService;
+import org.drools.persistence.util.PersistenceUtil;
+import org.drools.runtime.Environment;
+import org.drools.runtime.EnvironmentName;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.jbpm.persistence.map.impl.ProcessCreatorForHelp;
+import org.jbpm.process.instance.InternalProcessRuntime;
+import org.jbpm.ruleflow.instance.RuleFlowProcessInstance;
+import org.jbpm.workflow.instance.WorkflowProcessInstance;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcessInstanceCacheTest {
+
+    private static final String PROCESS_ID = "cacheProcessTest";
+    private static final String EVENT_TYPE = "myEvent";
+
+    private HashMap<String, Object> context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = PersistenceUtil.setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PersistenceUtil.tearDown(context);
+    }
+
+    @Test
+    public void testCacheVersions() {
+        ProcessInstanceCache cache = new ProcessInstanceCache( 2 );
+        RuleFlowProcessInstance processInstance = new RuleFlowProcessInstance();
+        processInstance.setId( 1 );
+        cache.put( processInstance, 3 );
+        assertNull( cache.take( 1, 4 ) );
+        assertEquals( 1, cache.getStaleCount() );
+        assertEquals( 0, cache.size() );
+
+        cache.put( processInstance, 4 );
+        assertSame( processInstance, cache.take( 1, 4 ) );
+        assertEquals( 1, cache.getHitCount() );
+        assertNull( cache.take( 1, 4 ) );
+        assertEquals( 2, cache.getMissCount() );
+    }
+
+    @Test
+    public void testCachedProcessInstances() {
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase())
+            .addProcess( ProcessCreatorForHelp.newSimpleEventProcess( PROCESS_ID, EVENT_TYPE ) );
+
+        Environment env = createEnvironment(context);
+        env.set( JPAProcessInstanceManager.CACHE_SIZE, 2 );
+        StatefulKnowledgeSession ksession = JPAKnowledgeService.newStatefulKnowledgeSession( kbase, null, env );
+        long processInstanceId1 = ksession.startProcess( PROCESS_ID ).getId();
+        ksession.startProcess( PROCESS_ID );
+        long processInstanceId3 = ksession.startProcess( PROCESS_ID ).getId();
+
+        ProcessInstanceCache cache = getProcessInstanceCache( ksession );
+        assertEquals( 2, cache.size() );
+        assertEquals( 1, cache.getEvictionCount() );
+
+        assertEquals( ProcessInstance.STATE_ACTIVE, ksession.getProcessInstance( processInstanceId3 ).getState() );
+        assertEquals( 1, cache.getHitCount() );
+        assertEquals( ProcessInstance.STATE_ACTIVE, ksession.getProcessInstance( processInstanceId1 ).getState() );
+        assertEquals( 1, cache.getMissCount() );
+
+        ksession.signalEvent( EVENT_TYPE, null );
+        assertNull( ksession.getProcessInstance( processInstanceId1 ) );
+        assertNull( ksession.getProcessInstance( processInstanceId3 ) );
+        assertEquals( 0, cache.size() );
+        ksession.dispose();
+    }
+
+    @Test
+    public void testRolledBackProcessInstancesAreNotCached() throws Exception {
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase())
+            .addProcess( ProcessCreatorForHelp.newSimpleEventProcess( PROCESS_ID, EVENT_TYPE ) );
+
+        Environment env = createEnvironment(context);
+        env.set( JPAProcessInstanceManager.CACHE_SIZE, 2 );
+        StatefulKnowledgeSession ksession = JPAKnowledgeService.newStatefulKnowledgeSession( kbase, null, env );
+        final long processInstanceId = ksession.startProcess( PROCESS_ID ).getId();
+        ProcessInstanceCache cache = getProcessInstanceCache( ksession );
+        assertEquals( 1, cache.size() );
+
+        UserTransaction ut = (UserTransaction) new InitialContext().lookup( "java:comp/UserTransaction" );
+        ut.begin();
+        ksession.execute( new GenericCommand<Object>() {
+            public Object execute(Context context) {
+                StatefulKnowledgeSession ksession = ((KnowledgeCommandContext) context).getStatefulKnowledgesession();
+                ((WorkflowProcessInstance) ksession.getProcessInstance( processInstanceId ))
+                    .setVariable( "state", "rolled back" );
+                // writes the new version of the process instance before rolling back
+                ((EntityManager) ksession.getEnvironment().get( EnvironmentName.CMD_SCOPED_ENTITY_MANAGER )).flush();
+                return null;
+            }
+        } );
+        ut.rollback();
+        assertEquals( 0, cache.size() );
+
+        WorkflowProcessInstance processInstance = (WorkflowProcessInstance) ksession.getProcessInstance( processInstanceId );
+        assertNull( processInstance.getVariable( "state" ) );
+        assertEquals( 1, cache.getHitCount() );
+        ksession.dispose();
+    }
+
+    private ProcessInstanceCache getProcessInstanceCache(StatefulKnowledgeSession ksession) {
+        return ksession.execute( new GenericCommand<ProcessInstanceCache>() {
+            public ProcessInstanceCache execute(Context context) {
+                InternalKnowledgeRuntime kruntime = (InternalKnowledgeRuntime) ((KnowledgeCommandContext) context).getStatefulKnowledgesession();
+                return ((JPAProcessInstanceManager) ((InternalProcessRuntime) kruntime.getProcessRuntime())
+                    .getProcessInstanceManager()).getProcessInstanceCache();
+            }
+        } );
+    }
+
+}
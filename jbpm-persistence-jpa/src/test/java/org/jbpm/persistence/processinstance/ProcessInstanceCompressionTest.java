@@ -0,0 +1,115 @@
+package org.jbpm.persistence.processinstance;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import org.drools.runtime.Environment;
+import org.drools.runtime.EnvironmentFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcessInstanceCompressionTest {
+
+    @Before
+    public void setUp() {
+        ProcessInstanceCompression.resetStatistics();
+    }
+
+    @After
+    public void tearDown() {
+        ProcessInstanceCompression.resetStatistics();
+        ProcessInstanceCompression.resetRegistry();
+    }
+
+    @Test
+    public void testCompressionDisabled() throws Exception {
+        byte[] data = createData( 10000 );
+        assertSame( data, ProcessInstanceCompression.compress( data, EnvironmentFactory.newEnvironment() ) );
+        assertEquals( 0, ProcessInstanceCompression.getUncompressedBytes() );
+    }
+
+    @Test
+    public void testCompressAboveThreshold() throws Exception {
+        Environment env = EnvironmentFactory.newEnvironment();
+        env.set( ProcessInstanceCompression.COMPRESSION, "deflate" );
+        env.set( ProcessInstanceCompression.COMPRESSION_THRESHOLD, 1024 );
+
+        byte[] small = createData( 100 );
+        assertSame( small, ProcessInstanceCompression.compress( small, env ) );
+        assertSame( small, ProcessInstanceCompression.decompress( small ) );
+
+        byte[] large = createData( 10000 );
+        byte[] compressed = ProcessInstanceCompression.compress( large, env );
+        assertTrue( ProcessInstanceCompression.isCompressed( compressed ) );
+        assertTrue( compressed.length < large.length );
+        assertTrue( Arrays.equals( large, ProcessInstanceCompression.decompress( compressed ) ) );
+
+        assertEquals( 1, ProcessInstanceCompression.getCompressedCount() );
+        assertEquals( 1, ProcessInstanceCompression.getUncompressedCount() );
+        assertEquals( small.length + large.length, ProcessInstanceCompression.getUncompressedBytes() );
+        assertEquals( small.length + compressed.length, ProcessInstanceCompression.getStoredBytes() );
+        assertTrue( ProcessInstanceCompression.getCompressionRatio() > 1 );
+    }
+
+    @Test
+    public void testDecompressAfterRestartWithConfiguredCompressor() throws Exception {
+        Environment env = EnvironmentFactory.newEnvironment();
+        env.set( ProcessInstanceCompression.COMPRESSION, TestCompressor.class.getName() );
+        byte[] data = createData( 10000 );
+        byte[] compressed = ProcessInstanceCompression.compress( data, env );
+        assertEquals( TestCompressor.ID, compressed[2] );
+
+        // a restarted node reads the row before compressing anything
+        ProcessInstanceCompression.resetRegistry();
+        try {
+            ProcessInstanceCompression.decompress( compressed );
+            fail( "Expected the compressor not to be registered" );
+        } catch ( IOException e ) {
+            // expected
+        }
+        assertTrue( Arrays.equals( data, ProcessInstanceCompression.decompress( compressed, env ) ) );
+    }
+
+    @Test
+    public void testDecompressAfterRestartWithEnvironmentCompressor() throws Exception {
+        Environment env = EnvironmentFactory.newEnvironment();
+        env.set( ProcessInstanceCompression.COMPRESSION, new TestCompressor() );
+        byte[] data = createData( 10000 );
+        byte[] compressed = ProcessInstanceCompression.compress( data, env );
+        assertEquals( TestCompressor.ID, compressed[2] );
+
+        ProcessInstanceCompression.resetRegistry();
+        Environment restarted = EnvironmentFactory.newEnvironment();
+        restarted.set( ProcessInstanceCompression.COMPRESSION, new TestCompressor() );
+        assertTrue( Arrays.equals( data, ProcessInstanceCompression.decompress( compressed, restarted ) ) );
+    }
+
+    public static class TestCompressor extends DeflateProcessInstanceCompressor {
+
+        public static final byte ID = 42;
+
+        public byte getId() {
+            return ID;
+        }
+
+    }
+
+    private byte[] createData(int size) throws Exception {
+        // marshalled process instances are written to an object output stream
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream stream = new ObjectOutputStream( baos );
+        stream.writeUTF( "RuleFlow" );
+        for ( int i = 0; baos.size() < size; i++ ) {
+            stream.writeUTF( "<lineItem id=\"" + i + "\"/>" );
+            stream.flush();
+        }
+        stream.close();
+        return baos.toByteArray();
+    }
+
+}
@@ -0,0 +1,111 @@
+package org.jbpm.persistence.processinstance;
+
+import static org.drools.persistence.util.PersistenceUtil.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.command.Context;
+import org.drools.command.impl.GenericCommand;
+import org.drools.command.impl.KnowledgeCommandContext;
+import org.drools.common.AbstractRuleBase;
+import org.drools.impl.InternalKnowledgeBase;
+import org.drools.persistence.jpa.JPAKnowledgeService;
+import org.drools.persistence.util.PersistenceUtil;
+import org.drools.runtime.Environment;
+import org.drools.runtime.EnvironmentName;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.drools.runtime.process.WorkflowProcessInstance;
+import org.jbpm.persistence.map.impl.ProcessCreatorForHelp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcessInstanceInfoDeltaTest {
+
+    private static final String PROCESS_ID = "deltaProcessTest";
+    private static final String EVENT_TYPE = "myEvent";
+
+    private HashMap<String, Object> context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = PersistenceUtil.setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PersistenceUtil.tearDown(context);
+    }
+
+    @Test
+    public void testVariablesStoredSeparately() {
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase())
+            .addProcess( ProcessCreatorForHelp.newSimpleEventProcess( PROCESS_ID, EVENT_TYPE ) );
+
+        Environment env = createEnvironment(context);
+        env.set( ProcessInstanceInfo.DELTA_PERSISTENCE, "true" );
+        StatefulKnowledgeSession ksession = JPAKnowledgeService.newStatefulKnowledgeSession( kbase, null, env );
+        int ksessionId = ksession.getId();
+
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put( "changed", "initial" );
+        parameters.put( "unchanged", "unchanged" );
+        final long processInstanceId = ksession.startProcess( PROCESS_ID, parameters ).getId();
+
+        ProcessInstanceInfo processInstanceInfo = findProcessInstanceInfo( env, processInstanceId );
+        assertEquals( new HashSet<String>( Arrays.asList( "changed", "unchanged" ) ),
+                      processInstanceInfo.getVariableByteArrays().keySet() );
+        byte[] unchangedByteArray = processInstanceInfo.getVariableByteArrays().get( "unchanged" );
+
+        ksession.execute( new GenericCommand<Void>() {
+            public Void execute(Context context) {
+                StatefulKnowledgeSession ksession = ((KnowledgeCommandContext) context).getStatefulKnowledgesession();
+                ((WorkflowProcessInstance) ksession.getProcessInstance( processInstanceId )).setVariable( "changed", "updated" );
+                return null;
+            }
+        } );
+        ksession.dispose();
+
+        processInstanceInfo = findProcessInstanceInfo( env, processInstanceId );
+        assertTrue( Arrays.equals( unchangedByteArray,
+                                   processInstanceInfo.getVariableByteArrays().get( "unchanged" ) ) );
+
+        // variables are still restored when delta persistence is switched off again
+        env = createEnvironment(context);
+        ksession = JPAKnowledgeService.loadStatefulKnowledgeSession( ksessionId, kbase, null, env );
+        WorkflowProcessInstance processInstance = (WorkflowProcessInstance) ksession.getProcessInstance( processInstanceId );
+        assertEquals( ProcessInstance.STATE_ACTIVE, processInstance.getState() );
+        assertEquals( "updated", processInstance.getVariable( "changed" ) );
+        assertEquals( "unchanged", processInstance.getVariable( "unchanged" ) );
+
+        ksession.signalEvent( EVENT_TYPE, null );
+        assertNull( ksession.getProcessInstance( processInstanceId ) );
+        ksession.dispose();
+    }
+
+    private ProcessInstanceInfo findProcessInstanceInfo(Environment env,
+                                                        long processInstanceId) {
+        EntityManager em = ((EntityManagerFactory) env.get( EnvironmentName.ENTITY_MANAGER_FACTORY )).createEntityManager();
+        try {
+            ProcessInstanceInfo processInstanceInfo = em.find( ProcessInstanceInfo.class, processInstanceId );
+            assertNotNull( processInstanceInfo );
+            // initialize the lazily loaded variables before closing the entity manager
+            processInstanceInfo.getVariableByteArrays().size();
+            return processInstanceInfo;
+        } finally {
+            em.close();
+        }
+    }
+
+}
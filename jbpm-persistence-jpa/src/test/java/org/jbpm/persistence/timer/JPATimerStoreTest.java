@@ -0,0 +1,165 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.persistence.timer;
+
+import static org.drools.persistence.util.PersistenceUtil.*;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.common.AbstractRuleBase;
+import org.drools.impl.InternalKnowledgeBase;
+import org.drools.persistence.jpa.JPAKnowledgeService;
+import org.drools.persistence.util.PersistenceUtil;
+import org.drools.runtime.Environment;
+import org.drools.runtime.EnvironmentName;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.jbpm.process.instance.timer.TimerManager;
+import org.jbpm.ruleflow.core.RuleFlowProcessFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JPATimerStoreTest {
+
+    private static final String PROCESS_ID = "timerStoreTest";
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private HashMap<String, Object> context;
+    private KnowledgeBase kbase;
+
+    @Before
+    public void setUp() throws Exception {
+        context = PersistenceUtil.setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+        RuleFlowProcessFactory factory = RuleFlowProcessFactory.createProcess( PROCESS_ID );
+        factory
+            .name( "Timer store" ).packageName( "org.jbpm" )
+            .startNode( 1 ).name( "Start" ).done()
+            .timerNode( 2 ).name( "Timer" ).delay( "1h" ).done()
+            .endNode( 3 ).name( "End" ).done()
+            .connection( 1, 2 )
+            .connection( 2, 3 );
+        kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess( factory.validate().getProcess() );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PersistenceUtil.tearDown(context);
+    }
+
+    @Test
+    public void testTimerFiresAfterRestart() {
+        StatefulKnowledgeSession ksession = JPAKnowledgeService.newStatefulKnowledgeSession( kbase, null, createTimerStoreEnvironment() );
+        int ksessionId = ksession.getId();
+        long processInstanceId = ksession.startProcess( PROCESS_ID ).getId();
+        ksession.dispose();
+
+        List<TimerInfo> timerInfos = getTimerInfos();
+        assertEquals( 1, timerInfos.size() );
+        assertEquals( processInstanceId, timerInfos.get( 0 ).getProcessInstanceId() );
+        assertEquals( ksessionId, timerInfos.get( 0 ).getSessionId() );
+
+        ksession = JPAKnowledgeService.loadStatefulKnowledgeSession( ksessionId, kbase, null, createTimerStoreEnvironment() );
+        JPATimerPoller poller = new JPATimerPoller( ksession, "node1" );
+        long now = System.currentTimeMillis();
+        assertEquals( 0, poller.poll( now ) );
+        assertEquals( ProcessInstance.STATE_ACTIVE, ksession.getProcessInstance( processInstanceId ).getState() );
+
+        assertEquals( 1, poller.poll( now + 2 * HOUR ) );
+        assertNull( ksession.getProcessInstance( processInstanceId ) );
+        assertTrue( getTimerInfos().isEmpty() );
+        ksession.dispose();
+    }
+
+    @Test
+    public void testTimerIsClaimedOnce() {
+        StatefulKnowledgeSession ksession = JPAKnowledgeService.newStatefulKnowledgeSession( kbase, null, createTimerStoreEnvironment() );
+        long processInstanceId = ksession.startProcess( PROCESS_ID ).getId();
+
+        JPATimerPoller poller1 = new JPATimerPoller( ksession, "node1" );
+        JPATimerPoller poller2 = new JPATimerPoller( ksession, "node2" );
+        long now = System.currentTimeMillis() + 2 * HOUR;
+        assertEquals( 1, poller1.claimDueTimers( now ).size() );
+        assertEquals( 0, poller2.claimDueTimers( now ).size() );
+        assertEquals( "node1", getTimerInfos().get( 0 ).getOwner() );
+
+        // the claim of the first poller expires when it does not deliver the timer
+        now += 2 * 60000;
+        List<TimerInfo> claimed = poller2.claimDueTimers( now );
+        assertEquals( 1, claimed.size() );
+        assertTrue( poller2.deliver( claimed.get( 0 ), now ) );
+        assertNull( ksession.getProcessInstance( processInstanceId ) );
+        assertTrue( getTimerInfos().isEmpty() );
+        ksession.dispose();
+    }
+
+    @Test
+    public void testTimerIsNotDeliveredByFormerOwner() {
+        StatefulKnowledgeSession ksession = JPAKnowledgeService.newStatefulKnowledgeSession( kbase, null, createTimerStoreEnvironment() );
+        long processInstanceId = ksession.startProcess( PROCESS_ID ).getId();
+
+        JPATimerPoller poller1 = new JPATimerPoller( ksession, "node1" );
+        JPATimerPoller poller2 = new JPATimerPoller( ksession, "node2" );
+        long now = System.currentTimeMillis() + 2 * HOUR;
+        List<TimerInfo> claimed = poller1.claimDueTimers( now );
+        assertEquals( 1, claimed.size() );
+        now += 2 * 60000;
+        assertEquals( 1, poller2.claimDueTimers( now ).size() );
+
+        // the expired claim must not signal the process instance
+        assertFalse( poller1.deliver( claimed.get( 0 ), now ) );
+        assertEquals( ProcessInstance.STATE_ACTIVE, ksession.getProcessInstance( processInstanceId ).getState() );
+        assertEquals( "node2", getTimerInfos().get( 0 ).getOwner() );
+        ksession.dispose();
+    }
+
+    @Test
+    public void testCancelledTimerIsRemoved() {
+        StatefulKnowledgeSession ksession = JPAKnowledgeService.newStatefulKnowledgeSession( kbase, null, createTimerStoreEnvironment() );
+        long processInstanceId = ksession.startProcess( PROCESS_ID ).getId();
+        assertEquals( 1, getTimerInfos().size() );
+
+        ksession.abortProcessInstance( processInstanceId );
+        assertTrue( getTimerInfos().isEmpty() );
+        ksession.dispose();
+    }
+
+    private Environment createTimerStoreEnvironment() {
+        Environment env = createEnvironment( context );
+        env.set( TimerManager.TIMER_STORE, new JPATimerStore() );
+        return env;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<TimerInfo> getTimerInfos() {
+        EntityManager em = ((EntityManagerFactory) context.get( EnvironmentName.ENTITY_MANAGER_FACTORY )).createEntityManager();
+        try {
+            return em.createQuery( "select timerInfo from TimerInfo timerInfo" ).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+}
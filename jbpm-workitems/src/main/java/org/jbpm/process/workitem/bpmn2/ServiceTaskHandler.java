@@ -17,7 +17,7 @@
 package org.jbpm.process.workitem.bpmn2;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +35,7 @@ import org.drools.runtime.process.WorkItem;
 import org.drools.runtime.process.WorkItemHandler;
 import org.drools.runtime.process.WorkItemManager;
 import org.jbpm.bpmn2.core.Bpmn2Import;
+import org.jbpm.process.instance.impl.ServiceInvocationCache;
 import org.jbpm.workflow.core.impl.WorkflowProcessImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,6 +50,7 @@ public static final String WSDL_IMPORT_TYPE = "http://schemas.xmlsoap.org/wsdl/"
     private JaxWsDynamicClientFactory dcf;
     private StatefulKnowledgeSession ksession;
     private int asyncTimeout = 10;
+    private boolean reuseServiceInstances;
     
     enum WSMode {
         SYNC,
@@ -72,6 +74,14 @@ public static final String WSDL_IMPORT_TYPE = "http://schemas.xmlsoap.org/wsdl/"
         this.asyncTimeout = timeout;
     }
 
+    /**
+     * Whether instances of Java services may be reused for later invocations,
+     * only valid for stateless services.
+     */
+    public void setReuseServiceInstances(boolean reuseServiceInstances) {
+        this.reuseServiceInstances = reuseServiceInstances;
+    }
+
     public void executeWorkItem(WorkItem workItem, final WorkItemManager manager) {
         String implementation = (String) workItem.getParameter("implementation");
         if ("##WebService".equalsIgnoreCase(implementation)) {
@@ -180,20 +190,17 @@ public static final String WSDL_IMPORT_TYPE = "http://schemas.xmlsoap.org/wsdl/"
         String parameterType = (String) workItem.getParameter("ParameterType");
         Object parameter = workItem.getParameter("Parameter");
         try {
-            Class<?> c = Class.forName(i);
-            Object instance = c.newInstance();
-            Class<?>[] classes = null;
+            List<String> parameterTypes = null;
             Object[] params = null;
             if (parameterType != null) {
-                classes = new Class<?>[] {
-                    Class.forName(parameterType)
-                };
+                parameterTypes = Collections.singletonList(parameterType);
                 params = new Object[] {
                     parameter
                 };
             }
-            Method method = c.getMethod(operation, classes);
-            Object result = method.invoke(instance, params);
+            Object result = ServiceInvocationCache.getInstance()
+                .getInvocation(getClass().getClassLoader(), i, operation, parameterTypes)
+                .invoke(null, params, reuseServiceInstances);
             Map<String, Object> results = new HashMap<String, Object>();
             results.put("Result", result);
             manager.completeWorkItem(workItem.getId(), results);
@@ -1,8 +1,6 @@
 package org.jbpm.process.workitem.java;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -11,9 +9,22 @@ import java.util.Map;
 import org.drools.runtime.process.WorkItem;
 import org.drools.runtime.process.WorkItemHandler;
 import org.drools.runtime.process.WorkItemManager;
+import org.jbpm.process.instance.impl.ServiceInvocationCache;
+import org.jbpm.process.instance.impl.ServiceInvocationCache.Invocation;
 
 public class JavaInvocationWorkItemHandler implements WorkItemHandler {
 
+	private boolean reuseServiceInstances;
+
+	/**
+	 * Whether the instances created to invoke instance methods on when no
+	 * Object is given may be reused for later invocations, only valid for
+	 * stateless classes.
+	 */
+	public void setReuseServiceInstances(boolean reuseServiceInstances) {
+		this.reuseServiceInstances = reuseServiceInstances;
+	}
+
 	@SuppressWarnings("unchecked")
 	public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
 		String className = (String) workItem.getParameter("Class");
@@ -23,42 +34,15 @@ public class JavaInvocationWorkItemHandler implements WorkItemHandler {
 		List<Object> params = (List<Object>) workItem.getParameter("Parameters");
 		Object result = null;
 		try {
-            Class<?> c = Class.forName(className);
-            Class<?>[] classes = null;
-            Method method = null;
             if (params == null) {
             	params = new ArrayList<Object>();
             }
-            if (paramTypes == null) {
-        		classes = new Class<?>[0];
-        		try {
-        			method = c.getMethod(methodName, classes);
-        		} catch (NoSuchMethodException e) {
-        			for (Method m: c.getMethods()) {
-        				if (m.getName().equals(methodName)
-        						&& (m.getParameterTypes().length == params.size())) {
-        					method = m;
-        					break;
-        				}
-        			}
-        			if (method == null) {
-        				throw new NoSuchMethodException(className + "." + methodName + "(..)");
-        			}
-        		}
-        	} else {
-                List<Class<?>> classesList = new ArrayList<Class<?>>();
-        		for (String paramType: paramTypes) {
-                    classesList.add(Class.forName(paramType));
-                }
-        		classes = classesList.toArray(new Class<?>[classesList.size()]);
-        		method = c.getMethod(methodName, classes);
-    		}            		
-            if (!Modifier.isStatic(method.getModifiers())) {
-            	if (object == null) {
-            		object = c.newInstance();
-            	}
-            }
-            result = method.invoke(object, params.toArray());
+            ServiceInvocationCache cache = ServiceInvocationCache.getInstance();
+            ClassLoader classLoader = getClass().getClassLoader();
+            Invocation invocation = paramTypes == null
+            	? cache.findInvocation(classLoader, className, methodName, params.size())
+            	: cache.getInvocation(classLoader, className, methodName, paramTypes);
+            result = invocation.invoke(object, params.toArray(), reuseServiceInstances);
             Map<String, Object> results = new HashMap<String, Object>();
             results.put("Result", result);
             manager.completeWorkItem(workItem.getId(), results);
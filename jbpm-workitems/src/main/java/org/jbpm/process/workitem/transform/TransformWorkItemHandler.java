@@ -23,6 +23,7 @@ import java.util.Map;
 import org.drools.process.instance.WorkItemHandler;
 import org.drools.runtime.process.WorkItem;
 import org.drools.runtime.process.WorkItemManager;
+import org.jbpm.process.instance.impl.ServiceInvocationCache;
 
 public class TransformWorkItemHandler implements WorkItemHandler {
 
@@ -38,8 +39,9 @@ public class TransformWorkItemHandler implements WorkItemHandler {
 		try {
 			Object in = inputItem.getParameter(INPUT_KEY);
 			String outputType = (String) inputItem.getParameter(OUTPUT_TYPE_KEY);
-			Object output = Class.forName(outputType).newInstance();
-			Method txMethod = this.findTransform(output.getClass(), in.getClass());
+			Class<?> outputClass = ServiceInvocationCache.getInstance()
+				.loadClass(getClass().getClassLoader(), outputType);
+			Method txMethod = this.findTransform(outputClass, in.getClass());
 
 			if (txMethod != null) {
 				Object out = txMethod.invoke(null, in);